@@ -0,0 +1,212 @@
+package com.jte.sync2any.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.*;
+import com.jte.sync2any.transform.impl.RecordsTransformImpl;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试使用的合成数据：第一列为主键（BIGINT），其余列为VARCHAR，每隔10列有一列TIMESTAMP。
+ * 列数（width）、每个消息的行数（rows）和每个值的大小（valueSize）都可以由基准测试的@Param配置。
+ */
+public final class SyntheticData {
+
+    public static final String DB_NAME = "bench";
+    public static final String TABLE_NAME = "t_bench";
+
+    private SyntheticData() {
+    }
+
+    /**
+     * @param width 列数
+     */
+    public static TableMeta tableMeta(int width) {
+        TableMeta tableMeta = new TableMeta();
+        tableMeta.setDbName(DB_NAME);
+        tableMeta.setTableName(TABLE_NAME);
+        tableMeta.setTargetTableName(TABLE_NAME);
+        List<ColumnMeta> columnList = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            ColumnMeta columnMeta = new ColumnMeta();
+            columnMeta.setColumnName(columnName(i));
+            columnMeta.setTargetColumnName(columnName(i));
+            if (i == 0) {
+                columnMeta.setDataType(Types.BIGINT);
+                columnMeta.setDataTypeName("BIGINT");
+            } else if (i % 10 == 0) {
+                columnMeta.setDataType(Types.TIMESTAMP);
+                columnMeta.setDataTypeName("TIMESTAMP");
+            } else {
+                columnMeta.setDataType(Types.VARCHAR);
+                columnMeta.setDataTypeName("VARCHAR");
+            }
+            columnList.add(columnMeta);
+            tableMeta.getAllColumnMap().put(columnMeta.getColumnName(), columnMeta);
+        }
+        tableMeta.setAllColumnList(columnList);
+        IndexMeta primary = new IndexMeta();
+        primary.setIndextype(IndexType.PRIMARY);
+        primary.getValues().add(columnList.get(0));
+        tableMeta.getAllIndexes().put("PRIMARY", primary);
+        tableMeta.initMetaCache();
+        return tableMeta;
+    }
+
+    /**
+     * @param dmlType
+     * @param width   列数
+     * @param rows    行数
+     * @param valueSize 每个VARCHAR值的字节数
+     */
+    public static SubscribeDataProto.DMLEvent dmlEvent(SubscribeDataProto.DMLType dmlType, int width, int rows, int valueSize) {
+        SubscribeDataProto.DMLEvent.Builder builder = SubscribeDataProto.DMLEvent.newBuilder().setDmlEventType(dmlType);
+        for (int i = 0; i < width; i++) {
+            builder.addColumns(SubscribeDataProto.Column.newBuilder().setName(columnName(i)));
+        }
+        for (int r = 0; r < rows; r++) {
+            SubscribeDataProto.RowChange.Builder row = SubscribeDataProto.RowChange.newBuilder();
+            for (int i = 0; i < width; i++) {
+                if (dmlType != SubscribeDataProto.DMLType.INSERT) {
+                    row.addOldColumns(value(i, r, valueSize));
+                }
+                if (dmlType != SubscribeDataProto.DMLType.DELETE) {
+                    row.addNewColumns(value(i, r, valueSize));
+                }
+            }
+            builder.addRows(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 一个事务：BEGIN、DML、COMMIT，最后是一条CHECKPOINT
+     */
+    public static SubscribeDataProto.Entries entries(SubscribeDataProto.DMLType dmlType, int width, int rows, int valueSize) {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        SubscribeDataProto.Entries.Builder builder = SubscribeDataProto.Entries.newBuilder();
+        builder.addItems(entry(SubscribeDataProto.MessageType.BEGIN, timestamp));
+        builder.addItems(entry(SubscribeDataProto.MessageType.DML, timestamp)
+                .setEvent(SubscribeDataProto.Event.newBuilder().setDmlEvent(dmlEvent(dmlType, width, rows, valueSize))));
+        builder.addItems(entry(SubscribeDataProto.MessageType.COMMIT, timestamp));
+        builder.addItems(entry(SubscribeDataProto.MessageType.CHECKPOINT, timestamp));
+        return builder.build();
+    }
+
+    private static SubscribeDataProto.Entry.Builder entry(SubscribeDataProto.MessageType messageType, int timestamp) {
+        return SubscribeDataProto.Entry.newBuilder().setHeader(SubscribeDataProto.Header.newBuilder()
+                .setMessageType(messageType)
+                .setSchemaName(DB_NAME)
+                .setTableName(TABLE_NAME)
+                .setTimestamp(timestamp));
+    }
+
+    /**
+     * 将Entries切分为parts个Envelope（与DTS一样，parts大于1时需要拼装后才能解析）
+     */
+    public static List<byte[]> envelopes(SubscribeDataProto.Entries entries, int parts) {
+        byte[] data = entries.toByteArray();
+        int partSize = (data.length + parts - 1) / parts;
+        List<byte[]> envelopeList = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            int from = Math.min(i * partSize, data.length);
+            int to = Math.min(from + partSize, data.length);
+            envelopeList.add(SubscribeDataProto.Envelope.newBuilder()
+                    .setVersion(1)
+                    .setTotal(parts)
+                    .setIndex(i)
+                    .setData(ByteString.copyFrom(data, from, to - from))
+                    .build()
+                    .toByteArray());
+        }
+        return envelopeList;
+    }
+
+    /**
+     * 带有ps（分片内序号）和ShardId消息头的kafka消息
+     */
+    public static ConsumerRecord<String, byte[]> consumerRecord(String topic, String shardId, long partitionSeq, long offset, byte[] value) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("ps", String.valueOf(partitionSeq).getBytes(StandardCharsets.UTF_8));
+        headers.add("ShardId", shardId.getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>(topic, 0, offset, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                null, -1, value.length, null, value, headers);
+    }
+
+    /**
+     * mysqldump（-c）导出的一行（扩展插入，一行包含rows条记录）
+     */
+    public static String dumpInsertLine(int width, int rows, int valueSize) {
+        StringBuilder sb = new StringBuilder("INSERT INTO `").append(TABLE_NAME).append("` (");
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('`').append(columnName(i)).append('`');
+        }
+        sb.append(") VALUES ");
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                sb.append(',');
+            }
+            sb.append('(');
+            for (int i = 0; i < width; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                if (i == 0) {
+                    sb.append(r);
+                } else {
+                    sb.append('\'').append(textValue(i, r, valueSize)).append('\'');
+                }
+            }
+            sb.append(')');
+        }
+        return sb.append(';').toString();
+    }
+
+    /**
+     * 按增量同步的解析方式生成的请求
+     */
+    public static List<CudRequest> cudRequests(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, int rows, int valueSize) {
+        SubscribeDataProto.DMLEvent dmlEvt = dmlEvent(dmlType, tableMeta.getAllColumnList().size(), rows, valueSize);
+        RecordsTransformImpl transform = new RecordsTransformImpl();
+        int[] positions = RowDecoder.columnPositions(tableMeta, dmlEvt);
+        List<CudRequest> requestList = new ArrayList<>(rows);
+        for (SubscribeDataProto.RowChange row : dmlEvt.getRowsList()) {
+            requestList.add(transform.transform(tableMeta, dmlType,
+                    RowDecoder.decodeOld(tableMeta, positions, row), RowDecoder.decodeNew(tableMeta, positions, row)));
+        }
+        return requestList;
+    }
+
+    public static String columnName(int i) {
+        return i == 0 ? "id" : "col_" + i;
+    }
+
+    private static SubscribeDataProto.Data value(int column, int row, int valueSize) {
+        if (column == 0) {
+            return SubscribeDataProto.Data.newBuilder().setDataType(SubscribeDataProto.DataType.INT64).setSv(String.valueOf(row)).build();
+        }
+        return SubscribeDataProto.Data.newBuilder().setDataType(SubscribeDataProto.DataType.STRING).setBv(ByteString.copyFromUtf8(textValue(column, row, valueSize))).build();
+    }
+
+    private static String textValue(int column, int row, int valueSize) {
+        if (column % 10 == 0) {
+            return "2021-01-01 00:00:00";
+        }
+        StringBuilder sb = new StringBuilder(valueSize);
+        while (sb.length() < valueSize) {
+            sb.append((char) ('a' + (column + row + sb.length()) % 26));
+        }
+        return sb.toString();
+    }
+}
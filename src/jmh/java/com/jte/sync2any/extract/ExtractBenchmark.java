@@ -0,0 +1,105 @@
+package com.jte.sync2any.extract;
+
+import com.jte.sync2any.benchmark.SyntheticData;
+import com.jte.sync2any.conf.RuleConfigParser;
+import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.model.config.Mq;
+import com.jte.sync2any.model.config.SourceMysqlDb;
+import com.jte.sync2any.model.config.Sync2any;
+import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.transform.impl.RecordsTransformImpl;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * kafka消息的解析：parseFromMq（分片序号校验、分包拼装、protobuf解析）以及解析后按规则转换为CudRequest。
+ * 每次调用处理一个完整的事务（BEGIN、DML、COMMIT、CHECKPOINT），parts大于1时分为多个Envelope。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractBenchmark {
+
+    private static final String TOPIC = "bench-topic";
+    private static final String TOPIC_GROUP = "bench-group";
+
+    @Param({"10", "50"})
+    public int width;
+
+    @Param({"1", "100"})
+    public int rows;
+
+    @Param({"16"})
+    public int valueSize;
+
+    @Param({"1", "4"})
+    public int parts;
+
+    private KafkaMsgListener listener;
+    private List<ConsumerRecord<String, byte[]>> recordList;
+
+    @Setup
+    public void setup() {
+        Mq mq = new Mq();
+        mq.setTopicName(TOPIC);
+        mq.setTopicGroup(TOPIC_GROUP);
+        SyncConfig syncConfig = new SyncConfig();
+        syncConfig.setMq(mq);
+        syncConfig.setSourceDbId("1");
+        syncConfig.setTargetDbId("1");
+        syncConfig.setCoalesce(Constants.NO);
+        Sync2any sync2any = new Sync2any();
+        sync2any.setSyncConfigList(Collections.singletonList(syncConfig));
+        SourceMysqlDb sourceMysqlDb = new SourceMysqlDb();
+        sourceMysqlDb.setDatasources(Collections.emptyList());
+
+        TableMeta tableMeta = SyntheticData.tableMeta(width);
+        tableMeta.setSyncConfig(syncConfig);
+        RuleConfigParser.RULES_MAP.put("1$1$" + SyntheticData.TABLE_NAME, tableMeta);
+
+        listener = new KafkaMsgListener(sourceMysqlDb, mq, new RecordsTransformImpl(), sync2any, null);
+        SubscribeDataProto.Entries entries = SyntheticData.entries(SubscribeDataProto.DMLType.UPDATE, width, rows, valueSize);
+        List<byte[]> envelopeList = SyntheticData.envelopes(entries, parts);
+        recordList = new ArrayList<>(envelopeList.size());
+        for (int i = 0; i < envelopeList.size(); i++) {
+            //ps从1开始，每次调用都会重新初始化分片序号
+            recordList.add(SyntheticData.consumerRecord(TOPIC, "shard-1", i + 1, i, envelopeList.get(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        RuleConfigParser.RULES_MAP.invalidateAll();
+    }
+
+    @Benchmark
+    public void parseFromMq(Blackhole bh) throws Exception {
+        for (ConsumerRecord<String, byte[]> record : recordList) {
+            bh.consume(listener.parseFromMq(record));
+        }
+    }
+
+    @Benchmark
+    public void parseAndDecode(Blackhole bh) throws Exception {
+        for (ConsumerRecord<String, byte[]> record : recordList) {
+            SubscribeDataProto.Entries entries = listener.parseFromMq(record);
+            if (entries == null) {
+                continue;
+            }
+            for (SubscribeDataProto.Entry entry : entries.getItemsList()) {
+                bh.consume(listener.decodeEntry(record, entry));
+            }
+        }
+    }
+}
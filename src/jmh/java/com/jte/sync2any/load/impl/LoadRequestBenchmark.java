@@ -0,0 +1,114 @@
+package com.jte.sync2any.load.impl;
+
+import com.jte.sync2any.benchmark.SyntheticData;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.ColumnMeta;
+import com.jte.sync2any.model.mysql.TableMeta;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Types;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各个写入服务在访问目标数据源之前，由CudRequest生成写入请求的部分：
+ * es的DocWriteRequest（含json序列化）、mysql的sql及参数、clickhouse的一行values以及RowBinary编码。
+ * 每次调用处理rows个请求。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadRequestBenchmark {
+
+    @Param({"10", "50"})
+    public int width;
+
+    @Param({"100"})
+    public int rows;
+
+    @Param({"16", "256"})
+    public int valueSize;
+
+    private TableMeta tableMeta;
+    private List<CudRequest> insertList;
+    private List<CudRequest> updateList;
+    private EsLoadServiceImpl esLoadService;
+    private MysqlLoadServiceImpl mysqlLoadService;
+    private CkLoadServiceImpl ckLoadService;
+    private CkRowBinaryWriter.InsertPlan ckInsertPlan;
+    private final ByteArrayOutputStream rowBinaryBuffer = new ByteArrayOutputStream(1024 * 1024);
+
+    @Setup
+    public void setup() {
+        tableMeta = SyntheticData.tableMeta(width);
+        insertList = SyntheticData.cudRequests(tableMeta, SubscribeDataProto.DMLType.INSERT, rows, valueSize);
+        updateList = SyntheticData.cudRequests(tableMeta, SubscribeDataProto.DMLType.UPDATE, rows, valueSize);
+        esLoadService = new EsLoadServiceImpl();
+        mysqlLoadService = new MysqlLoadServiceImpl();
+        ckLoadService = new CkLoadServiceImpl();
+        Map<String, String> ckTypeMap = new HashMap<>();
+        for (ColumnMeta column : tableMeta.getAllColumnList()) {
+            int dataType = column.getDataType();
+            ckTypeMap.put(column.getTargetColumnName(), dataType == Types.BIGINT ? "Int64" : dataType == Types.TIMESTAMP ? "DateTime" : "String");
+        }
+        ckTypeMap.put("_sign", "Int8");
+        ckInsertPlan = CkRowBinaryWriter.buildPlan(tableMeta, ckTypeMap, ZoneId.systemDefault(), true);
+    }
+
+    @Benchmark
+    public void esWriteRequest(Blackhole bh) {
+        for (CudRequest request : updateList) {
+            bh.consume(esLoadService.toWriteRequest(request));
+        }
+    }
+
+    @Benchmark
+    public void mysqlUpsert(Blackhole bh) {
+        MysqlLoadServiceImpl.SqlPlan plan = mysqlLoadService.getSqlPlan(insertList.get(0));
+        for (CudRequest request : insertList) {
+            bh.consume(plan.fillInsertParam(request));
+        }
+        bh.consume(plan.upsertSql(insertList.size()));
+    }
+
+    @Benchmark
+    public void mysqlUpdate(Blackhole bh) {
+        for (CudRequest request : updateList) {
+            MysqlLoadServiceImpl.SqlPlan plan = mysqlLoadService.getSqlPlan(request);
+            bh.consume(plan.updateSql);
+            bh.consume(plan.fillUpdateParam(request));
+        }
+    }
+
+    @Benchmark
+    public void ckRowBinary(Blackhole bh) throws IOException {
+        rowBinaryBuffer.reset();
+        ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(rowBinaryBuffer, TimeZone.getDefault(), new ClickHouseProperties());
+        for (CudRequest request : updateList) {
+            CkRowBinaryWriter.writeRow(stream, ckInsertPlan, new CkLoadServiceImpl.InsertItem(tableMeta, request.getOldRow(), "-1"));
+            CkRowBinaryWriter.writeRow(stream, ckInsertPlan, new CkLoadServiceImpl.InsertItem(tableMeta, request.getNewRow(), "1"));
+        }
+        bh.consume(rowBinaryBuffer.size());
+    }
+
+    @Benchmark
+    public void ckValuesByRow(Blackhole bh) {
+        for (CudRequest request : updateList) {
+            bh.consume(ckLoadService.buildSingleValuesByRow(request.getOldRow(), tableMeta, "-1"));
+            bh.consume(ckLoadService.buildSingleValuesByRow(request.getNewRow(), tableMeta, "1"));
+        }
+    }
+}
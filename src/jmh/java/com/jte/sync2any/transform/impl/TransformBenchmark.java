@@ -0,0 +1,79 @@
+package com.jte.sync2any.transform.impl;
+
+import com.jte.sync2any.benchmark.SyntheticData;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.model.mysql.TableRecords;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析过程中的各个步骤：TableRecords.buildRecords、RecordsTransformImpl.transform，
+ * 以及载入原始数据时mysqldump中一行INSERT语句的解析（DumpInsertParser和druid两种方式）。
+ * 每次调用处理rows行数据。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformBenchmark {
+
+    @Param({"10", "50"})
+    public int width;
+
+    @Param({"100"})
+    public int rows;
+
+    @Param({"16", "256"})
+    public int valueSize;
+
+    private TableMeta tableMeta;
+    private SubscribeDataProto.DMLEvent dmlEvt;
+    private List<TableRecords> recordsList;
+    private String dumpLine;
+    private RecordsTransformImpl transform;
+    private MysqlDumpTransformImpl dumpTransform;
+
+    @Setup
+    public void setup() {
+        tableMeta = SyntheticData.tableMeta(width);
+        dmlEvt = SyntheticData.dmlEvent(SubscribeDataProto.DMLType.UPDATE, width, rows, valueSize);
+        recordsList = new ArrayList<>(rows);
+        for (SubscribeDataProto.RowChange row : dmlEvt.getRowsList()) {
+            recordsList.add(TableRecords.buildRecords(tableMeta, row, dmlEvt));
+        }
+        dumpLine = SyntheticData.dumpInsertLine(width, rows, valueSize);
+        transform = new RecordsTransformImpl();
+        dumpTransform = new MysqlDumpTransformImpl();
+    }
+
+    @Benchmark
+    public void buildRecords(Blackhole bh) {
+        for (SubscribeDataProto.RowChange row : dmlEvt.getRowsList()) {
+            bh.consume(TableRecords.buildRecords(tableMeta, row, dmlEvt));
+        }
+    }
+
+    @Benchmark
+    public void transformRecords(Blackhole bh) {
+        for (TableRecords records : recordsList) {
+            bh.consume(transform.transform(records));
+        }
+    }
+
+    @Benchmark
+    public Object dumpLine() {
+        return dumpTransform.sqlToInsertCudRequest(dumpLine, tableMeta);
+    }
+
+    @Benchmark
+    public Object dumpLineDruid() {
+        return dumpTransform.sqlToInsertCudRequestByDruid(dumpLine, tableMeta);
+    }
+}
@@ -1,8 +1,10 @@
 package com.jte.sync2any;
 
 import com.jte.sync2any.conf.RuleConfigParser;
+import com.jte.sync2any.conf.RuleRegistry;
 import com.jte.sync2any.model.config.Sync2any;
 import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.core.LagHistogram;
 import com.jte.sync2any.model.core.SyncState;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.util.AlertUtils;
@@ -14,12 +16,12 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MonitorTask implements Runnable {
 
-    private Map<String, TableMeta> tableRules;
+    private RuleRegistry ruleRegistry;
     private Sync2any sync2any;
     /**
      * 同步消息时发生错误的Topic。
      */
-    public static List<String> ERROR_TOPIC_LIST = new ArrayList<>();
+    public static List<String> ERROR_TOPIC_LIST = Collections.synchronizedList(new ArrayList<>());
     /**
      * 同步消息时发送的错误，2个小时检测一次
      */
@@ -31,8 +33,8 @@ public class MonitorTask implements Runnable {
      */
     public static int LOOP_WAITING_TIME = 6;
 
-    public MonitorTask(Map<String, TableMeta> tableRules, Sync2any sync2any) {
-        this.tableRules = tableRules;
+    public MonitorTask(RuleRegistry ruleRegistry, Sync2any sync2any) {
+        this.ruleRegistry = ruleRegistry;
         this.sync2any = sync2any;
     }
 
@@ -65,15 +67,8 @@ public class MonitorTask implements Runnable {
             int maxIdleInMinute = config.getMaxIdleInMinute();
             int nextTriggerAlertInMinute = config.getNextTriggerAlertInMinute();
 
-            //先过滤数据库
-            Set<String> metaKeySet = tableRules.keySet()
-                    .stream()
-                    .filter(k -> k.startsWith(config.getTargetDbId() + "$"+config.getSourceDbId() + "$"))
-                    .collect(Collectors.toSet());
-            //再过滤表
-            for (String metaKey : metaKeySet) {
-
-                TableMeta currTableMeta = tableRules.get(metaKey);
+            //这个同步任务下的所有表
+            for (TableMeta currTableMeta : ruleRegistry.getByDb(config.getTargetDbId(), config.getSourceDbId())) {
                 if (currTableMeta.getState().equals(SyncState.INACTIVE) || currTableMeta.getState().equals(SyncState.WAIT_TO_LISTENING) || currTableMeta.getState().equals(SyncState.LOADING_ORIGIN_DATA)) {
                     continue;
                 }
@@ -93,7 +88,7 @@ public class MonitorTask implements Runnable {
                 }
 
                 //同步延迟
-                long delay = currTableMeta.getLastSyncTime() - currTableMeta.getLastDataManipulateTime();
+                long delay = getDelay(currTableMeta);
                 if (maxDelayInSecond != -1 && (delay / 1000) > maxDelayInSecond) {
                     delayTableMetaList.add(currTableMeta);
                     currTableMeta.setLastAlarmTime(System.currentTimeMillis());
@@ -138,7 +133,7 @@ public class MonitorTask implements Runnable {
             for(TableMeta tm : tableMetaList){
                 int maxDelayInSecond = tm.getSyncConfig().getMaxDelayInSecond();
                 //同步延迟
-                long delay = tm.getLastSyncTime() - tm.getLastDataManipulateTime();
+                long delay = getDelay(tm);
                 if (maxDelayInSecond != -1 && (delay / 1000) > maxDelayInSecond) {
                     delayCount ++;
                     break;
@@ -152,6 +147,30 @@ public class MonitorTask implements Runnable {
         }
     }
 
+    /**
+     * 同步延迟（毫秒）：最近一个窗口内每行数据延迟的百分位（delayPercentile）；
+     * 窗口内没有写入数据时，如果有收到但一直未确认写入的数据（消费卡住、被暂停或者一直在重试），为未确认的时长，
+     * 否则为0（由空闲告警检测）；没有延迟直方图时为最后一行数据的延迟
+     *
+     * @param tableMeta
+     * @return
+     */
+    static long getDelay(TableMeta tableMeta) {
+        return getDelay(tableMeta, System.currentTimeMillis());
+    }
+
+    static long getDelay(TableMeta tableMeta, long now) {
+        LagHistogram histogram = tableMeta.getLagHistogram();
+        if (Objects.isNull(histogram)) {
+            return tableMeta.getLastSyncTime() - tableMeta.getLastDataManipulateTime();
+        }
+        LagHistogram.Snapshot snapshot = histogram.snapshot();
+        if (snapshot.getCount() == 0) {
+            return tableMeta.getPendingTime(now);
+        }
+        return snapshot.getValueAtPercentile(tableMeta.getSyncConfig().getDelayPercentile());
+    }
+
     private String assembleAlertParam(TableMeta meta, String key, String value) {
         StringBuffer sb = new StringBuffer();
         sb.append("sync2any数据同步异常，");
@@ -4,19 +4,30 @@ import com.jte.sync2any.conf.AlarmConfig;
 import com.jte.sync2any.conf.KafkaConfig;
 import com.jte.sync2any.conf.RuleConfigParser;
 import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.extract.DumpStream;
 import com.jte.sync2any.extract.OriginDataExtract;
+import com.jte.sync2any.extract.OriginRequestExtract;
 import com.jte.sync2any.extract.impl.CkMetaExtractImpl;
 import com.jte.sync2any.extract.impl.MysqlMetaExtractImpl;
 import com.jte.sync2any.load.AbstractLoadService;
+import com.jte.sync2any.load.DumpLoadPipeline;
+import com.jte.sync2any.load.LoadCheckpointStore;
+import com.jte.sync2any.load.LoadCheckpointTracker;
+import com.jte.sync2any.load.TableLoadScheduler;
 import com.jte.sync2any.model.config.Conn;
+import com.jte.sync2any.model.config.DumpLoad;
+import com.jte.sync2any.model.config.Sync2any;
 import com.jte.sync2any.model.config.TargetDatasources;
+import com.jte.sync2any.model.core.LoadCheckpoint;
 import com.jte.sync2any.model.core.SyncState;
 import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.BinlogPosition;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.transform.DumpTransform;
 import com.jte.sync2any.util.DbUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.EventListener;
@@ -24,7 +35,11 @@ import org.springframework.kafka.listener.KafkaMessageListenerContainer;
 
 import javax.annotation.Resource;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.jte.sync2any.conf.RuleConfigParser.RULES_MAP;
 
@@ -41,9 +56,12 @@ public class StartListener {
     @Resource
     CkMetaExtractImpl ckMetaExtract;
 
-    @Resource
+    @Resource(name = "mysqlOriginDataExtractImpl")
     OriginDataExtract originDataExtract;
 
+    @Resource(name = "jdbcOriginDataExtractImpl")
+    OriginRequestExtract originRequestExtract;
+
     @Resource
     DumpTransform dumpTransform;
 
@@ -56,6 +74,16 @@ public class StartListener {
     @Resource
     AlarmConfig alarmConfig;
 
+    @Resource
+    KafkaConfig kafkaConfig;
+
+    @Resource
+    Sync2any sync2any;
+
+    /**
+     * 不记录载入断点时为null
+     */
+    private LoadCheckpointStore checkpointStore;
 
     /**
      * 1、获取所有要同步的表。
@@ -86,20 +114,56 @@ public class StartListener {
             }
 
             log.info("=======================start river===========================");
-            //2、过滤出要同步全量数据的表
-            //3、将只需要同步增量数据的表设置为“等待监听”状态
-            List<String> allDataKey = new ArrayList<>();
+            Set<String> targetTypes = new HashSet<>();
             for (String key : tableRules.keySet()) {
                 TableMeta currTableMeta = tableRules.get(key);
                 Conn conn = DbUtils.getConnByDbId(targetDatasources.getDatasources(), currTableMeta.getTargetDbId());
+                targetTypes.add(conn.getType());
                 //如果目标数据库是ck，那么要探测目标表的引擎
                 if (Conn.DB_TYPE_CLICKHOUSE.equals(conn.getType())) {
                     String engineName = ckMetaExtract.getTableEngineName(currTableMeta.getTargetDbId(), currTableMeta.getTargetTableName());
                     currTableMeta.setCkTableEngine(engineName);
                     log.info("find ck tableName:{} engine:{}", currTableMeta.getTargetTableName(), engineName);
                 }
+            }
+            //恢复上次停止时还未写入目标数据源的数据（如ck的预写日志），需要在开始监听之前完成
+            for (String targetType : targetTypes) {
+                AbstractLoadService.getLoadService(targetType).recover();
+            }
+
+            DumpLoad dumpLoad = sync2any.getDumpLoad();
+            if (Constants.YES.equals(dumpLoad.getCheckpointEnabled())) {
+                checkpointStore = new LoadCheckpointStore(dumpLoad.getCheckpointDir());
+            }
+
+            //2、过滤出要同步全量数据的表
+            //3、将只需要同步增量数据的表设置为“等待监听”状态
+            List<String> allDataKey = new ArrayList<>();
+            Set<String> reloadTargets = prepareResume(tableRules);
+            for (String key : tableRules.keySet()) {
+                TableMeta currTableMeta = tableRules.get(key);
+                Conn conn = DbUtils.getConnByDbId(targetDatasources.getDatasources(), currTableMeta.getTargetDbId());
 
-                if (Constants.YES.equals(currTableMeta.getSyncConfig().getDumpOriginData())) {
+                if (Constants.YES.equals(currTableMeta.getSyncConfig().getDumpOriginData())
+                        && reloadTargets.contains(targetKey(currTableMeta))) {
+                    //目标表已清空，同步到这个目标表的所有表都重新载入
+                    LoadCheckpoint oldCheckpoint = checkpointStore.get(key);
+                    if (Objects.nonNull(oldCheckpoint)) {
+                        if (Objects.nonNull(oldCheckpoint.getDataFile())) {
+                            FileUtils.deleteQuietly(new File(oldCheckpoint.getDataFile()));
+                        }
+                        checkpointStore.delete(key);
+                    }
+                    allDataKey.add(key);
+                    log.warn("target table is truncated, reload origin data,tableName:{},dbName:{}",
+                            currTableMeta.getTableName(), currTableMeta.getDbName());
+                } else if (Constants.YES.equals(currTableMeta.getSyncConfig().getDumpOriginData())
+                        && Objects.nonNull(checkpointStore) && Objects.nonNull(checkpointStore.get(key))) {
+                    //上次载入未完成（目标表已有部分数据），从断点继续载入
+                    allDataKey.add(key);
+                    log.warn("found load checkpoint, resume loading origin data,tableName:{},dbName:{}",
+                            currTableMeta.getTableName(), currTableMeta.getDbName());
+                } else if (Constants.YES.equals(currTableMeta.getSyncConfig().getDumpOriginData())) {
                     AbstractLoadService loadService = AbstractLoadService.getLoadService(conn.getType());
                     //查看目标数据库是否存在且有数据
                     Long targetCount = loadService.countData(currTableMeta.getTargetDbId(), currTableMeta.getTargetTableName());
@@ -122,56 +186,24 @@ public class StartListener {
                 startListening(currTableMeta);
             }
 
-            // 5、mysqldump需要全量数据的表（一次性dump完）。
-            log.info("======================= mysqldump start ===========================");
-            Map<String, File> mysqlDumpFiles = new HashMap<>();
-            for (String key : allDataKey) {
-                long startTime = System.currentTimeMillis();
-                TableMeta currTableMeta = tableRules.get(key);
-                log.warn("start to dump origin data of " + currTableMeta.getDbName() + "." + currTableMeta.getTableName());
-                currTableMeta.setState(SyncState.LOADING_ORIGIN_DATA);
-                //开始dump数据库数据
-                File dataFile = originDataExtract.dumpData(currTableMeta);
-                mysqlDumpFiles.put(key, dataFile);
-                log.warn("dump origin data is success,tableName:{},dbName:{},esIndex:{},topicName:{} costTime:{}",
-                        currTableMeta.getTableName(), currTableMeta.getDbName(), currTableMeta.getTargetTableName(), currTableMeta.getTopicName(), (System.currentTimeMillis() - startTime));
-            }
-
-
-            // 6、载入全量数据到目标数据库。
+            // 5、mysqldump需要全量数据的表。
+            // 6、载入全量数据到目标数据库。不同的表并行dump和载入，一个表完成后马上尝试启动它的mq监听
+            // 7、启动其他mq的监听。
             log.info("======================= loading data start ===========================");
+            TableLoadScheduler scheduler = new TableLoadScheduler(dumpLoad.getTables(), dumpLoad.getTablesPerDb());
             for (String key : allDataKey) {
                 TableMeta currTableMeta = tableRules.get(key);
-                log.warn("start to load origin data of " + currTableMeta.getDbName() + "." + currTableMeta.getTableName());
                 Conn conn = DbUtils.getConnByDbId(targetDatasources.getDatasources(), currTableMeta.getTargetDbId());
                 AbstractLoadService loadService = AbstractLoadService.getLoadService(conn.getType());
-                long startTime = System.currentTimeMillis();
-
+                //batchAdd不能并发调用的载入服务，同一类目标数据源的表依次载入
+                String exclusiveKey = loadService.isConcurrentBatchAdd() ? null : conn.getType();
                 currTableMeta.setState(SyncState.LOADING_ORIGIN_DATA);
-                loadService.checkAndCreateStorage(currTableMeta);
-                //同步数量
-                int count=0;
-                //开始同步原始数据
-                File dataFile = mysqlDumpFiles.get(key);
-                Iterator<List<CudRequest>> iterator = dumpTransform.transform(dataFile, currTableMeta);
-                while (iterator.hasNext()) {
-                    List<CudRequest> requestList = iterator.next();
-                    count =count + requestList.size();
-                    if (requestList.size() > 0) {
-                        loadService.batchAdd(requestList);
-                    }
-                }
-                loadService.flushBatchAdd();
-                //马上删除dump下的文件
-                if (Objects.nonNull(dataFile) && dataFile.exists()) {
-                    FileUtils.forceDelete(dataFile);
-                }
-                log.warn("load origin data is success,tableName:{},dbName:{},esIndex:{},topicName:{} costTime:{} rows:{}",
-                        currTableMeta.getTableName(), currTableMeta.getDbName(), currTableMeta.getTargetTableName(), currTableMeta.getTopicName(), (System.currentTimeMillis() - startTime), count);
-                currTableMeta.setState(SyncState.WAIT_TO_LISTENING);
-                //7、启动其他mq的监听。
-                startListening(currTableMeta);
+                scheduler.submit(currTableMeta.getDbName() + "." + currTableMeta.getTableName(), currTableMeta.getSourceDbId(), exclusiveKey, () -> {
+                    dumpAndLoad(key, currTableMeta, loadService);
+                    return null;
+                });
             }
+            scheduler.awaitAll();
             //开启监控
             alarmConfig.startMonitor();
             log.info("=========================river start finished=================================");
@@ -183,13 +215,206 @@ public class StartListener {
 
     }
 
-    //启动监听
-    private void startListening(TableMeta currTableMeta) {
+    /**
+     * 有断点的表在从断点继续载入之前，由目标数据源清理已载入的部分数据（每个目标表一次）。
+     * 不能从断点继续的目标（ck）已清空，多个表同步到同一个目标表时这些表都需要重新载入
+     *
+     * @return 已清空、需要重新载入的目标表（targetKey）
+     */
+    private Set<String> prepareResume(Map<String, TableMeta> tableRules) throws IOException {
+        Set<String> reloadTargets = new HashSet<>();
+        if (Objects.isNull(checkpointStore)) {
+            return reloadTargets;
+        }
+        Set<String> preparedTargets = new HashSet<>();
+        for (String key : tableRules.keySet()) {
+            TableMeta currTableMeta = tableRules.get(key);
+            if (!Constants.YES.equals(currTableMeta.getSyncConfig().getDumpOriginData())
+                    || Objects.isNull(checkpointStore.get(key)) || !preparedTargets.add(targetKey(currTableMeta))) {
+                continue;
+            }
+            Conn conn = DbUtils.getConnByDbId(targetDatasources.getDatasources(), currTableMeta.getTargetDbId());
+            AbstractLoadService loadService = AbstractLoadService.getLoadService(conn.getType());
+            if (!loadService.prepareResume(currTableMeta.getTargetDbId(), currTableMeta.getTargetTableName())) {
+                reloadTargets.add(targetKey(currTableMeta));
+            }
+        }
+        return reloadTargets;
+    }
+
+    private static String targetKey(TableMeta tableMeta) {
+        return tableMeta.getTargetDbId() + "$" + tableMeta.getTargetTableName();
+    }
+
+    /**
+     * dump并载入一个表的原始数据，完成后启动mq的监听。
+     * 记录断点时从上次未完成的断点继续，载入失败时保留dump文件，重启后继续载入
+     *
+     * @param key           表的规则key
+     * @param currTableMeta
+     * @param loadService
+     */
+    private void dumpAndLoad(String key, TableMeta currTableMeta, AbstractLoadService loadService) throws Exception {
+        String dumpMode = sync2any.getDumpMode();
+        //file方式下先dump到文件，stream、jdbc方式下在载入时边dump边载入
+        boolean fileDump = !Sync2any.DUMP_MODE_STREAM.equals(dumpMode) && !Sync2any.DUMP_MODE_JDBC.equals(dumpMode);
+        LoadCheckpoint checkpoint = getCheckpoint(key, dumpMode);
+        currTableMeta.setSnapshotPosition(getSnapshotPosition(currTableMeta, checkpoint));
+        File dataFile = null;
+        boolean success = false;
+        try {
+            if (fileDump) {
+                if (Objects.nonNull(checkpoint) && Objects.nonNull(checkpoint.getDataFile())) {
+                    dataFile = new File(checkpoint.getDataFile());
+                }
+                if (Objects.nonNull(dataFile) && dataFile.exists()) {
+                    log.warn("resume loading origin data of {}.{} from file:{} loadedLines:{}",
+                            currTableMeta.getDbName(), currTableMeta.getTableName(), dataFile, checkpoint.getLoadedLines());
+                } else {
+                    long startTime = System.currentTimeMillis();
+                    log.warn("start to dump origin data of " + currTableMeta.getDbName() + "." + currTableMeta.getTableName());
+                    dataFile = originDataExtract.dumpData(currTableMeta, checkpoint);
+                    if (Objects.nonNull(checkpoint)) {
+                        checkpoint.setDataFile(dataFile.getAbsolutePath());
+                        checkpoint.setLoadedLines(0);
+                    }
+                    log.warn("dump origin data is success,tableName:{},dbName:{},esIndex:{},topicName:{} costTime:{}",
+                            currTableMeta.getTableName(), currTableMeta.getDbName(), currTableMeta.getTargetTableName(), currTableMeta.getTopicName(), (System.currentTimeMillis() - startTime));
+                }
+            }
+
+            log.warn("start to load origin data of " + currTableMeta.getDbName() + "." + currTableMeta.getTableName());
+            long startTime = System.currentTimeMillis();
+            loadService.checkAndCreateStorage(currTableMeta);
+            //开始同步原始数据
+            long count = loadOriginData(key, currTableMeta, dataFile, loadService, checkpoint);
+            loadService.flushBatchAdd();
+            if (Objects.nonNull(checkpoint)) {
+                checkpointStore.delete(key);
+            }
+            success = true;
+            log.warn("load origin data is success,tableName:{},dbName:{},esIndex:{},topicName:{} costTime:{} rows:{}",
+                    currTableMeta.getTableName(), currTableMeta.getDbName(), currTableMeta.getTargetTableName(), currTableMeta.getTopicName(), (System.currentTimeMillis() - startTime), count);
+        } finally {
+            //马上删除dump下的文件，记录断点时失败的表保留文件
+            if (Objects.nonNull(dataFile) && dataFile.exists() && (success || Objects.isNull(checkpoint))) {
+                FileUtils.forceDelete(dataFile);
+            }
+        }
+        currTableMeta.setState(SyncState.WAIT_TO_LISTENING);
+        startListening(currTableMeta);
+    }
+
+    /**
+     * 取出上次未完成的断点，没有断点或者dump方式已改变时返回新的断点
+     *
+     * @return 不记录断点时返回null
+     */
+    private LoadCheckpoint getCheckpoint(String key, String dumpMode) throws IOException {
+        if (Objects.isNull(checkpointStore)) {
+            return null;
+        }
+        LoadCheckpoint checkpoint = checkpointStore.get(key);
+        if (Objects.nonNull(checkpoint) && Objects.equals(dumpMode, checkpoint.getDumpMode())) {
+            return checkpoint;
+        }
+        LoadCheckpoint newCheckpoint = new LoadCheckpoint();
+        newCheckpoint.setDumpMode(dumpMode);
+        if (Objects.nonNull(checkpoint)) {
+            log.warn("dump mode is changed from {} to {}, reload origin data of {}", checkpoint.getDumpMode(), dumpMode, key);
+            if (Objects.nonNull(checkpoint.getDataFile())) {
+                FileUtils.deleteQuietly(new File(checkpoint.getDataFile()));
+            }
+            //目标表中已有上次载入的数据，沿用上次的binlog位置
+            newCheckpoint.setSnapshotPosition(checkpoint.getSnapshotPosition());
+        }
+        return newCheckpoint;
+    }
+
+    /**
+     * dump之前的binlog位置，从断点继续载入时沿用第一次载入时的位置（断点之前的数据是那时dump的）
+     *
+     * @return 未开启或者获取失败时返回null，增量同步时不跳过消息
+     */
+    private BinlogPosition getSnapshotPosition(TableMeta currTableMeta, LoadCheckpoint checkpoint) {
+        if (!Constants.YES.equals(sync2any.getSnapshotHandoff().getEnabled())) {
+            return null;
+        }
+        if (Objects.nonNull(checkpoint) && Objects.nonNull(checkpoint.getSnapshotPosition())) {
+            return checkpoint.getSnapshotPosition();
+        }
+        BinlogPosition position = mysqlMetaExtract.getBinlogPosition(currTableMeta.getSourceDbId());
+        log.info("snapshot binlog position of {}.{}: {}", currTableMeta.getDbName(), currTableMeta.getTableName(), position);
+        if (Objects.nonNull(checkpoint)) {
+            checkpoint.setSnapshotPosition(position);
+        }
+        return position;
+    }
+
+    /**
+     * 解析并载入一个表的原始数据，解析和写入都在DumpLoadPipeline的线程池中并行执行
+     *
+     * @param key           表的规则key
+     * @param currTableMeta
+     * @param dataFile      file方式下dump出来的文件，其他方式为null
+     * @param loadService
+     * @param checkpoint    不记录断点时为null
+     * @return 载入的行数
+     */
+    private long loadOriginData(String key, TableMeta currTableMeta, File dataFile, AbstractLoadService loadService,
+                                LoadCheckpoint checkpoint) throws Exception {
+        String dumpMode = sync2any.getDumpMode();
+        DumpLoadPipeline pipeline = new DumpLoadPipeline(sync2any.getDumpLoad(), currTableMeta.getTableName());
+        if (Sync2any.DUMP_MODE_JDBC.equals(dumpMode)) {
+            try (DumpStream<List<CudRequest>> requestStream = originRequestExtract.extractData(currTableMeta, checkpoint)) {
+                return pipeline.load(requestStream, Function.identity(), loadService,
+                        trackCheckpoint(key, currTableMeta, loadService, checkpoint));
+            }
+        }
+        if (Sync2any.DUMP_MODE_STREAM.equals(dumpMode)) {
+            try (DumpStream<String> lineStream = originDataExtract.streamData(currTableMeta, checkpoint)) {
+                return pipeline.load(lineStream, line -> dumpTransform.transformLine(line, currTableMeta), loadService,
+                        trackCheckpoint(key, currTableMeta, loadService, checkpoint));
+            }
+        }
+        LineIterator lineIterator = FileUtils.lineIterator(dataFile, StandardCharsets.UTF_8.name());
+        try {
+            //跳过上次已载入的行
+            long loadedLines = Objects.isNull(checkpoint) ? 0 : checkpoint.getLoadedLines();
+            for (long i = 0; i < loadedLines && lineIterator.hasNext(); i++) {
+                lineIterator.nextLine();
+            }
+            return pipeline.load(lineIterator, line -> dumpTransform.transformLine(line, currTableMeta), loadService,
+                    trackCheckpoint(key, currTableMeta, loadService, checkpoint));
+        } finally {
+            LineIterator.closeQuietly(lineIterator);
+        }
+    }
+
+    /**
+     * 开始载入前先保存一次断点，之后每载入一段时间保存一次
+     *
+     * @return DumpLoadPipeline的onLoaded，不记录断点时返回null
+     */
+    private Consumer<CudRequest> trackCheckpoint(String key, TableMeta currTableMeta, AbstractLoadService loadService,
+                                                 LoadCheckpoint checkpoint) throws IOException {
+        if (Objects.isNull(checkpoint)) {
+            return null;
+        }
+        LoadCheckpointTracker tracker = new LoadCheckpointTracker(checkpointStore, key, checkpoint, currTableMeta,
+                loadService, sync2any.getDumpLoad().getCheckpointIntervalMs());
+        tracker.save();
+        return tracker::loaded;
+    }
+
+    //启动监听，多个表载入完成时可能同时调用
+    private synchronized void startListening(TableMeta currTableMeta) {
         KafkaMessageListenerContainer container = KafkaConfig
                 .getKafkaListener(currTableMeta.getSourceDbId(), currTableMeta.getTopicGroup(), currTableMeta.getTopicName());
         if (KafkaConfig.canStartListener(container, currTableMeta.getTopicGroup(), currTableMeta.getTopicName())) {
             //开始同步增量数据
             log.info("kafka({}) start listening!", currTableMeta.getTopicGroup());
+            kafkaConfig.seekNewGroupToSnapshot(currTableMeta.getSyncConfig().getMq());
             container.start();
             List<TableMeta> tableMetaList = RuleConfigParser
                     .getTableMetaListByMq(currTableMeta.getTopicName(), currTableMeta.getTopicGroup());
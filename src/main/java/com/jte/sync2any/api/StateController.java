@@ -2,11 +2,17 @@ package com.jte.sync2any.api;
 
 import com.jte.sync2any.conf.KafkaConfig;
 import com.jte.sync2any.conf.RuleConfigParser;
+import com.jte.sync2any.core.ResultGenerator;
 import com.jte.sync2any.extract.KafkaMsgListener;
+import com.jte.sync2any.load.impl.CkLoadServiceImpl;
 import com.jte.sync2any.model.config.Mq;
 import com.jte.sync2any.model.config.Sync2any;
 import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.core.Result;
+import com.jte.sync2any.model.core.StatePage;
+import com.jte.sync2any.model.core.StateQuery;
 import com.jte.sync2any.model.core.SyncState;
+import com.jte.sync2any.model.core.TableState;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.util.DateUtils;
 import lombok.extern.slf4j.Slf4j;
@@ -31,42 +37,91 @@ public class StateController {
     KafkaConfig kafkaConfig;
     @Resource
     Sync2any sync2any;
+    @Resource
+    TableStateCache tableStateCache;
 
     /**
      * 获取所有任务的状态
      * 同步任务列表：
      * 每个同步任务包含：主题名称，主题组名称，数据库名，同步表名，同步字段名，状态【正在同步、异常停止同步】，同步延迟，最近同步时间，异常停止同步原因（如果发生的话）
+     * 数据来自定时生成的状态快照
      *
      * @return
      */
     @GetMapping("/")
     public String allState(ModelMap modelMap) {
-        List<Map<String, String>> mapList = new ArrayList<>();
-        Map<String, TableMeta> ruleMap = RuleConfigParser.RULES_MAP.asMap();
+        List<TableState> tables = tableStateCache.getSnapshot().getTables();
+        List<Map<String, String>> mapList = new ArrayList<>(tables.size());
         int i = 1;
-        for (String key : ruleMap.keySet()) {
-            TableMeta meta = ruleMap.get(key);
-            long delay = meta.getLastSyncTime() - meta.getLastDataManipulateTime();
-            Map<String, String> row = new HashMap<>(10);
+        for (TableState table : tables) {
+            Map<String, String> row = new HashMap<>(16);
             row.put("index", i + "");
-            row.put("dbName", meta.getDbName());
-            row.put("tableName", meta.getTableName());
-            row.put("esIndexName", meta.getTargetTableName());
-            row.put("topicName", meta.getTopicName());
-            row.put("topicGroup", meta.getTopicGroup());
-            row.put("delay", delay / 1000 + "");
-            row.put("state", meta.getState().desc());
-            row.put("lastSyncTime", DateUtils.formatDate(new Date(meta.getLastSyncTime()), DateUtils.SHORT));
-            row.put("tpq", meta.getTpq() + "");
-            row.put("lastOffset", meta.getLastOffset() + "");
-            row.put("errorReason", meta.getErrorReason() + "");
+            row.put("dbName", table.getDbName());
+            row.put("tableName", table.getTableName());
+            row.put("esIndexName", table.getTargetTableName());
+            row.put("topicName", table.getTopicName());
+            row.put("topicGroup", table.getTopicGroup());
+            row.put("delay", table.getDelay() / 1000 + "");
+            row.put("lag", table.getLagP50() + " / " + table.getLagP95() + " / " + table.getLagP99() + " / " + table.getLagMax());
+            row.put("state", table.getStateDesc());
+            row.put("lastSyncTime", DateUtils.formatDate(new Date(table.getLastSyncTime()), DateUtils.SHORT));
+            row.put("tpq", table.getTpq() + "");
+            row.put("lastOffset", table.getLastOffset() + "");
+            row.put("coalescedWrites", table.getCoalescedWrites() + "");
+            row.put("errorReason", table.getErrorReason() + "");
             i++;
             mapList.add(row);
         }
         modelMap.addAttribute("data", mapList);
+        //clickhouse缓冲区中待写入的数据
+        modelMap.addAttribute("ckBufferedRows", CkLoadServiceImpl.getBufferedRows() + "");
+        modelMap.addAttribute("ckBufferedMb", String.format("%.1f", CkLoadServiceImpl.getBufferedBytes() / 1024.0 / 1024.0));
+        modelMap.addAttribute("ckBufferFull", CkLoadServiceImpl.isBufferFull());
         return "index";
     }
 
+    /**
+     * 分页查询同步状态，支持按topic、消费组、表名、状态、延迟过滤及排序，数据来自定时生成的状态快照
+     *
+     * @param query
+     * @return
+     */
+    @ResponseBody
+    @GetMapping("/api/state")
+    public Result<StatePage> state(StateQuery query) {
+        try {
+            return ResultGenerator.genSuccessResult(TableStateCache.query(tableStateCache.getSnapshot(), query));
+        } catch (IllegalArgumentException e) {
+            return ResultGenerator.genFailResult(e.getMessage());
+        }
+    }
+
+    /**
+     * 每个表最近一个窗口（delay-window-seconds）内每行数据的同步延迟（毫秒）：从源库提交（binlog时间戳，精确到秒）到写入目标数据源
+     *
+     * @return
+     */
+    @ResponseBody
+    @GetMapping("lag")
+    public List<Map<String, Object>> lag() {
+        List<TableState> tables = tableStateCache.getSnapshot().getTables();
+        List<Map<String, Object>> mapList = new ArrayList<>(tables.size());
+        for (TableState table : tables) {
+            Map<String, Object> row = new LinkedHashMap<>(12);
+            row.put("dbName", table.getDbName());
+            row.put("tableName", table.getTableName());
+            row.put("targetTableName", table.getTargetTableName());
+            row.put("topicGroup", table.getTopicGroup());
+            row.put("count", table.getLagCount());
+            row.put("p50", table.getLagP50());
+            row.put("p95", table.getLagP95());
+            row.put("p99", table.getLagP99());
+            row.put("max", table.getLagMax());
+            mapList.add(row);
+        }
+        return mapList;
+    }
+
     /**
      * 重新设置kafka的fooset
      * @param topicName
@@ -0,0 +1,153 @@
+package com.jte.sync2any.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jte.sync2any.model.config.Sync2any;
+import com.jte.sync2any.model.core.StatePage;
+import com.jte.sync2any.model.core.StateQuery;
+import com.jte.sync2any.model.core.SyncState;
+import com.jte.sync2any.model.core.TableState;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.jte.sync2any.conf.RuleConfigParser.RULES_MAP;
+
+/**
+ * 所有表的同步状态快照，按固定的间隔（state-refresh-ms）重新生成。
+ * 状态页面和状态接口都读取同一个快照，请求的次数不影响遍历RULES_MAP的次数。
+ */
+@Slf4j
+@Component
+public class TableStateCache {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * 可排序的字段，相同时按ruleKey排序
+     */
+    static final Map<String, Comparator<TableState>> SORT_FIELDS = new HashMap<>();
+
+    static {
+        SORT_FIELDS.put("ruleKey", Comparator.comparing(TableState::getRuleKey));
+        SORT_FIELDS.put("dbName", Comparator.comparing(TableState::getDbName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        SORT_FIELDS.put("tableName", Comparator.comparing(TableState::getTableName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        SORT_FIELDS.put("topicName", Comparator.comparing(TableState::getTopicName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        SORT_FIELDS.put("topicGroup", Comparator.comparing(TableState::getTopicGroup, Comparator.nullsFirst(Comparator.naturalOrder())));
+        SORT_FIELDS.put("state", Comparator.comparing(TableState::getState));
+        SORT_FIELDS.put("lastSyncTime", Comparator.comparingLong(TableState::getLastSyncTime));
+        SORT_FIELDS.put("delay", Comparator.comparingLong(TableState::getDelay));
+        SORT_FIELDS.put("lagP50", Comparator.comparingLong(TableState::getLagP50));
+        SORT_FIELDS.put("lagP95", Comparator.comparingLong(TableState::getLagP95));
+        SORT_FIELDS.put("lagP99", Comparator.comparingLong(TableState::getLagP99));
+        SORT_FIELDS.put("lagMax", Comparator.comparingLong(TableState::getLagMax));
+        SORT_FIELDS.put("tpq", Comparator.comparingLong(TableState::getTpq));
+        SORT_FIELDS.put("lastOffset", Comparator.comparingLong(TableState::getLastOffset));
+    }
+
+    @Resource
+    Sync2any sync2any;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("table-state-refresh").setDaemon(true).build());
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), 0);
+
+    @PostConstruct
+    public void start() {
+        long interval = Math.max(sync2any.getStateRefreshMs(), 100);
+        executor.scheduleWithFixedDelay(this::refresh, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    void refresh() {
+        try {
+            List<TableState> tables = new ArrayList<>((int) RULES_MAP.size());
+            RULES_MAP.asMap().forEach((key, meta) -> tables.add(new TableState(key, meta)));
+            tables.sort(SORT_FIELDS.get("ruleKey"));
+            snapshot = new Snapshot(Collections.unmodifiableList(tables), System.currentTimeMillis());
+        } catch (Exception e) {
+            log.warn("refresh table state error", e);
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 在快照中过滤、排序、分页
+     *
+     * @param snapshot
+     * @param query
+     * @return
+     * @throws IllegalArgumentException 状态、排序字段、分页参数不正确
+     */
+    public static StatePage query(Snapshot snapshot, StateQuery query) {
+        Comparator<TableState> comparator = SORT_FIELDS.get(query.getSort());
+        if (Objects.isNull(comparator)) {
+            throw new IllegalArgumentException("unsupported sort field:" + query.getSort() + ", supported:" + SORT_FIELDS.keySet());
+        }
+        if ("desc".equalsIgnoreCase(query.getOrder())) {
+            comparator = comparator.reversed();
+        } else if (!"asc".equalsIgnoreCase(query.getOrder())) {
+            throw new IllegalArgumentException("order must be asc or desc");
+        }
+        if (query.getPage() < 1 || query.getSize() < 1 || query.getSize() > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("page must be greater than 0 and size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        SyncState state = StringUtils.isBlank(query.getState()) ? null : SyncState.valueOf(query.getState().trim().toUpperCase());
+
+        Stream<TableState> stream = snapshot.getTables().stream();
+        if (StringUtils.isNotBlank(query.getTopicName())) {
+            stream = stream.filter(t -> query.getTopicName().equals(t.getTopicName()));
+        }
+        if (StringUtils.isNotBlank(query.getTopicGroup())) {
+            stream = stream.filter(t -> query.getTopicGroup().equals(t.getTopicGroup()));
+        }
+        if (StringUtils.isNotBlank(query.getTableName())) {
+            stream = stream.filter(t -> StringUtils.containsIgnoreCase(t.getTableName(), query.getTableName()));
+        }
+        if (Objects.nonNull(state)) {
+            stream = stream.filter(t -> state == t.getState());
+        }
+        if (Objects.nonNull(query.getMinLag())) {
+            stream = stream.filter(t -> t.getLagP99() >= query.getMinLag());
+        }
+        List<TableState> matched = stream.collect(Collectors.toList());
+        //快照已按ruleKey排序，稳定排序保证相同值的顺序不变
+        matched.sort(comparator);
+        int from = (int) Math.min((long) (query.getPage() - 1) * query.getSize(), matched.size());
+        int to = Math.min(from + query.getSize(), matched.size());
+        return new StatePage(matched.size(), query.getPage(), query.getSize(), snapshot.getRefreshTime(),
+                new ArrayList<>(matched.subList(from, to)));
+    }
+
+    /**
+     * 某一时刻所有表的状态，按ruleKey排序
+     */
+    @Getter
+    public static class Snapshot {
+        private final List<TableState> tables;
+        private final long refreshTime;
+
+        Snapshot(List<TableState> tables, long refreshTime) {
+            this.tables = tables;
+            this.refreshTime = refreshTime;
+        }
+    }
+}
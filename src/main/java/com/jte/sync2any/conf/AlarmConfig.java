@@ -32,7 +32,7 @@ public class AlarmConfig {
         if (Objects.isNull(alertConf) || StringUtils.isBlank(alertConf.getTouid())) {
             log.warn("！！！！！！！！建议使用“SERVER酱”进行监控告警！！！！！！！！！");
         } else {
-            executor.scheduleWithFixedDelay(new MonitorTask(RULES_MAP.asMap(), sync2any), 5, LOOP_WAITING_TIME, TimeUnit.SECONDS);
+            executor.scheduleWithFixedDelay(new MonitorTask(RULES_MAP, sync2any), 5, LOOP_WAITING_TIME, TimeUnit.SECONDS);
         }
     }
 }
@@ -1,17 +1,25 @@
 package com.jte.sync2any.conf;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.core.SyncMetrics;
+import com.jte.sync2any.extract.KafkaBatchMsgListener;
 import com.jte.sync2any.extract.KafkaMsgListener;
-import com.jte.sync2any.model.config.KafkaMate;
-import com.jte.sync2any.model.config.Mq;
-import com.jte.sync2any.model.config.SourceMysqlDb;
-import com.jte.sync2any.model.config.Sync2any;
+import com.jte.sync2any.model.config.*;
 import com.jte.sync2any.model.core.SyncState;
+import com.jte.sync2any.model.mysql.BinlogPosition;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.transform.RecordsTransform;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.config.SaslConfigs;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -24,6 +32,11 @@ import org.springframework.kafka.support.TopicPartitionOffset;
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.jte.sync2any.conf.RuleConfigParser.RULES_MAP;
 
@@ -43,6 +56,19 @@ public class KafkaConfig {
 
     public static final Set<KafkaMessageListenerContainer> KAFKA_SET = new HashSet<>();
 
+    /**
+     * 刷新消费延迟指标的间隔（秒）
+     */
+    private static final int CONSUMER_LAG_REFRESH_SECONDS = 10;
+    /**
+     * kafka消费者的每个分区的延迟（条数）
+     * key: topicGroup$topicName$partition
+     */
+    private static final Map<String, Double> CONSUMER_LAG_MAP = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService lagExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("kafka-lag-metrics").setDaemon(true).build());
+
     @PostConstruct
     public void initKafka() {
         if (StringUtils.isBlank(kafkaMate.getAddress())) {
@@ -53,6 +79,7 @@ public class KafkaConfig {
             KafkaMessageListenerContainer<String, byte[]> container = createContainer(sdb.getMq(),sdb.getSourceDbId());
             KAFKA_SET.add(container);
         });
+        lagExecutor.scheduleWithFixedDelay(this::refreshConsumerLag, CONSUMER_LAG_REFRESH_SECONDS, CONSUMER_LAG_REFRESH_SECONDS, TimeUnit.SECONDS);
     }
 
 
@@ -75,7 +102,13 @@ public class KafkaConfig {
         containerProps.setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
         //异步提交
         containerProps.setSyncCommits(false);
-        containerProps.setMessageListener(new KafkaMsgListener(sourceMysqlDb,mq,transform, sync2any, ruleConfigParser));
+        KafkaMsgListener msgListener = new KafkaMsgListener(sourceMysqlDb,mq,transform, sync2any, ruleConfigParser);
+        if (Constants.YES.equals(mq.getBatchMode())) {
+            //按批消费，一次poll的消息按目标表分组批量写入
+            containerProps.setMessageListener(new KafkaBatchMsgListener(msgListener, mq, sync2any.findSyncConfigByTopicGroup(mq.getTopicGroup())));
+        } else {
+            containerProps.setMessageListener(msgListener);
+        }
 
         Map<String, Object> props = consumerProps(mq);
         DefaultKafkaConsumerFactory<String, byte[]> cf = new DefaultKafkaConsumerFactory<>(props);
@@ -121,6 +154,107 @@ public class KafkaConfig {
         return props;
     }
 
+    /**
+     * 新的消费组（没有已提交的offset）开始监听之前，如果topic的所有表都刚载入了原始数据，
+     * 把offset提交到dump之前的时间（减去余量）对应的位置，不需要从最早的消息开始重放已经包含在原始数据中的历史消息。
+     * 之后的消息仍然按binlog位置判断是否跳过。失败时不影响监听，从最早的消息开始消费。
+     *
+     * @param mq
+     */
+    public void seekNewGroupToSnapshot(Mq mq) {
+        SnapshotHandoff handoff = sync2any.getSnapshotHandoff();
+        if (!Constants.YES.equals(handoff.getEnabled()) || handoff.getSeekMarginSeconds() < 0) {
+            return;
+        }
+        Long seekTime = getSnapshotSeekTime(RuleConfigParser.getTableMetaListByMq(mq.getTopicName(), mq.getTopicGroup()),
+                handoff.getSeekMarginSeconds() * 1000);
+        if (Objects.isNull(seekTime)) {
+            return;
+        }
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(consumerProps(mq))) {
+            List<TopicPartition> partitions = consumer.partitionsFor(mq.getTopicName()).stream()
+                    .map(p -> new TopicPartition(p.topic(), p.partition()))
+                    .collect(Collectors.toList());
+            for (TopicPartition partition : partitions) {
+                if (Objects.nonNull(consumer.committed(partition))) {
+                    //已有消费进度，从已提交的offset开始
+                    return;
+                }
+            }
+            Map<TopicPartition, OffsetAndTimestamp> timeOffsets = consumer.offsetsForTimes(partitions.stream()
+                    .collect(Collectors.toMap(p -> p, p -> seekTime)));
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(partitions.size());
+            for (TopicPartition partition : partitions) {
+                OffsetAndTimestamp timeOffset = timeOffsets.get(partition);
+                //没有这个时间之后的消息时从最新的位置开始
+                long offset = Objects.isNull(timeOffset) ? endOffsets.get(partition) : timeOffset.offset();
+                offsets.put(partition, new OffsetAndMetadata(offset));
+            }
+            consumer.assign(partitions);
+            consumer.commitSync(offsets);
+            log.warn("new consumer group {} starts from the snapshot time {}, offsets:{}", mq.getTopicGroup(), new Date(seekTime), offsets);
+        } catch (Exception e) {
+            log.warn("failed to seek consumer group {} to the snapshot time, consume from the earliest offset", mq.getTopicGroup(), e);
+        }
+    }
+
+    /**
+     * @param tableMetaList 同一个topic的所有表
+     * @param marginMs
+     * @return 所有表都有dump之前的binlog位置时，返回最早获取位置的时间减去余量；否则返回null
+     */
+    static Long getSnapshotSeekTime(List<TableMeta> tableMetaList, long marginMs) {
+        if (tableMetaList.isEmpty()) {
+            return null;
+        }
+        long minTime = Long.MAX_VALUE;
+        for (TableMeta tableMeta : tableMetaList) {
+            BinlogPosition position = tableMeta.getSnapshotPosition();
+            if (Objects.isNull(position)) {
+                return null;
+            }
+            minTime = Math.min(minTime, position.getTimestamp());
+        }
+        return minTime - marginMs;
+    }
+
+    /**
+     * 从kafka消费者自身的指标（records-lag）中读取每个分区的消费延迟，第一次出现的分区注册为gauge；
+     * 不再分配给本消费者的分区的值为NaN
+     */
+    void refreshConsumerLag() {
+        try {
+            Set<String> seenKeys = new HashSet<>();
+            for (SyncConfig syncConfig : sync2any.getSyncConfigList()) {
+                Mq mq = syncConfig.getMq();
+                KafkaMessageListenerContainer<?, ?> container = getKafkaListener(syncConfig.getSourceDbId(), mq.getTopicGroup(), mq.getTopicName());
+                if (Objects.isNull(container) || !container.isRunning()) {
+                    continue;
+                }
+                for (Map<MetricName, ? extends Metric> metricMap : container.metrics().values()) {
+                    metricMap.forEach((metricName, metric) -> {
+                        String partition = metricName.tags().get("partition");
+                        if (!"records-lag".equals(metricName.name()) || Objects.isNull(partition)) {
+                            return;
+                        }
+                        String topic = metricName.tags().getOrDefault("topic", mq.getTopicName());
+                        String key = mq.getTopicGroup() + "$" + topic + "$" + partition;
+                        seenKeys.add(key);
+                        Object value = metric.metricValue();
+                        if (CONSUMER_LAG_MAP.put(key, value instanceof Number ? ((Number) value).doubleValue() : Double.NaN) == null) {
+                            SyncMetrics.gauge("kafka.consumer.lag", () -> CONSUMER_LAG_MAP.getOrDefault(key, Double.NaN),
+                                    SyncMetrics.TAG_TOPIC, topic, SyncMetrics.TAG_GROUP, mq.getTopicGroup(), "partition", partition);
+                        }
+                    });
+                }
+            }
+            CONSUMER_LAG_MAP.keySet().stream().filter(k -> !seenKeys.contains(k)).forEach(k -> CONSUMER_LAG_MAP.put(k, Double.NaN));
+        } catch (Exception e) {
+            log.warn("refresh kafka consumer lag error", e);
+        }
+    }
+
     public static KafkaMessageListenerContainer getKafkaListener(String dbId, String topicGroup, String topicName) {
         String beanName = dbId + "_" + topicGroup + "_" + topicName;
         return KAFKA_SET.stream().filter(k -> k.getBeanName().equals(beanName)).findFirst().orElse(null);
@@ -140,18 +274,8 @@ public class KafkaConfig {
             log.warn("Should never happen! Listener container SHOULD NOT BE start more than once. container name:" + container.getBeanName());
             return false;
         }
-        //找到所有同topicGroup、topicName的Rule
-        Map<String, TableMeta> tableRules = RULES_MAP.asMap();
-        //查找还未准备好的table的数量
-        long notReadyCont = tableRules.keySet().stream()
-                .filter(key -> {
-                    TableMeta meta = tableRules.get(key);
-                    return topicName.equals(meta.getTopicName()) && topicGroup.equals(meta.getTopicGroup());
-                })
-                .filter(key -> {
-                    TableMeta meta = tableRules.get(key);
-                    return SyncState.INACTIVE.equals(meta.getState()) || SyncState.LOADING_ORIGIN_DATA.equals(meta.getState());
-                }).count();
+        //查找同topicGroup、topicName下还未准备好的table的数量
+        int notReadyCont = RULES_MAP.countByMq(topicName, topicGroup, SyncState.INACTIVE, SyncState.LOADING_ORIGIN_DATA);
         //一旦还有未准备好的table，就不能去同步
         return notReadyCont == 0;
     }
@@ -6,11 +6,10 @@ import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlCreateTableStateme
 import com.alibaba.druid.util.JdbcConstants;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
 import com.jte.sync2any.extract.impl.MysqlMetaExtractImpl;
 import com.jte.sync2any.model.config.*;
+import com.jte.sync2any.model.core.LagHistogram;
 import com.jte.sync2any.model.es.EsDateType;
 import com.jte.sync2any.model.mysql.ColumnMeta;
 import com.jte.sync2any.model.mysql.TableMeta;
@@ -43,8 +42,9 @@ public class RuleConfigParser {
     /**
      * key: targetDbId$sourceDbId$sourceTableName
      * value: TableMeta
+     * 另外按队列、源数据库、状态建立了索引
      */
-    public static final Cache<String, TableMeta> RULES_MAP = CacheBuilder.newBuilder().build();
+    public static final RuleRegistry RULES_MAP = new RuleRegistry();
 
     @Resource
     private MysqlMetaExtractImpl metaExtract;
@@ -57,15 +57,7 @@ public class RuleConfigParser {
 
 
     public static List<TableMeta> getTableMetaListByMq(String topicName, String topicGroup) {
-        List<TableMeta> tableMetaList = new ArrayList<>();
-        Set<String> keySet = RULES_MAP.asMap().keySet();
-        for (String key : keySet) {
-            TableMeta tableMeta = RULES_MAP.getIfPresent(key);
-            if (tableMeta.getTopicName().equals(topicName) && tableMeta.getTopicGroup().equals(topicGroup)) {
-                tableMetaList.add(tableMeta);
-            }
-        }
-        return tableMetaList;
+        return RULES_MAP.getByMq(topicName, topicGroup);
     }
 
     /**
@@ -162,6 +154,7 @@ public class RuleConfigParser {
         tableMeta.setSourceDbId(config.getSourceDbId());
         tableMeta.setTargetDbId(config.getTargetDbId());
         tableMeta.setSyncConfig(config);
+        tableMeta.setLagHistogram(new LagHistogram(config.getDelayWindowSeconds() * 1000L));
 
         List<Rule> ruleList = Optional.ofNullable(config.getRules()).orElse(Collections.emptyList());
         Rule rule = ruleList.stream()
@@ -170,7 +163,12 @@ public class RuleConfigParser {
 
         //填充匹配规则
         parseColumnMeta(config.getTargetConn().getType(), tableMeta, rule, config);
-        RULES_MAP.put(key, tableMeta);
+        tableMeta.initMetaCache();
+        //多个消费者同时收到同一个表的DDL时，只有一个能添加成功
+        if (Objects.nonNull(RULES_MAP.putIfAbsent(key, tableMeta))) {
+            log.warn("During initRule RULES_MAP already contains table:{}", realTableName);
+            return null;
+        }
         return tableMeta;
     }
 
@@ -0,0 +1,199 @@
+package com.jte.sync2any.conf;
+
+import com.jte.sync2any.model.core.SyncState;
+import com.jte.sync2any.model.mysql.TableMeta;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 同步规则（TableMeta）的注册表，除了按ruleKey查找，还维护以下索引，查找时不再遍历所有规则：
+ * 1、按队列（topicName、topicGroup）
+ * 2、按源数据库（targetDbId、sourceDbId，即一个sync-config）
+ * 3、按同步状态，以及每个队列下各个状态的表的数量
+ * <p>
+ * 添加规则（启动时或者DDL发现新表）是串行的，每个索引的列表整体替换，读取时不加锁，不会读到一半的列表。
+ * 表的状态变化时（TableMeta.setState）由TableMeta回调更新状态索引。
+ */
+public class RuleRegistry {
+
+    /**
+     * key: targetDbId$sourceDbId$sourceTableName
+     */
+    private final Map<String, TableMeta> rules = new ConcurrentHashMap<>();
+    /**
+     * key: topicGroup$topicName
+     */
+    private final Map<String, List<TableMeta>> mqIndex = new ConcurrentHashMap<>();
+    /**
+     * key: targetDbId$sourceDbId
+     */
+    private final Map<String, List<TableMeta>> dbIndex = new ConcurrentHashMap<>();
+    /**
+     * key: topicGroup$topicName，value: 按SyncState.ordinal()计数
+     */
+    private final Map<String, AtomicIntegerArray> mqStateCount = new ConcurrentHashMap<>();
+    private final Map<SyncState, Set<TableMeta>> stateIndex = new EnumMap<>(SyncState.class);
+
+    public RuleRegistry() {
+        for (SyncState state : SyncState.values()) {
+            stateIndex.put(state, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public static String mqKey(String topicName, String topicGroup) {
+        return topicGroup + "$" + topicName;
+    }
+
+    public static String dbKey(String targetDbId, String sourceDbId) {
+        return targetDbId + "$" + sourceDbId;
+    }
+
+    public TableMeta getIfPresent(String ruleKey) {
+        return rules.get(ruleKey);
+    }
+
+    /**
+     * 添加规则，已存在时不做改变
+     *
+     * @param ruleKey
+     * @param tableMeta
+     * @return 已存在的规则，不存在时返回null
+     */
+    public synchronized TableMeta putIfAbsent(String ruleKey, TableMeta tableMeta) {
+        TableMeta exist = rules.get(ruleKey);
+        if (Objects.nonNull(exist)) {
+            return exist;
+        }
+        addToIndex(tableMeta);
+        rules.put(ruleKey, tableMeta);
+        return null;
+    }
+
+    /**
+     * 添加或替换规则
+     *
+     * @param ruleKey
+     * @param tableMeta
+     */
+    public synchronized void put(String ruleKey, TableMeta tableMeta) {
+        TableMeta exist = rules.get(ruleKey);
+        if (exist == tableMeta) {
+            return;
+        }
+        if (Objects.nonNull(exist)) {
+            removeFromIndex(exist);
+        }
+        addToIndex(tableMeta);
+        rules.put(ruleKey, tableMeta);
+    }
+
+    public synchronized void invalidateAll() {
+        rules.values().forEach(this::removeFromIndex);
+        rules.clear();
+    }
+
+    public long size() {
+        return rules.size();
+    }
+
+    /**
+     * 所有规则的只读视图
+     */
+    public Map<String, TableMeta> asMap() {
+        return Collections.unmodifiableMap(rules);
+    }
+
+    /**
+     * 同一个队列（topicName、topicGroup）下的所有表
+     */
+    public List<TableMeta> getByMq(String topicName, String topicGroup) {
+        return mqIndex.getOrDefault(mqKey(topicName, topicGroup), Collections.emptyList());
+    }
+
+    /**
+     * 同一个源数据库同步到同一个目标数据源的所有表
+     */
+    public List<TableMeta> getByDb(String targetDbId, String sourceDbId) {
+        return dbIndex.getOrDefault(dbKey(targetDbId, sourceDbId), Collections.emptyList());
+    }
+
+    /**
+     * 处于某个状态的所有表（只读视图，会随状态变化）
+     */
+    public Set<TableMeta> getByState(SyncState state) {
+        return Collections.unmodifiableSet(stateIndex.get(state));
+    }
+
+    /**
+     * 队列下处于这些状态的表的数量
+     */
+    public int countByMq(String topicName, String topicGroup, SyncState... states) {
+        AtomicIntegerArray count = mqStateCount.get(mqKey(topicName, topicGroup));
+        if (Objects.isNull(count)) {
+            return 0;
+        }
+        int total = 0;
+        for (SyncState state : states) {
+            total += count.get(state.ordinal());
+        }
+        return total;
+    }
+
+    private void addToIndex(TableMeta tableMeta) {
+        String mqKey = mqKey(tableMeta.getTopicName(), tableMeta.getTopicGroup());
+        mqIndex.put(mqKey, appendTo(mqIndex.get(mqKey), tableMeta));
+        String dbKey = dbKey(tableMeta.getTargetDbId(), tableMeta.getSourceDbId());
+        dbIndex.put(dbKey, appendTo(dbIndex.get(dbKey), tableMeta));
+        AtomicIntegerArray count = mqStateCount.computeIfAbsent(mqKey, k -> new AtomicIntegerArray(SyncState.values().length));
+        //与setState互斥，保证注册时的状态和之后的每一次变化都只计入一次
+        synchronized (tableMeta) {
+            stateIndex.get(tableMeta.getState()).add(tableMeta);
+            count.incrementAndGet(tableMeta.getState().ordinal());
+            tableMeta.setStateListener(this::onStateChange);
+        }
+    }
+
+    private void removeFromIndex(TableMeta tableMeta) {
+        String mqKey = mqKey(tableMeta.getTopicName(), tableMeta.getTopicGroup());
+        mqIndex.computeIfPresent(mqKey, (k, list) -> removeFrom(list, tableMeta));
+        dbIndex.computeIfPresent(dbKey(tableMeta.getTargetDbId(), tableMeta.getSourceDbId()), (k, list) -> removeFrom(list, tableMeta));
+        synchronized (tableMeta) {
+            tableMeta.setStateListener(null);
+            stateIndex.get(tableMeta.getState()).remove(tableMeta);
+            AtomicIntegerArray count = mqStateCount.get(mqKey);
+            if (Objects.nonNull(count)) {
+                count.decrementAndGet(tableMeta.getState().ordinal());
+            }
+        }
+    }
+
+    /**
+     * 在TableMeta的锁内回调
+     */
+    private void onStateChange(TableMeta tableMeta, SyncState oldState) {
+        stateIndex.get(oldState).remove(tableMeta);
+        stateIndex.get(tableMeta.getState()).add(tableMeta);
+        AtomicIntegerArray count = mqStateCount.get(mqKey(tableMeta.getTopicName(), tableMeta.getTopicGroup()));
+        if (Objects.nonNull(count)) {
+            count.decrementAndGet(oldState.ordinal());
+            count.incrementAndGet(tableMeta.getState().ordinal());
+        }
+    }
+
+    private static List<TableMeta> appendTo(List<TableMeta> list, TableMeta tableMeta) {
+        List<TableMeta> newList = new ArrayList<>(Objects.isNull(list) ? 1 : list.size() + 1);
+        if (Objects.nonNull(list)) {
+            newList.addAll(list);
+        }
+        newList.add(tableMeta);
+        return Collections.unmodifiableList(newList);
+    }
+
+    private static List<TableMeta> removeFrom(List<TableMeta> list, TableMeta tableMeta) {
+        List<TableMeta> newList = new ArrayList<>(list);
+        newList.remove(tableMeta);
+        return newList.isEmpty() ? null : Collections.unmodifiableList(newList);
+    }
+}
@@ -0,0 +1,69 @@
+package com.jte.sync2any.core;
+
+import io.micrometer.core.instrument.*;
+
+import java.util.function.Supplier;
+
+/**
+ * 各个环节的运行指标，注册在micrometer的全局registry中（spring boot会把prometheus等registry加入全局registry），
+ * 通过/actuator/prometheus抓取。
+ * 指标名统一以sync2any.开头；在热点路径上使用时，应在构造时创建好指标对象，而不是每次按名字查找。
+ */
+public final class SyncMetrics {
+
+    public static final String PREFIX = "sync2any.";
+
+    public static final String TAG_TOPIC = "topic";
+    public static final String TAG_GROUP = "group";
+    public static final String TAG_TARGET = "target";
+
+    private SyncMetrics() {
+    }
+
+    /**
+     * 带百分位直方图的耗时
+     *
+     * @param name
+     * @param tags 成对的tag名和值
+     * @return
+     */
+    public static Timer timer(String name, String... tags) {
+        return Timer.builder(PREFIX + name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    public static Counter counter(String name, String... tags) {
+        return Counter.builder(PREFIX + name)
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 带百分位直方图的数量分布（如每批的行数）
+     *
+     * @param name
+     * @param tags
+     * @return
+     */
+    public static DistributionSummary summary(String name, String... tags) {
+        return DistributionSummary.builder(PREFIX + name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * 读取时才计算的值（如队列长度）。同名同tag的gauge只会注册一次，所以value不应引用会被替换的对象
+     *
+     * @param name
+     * @param value
+     * @param tags
+     */
+    public static void gauge(String name, Supplier<Number> value, String... tags) {
+        Gauge.builder(PREFIX + name, value)
+                .tags(tags)
+                .register(Metrics.globalRegistry);
+    }
+}
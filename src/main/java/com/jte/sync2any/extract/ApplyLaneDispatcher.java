@@ -0,0 +1,163 @@
+package com.jte.sync2any.extract;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jte.sync2any.core.SyncMetrics;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.UPDATE;
+
+/**
+ * 增量数据的并行写入通道
+ * 按“目标表+主键”计算hash，将写入任务分配到固定的通道中：
+ * 同一主键的变更永远落在同一个通道内，按接收顺序依次执行；不同主键的变更在多个通道之间并行执行。
+ * 每个通道只有一个线程，且队列有上限，队列满了之后kafka消费线程会阻塞等待（背压）。
+ * 修改了主键的UPDATE前后分别属于新旧两个主键，不能放入某一个通道：等之前的任务全部执行完后，在调用方线程中单独执行。
+ */
+@Slf4j
+public class ApplyLaneDispatcher {
+
+    /**
+     * 每个名字（topicGroup）最新创建的通道，用于队列长度的指标（重新创建监听器后指向新的通道）
+     */
+    private static final Map<String, ApplyLaneDispatcher> DISPATCHER_MAP = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ThreadPoolExecutor[] lanes;
+
+    public ApplyLaneDispatcher(String name, int laneNum, int laneCapacity) {
+        if (laneNum < 1) {
+            throw new IllegalArgumentException("apply lane number must be greater than 0, but was " + laneNum);
+        }
+        this.name = name;
+        this.lanes = new ThreadPoolExecutor[laneNum];
+        for (int i = 0; i < laneNum; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(Math.max(laneCapacity, 1)),
+                    new ThreadFactoryBuilder().setNameFormat(name + "-apply-lane-" + i).setDaemon(true).build(),
+                    new BlockingPutPolicy());
+        }
+        if (Objects.isNull(DISPATCHER_MAP.put(name, this))) {
+            SyncMetrics.gauge("apply.lane.pending", () -> DISPATCHER_MAP.get(name).pendingSize(), SyncMetrics.TAG_GROUP, name);
+        }
+        log.warn("new ApplyLaneDispatcher name:{}, laneNum:{}, laneCapacity:{}", name, laneNum, laneCapacity);
+    }
+
+    /**
+     * 将写入任务放入请求对应的通道中
+     *
+     * @param request
+     * @param task
+     */
+    public void dispatch(CudRequest request, Runnable task) {
+        if (isPrimaryKeyChanged(request)) {
+            //之后对新主键的变更可能落在别的通道，必须等它执行完才能继续分配
+            try {
+                awaitDrained();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for apply lanes to drain", e);
+            }
+            task.run();
+            return;
+        }
+        lanes[laneOf(request)].execute(task);
+    }
+
+    /**
+     * 计算请求所在的通道：目标表（或index）+主键
+     *
+     * @param request
+     * @return
+     */
+    public int laneOf(CudRequest request) {
+        int hash = 31 * Objects.hashCode(request.getTable()) + Objects.hashCode(request.getPkValueStr());
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    /**
+     * 是否为修改了主键的UPDATE（pkValueStr为修改前的主键）
+     */
+    public static boolean isPrimaryKeyChanged(CudRequest request) {
+        if (UPDATE != request.getDmlType()) {
+            return false;
+        }
+        String newKey = newPkValueStr(request);
+        return Objects.nonNull(newKey) && !newKey.equals(request.getPkValueStr());
+    }
+
+    /**
+     * UPDATE修改后的主键，拼接规则与pkValueStr一致（按列名排序，以“_”拼接）
+     */
+    public static String newPkValueStr(CudRequest request) {
+        DecodedRow newRow = request.getNewRow();
+        if (Objects.isNull(newRow)) {
+            return null;
+        }
+        return newRow.pkValueStr(request.getTableMeta().getSortedPrimaryKeyPositions());
+    }
+
+    public int getLaneNum() {
+        return lanes.length;
+    }
+
+    /**
+     * 等待所有通道中，在此之前放入的任务都执行完毕
+     * 用于在checkpoint处提交offset前，确认之前的数据都已经写入目标数据源
+     *
+     * @throws InterruptedException
+     */
+    public void awaitDrained() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(lanes.length);
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.execute(latch::countDown);
+        }
+        latch.await();
+    }
+
+    /**
+     * 所有通道中还未执行的任务数
+     *
+     * @return
+     */
+    public int pendingSize() {
+        int size = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            size += lane.getQueue().size() + lane.getActiveCount();
+        }
+        return size;
+    }
+
+    /**
+     * 不再接收新任务，已经放入通道的任务会继续执行完
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        log.warn("ApplyLaneDispatcher '{}' is shutdown, pending size:{}", name, pendingSize());
+    }
+
+    /**
+     * 通道队列满了之后阻塞调用方，而不是丢弃或在调用方线程中执行（会打乱同一主键的执行顺序）
+     */
+    static class BlockingPutPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("apply lane is shutdown");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for apply lane", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.jte.sync2any.extract;
+
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.DecodedRow;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
+
+/**
+ * 增量数据的合并缓冲区（按目标表分开缓存）
+ * 在一个刷新窗口内（到checkpoint或缓存满为止），同一主键（pkValueStr）的多次变更合并为一次写入：
+ * INSERT→UPDATE 合并为 INSERT（修改后的值）；
+ * UPDATE→UPDATE 合并为 UPDATE（最早的修改前的值，最后的修改后的值）；
+ * UPDATE→DELETE 合并为 DELETE（最早的修改前的值）；
+ * INSERT→DELETE 合并为 DELETE（删除前的值）；
+ * 其他情况（如DELETE→INSERT）不合并，按顺序保留。
+ * 重启后kafka会重新投递上次checkpoint之后的变更，其中一部分可能已经写入过，所以合并时不丢弃变更：
+ * INSERT→DELETE仍然删除可能已经写入的行，合并后的INSERT标记为coalesced，写入时按upsert处理。
+ * 修改了主键的UPDATE不参与合并，并且它前后的变更也不会跨过它合并。
+ * 非线程安全，只在kafka消费线程中使用。
+ */
+public class CoalescingBuffer {
+
+    /**
+     * 启动以来，合并节省的写入次数
+     */
+    public static final AtomicLong COALESCED_WRITES = new AtomicLong();
+
+    private final int maxSize;
+
+    /**
+     * key: 目标表名
+     */
+    private final Map<String, TableBuffer> tableBufferMap = new LinkedHashMap<>();
+
+    /**
+     * 缓存中的请求数（合并后）
+     */
+    private int size;
+
+    public CoalescingBuffer(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public void add(CudRequest request) {
+        TableBuffer tableBuffer = tableBufferMap.computeIfAbsent(request.getTable(), k -> new TableBuffer());
+        String key = request.getPkValueStr();
+        if (ApplyLaneDispatcher.isPrimaryKeyChanged(request)) {
+            //主键被修改，前后的变更都不能跨过它合并
+            tableBuffer.lastSlot.remove(key);
+            tableBuffer.lastSlot.remove(ApplyLaneDispatcher.newPkValueStr(request));
+            tableBuffer.slots.add(request);
+            size++;
+            return;
+        }
+        Integer index = tableBuffer.lastSlot.get(key);
+        CudRequest merged = Objects.isNull(index) ? null : merge(tableBuffer.slots.get(index), request);
+        if (Objects.isNull(merged)) {
+            tableBuffer.lastSlot.put(key, tableBuffer.slots.size());
+            tableBuffer.slots.add(request);
+            size++;
+        } else {
+            tableBuffer.slots.set(index, merged);
+            countSaved(request, 1);
+        }
+    }
+
+    public boolean isFull() {
+        return size >= maxSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 取出缓存中合并后的请求，并清空缓存
+     *
+     * @return key: 目标表名，value: 按接收顺序排列的请求
+     */
+    public Map<String, List<CudRequest>> drain() {
+        Map<String, List<CudRequest>> result = new LinkedHashMap<>();
+        tableBufferMap.forEach((table, tableBuffer) -> {
+            if (!tableBuffer.slots.isEmpty()) {
+                result.put(table, tableBuffer.slots);
+            }
+        });
+        tableBufferMap.clear();
+        size = 0;
+        return result;
+    }
+
+    /**
+     * 合并同一主键的两次变更
+     *
+     * @param prev 之前的变更
+     * @param next 之后的变更
+     * @return 合并后的变更；null表示不能合并
+     */
+    private static CudRequest merge(CudRequest prev, CudRequest next) {
+        if (Objects.isNull(prev)) {
+            return null;
+        }
+        if (INSERT == prev.getDmlType() && UPDATE == next.getDmlType()) {
+            return copyOf(prev, next, INSERT, null, next.getNewRow());
+        } else if (UPDATE == prev.getDmlType() && UPDATE == next.getDmlType()) {
+            return copyOf(prev, next, UPDATE, prev.getOldRow(), next.getNewRow());
+        } else if (UPDATE == prev.getDmlType() && DELETE == next.getDmlType()) {
+            return copyOf(prev, next, DELETE, prev.getOldRow(), null);
+        } else if (INSERT == prev.getDmlType() && DELETE == next.getDmlType()) {
+            return copyOf(prev, next, DELETE, next.getOldRow(), null);
+        }
+        return null;
+    }
+
+    /**
+     * 主键取之前的变更，行数据（parameters）和offset取之后的变更
+     */
+    private static CudRequest copyOf(CudRequest prev, CudRequest next, SubscribeDataProto.DMLType dmlType,
+                                     DecodedRow oldRow, DecodedRow newRow) {
+        CudRequest merged = new CudRequest();
+        merged.setDmlType(dmlType);
+        merged.setTable(prev.getTable());
+        merged.setPkValueStr(prev.getPkValueStr());
+        merged.setPkValueMap(prev.getPkValueMap());
+        merged.setParameters(next.getParameters());
+        merged.setTableMeta(next.getTableMeta());
+        merged.setOldRow(oldRow);
+        merged.setNewRow(newRow);
+        merged.setKafkaOffset(next.getKafkaOffset());
+        merged.setBinlogTimestamp(next.getBinlogTimestamp());
+        merged.setCoalesced(true);
+        return merged;
+    }
+
+    private static void countSaved(CudRequest request, int saved) {
+        COALESCED_WRITES.addAndGet(saved);
+        request.getTableMeta().addCoalescedWrites(saved);
+    }
+
+    static class TableBuffer {
+        /**
+         * 按接收顺序排列的请求
+         */
+        final List<CudRequest> slots = new ArrayList<>();
+        /**
+         * key: pkValueStr，value: 该主键最近一次可合并的请求在slots中的位置
+         */
+        final Map<String, Integer> lastSlot = new HashMap<>();
+    }
+}
@@ -0,0 +1,133 @@
+package com.jte.sync2any.extract;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * 边dump边载入：由生产线程（执行mysqldump并按行读取输出，或者按主键范围查询）放入有界队列，载入线程按顺序迭代。
+ * 队列满时生产线程阻塞，mysqldump的输出管道随之阻塞，所以dump的速度不会超过载入的速度，也不需要临时文件。
+ * 生产线程出错（如mysqldump的退出码不为0）时，迭代到结尾时抛出异常。
+ */
+@Slf4j
+public class DumpStream<T> implements Iterator<T>, Closeable {
+
+    /**
+     * 结束标记，按引用比较
+     */
+    private static final Object END = new Object();
+
+    private final String name;
+    private final BlockingQueue<Object> queue;
+    private volatile Exception error;
+    private volatile boolean closed = false;
+    private Thread producer;
+
+    private T nextItem;
+    private boolean ended = false;
+
+    /**
+     * @param name     表名，用于线程名和日志
+     * @param capacity 队列最多缓存的元素数
+     */
+    public DumpStream(String name, int capacity) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+    }
+
+    /**
+     * 启动生产线程，task中调用{@link #put(Object)}放入数据
+     */
+    public DumpStream<T> start(Callable<?> task) {
+        producer = new Thread(() -> {
+            try {
+                task.call();
+            } catch (Exception e) {
+                if (!closed) {
+                    log.error("dump stream error, table:{}", name, e);
+                }
+                error = e;
+            } finally {
+                if (!closed) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "dump-stream-" + name);
+        producer.setDaemon(true);
+        producer.start();
+        return this;
+    }
+
+    /**
+     * 由生产线程调用，队列满时阻塞
+     */
+    public void put(T item) throws InterruptedException {
+        if (closed) {
+            throw new InterruptedException("dump stream is closed, table:" + name);
+        }
+        queue.put(item);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        if (Objects.nonNull(nextItem)) {
+            return true;
+        }
+        if (ended) {
+            return false;
+        }
+        Object item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for dump data, table:" + name, e);
+        }
+        if (item == END) {
+            ended = true;
+            if (Objects.nonNull(error)) {
+                throw new IllegalStateException("dump data fail, table:" + name, error);
+            }
+            return false;
+        }
+        nextItem = (T) item;
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("dump stream is ended");
+        }
+        T item = nextItem;
+        nextItem = null;
+        return item;
+    }
+
+    /**
+     * 载入失败时调用：停止生产线程，丢弃队列中的数据
+     */
+    @Override
+    public void close() {
+        if (ended) {
+            return;
+        }
+        closed = true;
+        ended = true;
+        if (Objects.nonNull(producer)) {
+            producer.interrupt();
+        }
+        queue.clear();
+    }
+}
@@ -0,0 +1,166 @@
+package com.jte.sync2any.extract;
+
+import com.jte.sync2any.MonitorTask;
+import com.jte.sync2any.load.AbstractLoadService;
+import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.core.SyncMetrics;
+import com.jte.sync2any.model.config.Mq;
+import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.TableMeta;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.BatchAcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * kafka消息接收器（按批消费）
+ * 一次poll到的所有消息先全部解析为增删改请求，再按目标表分组，每组调用一次批量写入。
+ * 消息的解析（分片序号、分包拼装、规则匹配）复用{@link KafkaMsgListener}。
+ * 写入完成后offset提交到本批中每个分区最后一个checkpoint：本批以checkpoint结尾时确认整批，
+ * 否则直接通过consumer提交到各分区最后一个checkpoint，之后的消息重启后重新消费。
+ */
+@Slf4j
+public class KafkaBatchMsgListener implements BatchAcknowledgingConsumerAwareMessageListener<String, byte[]> {
+
+    private final KafkaMsgListener decoder;
+    private final Mq mq;
+
+    /**
+     * 运行指标：每组的写入耗时和行数，写入的重试和失败次数
+     */
+    private final Timer applyTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter retryCounter;
+    private final Counter errorCounter;
+
+    public KafkaBatchMsgListener(KafkaMsgListener decoder, Mq mq, SyncConfig syncConfig) {
+        log.warn("new KafkaBatchMsgListener topicGroup:{}", mq.getTopicGroup());
+        this.decoder = decoder;
+        this.mq = mq;
+        String[] tags = KafkaMsgListener.metricTags(mq, syncConfig);
+        this.applyTimer = SyncMetrics.timer("apply", KafkaMsgListener.append(tags, "mode", "batch"));
+        this.batchSizeSummary = SyncMetrics.summary("apply.batch.size", tags);
+        this.retryCounter = SyncMetrics.counter("apply.retries", tags);
+        this.errorCounter = SyncMetrics.counter("apply.errors", tags);
+    }
+
+    public void shutdown() {
+        decoder.shutdown();
+    }
+
+    @Override
+    public void onMessage(List<ConsumerRecord<String, byte[]>> dataList, Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+        if (dataList.isEmpty()) {
+            return;
+        }
+        //本批最后一条消息是否为checkpoint，是的话写完之后确认整批
+        boolean endWithCheckpoint = false;
+        //每个分区最后一个checkpoint之后的offset，写完之后提交
+        Map<TopicPartition, OffsetAndMetadata> checkpointOffsets = new HashMap<>();
+        List<CudRequest> requestList = new ArrayList<>(dataList.size());
+        for (ConsumerRecord<String, byte[]> data : dataList) {
+            endWithCheckpoint = false;
+            try {
+                SubscribeDataProto.Entries entries = decoder.parseFromMq(data);
+                if (Objects.isNull(entries)) {
+                    continue;
+                }
+                for (SubscribeDataProto.Entry entry : entries.getItemsList()) {
+                    requestList.addAll(decoder.decodeEntry(data, entry));
+                }
+                endWithCheckpoint = KafkaMsgListener.isCheckpoint(entries);
+                if (endWithCheckpoint) {
+                    checkpointOffsets.put(new TopicPartition(data.topic(), data.partition()), new OffsetAndMetadata(data.offset() + 1));
+                }
+            } catch (Exception e) {
+                MonitorTask.ERROR_TOPIC_LIST.add(data.topic());
+                log.error("处理消息失败，topic:{},offset:{},partition:{}", data.topic(), data.offset(), data.partition(), e);
+            }
+        }
+
+        if (!requestList.isEmpty()) {
+            AbstractLoadService loadService = AbstractLoadService.getLoadService(requestList.get(0).getTableMeta().getSyncConfig().getTargetConn().getType());
+            //按目标表分组，组内保持接收顺序
+            Map<String, List<CudRequest>> tableRequestMap;
+            SyncConfig syncConfig = requestList.get(0).getTableMeta().getSyncConfig();
+            if (Constants.YES.equals(syncConfig.getCoalesce())) {
+                //本批内同一主键的多次变更先合并
+                CoalescingBuffer coalescingBuffer = new CoalescingBuffer(Integer.MAX_VALUE);
+                requestList.forEach(coalescingBuffer::add);
+                tableRequestMap = coalescingBuffer.drain();
+            } else {
+                tableRequestMap = new LinkedHashMap<>();
+                for (CudRequest request : requestList) {
+                    tableRequestMap.computeIfAbsent(request.getTable(), k -> new ArrayList<>()).add(request);
+                }
+            }
+            tableRequestMap.forEach((table, groupList) -> applyGroup(table, groupList, loadService));
+        }
+
+        if (!checkpointOffsets.isEmpty()) {
+            try {
+                decoder.getTargetLoadService().flushPending(mq.getTopicGroup());
+                if (endWithCheckpoint) {
+                    acknowledgment.acknowledge();
+                } else {
+                    //本批在事务中间结束，只提交到最后一个checkpoint
+                    consumer.commitSync(checkpointOffsets);
+                }
+            } catch (Exception e) {
+                MonitorTask.ERROR_TOPIC_LIST.add(mq.getTopicName());
+                log.error("确认写入结果失败，不提交offset，topic:{}", mq.getTopicName(), e);
+            }
+        }
+        log.debug("batch consumed, topicGroup:{}, records:{}, rows:{}, checkpoints:{}", mq.getTopicGroup(), dataList.size(), requestList.size(), checkpointOffsets);
+    }
+
+    /**
+     * 将同一个目标表的请求一次性写入，如果失败，则整组重试3次
+     *
+     * @param table
+     * @param groupList
+     * @param loadService
+     */
+    private void applyGroup(String table, List<CudRequest> groupList, AbstractLoadService loadService) {
+        long startTime = System.currentTimeMillis();
+        try {
+            for (int i = 1; i <= KafkaMsgListener.MAX_RETRY_TIMES; i++) {
+                try {
+                    int effectNum = loadService.batchOperateData(groupList);
+                    log.debug("tableName:{},batch size:{},effect number:{}", table, groupList.size(), effectNum);
+                    break;
+                } catch (Exception ex) {
+                    log.error("batch load data error,retry times count:" + i, ex);
+                    if (i == KafkaMsgListener.MAX_RETRY_TIMES) {
+                        throw ex;
+                    }
+                    retryCounter.increment();
+                }
+            }
+            applyTimer.record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+            batchSizeSummary.record(groupList.size());
+            //同一目标表可能来自多个源表（分表），每个源表取最后一条更新统计信息
+            Map<TableMeta, CudRequest> lastRequestMap = new IdentityHashMap<>();
+            groupList.forEach(r -> lastRequestMap.put(r.getTableMeta(), r));
+            lastRequestMap.forEach((tableMeta, last) ->
+                    decoder.updateStatics(tableMeta, last.getBinlogTimestamp(), startTime, last.getKafkaOffset()));
+        } catch (Exception e) {
+            errorCounter.increment();
+            //触发告警
+            MonitorTask.ERROR_TOPIC_LIST.add(mq.getTopicName());
+            log.error("批量处理消息失败，topic:{},table:{},offset:{}~{}", mq.getTopicName(), table,
+                    groupList.get(0).getKafkaOffset(), groupList.get(groupList.size() - 1).getKafkaOffset(), e);
+        }
+    }
+}
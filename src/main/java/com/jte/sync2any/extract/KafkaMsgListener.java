@@ -4,15 +4,21 @@ import com.google.common.base.Throwables;
 import com.jte.sync2any.MonitorTask;
 import com.jte.sync2any.conf.KafkaConfig;
 import com.jte.sync2any.conf.RuleConfigParser;
+import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.core.SyncMetrics;
 import com.jte.sync2any.load.AbstractLoadService;
 import com.jte.sync2any.model.config.*;
 import com.jte.sync2any.model.core.SyncState;
 import com.jte.sync2any.model.es.CudRequest;
 import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.BinlogPosition;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import com.jte.sync2any.model.mysql.RowDecoder;
 import com.jte.sync2any.model.mysql.TableMeta;
-import com.jte.sync2any.model.mysql.TableRecords;
 import com.jte.sync2any.transform.RecordsTransform;
 import com.jte.sync2any.util.DbUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.header.Header;
@@ -26,6 +32,7 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
 
@@ -52,6 +59,26 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
 
     private HashMap<String, ByteArrayOutputStream> shardMsgMap = new HashMap<>();
 
+    /**
+     * 按主键并行写入的通道
+     */
+    private ApplyLaneDispatcher dispatcher;
+
+    /**
+     * 合并同一主键多次变更的缓冲区，未开启时为null
+     */
+    private CoalescingBuffer coalescingBuffer;
+
+    /**
+     * 运行指标：消息解析、行解析和转换、写入的耗时，解析的行数，写入的重试和失败次数
+     */
+    private final Timer parseTimer;
+    private final Timer transformTimer;
+    private final Map<SubscribeDataProto.DMLType, Counter> decodedCounterMap = new EnumMap<>(SubscribeDataProto.DMLType.class);
+    private final Timer applyTimer;
+    private final Counter retryCounter;
+    private final Counter errorCounter;
+
     public KafkaMsgListener(SourceMysqlDb sourceMysqlDb,Mq mq, RecordsTransform transform, Sync2any sync2any, RuleConfigParser ruleConfigParser) {
         log.warn("new KafkaMsgListener topicGroup:{}", mq.getTopicGroup());
         this.sourceMysqlDb = sourceMysqlDb;
@@ -59,6 +86,70 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
         this.transform = transform;
         this.sync2any = sync2any;
         this.ruleConfigParser = ruleConfigParser;
+        SyncConfig syncConfig = sync2any.findSyncConfigByTopicGroup(mq.getTopicGroup());
+        if (Objects.nonNull(syncConfig) && Constants.YES.equals(syncConfig.getCoalesce())) {
+            this.coalescingBuffer = new CoalescingBuffer(syncConfig.getCoalesceMaxSize());
+        }
+        String[] tags = metricTags(mq, syncConfig);
+        this.parseTimer = SyncMetrics.timer("mq.parse", SyncMetrics.TAG_TOPIC, mq.getTopicName(), SyncMetrics.TAG_GROUP, mq.getTopicGroup());
+        this.transformTimer = SyncMetrics.timer("rows.transform", SyncMetrics.TAG_TOPIC, mq.getTopicName(), SyncMetrics.TAG_GROUP, mq.getTopicGroup());
+        for (SubscribeDataProto.DMLType dmlType : Arrays.asList(INSERT, UPDATE, DELETE)) {
+            decodedCounterMap.put(dmlType, SyncMetrics.counter("rows.decoded", SyncMetrics.TAG_TOPIC, mq.getTopicName(),
+                    SyncMetrics.TAG_GROUP, mq.getTopicGroup(), "type", dmlType.name().toLowerCase()));
+        }
+        this.applyTimer = SyncMetrics.timer("apply", append(tags, "mode", "single"));
+        this.retryCounter = SyncMetrics.counter("apply.retries", tags);
+        this.errorCounter = SyncMetrics.counter("apply.errors", tags);
+    }
+
+    /**
+     * 写入相关的指标的tag：topic、消费组、目标数据源类型
+     *
+     * @param mq
+     * @param syncConfig
+     * @return
+     */
+    static String[] metricTags(Mq mq, SyncConfig syncConfig) {
+        String target = Objects.isNull(syncConfig) || Objects.isNull(syncConfig.getTargetConn()) ? "unknown" : syncConfig.getTargetConn().getType();
+        return new String[]{SyncMetrics.TAG_TOPIC, mq.getTopicName(), SyncMetrics.TAG_GROUP, mq.getTopicGroup(), SyncMetrics.TAG_TARGET, target};
+    }
+
+    static String[] append(String[] tags, String... more) {
+        String[] result = Arrays.copyOf(tags, tags.length + more.length);
+        System.arraycopy(more, 0, result, tags.length, more.length);
+        return result;
+    }
+
+    /**
+     * 写入通道在第一次使用时才创建（按批消费时只用到本类的解析功能，不需要通道）
+     *
+     * @return
+     */
+    private ApplyLaneDispatcher getDispatcher() {
+        if (Objects.isNull(dispatcher)) {
+            SyncConfig syncConfig = sync2any.findSyncConfigByTopicGroup(mq.getTopicGroup());
+            dispatcher = new ApplyLaneDispatcher(mq.getTopicGroup(), syncConfig.getApplyLanes(), syncConfig.getApplyLaneCapacity());
+        }
+        return dispatcher;
+    }
+
+    /**
+     * 当前topicGroup对应的目标数据源的写入服务
+     *
+     * @return
+     */
+    AbstractLoadService getTargetLoadService() {
+        SyncConfig syncConfig = sync2any.findSyncConfigByTopicGroup(mq.getTopicGroup());
+        return AbstractLoadService.getLoadService(syncConfig.getTargetConn().getType());
+    }
+
+    /**
+     * 停止监听后调用，等待通道中已有的数据写完后释放线程
+     */
+    public void shutdown() {
+        if (Objects.nonNull(dispatcher)) {
+            dispatcher.shutdown();
+        }
     }
 
     @Override
@@ -73,10 +164,17 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
                 processEntry(data, entry);
             }
 
-            // commit at checkpoint message
-            if (entries.getItemsCount() > 0 && entries.getItems(0).getHeader().getMessageType() == SubscribeDataProto.MessageType.CHECKPOINT) {
+            // commit at checkpoint message, after every lane has applied the rows before it
+            if (isCheckpoint(entries)) {
+                flushCoalesced();
+                getDispatcher().awaitDrained();
+                //异步写入（如es的bulk管道）的数据也需要确认写入成功
+                getTargetLoadService().flushPending(mq.getTopicGroup());
                 acknowledgment.acknowledge();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("interrupted while waiting for apply lanes, topic:{},offset:{}", data.topic(), data.offset());
         } catch (Exception e) {
             MonitorTask.ERROR_TOPIC_LIST.add(data.topic());
             log.error("syncing data error:", e);
@@ -85,119 +183,223 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
     }
 
     /**
-     * 处理每一行记录
+     * 是否为checkpoint消息，只有在checkpoint处才可以提交offset
+     *
+     * @param entries
+     * @return
+     */
+    static boolean isCheckpoint(SubscribeDataProto.Entries entries) {
+        return entries.getItemsCount() > 0 && entries.getItems(0).getHeader().getMessageType() == SubscribeDataProto.MessageType.CHECKPOINT;
+    }
+
+    /**
+     * 处理每一行记录：在kafka消费线程中解析，再按主键分配到写入通道中并行写入
      *
      * @param data
      * @param entry
      */
     private void processEntry(ConsumerRecord<String, byte[]> data, SubscribeDataProto.Entry entry) {
         try {
-            SubscribeDataProto.Header header = entry.getHeader();
-            log.debug("-->[kafka partition: {}, kafka offset: {}, partitionSeq: {}] [{}], binlog timestamp: {}",
-                    data.partition(),
-                    data.offset(),
-                    getPartitionSeq(data),
-                    header.getFileName(), header.getPosition(),
-                    LocalDateTime.ofInstant(Instant.ofEpochSecond(header.getTimestamp()), TimeZone.getDefault().toZoneId()));
-
-
-            SubscribeDataProto.MessageType messageType = entry.getHeader().getMessageType();
-            if (!SubscribeDataProto.MessageType.DML.equals(messageType)) {
-                if (SubscribeDataProto.MessageType.DDL.equals(messageType)) {
-                    //发现新表，尝试添加到RULES_MAP中。
-                    SubscribeDataProto.DDLEvent ddlEvent = entry.getEvent().getDdlEvent();
-                    log.warn("new ddl shardId:{} , schema:{} , sql:{} , RULES_MAP size:{}", getShardId(data), ddlEvent.getSchemaName(), ddlEvent.getSql(), RuleConfigParser.RULES_MAP.size());
-                    if (!ddlEvent.getSql().startsWith("CREATE TABLE")) {
-                        log.info("Ignore unsupported ddl type");
-                        return;
-                    }
-                    String newTableName = RuleConfigParser.getTableNameFromDdl(ddlEvent.getSql());
-                    List<SyncConfig> configList = ruleConfigParser.getSysConfigBySourceDbName(ddlEvent.getSchemaName());
-                    if (Objects.nonNull(configList) && configList.size() > 0) {
-                        List<TableMeta> tableMetaList = ruleConfigParser.initRules(configList, newTableName);
-                        tableMetaList.forEach(t -> {
-                            t.setState(SyncState.SYNCING);
-                        });
-                    }
-                    log.warn("configListSize:{} , newTableName:{} , RULES_MAP size:{}", configList.size(), newTableName, RuleConfigParser.RULES_MAP.size());
-                    return;
-                } else if (SubscribeDataProto.MessageType.BEGIN.equals(messageType) || SubscribeDataProto.MessageType.COMMIT.equals(messageType) || SubscribeDataProto.MessageType.CHECKPOINT.equals(messageType)) {
-                    //不打印begin\commit\checkpoint，日志太多了。
-                    return;
+            List<CudRequest> requestList = decodeEntry(data, entry);
+            if (requestList.isEmpty()) {
+                return;
+            }
+            if (Objects.nonNull(coalescingBuffer)) {
+                //先合并，到checkpoint或缓冲区满了再写入
+                requestList.forEach(coalescingBuffer::add);
+                if (coalescingBuffer.isFull()) {
+                    flushCoalesced();
                 }
-                //非增删改语句
-                log.info("Ignore unsupported message type:{}", messageType.toString());
                 return;
             }
+            AbstractLoadService loadService = AbstractLoadService.getLoadService(requestList.get(0).getTableMeta().getSyncConfig().getTargetConn().getType());
+            for (CudRequest request : requestList) {
+                dispatch(request, loadService);
+            }
+        } catch (Exception e) {
+            //触发告警
+            MonitorTask.ERROR_TOPIC_LIST.add(data.topic());
+            log.error("处理消息失败，topic:{},offset:{},partition:{}", data.topic(), data.offset(), data.partition(), e);
+        }
+    }
 
-            SubscribeDataProto.DMLEvent dmlEvt = entry.getEvent().getDmlEvent();
-            SubscribeDataProto.DMLType dmlType = dmlEvt.getDmlEventType();
-            if (!dmlType.equals(INSERT) && !dmlType.equals(UPDATE) && !dmlType.equals(DELETE)) {
-                //非增删改语句
-                log.info("Ignore unsupported dml event type:{}", dmlType.toString());
-                return;
+    /**
+     * 将合并缓冲区中的请求全部放入写入通道
+     */
+    private void flushCoalesced() {
+        if (Objects.isNull(coalescingBuffer) || coalescingBuffer.size() == 0) {
+            return;
+        }
+        AbstractLoadService loadService = getTargetLoadService();
+        coalescingBuffer.drain().values().forEach(requestList -> requestList.forEach(r -> dispatch(r, loadService)));
+    }
+
+    private void dispatch(CudRequest request, AbstractLoadService loadService) {
+        getDispatcher().dispatch(request, () -> applyRequest(request, loadService));
+    }
+
+    /**
+     * 将一条entry解析为增删改请求，非增删改的entry（DDL、BEGIN、COMMIT等）返回空集合
+     *
+     * @param data
+     * @param entry
+     * @return
+     */
+    List<CudRequest> decodeEntry(ConsumerRecord<String, byte[]> data, SubscribeDataProto.Entry entry) {
+        SubscribeDataProto.Header header = entry.getHeader();
+        log.debug("-->[kafka partition: {}, kafka offset: {}, partitionSeq: {}] [{}], binlog timestamp: {}",
+                data.partition(),
+                data.offset(),
+                getPartitionSeq(data),
+                header.getFileName(), header.getPosition(),
+                LocalDateTime.ofInstant(Instant.ofEpochSecond(header.getTimestamp()), TimeZone.getDefault().toZoneId()));
+
+
+        SubscribeDataProto.MessageType messageType = entry.getHeader().getMessageType();
+        if (!SubscribeDataProto.MessageType.DML.equals(messageType)) {
+            if (SubscribeDataProto.MessageType.DDL.equals(messageType)) {
+                //发现新表，尝试添加到RULES_MAP中。
+                SubscribeDataProto.DDLEvent ddlEvent = entry.getEvent().getDdlEvent();
+                log.warn("new ddl shardId:{} , schema:{} , sql:{} , RULES_MAP size:{}", getShardId(data), ddlEvent.getSchemaName(), ddlEvent.getSql(), RuleConfigParser.RULES_MAP.size());
+                if (!ddlEvent.getSql().startsWith("CREATE TABLE")) {
+                    log.info("Ignore unsupported ddl type");
+                    return Collections.emptyList();
+                }
+                String newTableName = RuleConfigParser.getTableNameFromDdl(ddlEvent.getSql());
+                List<SyncConfig> configList = ruleConfigParser.getSysConfigBySourceDbName(ddlEvent.getSchemaName());
+                if (Objects.nonNull(configList) && configList.size() > 0) {
+                    List<TableMeta> tableMetaList = ruleConfigParser.initRules(configList, newTableName);
+                    tableMetaList.forEach(t -> {
+                        t.setState(SyncState.SYNCING);
+                    });
+                }
+                log.warn("configListSize:{} , newTableName:{} , RULES_MAP size:{}", configList.size(), newTableName, RuleConfigParser.RULES_MAP.size());
+                return Collections.emptyList();
+            } else if (SubscribeDataProto.MessageType.BEGIN.equals(messageType) || SubscribeDataProto.MessageType.COMMIT.equals(messageType) || SubscribeDataProto.MessageType.CHECKPOINT.equals(messageType)) {
+                //不打印begin\commit\checkpoint，日志太多了。
+                return Collections.emptyList();
             }
+            //非增删改语句
+            log.info("Ignore unsupported message type:{}", messageType.toString());
+            return Collections.emptyList();
+        }
 
-            String dbName = entry.getHeader().getSchemaName();
-            String tableName = entry.getHeader().getTableName();
+        SubscribeDataProto.DMLEvent dmlEvt = entry.getEvent().getDmlEvent();
+        SubscribeDataProto.DMLType dmlType = dmlEvt.getDmlEventType();
+        if (!dmlType.equals(INSERT) && !dmlType.equals(UPDATE) && !dmlType.equals(DELETE)) {
+            //非增删改语句
+            log.info("Ignore unsupported dml event type:{}", dmlType.toString());
+            return Collections.emptyList();
+        }
 
-            long startTime = System.currentTimeMillis();
-            String topicName = data.topic();
+        String dbName = entry.getHeader().getSchemaName();
+        String tableName = entry.getHeader().getTableName();
 
-            log.debug("receive data change dmlType:{},dbName:{},tableName{},topicName{},rowSize:{}"
-                    , dmlType.toString(), dbName, tableName, topicName, dmlEvt.getRowsList().size());
+        String topicName = data.topic();
 
-            //***********************从topicGroup中匹配源数据库*************************
-            SyncConfig syncConfig = sync2any.findSyncConfigByTopicGroup(mq.getTopicGroup());
-            Conn conn = DbUtils.getConnByDbId(sourceMysqlDb.getDatasources(), syncConfig.getSourceDbId());
-            if (Objects.nonNull(conn) && !conn.getDbName().equalsIgnoreCase(dbName)) {
-                //如果mq数据中的源数据库和配置文件中的源数据库不匹配，直接抛弃。
-                log.debug("ignore msg because source database is not match.{} != {} ", conn.getDbName(), dbName);
-                return;
-            }
-            String ruleKey = syncConfig.getTargetDbId() + "$" + syncConfig.getSourceDbId() + "$" + tableName.toLowerCase();
-            TableMeta tableMeta = RuleConfigParser.RULES_MAP
-                    .getIfPresent(ruleKey);
-            if (Objects.isNull(tableMeta)) {
-                //抛弃不需要同步的表
-                log.debug("tableMeta not found when receive msg from mq. this msg will be ignored. db:{}.{} ruleKey:{} topicGroup:{}", dbName, tableName, ruleKey, mq.getTopicGroup());
-                return;
+        log.debug("receive data change dmlType:{},dbName:{},tableName{},topicName{},rowSize:{}"
+                , dmlType.toString(), dbName, tableName, topicName, dmlEvt.getRowsList().size());
+
+        //***********************从topicGroup中匹配源数据库*************************
+        SyncConfig syncConfig = sync2any.findSyncConfigByTopicGroup(mq.getTopicGroup());
+        Conn conn = DbUtils.getConnByDbId(sourceMysqlDb.getDatasources(), syncConfig.getSourceDbId());
+        if (Objects.nonNull(conn) && !conn.getDbName().equalsIgnoreCase(dbName)) {
+            //如果mq数据中的源数据库和配置文件中的源数据库不匹配，直接抛弃。
+            log.debug("ignore msg because source database is not match.{} != {} ", conn.getDbName(), dbName);
+            return Collections.emptyList();
+        }
+        String ruleKey = syncConfig.getTargetDbId() + "$" + syncConfig.getSourceDbId() + "$" + tableName.toLowerCase();
+        TableMeta tableMeta = RuleConfigParser.RULES_MAP
+                .getIfPresent(ruleKey);
+        if (Objects.isNull(tableMeta)) {
+            //抛弃不需要同步的表
+            log.debug("tableMeta not found when receive msg from mq. this msg will be ignored. db:{}.{} ruleKey:{} topicGroup:{}", dbName, tableName, ruleKey, mq.getTopicGroup());
+            return Collections.emptyList();
+        }
+
+        if (isBeforeSnapshot(tableMeta, header)) {
+            return Collections.emptyList();
+        }
+        tableMeta.markReceived();
+
+        List<CudRequest> requestList = new ArrayList<>(dmlEvt.getRowsCount());
+        decodedCounterMap.get(dmlType).increment(dmlEvt.getRowsCount());
+        //同一个DMLEvent中的行共用列的对应关系
+        int[] columnPositions = RowDecoder.columnPositions(tableMeta, dmlEvt);
+        for (SubscribeDataProto.RowChange row : dmlEvt.getRowsList()) {
+            long transformStart = System.nanoTime();
+            //将mq的信息按列位置解析，且已经进行了规则的处理
+            DecodedRow oldRow = RowDecoder.decodeOld(tableMeta, columnPositions, row);
+            DecodedRow newRow = RowDecoder.decodeNew(tableMeta, columnPositions, row);
+            //转化为可操作的形式
+            CudRequest request = transform.transform(tableMeta, dmlType, oldRow, newRow);
+            transformTimer.record(System.nanoTime() - transformStart, TimeUnit.NANOSECONDS);
+            if (Objects.isNull(request)) {
+                log.error("CudRequest 为null,mq:{}", data.value());
+                continue;
             }
+            log.info("同步数据主键：{}，topicGroup:{}，ruleKey:{}，tableName:{}.{}",
+                    request.getPkValueStr(), mq.getTopicGroup(), ruleKey, dbName, tableName);
+            request.setKafkaOffset(data.offset());
+            request.setBinlogTimestamp(header.getTimestamp());
+            requestList.add(request);
+        }
+        return requestList;
+    }
 
-            for (SubscribeDataProto.RowChange row : dmlEvt.getRowsList()) {
-                //将mq的信息转为mysql形式，且已经进行了规则的处理
-                TableRecords tableRecords = TableRecords.buildRecords(tableMeta, row, dmlEvt);
-                //将tableRecords 转化为可操作的形式
-                AbstractLoadService loadService = AbstractLoadService.getLoadService(syncConfig.getTargetConn().getType());
-                CudRequest request = transform.transform(tableRecords);
-                log.info("同步数据主键：{}，topicGroup:{}，ruleKey:{}，tableName:{}.{}",
-                        request.getPkValueStr(), mq.getTopicGroup(), ruleKey, dbName, tableName);
-                if (Objects.isNull(request)) {
-                    log.error("CudRequest 为null,mq:{}", data.value());
-                }
+    /**
+     * 事件是否已经包含在刚载入的原始数据中（在dump之前的binlog位置之前），是则不需要解析和写入。
+     * 第一次遇到不在此位置之前的事件时，说明已经追上，之后不再判断
+     *
+     * @param tableMeta
+     * @param header
+     * @return
+     */
+    static boolean isBeforeSnapshot(TableMeta tableMeta, SubscribeDataProto.Header header) {
+        BinlogPosition snapshotPosition = tableMeta.getSnapshotPosition();
+        if (Objects.isNull(snapshotPosition)) {
+            return false;
+        }
+        if (snapshotPosition.includes(header.getGtid(), header.getServerId(), header.getFileName(), header.getPosition())) {
+            return true;
+        }
+        log.info("table {}.{} has caught up with the snapshot position, gtid:{} binlog:{}:{}",
+                tableMeta.getDbName(), tableMeta.getTableName(), header.getGtid(), header.getFileName(), header.getPosition());
+        tableMeta.setSnapshotPosition(null);
+        return false;
+    }
 
-                //将信息同步到目标数据库中，如果失败，则重试3次
-                for (int i = 1; i <= MAX_RETRY_TIMES && !Objects.isNull(request); i++) {
-                    try {
-                        int effectNum = loadService.operateData(request);
-                        log.debug("tableName:{},effect number:{}", tableName, effectNum);
-                        //如果没问题，则只执行一次
-                        break;
-                    } catch (Exception esEx) {
-                        log.error("load data error,retry times count:" + i, esEx);
-                        if (i == 3) {
-                            throw esEx;
-                        }
+    /**
+     * 在写入通道中执行：将信息同步到目标数据库中，如果失败，则重试3次
+     *
+     * @param request
+     * @param loadService
+     */
+    private void applyRequest(CudRequest request, AbstractLoadService loadService) {
+        long startTime = System.currentTimeMillis();
+        try {
+            for (int i = 1; i <= MAX_RETRY_TIMES; i++) {
+                try {
+                    int effectNum = loadService.operateData(request);
+                    log.debug("tableName:{},effect number:{}", request.getTable(), effectNum);
+                    //如果没问题，则只执行一次
+                    break;
+                } catch (Exception esEx) {
+                    log.error("load data error,retry times count:" + i, esEx);
+                    if (i == MAX_RETRY_TIMES) {
+                        throw esEx;
                     }
+                    retryCounter.increment();
                 }
-                updateStatics(tableMeta, header.getTimestamp(), startTime, data.offset());
             }
+            updateStatics(request.getTableMeta(), request.getBinlogTimestamp(), startTime, request.getKafkaOffset());
+            applyTimer.record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
+            errorCounter.increment();
             //触发告警
-            MonitorTask.ERROR_TOPIC_LIST.add(data.topic());
-            log.error("处理消息失败，topic:{},offset:{},partition:{}", data.topic(), data.offset(), data.partition(), e);
+            MonitorTask.ERROR_TOPIC_LIST.add(mq.getTopicName());
+            log.error("处理消息失败，topic:{},offset:{},pk:{}", mq.getTopicName(), request.getKafkaOffset(), request.getPkValueStr(), e);
         }
-
     }
 
     /**
@@ -208,6 +410,15 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
      * @throws IOException
      */
     public SubscribeDataProto.Entries parseFromMq(ConsumerRecord<String, byte[]> data) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            return parseEnvelope(data);
+        } finally {
+            parseTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private SubscribeDataProto.Entries parseEnvelope(ConsumerRecord<String, byte[]> data) throws Exception {
 
         SubscribeDataProto.Entries entries = null;
         //kafka 分区号
@@ -235,6 +446,17 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
         if (1 != envelope.getVersion()) {
             throw new IllegalStateException(String.format("unsupported version: %d", envelope.getVersion()));
         }
+        if (envelope.getTotal() > 1) {
+            //从中间的offset开始消费（如按时间定位）时，第一条消息可能是一个大消息的后半部分，无法解析
+            if (envelope.getIndex() > 0 && !shardMsgMap.containsKey(shardId)) {
+                log.warn("丢弃不完整的数据包（缺少前面的部分）。index:{} , total:{} , shardId:{} , offset:{}", envelope.getIndex(), envelope.getTotal(), shardId, data.offset());
+                return null;
+            }
+            if (envelope.getIndex() == 0 && shardMsgMap.containsKey(shardId)) {
+                log.warn("丢弃未拼装完的数据包，重新开始拼装。total:{} , shardId:{} , offset:{}", envelope.getTotal(), shardId, data.offset());
+                shardMsgMap.remove(shardId);
+            }
+        }
         ByteArrayOutputStream completeMsg = new ByteArrayOutputStream();
         if (1 == envelope.getTotal()) {
             completeMsg = new ByteArrayOutputStream();
@@ -273,7 +495,7 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
      * @param time
      * @param startTime
      */
-    private void updateStatics(TableMeta tableMeta, int time, long startTime, long offset) {
+    void updateStatics(TableMeta tableMeta, int time, long startTime, long offset) {
         long dataUpdateTime = new BigDecimal(time).multiply(new BigDecimal(1000)).longValue();
         tableMeta.setLastDataManipulateTime(dataUpdateTime);
         long endTime = System.currentTimeMillis();
@@ -322,6 +544,12 @@ public class KafkaMsgListener implements AcknowledgingMessageListener<String, by
                 .getKafkaListener(sourceDbId, topicGroup, topicName);
         if (Objects.nonNull(container) && container.isRunning()) {
             container.stop();
+            Object listener = container.getContainerProperties().getMessageListener();
+            if (listener instanceof KafkaMsgListener) {
+                ((KafkaMsgListener) listener).shutdown();
+            } else if (listener instanceof KafkaBatchMsgListener) {
+                ((KafkaBatchMsgListener) listener).shutdown();
+            }
             log.warn("kafka listener '{}' is stopped!", container.getBeanName());
         } else {
             log.warn("kafka listener '{}' is not running, skip stop action!", container.getBeanName());
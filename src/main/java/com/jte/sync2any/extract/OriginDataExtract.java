@@ -1,12 +1,13 @@
 package com.jte.sync2any.extract;
 
+import com.jte.sync2any.model.core.LoadCheckpoint;
 import com.jte.sync2any.model.mysql.TableMeta;
 
 import java.io.File;
 import java.sql.SQLException;
 
 /**
- * 提取源中的初始数据
+ * 提取源中的初始数据，输出sql文本
  * 先提取源数据，再去追kafka中的记录。
  */
 public interface OriginDataExtract {
@@ -15,5 +16,30 @@ public interface OriginDataExtract {
      * @param tableMeta
      * @return dump出来的数据文件地址
      */
-    File dumpData(TableMeta tableMeta) throws SQLException, IllegalAccessException;
+    default File dumpData(TableMeta tableMeta) throws SQLException, IllegalAccessException {
+        return dumpData(tableMeta, null);
+    }
+
+    /**
+     * @param tableMeta
+     * @param checkpoint 载入断点，不为null时按主键的顺序dump，并且只dump断点之后的数据
+     * @return dump出来的数据文件地址
+     */
+    File dumpData(TableMeta tableMeta, LoadCheckpoint checkpoint) throws SQLException, IllegalAccessException;
+
+    /**
+     * 边dump边返回数据，不生成临时文件
+     * @param tableMeta
+     * @return dump出来的每一行（与dumpData生成的文件内容相同）
+     */
+    default DumpStream<String> streamData(TableMeta tableMeta) throws SQLException {
+        return streamData(tableMeta, null);
+    }
+
+    /**
+     * @param tableMeta
+     * @param checkpoint 载入断点，不为null时按主键的顺序dump，并且只dump断点之后的数据
+     * @return dump出来的每一行（与dumpData生成的文件内容相同）
+     */
+    DumpStream<String> streamData(TableMeta tableMeta, LoadCheckpoint checkpoint) throws SQLException;
 }
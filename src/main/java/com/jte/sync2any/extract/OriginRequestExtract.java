@@ -0,0 +1,30 @@
+package com.jte.sync2any.extract;
+
+import com.jte.sync2any.model.core.LoadCheckpoint;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.TableMeta;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 提取源中的初始数据，直接输出载入用的请求，不经过sql文本
+ * 先提取源数据，再去追kafka中的记录。
+ */
+public interface OriginRequestExtract {
+    /**
+     * 边查询边返回载入用的请求
+     * @param tableMeta
+     * @return 每个元素为一批请求
+     */
+    default DumpStream<List<CudRequest>> extractData(TableMeta tableMeta) throws SQLException {
+        return extractData(tableMeta, null);
+    }
+
+    /**
+     * @param tableMeta
+     * @param checkpoint 载入断点，不为null时只查询断点中还未载入的范围，没有范围时把分片的结果保存到断点中
+     * @return 每个元素为一批请求
+     */
+    DumpStream<List<CudRequest>> extractData(TableMeta tableMeta, LoadCheckpoint checkpoint) throws SQLException;
+}
@@ -0,0 +1,236 @@
+package com.jte.sync2any.extract.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jte.sync2any.extract.DumpStream;
+import com.jte.sync2any.extract.OriginRequestExtract;
+import com.jte.sync2any.transform.impl.InsertRequestBuilder;
+import com.jte.sync2any.model.config.JdbcDump;
+import com.jte.sync2any.model.config.Sync2any;
+import com.jte.sync2any.model.core.LoadCheckpoint;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.ColumnMeta;
+import com.jte.sync2any.model.mysql.TableMeta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+
+/**
+ * 不使用mysqldump，通过jdbc从mysql中提取原始数据。
+ * 单列整数主键的表按主键范围分片，多个连接并行查询，每个查询按主键的顺序以流的方式读取结果集（不会一次性载入内存），
+ * 查询结果直接转换为CudRequest，不需要生成和解析sql文本。
+ * 各个分片分别查询，不在同一个事务快照中，查询期间的变更由之后的增量同步覆盖。
+ */
+@Service
+@Slf4j
+public class JdbcOriginDataExtractImpl implements OriginRequestExtract {
+
+    private static final String MIN_MAX_SQL_TEMPLATE = "SELECT MIN(`%s`), MAX(`%s`) FROM `%s`";
+    private static final String SELECT_SQL_TEMPLATE = "SELECT %s FROM `%s`";
+    private static final String RANGE_CONDITION_TEMPLATE = " WHERE `%s` BETWEEN ? AND ? ORDER BY `%s`";
+
+    @Autowired
+    @Qualifier("allSourceTemplate")
+    Map<String, JdbcTemplate> allSourceTemplate;
+
+    @Resource
+    Sync2any sync2any;
+
+    @Override
+    public DumpStream<List<CudRequest>> extractData(TableMeta tableMeta, LoadCheckpoint checkpoint) {
+        JdbcDump config = sync2any.getJdbcDump();
+        JdbcTemplate jdbcTemplate = allSourceTemplate.get(tableMeta.getSourceDbId());
+        List<long[]> chunkList;
+        if (Objects.nonNull(checkpoint) && Objects.nonNull(checkpoint.getChunks())) {
+            //从断点继续，只查询还未载入的范围
+            chunkList = checkpoint.getChunks();
+            log.info("表{}从断点继续提取，剩余分片数：{}", tableMeta.getTableName(), chunkList.size());
+        } else {
+            chunkList = splitChunks(jdbcTemplate, tableMeta, config.getChunkRows());
+            if (Objects.nonNull(checkpoint) && Objects.nonNull(chunkList.get(0))) {
+                checkpoint.setChunks(new ArrayList<>(chunkList));
+            }
+        }
+        int threads = Math.max(1, Math.min(config.getThreads(), chunkList.size()));
+        log.info("正在通过jdbc提取数据，表：{}，分片数：{}，线程数：{}", tableMeta.getTableName(), chunkList.size(), threads);
+        DumpStream<List<CudRequest>> dumpStream = new DumpStream<>(tableMeta.getTableName(), sync2any.getDumpQueueSize());
+        return dumpStream.start(() -> {
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                    .setNameFormat("jdbc-dump-" + tableMeta.getTableName() + "-%d").setDaemon(true).build());
+            try {
+                List<Future<Long>> futureList = new ArrayList<>();
+                for (long[] range : chunkList) {
+                    futureList.add(executor.submit(() -> queryChunk(jdbcTemplate, tableMeta, range, config.getBatchRows(), dumpStream)));
+                }
+                long rows = 0;
+                for (Future<Long> future : futureList) {
+                    rows += future.get();
+                }
+                log.info("表{} jdbc提取完毕！rows:{}", tableMeta.getTableName(), rows);
+                return rows;
+            } finally {
+                //出错或者载入方关闭时，停止其他分片的查询
+                executor.shutdownNow();
+            }
+        });
+    }
+
+    /**
+     * 按主键范围分片，每个分片为[起始主键, 结束主键]（包含两端）。
+     * 不是单列整数主键的表或空表只有一个分片（null，表示整表查询）
+     *
+     * @param jdbcTemplate
+     * @param tableMeta
+     * @param chunkRows    每个分片的主键范围
+     * @return
+     */
+    List<long[]> splitChunks(JdbcTemplate jdbcTemplate, TableMeta tableMeta, long chunkRows) {
+        List<long[]> chunkList = new ArrayList<>();
+        String pkName = getChunkKey(tableMeta);
+        if (Objects.isNull(pkName)) {
+            chunkList.add(null);
+            return chunkList;
+        }
+        String sql = String.format(MIN_MAX_SQL_TEMPLATE, pkName, pkName, tableMeta.getTableName());
+        long[] minMax = jdbcTemplate.query(sql, rs -> {
+            rs.next();
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+        });
+        if (Objects.isNull(minMax)) {
+            chunkList.add(null);
+            return chunkList;
+        }
+        long step = Math.max(chunkRows, 1);
+        long start = minMax[0];
+        long max = minMax[1];
+        while (true) {
+            long end = max - start < step ? max : start + step - 1;
+            chunkList.add(new long[]{start, end});
+            if (end == max) {
+                break;
+            }
+            start = end + 1;
+        }
+        return chunkList;
+    }
+
+    /**
+     * 可以用来分片的主键：单列整数主键
+     *
+     * @return 不能分片时返回null
+     */
+    public static String getChunkKey(TableMeta tableMeta) {
+        int[] pkPositions = tableMeta.getSortedPrimaryKeyPositions();
+        if (pkPositions.length != 1 || pkPositions[0] < 0) {
+            return null;
+        }
+        ColumnMeta pk = tableMeta.getAllColumnList().get(pkPositions[0]);
+        int dataType = pk.getDataType();
+        if (dataType == Types.BIGINT || dataType == Types.INTEGER || dataType == Types.SMALLINT || dataType == Types.TINYINT) {
+            return pk.getColumnName();
+        }
+        return null;
+    }
+
+    /**
+     * 查询一个分片，每batchRows行放入一次队列
+     *
+     * @return 行数
+     */
+    private long queryChunk(JdbcTemplate jdbcTemplate, TableMeta tableMeta, long[] range, int batchRows,
+                            DumpStream<List<CudRequest>> dumpStream) throws SQLException {
+        String columns = tableMeta.getAllColumnList().stream()
+                .map(c -> "`" + c.getColumnName() + "`")
+                .collect(Collectors.joining(","));
+        String sql = String.format(SELECT_SQL_TEMPLATE, columns, tableMeta.getTableName());
+        if (Objects.nonNull(range)) {
+            String pkName = getChunkKey(tableMeta);
+            sql = sql + String.format(RANGE_CONDITION_TEMPLATE, pkName, pkName);
+        }
+        String chunkSql = sql;
+        ChunkReader reader = new ChunkReader(tableMeta, batchRows, dumpStream);
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(chunkSql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            //mysql驱动以流的方式读取结果集
+            ps.setFetchSize(Integer.MIN_VALUE);
+            if (Objects.nonNull(range)) {
+                ps.setLong(1, range[0]);
+                ps.setLong(2, range[1]);
+            }
+            return ps;
+        }, reader);
+        reader.flush();
+        log.debug("jdbc dump chunk finished, table:{} range:{} rows:{}", tableMeta.getTableName(),
+                Objects.isNull(range) ? "all" : range[0] + "-" + range[1], reader.rows);
+        return reader.rows;
+    }
+
+    /**
+     * 把结果集的每一行转换为CudRequest（与mysqldump的INSERT语句的转换结果相同，值为字符串）
+     */
+    static class ChunkReader implements RowCallbackHandler {
+        private final TableMeta tableMeta;
+        private final int batchRows;
+        private final DumpStream<List<CudRequest>> dumpStream;
+        /**
+         * 需要读取的列：同步的列和主键列
+         */
+        private final boolean[] readColumns;
+        private List<CudRequest> batch;
+        private long rows = 0;
+
+        ChunkReader(TableMeta tableMeta, int batchRows, DumpStream<List<CudRequest>> dumpStream) {
+            this.tableMeta = tableMeta;
+            this.batchRows = Math.max(batchRows, 1);
+            this.dumpStream = dumpStream;
+            this.readColumns = tableMeta.getIncludedColumns().clone();
+            for (int pkPosition : tableMeta.getSortedPrimaryKeyPositions()) {
+                this.readColumns[pkPosition] = true;
+            }
+            this.batch = new ArrayList<>(this.batchRows);
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            String[] values = new String[readColumns.length];
+            for (int i = 0; i < readColumns.length; i++) {
+                if (readColumns[i]) {
+                    values[i] = rs.getString(i + 1);
+                }
+            }
+            batch.add(InsertRequestBuilder.build(values, tableMeta));
+            rows++;
+            if (batch.size() >= batchRows) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                dumpStream.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("jdbc dump is interrupted, table:" + tableMeta.getTableName(), e);
+            }
+            batch = new ArrayList<>(batchRows);
+        }
+    }
+}
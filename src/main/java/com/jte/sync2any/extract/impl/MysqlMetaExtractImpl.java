@@ -5,12 +5,15 @@ import com.jte.sync2any.exception.ShouldNeverHappenException;
 import com.jte.sync2any.extract.DbMetaExtract;
 import com.jte.sync2any.model.config.Conn;
 import com.jte.sync2any.model.config.SourceMysqlDb;
+import com.jte.sync2any.model.mysql.BinlogPosition;
 import com.jte.sync2any.model.mysql.ColumnMeta;
 import com.jte.sync2any.model.mysql.IndexMeta;
 import com.jte.sync2any.model.mysql.IndexType;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.util.DbUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -21,10 +24,13 @@ import java.util.Map;
 import java.util.Objects;
 
 @Service
+@Slf4j
 public class MysqlMetaExtractImpl implements DbMetaExtract {
 
     public final String GET_ALL_TABLES_SQL="select table_name from information_schema.tables where table_schema=? and table_type='base table'";
     public final String GET_COUNT_SQL="select count(*) from #{table_name}; ";
+    public final String SHOW_MASTER_STATUS_SQL="SHOW MASTER STATUS";
+    public final String GET_SERVER_ID_SQL="SELECT @@server_id";
 
     @Resource
     @Qualifier("allSourceTemplate")
@@ -61,6 +67,40 @@ public class MysqlMetaExtractImpl implements DbMetaExtract {
         return count;
     }
 
+    /**
+     * 获取源数据库当前的binlog位置，需要REPLICATION CLIENT权限
+     * @param dbId
+     * @return 没有权限或者未开启binlog时返回null
+     */
+    public BinlogPosition getBinlogPosition(String dbId) {
+        JdbcTemplate jdbcTemplate=getJdbcTemplate(dbId);
+        try {
+            BinlogPosition position=jdbcTemplate.query(SHOW_MASTER_STATUS_SQL, rs -> {
+                if(!rs.next()){
+                    return null;
+                }
+                BinlogPosition p=new BinlogPosition();
+                p.setFileName(rs.getString("File"));
+                p.setPosition(rs.getLong("Position"));
+                //5.6之前没有Executed_Gtid_Set
+                if(rs.getMetaData().getColumnCount()>=5){
+                    p.setGtidSet(rs.getString("Executed_Gtid_Set"));
+                }
+                return p;
+            });
+            if(Objects.isNull(position)){
+                log.warn("binlog is not enabled, dbId:{}",dbId);
+                return null;
+            }
+            position.setServerId(jdbcTemplate.queryForObject(GET_SERVER_ID_SQL,Long.class));
+            position.setTimestamp(System.currentTimeMillis());
+            return position;
+        } catch (DataAccessException e) {
+            log.warn("failed to get binlog position, dbId:{}",dbId,e);
+            return null;
+        }
+    }
+
     @Override
     public List<String> getAllTableName(String dbId) {
         JdbcTemplate jdbcTemplate=getJdbcTemplate(dbId);
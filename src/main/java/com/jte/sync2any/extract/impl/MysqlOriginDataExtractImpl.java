@@ -2,10 +2,12 @@ package com.jte.sync2any.extract.impl;
 
 import cn.hutool.db.DbUtil;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
+import com.jte.sync2any.extract.DumpStream;
 import com.jte.sync2any.extract.OriginDataExtract;
 import com.jte.sync2any.model.config.Conn;
 import com.jte.sync2any.model.config.SourceMysqlDb;
 import com.jte.sync2any.model.config.Sync2any;
+import com.jte.sync2any.model.core.LoadCheckpoint;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.util.DbUtils;
 import lombok.extern.slf4j.Slf4j;
@@ -19,7 +21,8 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.io.File;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -51,7 +54,74 @@ public class MysqlOriginDataExtractImpl implements OriginDataExtract {
      * @return
      */
     @Override
-    public File dumpData(TableMeta tableMeta) throws SQLException, IllegalAccessException {
+    public File dumpData(TableMeta tableMeta, LoadCheckpoint checkpoint) throws SQLException, IllegalAccessException {
+        String baseFilePath=sync2any.getMysqldumpDataLocation();
+        if(StringUtils.isBlank(baseFilePath)){
+            baseFilePath = System.getProperty("java.io.tmpdir");
+        }
+        String filePath = baseFilePath+File.separator+tableMeta.getDbName()+"_"+tableMeta.getTableName()+"_"+new SecureRandom().nextInt(99999)+".data.sql";
+
+        log.info("正在dump数据，表：{}，sql文件：{}",tableMeta.getTableName(),filePath);
+        File sqlFile= new File(filePath);
+        ProcBuilder builder = buildDumpCommand(tableMeta, checkpoint);
+        builder.withOutputConsumer(stream -> FileUtils.copyToFile(stream,sqlFile));
+        ProcResult result=builder.run();
+        long sizeInBytes = FileUtils.sizeOf(sqlFile);
+        log.info("表{} dump完毕！size:{}mb",tableMeta.getTableName(),sizeInBytes/1024/1024);
+
+        if(result.getExitValue()!=0)
+        {
+            throw new IllegalAccessException("mysql dump fail! exitValue:"+result.getExitValue()+" output:"+result.getOutputString());
+        }
+
+
+        if(!sqlFile.exists())
+        {
+            throw new ShouldNeverHappenException("mysqldump error,sql file is not exists!");
+        }
+
+        return sqlFile;
+    }
+
+    /**
+     * mysqldump的标准输出按行放入有界队列，由载入线程边读边载入
+     * @param tableMeta
+     * @return
+     */
+    @Override
+    public DumpStream<String> streamData(TableMeta tableMeta, LoadCheckpoint checkpoint) throws SQLException {
+        log.info("正在以流的方式dump数据，表：{}",tableMeta.getTableName());
+        ProcBuilder builder = buildDumpCommand(tableMeta, checkpoint);
+        DumpStream<String> dumpStream = new DumpStream<>(tableMeta.getTableName(), sync2any.getDumpQueueSize());
+        builder.withOutputConsumer(stream -> {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            String line;
+            try {
+                while ((line = reader.readLine()) != null) {
+                    dumpStream.put(line);
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+        });
+        return dumpStream.start(() -> {
+            ProcResult result = builder.run();
+            if(result.getExitValue()!=0)
+            {
+                throw new IllegalAccessException("mysql dump fail! exitValue:"+result.getExitValue()+" output:"+result.getOutputString());
+            }
+            log.info("表{} dump完毕！",tableMeta.getTableName());
+            return result;
+        });
+    }
+
+    /**
+     * 生成dump一个表的mysqldump命令
+     * @param tableMeta
+     * @param checkpoint 不为null时按主键的顺序dump；单列整数主键的表只dump断点之后的数据
+     * @return
+     */
+    private ProcBuilder buildDumpCommand(TableMeta tableMeta, LoadCheckpoint checkpoint) throws SQLException {
         Connection dbConn = null;
         try{
 
@@ -67,14 +137,6 @@ public class MysqlOriginDataExtractImpl implements OriginDataExtract {
             dbConn =jdbcTemplate.getDataSource().getConnection();
             String dbUrl=dbConn.getMetaData().getURL();
             Map<String,String> dbParam=DbUtils.getParamFromUrl(dbUrl);
-            String baseFilePath=sync2any.getMysqldumpDataLocation();
-            if(StringUtils.isBlank(baseFilePath)){
-                baseFilePath = System.getProperty("java.io.tmpdir");
-            }
-            String filePath = baseFilePath+File.separator+tableMeta.getDbName()+"_"+tableMeta.getTableName()+"_"+new SecureRandom().nextInt(99999)+".data.sql";
-
-            log.info("正在dump数据，表：{}，sql文件：{}",tableMeta.getTableName(),filePath);
-            File sqlFile= new File(filePath);
             ProcBuilder builder = new ProcBuilder(sync2any.getMysqldump());
             builder.withArg("-h"+dbParam.get("host"));
             builder.withArg("-P"+dbParam.get("port"));
@@ -87,25 +149,20 @@ public class MysqlOriginDataExtractImpl implements OriginDataExtract {
             builder.withArg("--skip-tz-utc");
             builder.withArgs("--databases",tableMeta.getDbName());
             builder.withArgs("--tables",tableMeta.getTableName());
-            builder.withOutputConsumer(stream -> FileUtils.copyToFile(stream,sqlFile));
-            //120分钟超时
-            builder.withTimeoutMillis(1000*60*120);
-            ProcResult result=builder.run();
-            long sizeInBytes = FileUtils.sizeOf(sqlFile);
-            log.info("表{} dump完毕！size:{}mb",tableMeta.getTableName(),sizeInBytes/1024/1024);
-
-            if(result.getExitValue()!=0)
-            {
-                throw new IllegalAccessException("mysql dump fail! exitValue:"+result.getExitValue()+" output:"+result.getOutputString());
-            }
-
-
-            if(!sqlFile.exists())
+            if(Objects.nonNull(checkpoint))
             {
-                throw new ShouldNeverHappenException("mysqldump error,sql file is not exists!");
+                //按主键的顺序dump，已载入的最大主键之前的数据都已载入
+                builder.withArg("--order-by-primary");
+                String pkName = JdbcOriginDataExtractImpl.getChunkKey(tableMeta);
+                if(Objects.nonNull(pkName) && Objects.nonNull(checkpoint.getLoadedPk()))
+                {
+                    builder.withArg("--where=`"+pkName+"` > "+checkpoint.getLoadedPk());
+                    log.info("表{}从断点继续dump，主键大于{}",tableMeta.getTableName(),checkpoint.getLoadedPk());
+                }
             }
-
-            return sqlFile;
+            //120分钟超时
+            builder.withTimeoutMillis(1000*60*120);
+            return builder;
         }finally {
             DbUtil.close(dbConn);
         }
@@ -18,7 +18,7 @@ public abstract class AbstractLoadService {
      * 对es来说就是index
      * 命名规则：Load类型$targetDbId$tableName   如：“es_mall_user”
      */
-    protected Set<String> LOAD_STORAGE = new HashSet<>();
+    protected Set<String> LOAD_STORAGE = ConcurrentHashMap.newKeySet();
     private static Map<String,AbstractLoadService> serviceMap = new ConcurrentHashMap<>();
 
     /**
@@ -59,6 +59,38 @@ public abstract class AbstractLoadService {
      */
     public abstract int operateData(CudRequest request) throws IOException;
 
+    /**
+     * 批量执行增删改（增量同步按批消费时使用），requestList需按接收顺序排列。
+     * 默认逐条调用operateData，子类可以覆盖为真正的批量写入
+     * @param requestList
+     * @return
+     * @throws IOException
+     */
+    public int batchOperateData(List<CudRequest> requestList) throws IOException {
+        int effectNums = 0;
+        for (CudRequest request : requestList) {
+            effectNums += operateData(request);
+        }
+        return effectNums;
+    }
+
+    /**
+     * 提交offset之前调用：等待某个topicGroup已经接收、但还在异步写入中的数据全部写入目标数据源。
+     * 默认没有异步写入，直接返回
+     * @param topicGroup
+     * @throws IOException 有数据写入失败
+     */
+    public void flushPending(String topicGroup) throws IOException {
+    }
+
+    /**
+     * 启动时、开始监听之前调用：恢复上次停止时已经接收但还未写入目标数据源的数据。
+     * 默认没有需要恢复的数据
+     * @throws IOException
+     */
+    public void recover() throws IOException {
+    }
+
     /**
      * 批量新增
      * @param requestList
@@ -67,6 +99,27 @@ public abstract class AbstractLoadService {
      */
     public abstract int batchAdd(List<CudRequest> requestList) throws IOException;
 
+    /**
+     * batchAdd是否可以被多个线程同时调用（载入原始数据时并行写入）。
+     * 默认不可以，只有一个线程写入
+     * @return
+     */
+    public boolean isConcurrentBatchAdd() {
+        return false;
+    }
+
+    /**
+     * 上次载入原始数据中断、从断点继续载入之前调用，断点之后可能已有部分数据写入了目标表。
+     * 默认重复写入同一行不会产生重复数据（es按id覆盖、mysql按主键upsert），可以直接从断点继续
+     * @param dbId
+     * @param table
+     * @return 是否可以从断点继续；返回false时已清空目标表，需要重新载入全部数据
+     * @throws IOException
+     */
+    public boolean prepareResume(String dbId, String table) throws IOException {
+        return true;
+    }
+
     /**
      * 载入原始数据时，将保存在缓冲队列的数据全部持久化（ck用）
      * @param
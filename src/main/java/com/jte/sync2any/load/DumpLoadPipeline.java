@@ -0,0 +1,167 @@
+package com.jte.sync2any.load;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jte.sync2any.model.config.DumpLoad;
+import com.jte.sync2any.model.es.CudRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 载入原始数据的流水线：调用线程按顺序读取（dump文件的每一行，或者jdbc查询出的每一批），
+ * 解析线程池把每一行转换为一批CudRequest，载入线程池调用batchAdd写入目标数据源。
+ * 原始数据都是新增，不需要保持顺序，所以解析和写入都可以并行。
+ * 线程池的队列满时提交方阻塞，内存中最多只有两个队列长度的数据。
+ * batchAdd不能并发调用的载入服务（如ck）只有一个载入线程。
+ * 需要记录进度时，每一项数据及它之前的所有数据都载入后按读取的顺序回调，用于保存断点。
+ */
+@Slf4j
+public class DumpLoadPipeline {
+
+    private final DumpLoad config;
+    private final String name;
+
+    /**
+     * @param config
+     * @param name   表名，用于线程名和日志
+     */
+    public DumpLoadPipeline(DumpLoad config, String name) {
+        this.config = config;
+        this.name = name;
+    }
+
+    /**
+     * 读取、解析并写入所有数据，出错时停止读取，等待已提交的任务结束后抛出第一个异常
+     *
+     * @param source      数据来源，在调用线程中迭代
+     * @param parser      在解析线程中调用
+     * @param loadService 在载入线程中调用batchAdd
+     * @return 载入的行数
+     */
+    public <T> long load(Iterator<T> source, Function<T, List<CudRequest>> parser, AbstractLoadService loadService) throws IOException {
+        return load(source, parser, loadService, null);
+    }
+
+    /**
+     * @param onLoaded 每一项数据及它之前的所有数据都载入后，按读取的顺序在载入线程中调用，
+     *                 参数为该项的最后一个请求（没有请求时为null）；为null时不跟踪进度
+     * @see #load(Iterator, Function, AbstractLoadService)
+     */
+    public <T> long load(Iterator<T> source, Function<T, List<CudRequest>> parser, AbstractLoadService loadService,
+                         Consumer<CudRequest> onLoaded) throws IOException {
+        int loadThreads = loadService.isConcurrentBatchAdd() ? Math.max(config.getLoadThreads(), 1) : 1;
+        ThreadPoolExecutor parsePool = newPool("dump-parse-" + name + "-%d", Math.max(config.getParseThreads(), 1));
+        ThreadPoolExecutor loadPool = newPool("dump-load-" + name + "-%d", loadThreads);
+        LoadedWatermark watermark = Objects.isNull(onLoaded) ? null : new LoadedWatermark(onLoaded);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        AtomicLong count = new AtomicLong();
+        long seq = 0;
+        try {
+            while (Objects.isNull(error.get()) && source.hasNext()) {
+                T item = source.next();
+                long itemSeq = seq++;
+                parsePool.execute(() -> {
+                    if (Objects.nonNull(error.get())) {
+                        return;
+                    }
+                    try {
+                        List<CudRequest> requestList = parser.apply(item);
+                        //跟踪进度时没有请求的项也要经过载入线程，保证回调都在载入线程中
+                        if (requestList.isEmpty() && Objects.isNull(watermark)) {
+                            return;
+                        }
+                        loadPool.execute(() -> {
+                            if (Objects.nonNull(error.get())) {
+                                return;
+                            }
+                            try {
+                                if (!requestList.isEmpty()) {
+                                    loadService.batchAdd(requestList);
+                                    count.addAndGet(requestList.size());
+                                }
+                                if (Objects.nonNull(watermark)) {
+                                    watermark.loaded(itemSeq, requestList.isEmpty() ? null : requestList.get(requestList.size() - 1));
+                                }
+                            } catch (Exception e) {
+                                error.compareAndSet(null, e);
+                            }
+                        });
+                    } catch (Exception e) {
+                        error.compareAndSet(null, e);
+                    }
+                });
+            }
+        } finally {
+            //解析任务全部结束后才不会再有新的写入任务
+            shutdownAndWait(parsePool);
+            shutdownAndWait(loadPool);
+        }
+        if (Objects.nonNull(error.get())) {
+            throw new IOException("load origin data fail, table:" + name, error.get());
+        }
+        log.info("dump load pipeline finished, table:{} rows:{} loadThreads:{}", name, count.get(), loadThreads);
+        return count.get();
+    }
+
+    /**
+     * 固定线程数、有界队列，队列满时提交方阻塞
+     */
+    private ThreadPoolExecutor newPool(String nameFormat, int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(config.getQueueSize(), 1)),
+                new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build(),
+                (r, executor) -> {
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("interrupted while waiting for the queue, table:" + name, e);
+                    }
+                });
+    }
+
+    private void shutdownAndWait(ThreadPoolExecutor pool) {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("waiting for dump load pipeline, table:{} queue:{}", name, pool.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 已连续载入到的位置：乱序完成的项先暂存，前面的项都完成后再按顺序回调
+     */
+    private static class LoadedWatermark {
+        private final Consumer<CudRequest> onLoaded;
+        private final TreeMap<Long, CudRequest> loadedMap = new TreeMap<>();
+        private long next = 0;
+
+        LoadedWatermark(Consumer<CudRequest> onLoaded) {
+            this.onLoaded = onLoaded;
+        }
+
+        synchronized void loaded(long seq, CudRequest lastRequest) {
+            loadedMap.put(seq, lastRequest);
+            while (!loadedMap.isEmpty() && loadedMap.firstKey() == next) {
+                onLoaded.accept(loadedMap.pollFirstEntry().getValue());
+                next++;
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.jte.sync2any.load;
 
 import com.jte.sync2any.conf.SpringContextUtils;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
+import com.jte.sync2any.model.mysql.DecodedRow;
 import com.jte.sync2any.model.mysql.Field;
 import com.jte.sync2any.model.mysql.Row;
 import com.jte.sync2any.model.mysql.TableMeta;
@@ -43,6 +44,21 @@ public abstract class DynamicDataAssign {
 
     }
 
+    /**
+     * 获取动态表名
+     * @param row
+     * @param tableMeta
+     * @return
+     */
+    public static String getDynamicTableName(DecodedRow row,TableMeta tableMeta){
+        if(StringUtils.isNotBlank(tableMeta.getDynamicTablenameAssigner())){
+            Object shardingValue = getShardingValue(row,tableMeta);
+            return getDynamicTableName(shardingValue,tableMeta);
+        }else{
+            return tableMeta.getTargetTableName().toLowerCase();
+        }
+    }
+
     /**
      * 获取动态表名
      * @param ShardingValue
@@ -98,5 +114,18 @@ public abstract class DynamicDataAssign {
         return field.getValue();
     }
 
-
+    /**
+     * 获取分区健对应的值
+     *
+     * @param row
+     * @param tableMeta
+     * @return
+     */
+    private static Object getShardingValue(DecodedRow row, TableMeta tableMeta) {
+        if (StringUtils.isBlank(tableMeta.getShardingKey()) || Objects.isNull(row)) {
+            return null;
+        }
+        int position = tableMeta.getColumnPosition(tableMeta.getShardingKey());
+        return position < 0 ? null : row.get(position);
+    }
 }
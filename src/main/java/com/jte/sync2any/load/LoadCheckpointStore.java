@@ -0,0 +1,59 @@
+package com.jte.sync2any.load;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jte.sync2any.model.core.LoadCheckpoint;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 载入断点的存储，每个表一个json文件，文件名为表的规则key。
+ * 先写临时文件再改名，进程在写入时退出也不会留下不完整的断点。
+ */
+public class LoadCheckpointStore {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final File dir;
+
+    public LoadCheckpointStore(String dir) {
+        this.dir = new File(dir);
+    }
+
+    /**
+     * @param key 表的规则key
+     * @return 没有断点时返回null
+     */
+    public LoadCheckpoint get(String key) throws IOException {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        return MAPPER.readValue(file, LoadCheckpoint.class);
+    }
+
+    public void save(String key, LoadCheckpoint checkpoint) throws IOException {
+        FileUtils.forceMkdir(dir);
+        File file = getFile(key);
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(MAPPER.writeValueAsBytes(checkpoint));
+            out.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(getFile(key).toPath());
+    }
+
+    private File getFile(String key) {
+        return new File(dir, key + ".json");
+    }
+}
@@ -0,0 +1,146 @@
+package com.jte.sync2any.load;
+
+import com.jte.sync2any.extract.impl.JdbcOriginDataExtractImpl;
+import com.jte.sync2any.model.core.LoadCheckpoint;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.TableMeta;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 跟踪一个表的原始数据的载入进度，定时保存断点。
+ * 单列整数主键的表按主键的顺序dump（mysqldump --order-by-primary，jdbc的每个分片ORDER BY主键），
+ * 记录已载入的最大主键，重启后只dump该主键之后的数据；file方式下还记录dump文件已载入的行数，文件还在时不需要重新dump。
+ * 保存断点前先调用flushBatchAdd，保证断点之前的数据都已写入目标数据源（如ck的缓冲区）。
+ */
+@Slf4j
+public class LoadCheckpointTracker {
+
+    private final LoadCheckpointStore store;
+    private final String key;
+    private final LoadCheckpoint checkpoint;
+    private final AbstractLoadService loadService;
+    private final long intervalMs;
+    private final boolean pkOrdered;
+    /**
+     * jdbc方式下每个分片已载入的最大主键
+     */
+    private final long[] chunkLoadedPk;
+    private long lastSaveTime = System.currentTimeMillis();
+
+    /**
+     * @param store
+     * @param key         表的规则key
+     * @param checkpoint  jdbc方式下需要已经设置了分片
+     * @param tableMeta
+     * @param loadService
+     * @param intervalMs  保存断点的间隔
+     */
+    public LoadCheckpointTracker(LoadCheckpointStore store, String key, LoadCheckpoint checkpoint, TableMeta tableMeta,
+                                 AbstractLoadService loadService, long intervalMs) {
+        this.store = store;
+        this.key = key;
+        this.checkpoint = checkpoint;
+        this.loadService = loadService;
+        this.intervalMs = intervalMs;
+        this.pkOrdered = Objects.nonNull(JdbcOriginDataExtractImpl.getChunkKey(tableMeta));
+        List<long[]> chunks = checkpoint.getChunks();
+        if (Objects.isNull(chunks)) {
+            this.chunkLoadedPk = null;
+        } else {
+            this.chunkLoadedPk = new long[chunks.size()];
+            for (int i = 0; i < chunks.size(); i++) {
+                chunkLoadedPk[i] = chunks.get(i)[0] - 1;
+            }
+        }
+    }
+
+    /**
+     * DumpLoadPipeline的onLoaded：按读取的顺序，每一项（file方式下为一行）载入后调用
+     *
+     * @param lastRequest 该项的最后一个请求，没有请求时为null
+     */
+    public synchronized void loaded(CudRequest lastRequest) {
+        checkpoint.setLoadedLines(checkpoint.getLoadedLines() + 1);
+        if (pkOrdered && Objects.nonNull(lastRequest)) {
+            long pk = Long.parseLong(lastRequest.getPkValueStr());
+            if (Objects.isNull(chunkLoadedPk)) {
+                checkpoint.setLoadedPk(pk);
+            } else {
+                int chunk = findChunk(pk);
+                if (chunk >= 0) {
+                    chunkLoadedPk[chunk] = pk;
+                }
+            }
+        }
+        if (System.currentTimeMillis() - lastSaveTime >= intervalMs) {
+            try {
+                save();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 写入已缓冲的数据后保存断点
+     */
+    public synchronized void save() throws IOException {
+        loadService.flushBatchAdd();
+        lastSaveTime = System.currentTimeMillis();
+        checkpoint.setUpdateTime(lastSaveTime);
+        store.save(key, snapshot());
+        log.debug("load checkpoint saved, key:{} loadedLines:{} loadedPk:{}", key, checkpoint.getLoadedLines(), checkpoint.getLoadedPk());
+    }
+
+    /**
+     * jdbc方式下只保存还未载入的主键范围
+     */
+    LoadCheckpoint snapshot() {
+        LoadCheckpoint snapshot = new LoadCheckpoint();
+        snapshot.setDumpMode(checkpoint.getDumpMode());
+        snapshot.setDataFile(checkpoint.getDataFile());
+        snapshot.setLoadedLines(checkpoint.getLoadedLines());
+        snapshot.setLoadedPk(checkpoint.getLoadedPk());
+        snapshot.setSnapshotPosition(checkpoint.getSnapshotPosition());
+        snapshot.setUpdateTime(checkpoint.getUpdateTime());
+        if (Objects.nonNull(chunkLoadedPk)) {
+            List<long[]> remaining = new ArrayList<>();
+            List<long[]> chunks = checkpoint.getChunks();
+            for (int i = 0; i < chunks.size(); i++) {
+                long[] range = chunks.get(i);
+                if (chunkLoadedPk[i] < range[1]) {
+                    remaining.add(new long[]{chunkLoadedPk[i] + 1, range[1]});
+                }
+            }
+            snapshot.setChunks(remaining);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 分片按主键升序排列，二分查找主键所在的分片
+     */
+    private int findChunk(long pk) {
+        List<long[]> chunks = checkpoint.getChunks();
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long[] range = chunks.get(mid);
+            if (pk < range[0]) {
+                high = mid - 1;
+            } else if (pk > range[1]) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
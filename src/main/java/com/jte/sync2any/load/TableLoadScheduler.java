@@ -0,0 +1,139 @@
+package com.jte.sync2any.load;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 多个表的原始数据同时dump和载入：最多同时执行threads个表，同一个源数据库最多同时执行threadsPerDb个表。
+ * 指定了exclusiveKey的表（如写入ck的表，batchAdd不能并发调用）同一个exclusiveKey同时只执行一个。
+ * 提交的表先进入等待队列，只有满足以上限制的表才会交给线程池执行（按提交顺序，跳过暂时不能执行的表），
+ * 线程池的线程不会因为等待限制而空占，一个表执行完后再从等待队列中选出可以执行的表。
+ * 某个表失败后，还未开始的表不再执行，正在执行的表执行完后由{@link #awaitAll()}抛出第一个异常。
+ */
+@Slf4j
+public class TableLoadScheduler {
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final int threadsPerDb;
+    /**
+     * 以下状态都由this保护
+     */
+    private final List<Job> waitingList = new LinkedList<>();
+    private final Map<String, Integer> dbRunningMap = new HashMap<>();
+    private final Set<String> exclusiveRunningSet = new HashSet<>();
+    private int running;
+    private Exception error;
+
+    /**
+     * @param threads      最多同时执行的表数
+     * @param threadsPerDb 同一个源数据库最多同时执行的表数
+     */
+    public TableLoadScheduler(int threads, int threadsPerDb) {
+        this.threads = Math.max(threads, 1);
+        this.threadsPerDb = Math.max(threadsPerDb, 1);
+        this.executor = Executors.newFixedThreadPool(this.threads,
+                new ThreadFactoryBuilder().setNameFormat("table-load-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @param name         表名，用于日志
+     * @param sourceDbId   源数据库
+     * @param exclusiveKey 相同的exclusiveKey同时只执行一个，为null时不限制
+     * @param task         dump和载入一个表
+     */
+    public synchronized void submit(String name, String sourceDbId, String exclusiveKey, Callable<?> task) {
+        waitingList.add(new Job(name, sourceDbId, exclusiveKey, task));
+        dispatch();
+    }
+
+    /**
+     * 等待所有表执行完
+     *
+     * @throws Exception 第一个失败的表的异常
+     */
+    public void awaitAll() throws Exception {
+        try {
+            synchronized (this) {
+                while (running > 0 || !waitingList.isEmpty()) {
+                    wait();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        if (Objects.nonNull(error)) {
+            throw error;
+        }
+    }
+
+    /**
+     * 按提交顺序把满足限制的表交给线程池，需要持有锁
+     */
+    private void dispatch() {
+        if (Objects.nonNull(error)) {
+            waitingList.forEach(job -> log.warn("skip loading origin data of {} because another table failed", job.name));
+            waitingList.clear();
+            notifyAll();
+            return;
+        }
+        for (Iterator<Job> it = waitingList.iterator(); it.hasNext() && running < threads; ) {
+            Job job = it.next();
+            if (dbRunningMap.getOrDefault(job.sourceDbId, 0) >= threadsPerDb
+                    || (Objects.nonNull(job.exclusiveKey) && exclusiveRunningSet.contains(job.exclusiveKey))) {
+                continue;
+            }
+            it.remove();
+            running++;
+            dbRunningMap.merge(job.sourceDbId, 1, Integer::sum);
+            if (Objects.nonNull(job.exclusiveKey)) {
+                exclusiveRunningSet.add(job.exclusiveKey);
+            }
+            executor.execute(() -> run(job));
+        }
+    }
+
+    private void run(Job job) {
+        Exception failure = null;
+        try {
+            job.task.call();
+        } catch (Exception e) {
+            log.error("load origin data of {} fail", job.name, e);
+            failure = e;
+        } finally {
+            finish(job, failure);
+        }
+    }
+
+    private synchronized void finish(Job job, Exception failure) {
+        if (Objects.nonNull(failure) && Objects.isNull(error)) {
+            error = failure;
+        }
+        running--;
+        dbRunningMap.merge(job.sourceDbId, -1, Integer::sum);
+        if (Objects.nonNull(job.exclusiveKey)) {
+            exclusiveRunningSet.remove(job.exclusiveKey);
+        }
+        dispatch();
+        notifyAll();
+    }
+
+    private static class Job {
+        final String name;
+        final String sourceDbId;
+        final String exclusiveKey;
+        final Callable<?> task;
+
+        Job(String name, String sourceDbId, String exclusiveKey, Callable<?> task) {
+            this.name = name;
+            this.sourceDbId = sourceDbId;
+            this.exclusiveKey = exclusiveKey;
+            this.task = task;
+        }
+    }
+}
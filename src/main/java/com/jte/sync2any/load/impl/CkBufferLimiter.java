@@ -0,0 +1,119 @@
+package com.jte.sync2any.load.impl;
+
+import com.jte.sync2any.model.config.CkBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 所有clickhouse缓冲区共用的内存上限（按估算的字节数统计）。
+ * 缓冲的数据超过上限时暂停写入clickhouse的kafka监听器，写入clickhouse后低于低水位时恢复，
+ * 避免clickhouse变慢时不断从kafka读取数据直到内存溢出。
+ */
+@Slf4j
+public class CkBufferLimiter {
+
+    private final long maxBytes;
+    private final long resumeBytes;
+    /**
+     * 写入clickhouse的kafka监听器
+     */
+    private final Supplier<Collection<KafkaMessageListenerContainer>> containerSupplier;
+
+    private final AtomicLong bufferedRows = new AtomicLong();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private volatile boolean paused = false;
+    /**
+     * 由本类暂停的监听器，恢复时只恢复这些
+     */
+    private final Set<KafkaMessageListenerContainer> pausedSet = new HashSet<>();
+
+    public CkBufferLimiter(CkBuffer config, Supplier<Collection<KafkaMessageListenerContainer>> containerSupplier) {
+        this.maxBytes = config.getMaxBufferedMb() * 1024L * 1024L;
+        this.resumeBytes = Math.min(config.getResumeBufferedMb(), config.getMaxBufferedMb()) * 1024L * 1024L;
+        this.containerSupplier = containerSupplier;
+    }
+
+    /**
+     * 数据放入缓冲区后调用
+     *
+     * @param bytes 估算的字节数
+     */
+    public void acquire(long bytes) {
+        bufferedRows.incrementAndGet();
+        long total = bufferedBytes.addAndGet(bytes);
+        if (!paused && total > maxBytes) {
+            pause();
+        }
+    }
+
+    /**
+     * 数据从缓冲区取出并写入（无论成功与否）后调用
+     *
+     * @param rows
+     * @param bytes 估算的字节数，与acquire时一致
+     */
+    public void release(int rows, long bytes) {
+        bufferedRows.addAndGet(-rows);
+        long total = bufferedBytes.addAndGet(-bytes);
+        if (paused && total <= resumeBytes) {
+            resume();
+        }
+    }
+
+    /**
+     * 先标记为暂停再检查缓冲的数据量：与release的“先减少数据量再检查是否暂停”配合，
+     * 检查之后释放的数据一定能看到暂停标记并调用resume，不会在缓冲区已经变空后一直暂停
+     */
+    private synchronized void pause() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        long total = bufferedBytes.get();
+        if (total <= maxBytes) {
+            //调用之前已经有数据写入clickhouse
+            paused = false;
+            return;
+        }
+        for (KafkaMessageListenerContainer container : containerSupplier.get()) {
+            if (container.isRunning() && !container.isPauseRequested()) {
+                container.pause();
+                pausedSet.add(container);
+            }
+        }
+        log.warn("ck buffer is full, pause kafka listeners:{} bufferedRows:{} bufferedBytes:{}",
+                pausedSet.size(), bufferedRows.get(), total);
+    }
+
+    private synchronized void resume() {
+        if (!paused) {
+            return;
+        }
+        long total = bufferedBytes.get();
+        if (total > resumeBytes) {
+            //调用之前又有数据放入缓冲区
+            return;
+        }
+        paused = false;
+        pausedSet.forEach(KafkaMessageListenerContainer::resume);
+        log.warn("ck buffer is below the low watermark, resume kafka listeners:{} bufferedRows:{} bufferedBytes:{}",
+                pausedSet.size(), bufferedRows.get(), total);
+        pausedSet.clear();
+    }
+
+    public long getBufferedRows() {
+        return bufferedRows.get();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+}
@@ -5,29 +5,40 @@ import cn.hutool.db.GlobalDbConfig;
 import cn.hutool.db.handler.NumberHandler;
 import cn.hutool.db.sql.SqlExecutor;
 import cn.hutool.log.level.Level;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jte.sync2any.conf.KafkaConfig;
+import com.jte.sync2any.conf.RuleConfigParser;
+import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.core.SyncMetrics;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
 import com.jte.sync2any.load.AbstractLoadService;
+import com.jte.sync2any.model.config.CkBuffer;
+import com.jte.sync2any.model.config.Conn;
+import com.jte.sync2any.model.config.Sync2any;
 import com.jte.sync2any.model.es.CudRequest;
-import com.jte.sync2any.model.mysql.Field;
-import com.jte.sync2any.model.mysql.Row;
+import com.jte.sync2any.model.mysql.ColumnMeta;
+import com.jte.sync2any.model.mysql.DecodedRow;
 import com.jte.sync2any.model.mysql.TableMeta;
-import com.jte.sync2any.model.mysql.TableRecords;
+import com.jte.sync2any.util.CollectionUtils;
 import com.jte.sync2any.util.DbUtils;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
@@ -49,14 +60,10 @@ public class CkLoadServiceImpl extends AbstractLoadService {
      * SELECT count(*) FROM a;
      */
     private static final String COUNT_SQL_TEMPLATE = "SELECT COUNT(*) FROM %s ";
+    private static final String TRUNCATE_SQL_TEMPLATE = "TRUNCATE TABLE IF EXISTS %s ";
 
     private final String CMT_ENGINE = "CollapsingMergeTree";
 
-    /**
-     * 每次执行定时任务最大的处理数量
-     */
-    private final int maxHandleNumPerTask = 20000;
-
     /**
      * 每次批量新增任务最大的处理数量
      */
@@ -70,23 +77,48 @@ public class CkLoadServiceImpl extends AbstractLoadService {
      */
     //private final int maxSentSizePerAdd = 40 + (2 * 250000000);
 
+    /**
+     * 定时检查缓冲区是否超时的间隔（毫秒）
+     */
+    private static final long BUFFER_CHECK_INTERVAL_MS = 200;
+
     @Resource
     Map<String, Object> allTargetDatasource;
+    @Resource
+    Sync2any sync2any;
 
     /**
-     * 定时任务用于持久化增量数据
+     * 定时任务用于检查缓冲区是否超时
+     */
+    private ScheduledExecutorService scheduledThreadPool = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ck-buffer-timer").setDaemon(true).build());
+    /**
+     * 各个缓冲区共用的写入线程池
      */
-    private ScheduledExecutorService scheduledThreadPool = Executors.newSingleThreadScheduledExecutor();
+    private ExecutorService flushExecutor;
 
     /**
-     * 用来存放待持久化的增量数据
+     * 用来存放待持久化的增量数据，每个目标表一个缓冲区
+     * key: targetDbId$targetTableName
      */
-    private static LinkedBlockingQueue<InsertItem> saveQueue = new LinkedBlockingQueue<>();
+    private static final Map<String, CkTableBuffer> BUFFER_MAP = new ConcurrentHashMap<>();
+    /**
+     * 所有缓冲区共用的内存上限
+     */
+    private static CkBufferLimiter limiter;
+    /**
+     * 预写日志，未开启时为null
+     */
+    private static SegmentLog wal;
     /**
      * 用来存放待持久化的存留数据
      * 该集合不存在并发，每次使用只保存同一类型的表数据
      */
     private LinkedBlockingQueue<InsertItem> batchAddQueue = new LinkedBlockingQueue<>();
+    /**
+     * 以RowBinary格式写入
+     */
+    private final CkRowBinaryWriter rowBinaryWriter = new CkRowBinaryWriter();
     /**
      * 最新的批量载入的TableMeta
      */
@@ -95,34 +127,114 @@ public class CkLoadServiceImpl extends AbstractLoadService {
     public CkLoadServiceImpl() {
         GlobalDbConfig.setReturnGeneratedKey(false);
         GlobalDbConfig.setShowSql(true, false, true, Level.DEBUG);
+    }
+
+    @PostConstruct
+    public void initBuffer() {
         //初始化持久任务
-        log.info("初始化ck持久任务！");
-        scheduledThreadPool.scheduleAtFixedRate(new PersistentTask(), 5, 5, TimeUnit.SECONDS);
+        CkBuffer config = sync2any.getCkBuffer();
+        log.info("初始化ck持久任务！config:{}", config);
+        limiter = new CkBufferLimiter(config, this::ckListeners);
+        flushExecutor = Executors.newFixedThreadPool(Math.max(config.getFlushThreads(), 1),
+                new ThreadFactoryBuilder().setNameFormat("ck-buffer-flush-%d").setDaemon(true).build());
+        scheduledThreadPool.scheduleWithFixedDelay(() -> {
+            long now = System.currentTimeMillis();
+            BUFFER_MAP.values().forEach(buffer -> buffer.flushIfExpired(now));
+        }, BUFFER_CHECK_INTERVAL_MS, BUFFER_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (Constants.YES.equals(config.getWalEnabled())) {
+            try {
+                wal = new SegmentLog(new File(config.getWalDir()), config.getWalSegmentMb() * 1024 * 1024);
+            } catch (IOException e) {
+                throw new IllegalStateException("open ck wal error, dir:" + config.getWalDir(), e);
+            }
+        }
+        SyncMetrics.gauge("ck.buffer.rows", CkLoadServiceImpl::getBufferedRows);
+        SyncMetrics.gauge("ck.buffer.bytes", CkLoadServiceImpl::getBufferedBytes);
+        SyncMetrics.gauge("ck.buffer.paused", () -> isBufferFull() ? 1 : 0);
+        SyncMetrics.gauge("ck.batch.add.queue", batchAddQueue::size);
+    }
+
+    @PreDestroy
+    public void closeBuffer() {
+        scheduledThreadPool.shutdown();
+        //写入剩余的数据
+        BUFFER_MAP.values().forEach(CkTableBuffer::scheduleFlush);
+        if (Objects.nonNull(flushExecutor)) {
+            flushExecutor.shutdown();
+            try {
+                flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (Objects.nonNull(wal)) {
+            wal.close();
+        }
+    }
+
+    /**
+     * 重放预写日志：上次停止时已经提交offset但还未写入clickhouse的数据，同步写入后删除日志。
+     * 没有提交offset的数据kafka会重新投递，不重放，否则会重复写入。
+     * 需要在加载完所有规则和表引擎之后、开始监听之前调用
+     */
+    @Override
+    public void recover() throws IOException {
+        if (Objects.isNull(wal)) {
+            return;
+        }
+        List<InsertItem> itemList = new ArrayList<>();
+        try {
+            wal.replay(new SegmentLog.RecordHandler() {
+                @Override
+                public void handle(byte[] record) throws IOException {
+                    InsertItem item = fromWalRecord(record);
+                    if (Objects.nonNull(item)) {
+                        itemList.add(item);
+                    }
+                }
+
+                @Override
+                public void finish() {
+                    saveBuffer(itemList);
+                    itemList.clear();
+                }
+            }, sync2any.getCkBuffer().getMaxRows());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("replay ck wal error", e);
+        }
+    }
+
+    /**
+     * 提交offset之前把这个topicGroup的预写日志记录标记为已提交并刷盘，缓冲区中的数据不需要等待写入clickhouse
+     */
+    @Override
+    public void flushPending(String topicGroup) {
+        if (Objects.nonNull(wal)) {
+            wal.commit(topicGroup);
+        }
     }
 
     /**
      * 此处参数只管往缓冲数组中追加数据（有顺序），并不负责实际的持久化。
+     * 缓冲的是解析后的行，到持久化时才按目标列的类型编码。
      * CollapsingMergeTree系列引擎都默认加sign，其他表引擎只支持新增
      *
      * @param cudRequest
      * @return
      */
     @Override
-    public int operateData(CudRequest cudRequest) {
-        TableRecords records = cudRequest.getRecords();
+    public int operateData(CudRequest cudRequest) throws IOException {
         TableMeta tableMeta = cudRequest.getTableMeta();
         boolean isCollapsingMergeTree = tableMeta.getCkTableEngine().contains(CMT_ENGINE);
         if (INSERT == cudRequest.getDmlType()) {
-            List<Object> valueList = buildSingleValuesByRow(records.getNewRows().get(0), tableMeta, isCollapsingMergeTree ? "1" : null);
-            saveQueue.add(new InsertItem(tableMeta, valueList));
+            addToBuffer(new InsertItem(tableMeta, cudRequest.getNewRow(), isCollapsingMergeTree ? "1" : null), cudRequest.getBinlogTimestamp());
         } else if (UPDATE == cudRequest.getDmlType() && isCollapsingMergeTree) {
-            List<Object> oldValueList = buildSingleValuesByRow(records.getOldRows().get(0), tableMeta, isCollapsingMergeTree ? "-1" : null);
-            List<Object> newValueList = buildSingleValuesByRow(records.getNewRows().get(0), tableMeta, isCollapsingMergeTree ? "1" : null);
-            saveQueue.add(new InsertItem(tableMeta, oldValueList));
-            saveQueue.add(new InsertItem(tableMeta, newValueList));
+            addToBuffer(new InsertItem(tableMeta, cudRequest.getOldRow(), "-1"), 0);
+            addToBuffer(new InsertItem(tableMeta, cudRequest.getNewRow(), "1"), cudRequest.getBinlogTimestamp());
         } else if (DELETE == cudRequest.getDmlType() && isCollapsingMergeTree) {
-            List<Object> valueList = buildSingleValuesByRow(records.getOldRows().get(0), tableMeta, isCollapsingMergeTree ? "-1" : null);
-            saveQueue.add(new InsertItem(tableMeta, valueList));
+            addToBuffer(new InsertItem(tableMeta, cudRequest.getOldRow(), "-1"), cudRequest.getBinlogTimestamp());
         } else {
             log.warn("found unknown operation type({}) when loading. engine:{} table:{}", cudRequest.getDmlType(), tableMeta.getCkTableEngine(), tableMeta.getTargetTableName());
         }
@@ -156,12 +268,11 @@ public class CkLoadServiceImpl extends AbstractLoadService {
         if (batchAddQueue.isEmpty() && requestList.isEmpty() && isForce) {
             return 0;
         }
-        requestList.stream().parallel().forEach((request -> {
+        requestList.forEach(request -> {
             TableMeta tableMeta = request.getTableMeta();
             boolean isCollapsingMergeTree = tableMeta.getCkTableEngine().contains(CMT_ENGINE);
-            List<Object> valueList = buildSingleValuesByReq(request, tableMeta, isCollapsingMergeTree ? "1" : null);
-            batchAddQueue.add(new InsertItem(tableMeta, valueList));
-        }));
+            batchAddQueue.add(new InsertItem(tableMeta, rowOf(request, tableMeta), isCollapsingMergeTree ? "1" : null));
+        });
 
         if (!requestList.isEmpty()) {
             lastBatchAddTableMeta = requestList.get(0).getTableMeta();
@@ -172,17 +283,11 @@ public class CkLoadServiceImpl extends AbstractLoadService {
             return 0;
         }
         //////////////////////开始真正入库/////////////////////////
-        List<Object> valueList = new ArrayList<>();
-        int batchAddQueueSize = batchAddQueue.size();
-        for (int i = 0; i < batchAddQueueSize; i++) {
-            valueList.addAll(batchAddQueue.poll().getValueList());
-        }
+        List<InsertItem> itemList = new ArrayList<>(batchAddQueue);
+        int batchAddQueueSize = itemList.size();
 
         TableMeta tableMeta = lastBatchAddTableMeta;
-        String sql = generateCompleteInsertSql(tableMeta, valueList);
-
-        DataSource ds = (DataSource) allTargetDatasource.get(tableMeta.getTargetDbId());
-        saveToCk(sql, ds, valueList, batchAddQueueSize);
+        saveItems(tableMeta, itemList);
         log.info("batch save size:{} table:{} targetDbId:{}", batchAddQueueSize, tableMeta.getTargetTableName(),tableMeta.getTargetDbId());
         //清空缓冲数组
         batchAddQueue.clear();
@@ -219,56 +324,73 @@ public class CkLoadServiceImpl extends AbstractLoadService {
         }
     }
 
+    /**
+     * MergeTree的insert不是幂等的，从断点继续载入会重复写入断点之后已经载入的数据，所以清空目标表后重新载入
+     */
+    @Override
+    public boolean prepareResume(String dbId, String table) throws IOException {
+        DataSource ds = (DataSource) DbUtils.getTargetDsByDbId(allTargetDatasource, dbId);
+        Connection connection = null;
+        try {
+            connection = ds.getConnection();
+            SqlExecutor.execute(connection, String.format(TRUNCATE_SQL_TEMPLATE, table));
+            cacheInitCount.put(dbId + "-" + table, 0L);
+            log.warn("truncate ck table:{} targetDbId:{} before reloading origin data", table, dbId);
+            return false;
+        } catch (SQLException e) {
+            throw new IOException("truncate ck table error, table:" + table, e);
+        } finally {
+            DbUtil.close(connection);
+        }
+    }
+
     @Override
     public void checkAndCreateStorage(TableMeta tableMeta) {
 
     }
 
 
-    private List<Object> buildSingleValuesByReq(CudRequest request, TableMeta tableMeta, String sign) {
+    /**
+     * 存量数据的请求只有参数（按目标列名），转换为与增量数据相同的DecodedRow
+     */
+    DecodedRow rowOf(CudRequest request, TableMeta tableMeta) {
+        if (Objects.nonNull(request.getNewRow())) {
+            return request.getNewRow();
+        }
         Map<String, Object> paramMap = request.getParameters();
-        List<Object> valuesList = new ArrayList<>();
-        tableMeta.getAllColumnList().stream()
-                .filter(c -> c.isInclude())
-                .forEach(c -> {
-                    Object value = paramMap.get(c.getTargetColumnName());
-                    int dataType = c.getDataType();
-                    if (Objects.isNull(value)) {
-                        value = (columnIsNumber(dataType) || columnIsDecimal(dataType)) ? 0 : null;
-                    } else if (columnIsNumber(dataType)) {
-                        value = Long.valueOf(value.toString());
-                    } else if (columnIsDecimal(dataType)) {
-                        value = Double.valueOf(value.toString());
-                    } else {
-                        value = value.toString();
-                    }
-                    valuesList.add(value);
-                });
-        if (StringUtils.isNotBlank(sign)) {
-            valuesList.add(sign);
+        List<ColumnMeta> columnList = tableMeta.getAllColumnList();
+        boolean[] included = tableMeta.getIncludedColumns();
+        DecodedRow row = new DecodedRow(columnList.size());
+        for (int i = 0; i < columnList.size(); i++) {
+            if (included[i]) {
+                row.set(i, paramMap.get(columnList.get(i).getTargetColumnName()));
+            }
         }
-        return valuesList;
+        return row;
     }
 
-    private List<Object> buildSingleValuesByRow(Row row, TableMeta tableMeta, String sign) {
-        List<Object> valuesList = new ArrayList<>();
-        tableMeta.getAllColumnList().stream()
-                .filter(c -> c.isInclude())
-                .forEach(c -> {
-                    Field field = row.getFields().stream().filter(e -> e.getName().equalsIgnoreCase(c.getColumnName())).findFirst().orElse(null);
-                    int dataType = c.getDataType();
-                    Object value = null;
-                    if (Objects.isNull(field.getValue())) {
-                        value = (columnIsNumber(dataType) || columnIsDecimal(dataType)) ? 0 : null;
-                    } else if (columnIsNumber(dataType)) {
-                        value = Long.valueOf(field.getValue().toString());
-                    } else if (columnIsDecimal(dataType)) {
-                        value = Double.valueOf(field.getValue().toString());
-                    } else {
-                        value = field.getValue().toString();
-                    }
-                    valuesList.add(value);
-                });
+    List<Object> buildSingleValuesByRow(DecodedRow row, TableMeta tableMeta, String sign) {
+        List<ColumnMeta> columnList = tableMeta.getAllColumnList();
+        boolean[] included = tableMeta.getIncludedColumns();
+        List<Object> valuesList = new ArrayList<>(columnList.size() + 1);
+        for (int i = 0; i < columnList.size(); i++) {
+            if (!included[i]) {
+                continue;
+            }
+            int dataType = columnList.get(i).getDataType();
+            Object fieldValue = row.get(i);
+            Object value;
+            if (Objects.isNull(fieldValue)) {
+                value = (columnIsNumber(dataType) || columnIsDecimal(dataType)) ? 0 : null;
+            } else if (columnIsNumber(dataType)) {
+                value = Long.valueOf(fieldValue.toString());
+            } else if (columnIsDecimal(dataType)) {
+                value = Double.valueOf(fieldValue.toString());
+            } else {
+                value = fieldValue.toString();
+            }
+            valuesList.add(value);
+        }
         if (StringUtils.isNotBlank(sign)) {
             valuesList.add(sign);
         }
@@ -303,76 +425,167 @@ public class CkLoadServiceImpl extends AbstractLoadService {
     }
 
     @Data
-    class InsertItem {
+    static class InsertItem {
         private TableMeta tableMeta;
-        private List<Object> valueList;
-
-        public InsertItem(TableMeta tableMeta, List<Object> valueList) {
+        private DecodedRow row;
+        /**
+         * CollapsingMergeTree系列的_sign列的值，其他表引擎为null
+         */
+        private String sign;
+        /**
+         * 估算占用的内存（字节）
+         */
+        private long bytes;
+        /**
+         * 在预写日志中的位置，未开启预写日志时为-1
+         */
+        private long walPosition = -1;
+        /**
+         * 对应的增量数据的binlog时间戳（秒），写入后记录延迟；同一个请求的多行只记录在最后一行，其余为0
+         */
+        private int binlogTimestamp;
+
+        public InsertItem(TableMeta tableMeta, DecodedRow row, String sign) {
             this.tableMeta = tableMeta;
-            this.valueList = valueList;
+            this.row = row;
+            this.sign = sign;
+            this.bytes = Objects.isNull(row) ? 0 : row.estimateBytes();
         }
     }
 
-    class PersistentTask implements Runnable {
+    /**
+     * 开启预写日志时先写入日志再放入缓冲区
+     */
+    private void addToBuffer(InsertItem item, int binlogTimestamp) throws IOException {
+        item.setBinlogTimestamp(binlogTimestamp);
+        if (Objects.nonNull(wal)) {
+            item.setWalPosition(wal.append(item.getTableMeta().getTopicGroup(), toWalRecord(item)));
+        }
+        getBuffer(item.getTableMeta()).add(item);
+    }
 
-        @Override
-        public void run() {
-            try {
-                //如果队列里面一直有元素，则会一直跑。
-                while(saveQueue.size() > 0){
-                    /**
-                     * 获取插入值，按表分组
-                     */
-                    Map<TableMeta, List<Object>> dataMap = new HashMap<>();
-                    /**
-                     * 获取insert数量，按表分组
-                     */
-                    Map<TableMeta, Integer> countMap = new HashMap<>();
-                    int currentQueueSize = new Integer(saveQueue.size());
-                    //每次最多1万
-                    currentQueueSize = currentQueueSize > maxHandleNumPerTask ? maxHandleNumPerTask : currentQueueSize;
-                    if (currentQueueSize > 0) {
-                        log.info("ck currentQueueSize:{}", currentQueueSize);
-                    }
-                    for (int i = 0; i < currentQueueSize; i++) {
-                        InsertItem insertItem = saveQueue.poll();
-                        if (Objects.isNull(insertItem)) {
-                            break;
-                        }
-                        List<Object> valueList = dataMap.get(insertItem.getTableMeta());
-                        Integer count = countMap.get(insertItem.getTableMeta());
-                        if (Objects.isNull(valueList)) {
-                            valueList = new ArrayList<>();
-                            valueList.addAll(insertItem.getValueList());
-                            dataMap.put(insertItem.getTableMeta(), valueList);
-                            countMap.put(insertItem.getTableMeta(), 1);
-                        } else {
-                            valueList.addAll(insertItem.getValueList());
-                            //sql数量加1
-                            countMap.put(insertItem.getTableMeta(), ++count);
-                        }
-                    }
-                    Set<TableMeta> tableMetaSet = dataMap.keySet();
-                    if (tableMetaSet.size() > 0) {
-                        log.info("ck tableMetaSize:{}", tableMetaSet.size());
-                    }
-                    //分组生成完整的insert语句
-                    for (TableMeta tableMeta : tableMetaSet) {
+    /**
+     * 预写日志中的一条记录：规则的key、sign、列数，每列一个标记（0：不存在 1：null 2：有值）和值的字符串
+     */
+    static byte[] toWalRecord(InsertItem item) throws IOException {
+        TableMeta tableMeta = item.getTableMeta();
+        DecodedRow row = item.getRow();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max((int) item.getBytes(), 64));
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeUTF(tableMeta.getTargetDbId() + "$" + tableMeta.getSourceDbId() + "$" + tableMeta.getTableName());
+        out.writeUTF(StringUtils.defaultString(item.getSign()));
+        out.writeInt(row.size());
+        for (int i = 0; i < row.size(); i++) {
+            if (!row.isPresent(i)) {
+                out.writeByte(0);
+            } else if (Objects.isNull(row.get(i))) {
+                out.writeByte(1);
+            } else {
+                byte[] value = row.get(i).toString().getBytes(StandardCharsets.UTF_8);
+                out.writeByte(2);
+                out.writeInt(value.length);
+                out.write(value);
+            }
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
 
-                        String sql = generateCompleteInsertSql(tableMeta, dataMap.get(tableMeta));
-                        //入库
-                        DataSource ds = (DataSource) allTargetDatasource.get(tableMeta.getTargetDbId());
-                        saveToCk(sql, ds, dataMap.get(tableMeta), countMap.get(tableMeta));
-                    }
-                }
-                log.info("execute PersistentTask over.");
-            } catch (Exception e) {
-                log.error("定时持久化异常：", e);
+    /**
+     * 由预写日志中的记录还原，规则已不存在或表结构（列数）已变化时返回null
+     */
+    static InsertItem fromWalRecord(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String ruleKey = in.readUTF();
+        String sign = in.readUTF();
+        int columnCount = in.readInt();
+        TableMeta tableMeta = RuleConfigParser.RULES_MAP.getIfPresent(ruleKey);
+        if (Objects.isNull(tableMeta) || tableMeta.getAllColumnList().size() != columnCount) {
+            log.warn("skip ck wal record, rule not found or columns changed, key:{} columnCount:{}", ruleKey, columnCount);
+            return null;
+        }
+        DecodedRow row = new DecodedRow(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            byte flag = in.readByte();
+            if (flag == 1) {
+                row.set(i, null);
+            } else if (flag == 2) {
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                row.set(i, new String(value, StandardCharsets.UTF_8));
             }
+        }
+        return new InsertItem(tableMeta, row, StringUtils.isEmpty(sign) ? null : sign);
+    }
 
+    private CkTableBuffer getBuffer(TableMeta tableMeta) {
+        String key = tableMeta.getTargetDbId() + "$" + tableMeta.getTargetTableName();
+        return CollectionUtils.computeIfAbsent(BUFFER_MAP, key,
+                k -> new CkTableBuffer(k, sync2any.getCkBuffer(), flushExecutor, limiter, this::saveBuffer));
+    }
+
+    /**
+     * 写入clickhouse的同步任务的kafka监听器
+     */
+    private Collection<KafkaMessageListenerContainer> ckListeners() {
+        return sync2any.getSyncConfigList().stream()
+                .filter(c -> Conn.DB_TYPE_CLICKHOUSE.equals(c.getTargetConn().getType()))
+                .map(c -> KafkaConfig.getKafkaListener(c.getSourceDbId(), c.getMq().getTopicGroup(), c.getMq().getTopicName()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 写入一个缓冲区中取出的数据。同一个目标表可能对应多个源表（TableMeta），按TableMeta分组写入
+     *
+     * @param itemList
+     */
+    void saveBuffer(List<InsertItem> itemList) {
+        Map<TableMeta, List<InsertItem>> dataMap = new LinkedHashMap<>();
+        for (InsertItem item : itemList) {
+            dataMap.computeIfAbsent(item.getTableMeta(), k -> new ArrayList<>()).add(item);
+        }
+        for (Map.Entry<TableMeta, List<InsertItem>> entry : dataMap.entrySet()) {
+            saveItems(entry.getKey(), entry.getValue());
+            entry.getValue().forEach(item -> item.getTableMeta().recordLag(item.getBinlogTimestamp()));
+            log.info("ck buffer save size:{} table:{} targetDbId:{}", entry.getValue().size(),
+                    entry.getKey().getTargetTableName(), entry.getKey().getTargetDbId());
+            //写入成功后才确认预写日志，失败的数据留在日志中，重启时重放
+            if (Objects.nonNull(wal)) {
+                entry.getValue().stream().filter(item -> item.getWalPosition() >= 0)
+                        .forEach(item -> wal.release(item.getWalPosition()));
+            }
         }
     }
 
+    /**
+     * 持久化同一个表的数据：优先以RowBinary格式写入，不支持时生成values写入
+     *
+     * @param tableMeta
+     * @param itemList
+     */
+    void saveItems(TableMeta tableMeta, List<InsertItem> itemList) {
+        DataSource ds = (DataSource) allTargetDatasource.get(tableMeta.getTargetDbId());
+        boolean isCollapsingMergeTree = tableMeta.getCkTableEngine().contains(CMT_ENGINE);
+        Connection connection = null;
+        try {
+            connection = ds.getConnection();
+            if (rowBinaryWriter.write(connection, tableMeta, itemList, isCollapsingMergeTree)) {
+                return;
+            }
+        } catch (Exception e) {
+            log.error("saveToCk by RowBinary error", e);
+            throw new ShouldNeverHappenException(e);
+        } finally {
+            DbUtil.close(connection);
+        }
+        List<Object> valueList = new ArrayList<>();
+        for (InsertItem item : itemList) {
+            valueList.addAll(buildSingleValuesByRow(item.getRow(), tableMeta, item.getSign()));
+        }
+        String sql = generateCompleteInsertSql(tableMeta, valueList);
+        saveToCk(sql, ds, valueList, itemList.size());
+    }
 
     /**
      * 生成一条完整的insertSql
@@ -435,6 +648,27 @@ public class CkLoadServiceImpl extends AbstractLoadService {
     }
 
     public static boolean isSaveQueueEmpty() {
-        return saveQueue.isEmpty();
+        return BUFFER_MAP.values().stream().allMatch(CkTableBuffer::isEmpty);
+    }
+
+    /**
+     * 所有缓冲区中待写入的行数
+     */
+    public static long getBufferedRows() {
+        return Objects.isNull(limiter) ? 0 : limiter.getBufferedRows();
+    }
+
+    /**
+     * 所有缓冲区中待写入的数据占用的内存（字节，估算值）
+     */
+    public static long getBufferedBytes() {
+        return Objects.isNull(limiter) ? 0 : limiter.getBufferedBytes();
+    }
+
+    /**
+     * 是否因为缓冲区已满暂停了kafka的消费
+     */
+    public static boolean isBufferFull() {
+        return Objects.nonNull(limiter) && limiter.isPaused();
     }
 }
@@ -0,0 +1,422 @@
+package com.jte.sync2any.load.impl;
+
+import cn.hutool.db.DbUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jte.sync2any.model.mysql.ColumnMeta;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import com.jte.sync2any.model.mysql.TableMeta;
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.clickhouse.ClickHouseConnection;
+import ru.yandex.clickhouse.ClickHouseStatement;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 以RowBinary格式写入clickhouse：每列的值按目标列的类型直接编码到输出流中，
+ * 不再经过PreparedStatement逐个绑定参数、驱动再拼接为文本的过程。
+ * 目标表的列类型通过DESCRIBE TABLE读取，每个TableMeta一份。
+ * 目标表有不支持的列类型（如Enum、Array）或连接不是clickhouse-jdbc的连接时返回false，由调用方改用PreparedStatement写入。
+ */
+@Slf4j
+public class CkRowBinaryWriter {
+
+    private static final String DESCRIBE_SQL_TEMPLATE = "DESCRIBE TABLE %s";
+
+    private static final String INSERT_SQL_TEMPLATE = "INSERT INTO %s (%s)";
+
+    private static final Pattern DECIMAL_PATTERN = Pattern.compile("Decimal\\((\\d+),\\s*(\\d+)\\)");
+    private static final Pattern DECIMAL_N_PATTERN = Pattern.compile("Decimal(32|64|128)\\((\\d+)\\)");
+    private static final Pattern DATETIME_PATTERN = Pattern.compile("DateTime(?:\\('([^']+)'\\))?");
+    private static final Pattern DATETIME64_PATTERN = Pattern.compile("DateTime64\\((\\d+)(?:,\\s*'([^']+)')?\\)");
+
+    /**
+     * mysql的时间值，秒后的小数部分可选
+     */
+    private static final DateTimeFormatter DATETIME_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd HH:mm:ss")
+            .optionalStart()
+            .appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true)
+            .optionalEnd()
+            .toFormatter();
+
+    private static final InsertPlan UNSUPPORTED = new InsertPlan(null, null);
+
+    /**
+     * key: TableMeta（按对象比较），表结构重新载入后旧的TableMeta会被回收
+     */
+    private final Cache<TableMeta, InsertPlan> planCache = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * 写入一批数据
+     *
+     * @param connection 可以是连接池包装过的连接
+     * @param tableMeta
+     * @param itemList   同一个表的数据
+     * @param sign       是否有_sign列（CollapsingMergeTree系列）
+     * @return false表示不支持RowBinary写入，没有写入任何数据
+     * @throws SQLException
+     */
+    public boolean write(Connection connection, TableMeta tableMeta, List<CkLoadServiceImpl.InsertItem> itemList, boolean sign) throws SQLException {
+        if (!connection.isWrapperFor(ClickHouseConnection.class)) {
+            return false;
+        }
+        ClickHouseConnection ckConnection = connection.unwrap(ClickHouseConnection.class);
+        InsertPlan plan = getPlan(ckConnection, tableMeta, sign);
+        if (UNSUPPORTED == plan) {
+            return false;
+        }
+        try (Statement statement = ckConnection.createStatement()) {
+            ((ClickHouseStatement) statement).sendRowBinaryStream(plan.insertSql, stream -> {
+                for (CkLoadServiceImpl.InsertItem item : itemList) {
+                    writeRow(stream, plan, item);
+                }
+            });
+        }
+        return true;
+    }
+
+    private InsertPlan getPlan(ClickHouseConnection connection, TableMeta tableMeta, boolean sign) throws SQLException {
+        try {
+            return planCache.get(tableMeta, () -> buildPlan(tableMeta, describe(connection, tableMeta.getTargetTableName()),
+                    connection.getTimeZone().toZoneId(), sign));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @param typeMap    目标表的列名与类型
+     * @param serverZone clickhouse服务端的时区，DateTime列未指定时区时使用
+     */
+    static InsertPlan buildPlan(TableMeta tableMeta, Map<String, String> typeMap, ZoneId serverZone, boolean sign) {
+        List<ColumnMeta> columnList = tableMeta.getAllColumnList();
+        boolean[] included = tableMeta.getIncludedColumns();
+        List<ColumnWriter> writerList = new ArrayList<>();
+        List<String> nameList = new ArrayList<>();
+        for (int i = 0; i < columnList.size(); i++) {
+            if (!included[i]) {
+                continue;
+            }
+            String name = columnList.get(i).getTargetColumnName();
+            ColumnWriter writer = ColumnWriter.of(i, typeMap.get(name), serverZone);
+            if (Objects.isNull(writer)) {
+                log.warn("column type not supported by RowBinary, fallback to values. table:{} column:{} type:{}",
+                        tableMeta.getTargetTableName(), name, typeMap.get(name));
+                return UNSUPPORTED;
+            }
+            writerList.add(writer);
+            nameList.add(name);
+        }
+        if (sign) {
+            ColumnWriter writer = ColumnWriter.of(ColumnWriter.SIGN_POSITION, typeMap.get("_sign"), serverZone);
+            if (Objects.isNull(writer)) {
+                log.warn("column type not supported by RowBinary, fallback to values. table:{} column:_sign type:{}",
+                        tableMeta.getTargetTableName(), typeMap.get("_sign"));
+                return UNSUPPORTED;
+            }
+            writerList.add(writer);
+            nameList.add("_sign");
+        }
+        String insertSql = String.format(INSERT_SQL_TEMPLATE, tableMeta.getTargetTableName(), String.join(", ", nameList));
+        return new InsertPlan(insertSql, writerList.toArray(new ColumnWriter[0]));
+    }
+
+    private Map<String, String> describe(Connection connection, String tableName) throws SQLException {
+        Map<String, String> typeMap = new HashMap<>();
+        Statement statement = null;
+        ResultSet rs = null;
+        try {
+            statement = connection.createStatement();
+            rs = statement.executeQuery(String.format(DESCRIBE_SQL_TEMPLATE, tableName));
+            while (rs.next()) {
+                typeMap.put(rs.getString("name"), rs.getString("type"));
+            }
+        } finally {
+            DbUtil.close(rs, statement);
+        }
+        return typeMap;
+    }
+
+    static void writeRow(ClickHouseRowBinaryStream stream, InsertPlan plan, CkLoadServiceImpl.InsertItem item) throws IOException {
+        DecodedRow row = item.getRow();
+        for (ColumnWriter writer : plan.writers) {
+            Object value = writer.position == ColumnWriter.SIGN_POSITION ? item.getSign() : row.get(writer.position);
+            writer.write(stream, value);
+        }
+    }
+
+    static class InsertPlan {
+        final String insertSql;
+        final ColumnWriter[] writers;
+
+        InsertPlan(String insertSql, ColumnWriter[] writers) {
+            this.insertSql = insertSql;
+            this.writers = writers;
+        }
+    }
+
+    /**
+     * 一列的编码方式。值为null时：Nullable列写入NULL，其他列写入类型的默认值（0、空字符串），与clickhouse的input_format_null_as_default一致
+     */
+    static class ColumnWriter {
+
+        static final int SIGN_POSITION = -1;
+
+        enum Kind {
+            INT8, INT16, INT32, INT64, UINT8, UINT16, UINT32, UINT64,
+            FLOAT32, FLOAT64, DECIMAL32, DECIMAL64, DECIMAL128,
+            STRING, DATE, DATETIME, DATETIME64
+        }
+
+        /**
+         * 在DecodedRow中的位置，SIGN_POSITION表示_sign列
+         */
+        final int position;
+        final Kind kind;
+        final boolean nullable;
+        /**
+         * Decimal的小数位数、DateTime64的精度
+         */
+        final int scale;
+        final ZoneId zone;
+
+        ColumnWriter(int position, Kind kind, boolean nullable, int scale, ZoneId zone) {
+            this.position = position;
+            this.kind = kind;
+            this.nullable = nullable;
+            this.scale = scale;
+            this.zone = zone;
+        }
+
+        /**
+         * @param ckType DESCRIBE TABLE得到的类型，如Nullable(Int32)、LowCardinality(String)、DateTime('Asia/Shanghai')
+         * @return 不支持的类型返回null
+         */
+        static ColumnWriter of(int position, String ckType, ZoneId serverZone) {
+            if (Objects.isNull(ckType)) {
+                return null;
+            }
+            String type = ckType.trim();
+            boolean nullable = false;
+            //RowBinary中LowCardinality(T)与T的编码相同
+            if (type.startsWith("LowCardinality(")) {
+                type = type.substring("LowCardinality(".length(), type.length() - 1);
+            }
+            if (type.startsWith("Nullable(")) {
+                nullable = true;
+                type = type.substring("Nullable(".length(), type.length() - 1);
+            }
+            switch (type) {
+                case "Int8":
+                    return new ColumnWriter(position, Kind.INT8, nullable, 0, null);
+                case "Int16":
+                    return new ColumnWriter(position, Kind.INT16, nullable, 0, null);
+                case "Int32":
+                    return new ColumnWriter(position, Kind.INT32, nullable, 0, null);
+                case "Int64":
+                    return new ColumnWriter(position, Kind.INT64, nullable, 0, null);
+                case "UInt8":
+                    return new ColumnWriter(position, Kind.UINT8, nullable, 0, null);
+                case "UInt16":
+                    return new ColumnWriter(position, Kind.UINT16, nullable, 0, null);
+                case "UInt32":
+                    return new ColumnWriter(position, Kind.UINT32, nullable, 0, null);
+                case "UInt64":
+                    return new ColumnWriter(position, Kind.UINT64, nullable, 0, null);
+                case "Float32":
+                    return new ColumnWriter(position, Kind.FLOAT32, nullable, 0, null);
+                case "Float64":
+                    return new ColumnWriter(position, Kind.FLOAT64, nullable, 0, null);
+                case "String":
+                    return new ColumnWriter(position, Kind.STRING, nullable, 0, null);
+                case "Date":
+                    return new ColumnWriter(position, Kind.DATE, nullable, 0, null);
+                default:
+                    break;
+            }
+            Matcher m = DATETIME_PATTERN.matcher(type);
+            if (m.matches()) {
+                return new ColumnWriter(position, Kind.DATETIME, nullable, 0, zoneOf(m.group(1), serverZone));
+            }
+            m = DATETIME64_PATTERN.matcher(type);
+            if (m.matches()) {
+                return new ColumnWriter(position, Kind.DATETIME64, nullable, Integer.parseInt(m.group(1)), zoneOf(m.group(2), serverZone));
+            }
+            m = DECIMAL_N_PATTERN.matcher(type);
+            if (m.matches()) {
+                Kind kind = "32".equals(m.group(1)) ? Kind.DECIMAL32 : "64".equals(m.group(1)) ? Kind.DECIMAL64 : Kind.DECIMAL128;
+                return new ColumnWriter(position, kind, nullable, Integer.parseInt(m.group(2)), null);
+            }
+            m = DECIMAL_PATTERN.matcher(type);
+            if (m.matches()) {
+                int precision = Integer.parseInt(m.group(1));
+                if (precision > 38) {
+                    return null;
+                }
+                return new ColumnWriter(position, decimalKind(precision), nullable, Integer.parseInt(m.group(2)), null);
+            }
+            return null;
+        }
+
+        private static Kind decimalKind(int precision) {
+            return precision <= 9 ? Kind.DECIMAL32 : precision <= 18 ? Kind.DECIMAL64 : Kind.DECIMAL128;
+        }
+
+        private static ZoneId zoneOf(String zone, ZoneId serverZone) {
+            return Objects.isNull(zone) ? serverZone : ZoneId.of(zone);
+        }
+
+        void write(ClickHouseRowBinaryStream stream, Object value) throws IOException {
+            if (nullable) {
+                if (Objects.isNull(value)) {
+                    stream.writeNull();
+                    return;
+                }
+                stream.writeNonNull();
+            }
+            String str = Objects.isNull(value) ? null : value.toString();
+            switch (kind) {
+                case INT8:
+                    stream.writeInt8((int) longOf(str));
+                    break;
+                case UINT8:
+                    stream.writeUInt8((int) longOf(str));
+                    break;
+                case INT16:
+                    stream.writeInt16((int) longOf(str));
+                    break;
+                case UINT16:
+                    stream.writeUInt16((int) longOf(str));
+                    break;
+                case INT32:
+                    stream.writeInt32((int) longOf(str));
+                    break;
+                case UINT32:
+                    stream.writeUInt32(longOf(str));
+                    break;
+                case INT64:
+                    stream.writeInt64(longOf(str));
+                    break;
+                case UINT64:
+                    //与Int64的字节相同，大于Long.MAX_VALUE的值按补码写入
+                    stream.writeInt64(Objects.isNull(str) ? 0 : Long.parseUnsignedLong(str));
+                    break;
+                case FLOAT32:
+                    stream.writeFloat32(Objects.isNull(str) ? 0 : Float.parseFloat(str));
+                    break;
+                case FLOAT64:
+                    stream.writeFloat64(Objects.isNull(str) ? 0 : Double.parseDouble(str));
+                    break;
+                case DECIMAL32:
+                    stream.writeDecimal32(decimalOf(str), scale);
+                    break;
+                case DECIMAL64:
+                    stream.writeDecimal64(decimalOf(str), scale);
+                    break;
+                case DECIMAL128:
+                    stream.writeDecimal128(decimalOf(str), scale);
+                    break;
+                case STRING:
+                    stream.writeString(Objects.isNull(str) ? "" : str);
+                    break;
+                case DATE:
+                    stream.writeUInt16((int) epochDayOf(str));
+                    break;
+                case DATETIME:
+                    stream.writeUInt32(epochSecondOf(str));
+                    break;
+                case DATETIME64:
+                    stream.writeInt64(epochTicksOf(str));
+                    break;
+                default:
+                    throw new IllegalStateException("unknown column kind:" + kind);
+            }
+        }
+
+        private static long longOf(String str) {
+            if (Objects.isNull(str)) {
+                return 0;
+            }
+            try {
+                return Long.parseLong(str);
+            } catch (NumberFormatException e) {
+                //如"1.0"、bit转换后的值
+                return new BigDecimal(str).longValue();
+            }
+        }
+
+        private static BigDecimal decimalOf(String str) {
+            return Objects.isNull(str) ? BigDecimal.ZERO : new BigDecimal(str);
+        }
+
+        /**
+         * mysql的零值日期（0000-00-00）等无法解析的值写入0（1970-01-01）
+         */
+        private static long epochDayOf(String str) {
+            if (Objects.isNull(str) || str.length() < 10) {
+                return 0;
+            }
+            try {
+                return Math.max(0, LocalDate.parse(str.substring(0, 10)).toEpochDay());
+            } catch (DateTimeParseException e) {
+                return 0;
+            }
+        }
+
+        private LocalDateTime dateTimeOf(String str) {
+            if (Objects.isNull(str)) {
+                return null;
+            }
+            try {
+                if (str.length() == 10) {
+                    return LocalDate.parse(str).atStartOfDay();
+                }
+                return LocalDateTime.parse(str, DATETIME_FORMATTER);
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+        }
+
+        private long epochSecondOf(String str) {
+            LocalDateTime dateTime = dateTimeOf(str);
+            return Objects.isNull(dateTime) ? 0 : Math.max(0, dateTime.atZone(zone).toEpochSecond());
+        }
+
+        private long epochTicksOf(String str) {
+            LocalDateTime dateTime = dateTimeOf(str);
+            if (Objects.isNull(dateTime)) {
+                return 0;
+            }
+            long ticks = dateTime.atZone(zone).toEpochSecond();
+            long fraction = dateTime.getNano();
+            for (int i = 0; i < scale; i++) {
+                ticks *= 10;
+            }
+            for (int i = scale; i < 9; i++) {
+                fraction /= 10;
+            }
+            return ticks + fraction;
+        }
+    }
+}
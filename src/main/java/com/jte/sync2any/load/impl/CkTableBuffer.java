@@ -0,0 +1,172 @@
+package com.jte.sync2any.load.impl;
+
+import com.jte.sync2any.core.SyncMetrics;
+import com.jte.sync2any.model.config.CkBuffer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * clickhouse一个目标表（targetDbId+表名）的增量数据缓冲区。
+ * 行数达到maxRows或最早的一行等待超过maxAgeMs时，提交到刷新线程池写入。
+ * 每个缓冲区同时最多只有一个刷新任务，所以同一个表的写入顺序不变，不同的表之间并行写入，互不阻塞。
+ */
+@Slf4j
+public class CkTableBuffer {
+
+    private final String key;
+    private final CkBuffer config;
+    private final Executor flushExecutor;
+    private final CkBufferLimiter limiter;
+    private final Consumer<List<CkLoadServiceImpl.InsertItem>> saver;
+    /**
+     * 每次写入的耗时和行数，按目标数据库统计（同一个数据库的缓冲区共用同一个指标）
+     */
+    private final Timer flushTimer;
+    private final DistributionSummary flushRowsSummary;
+
+    private List<CkLoadServiceImpl.InsertItem> itemList = new ArrayList<>();
+    /**
+     * 缓冲区中最早的一行的加入时间
+     */
+    private long firstAddTime;
+    private final AtomicBoolean flushing = new AtomicBoolean(false);
+
+    /**
+     * @param key           targetDbId$表名
+     * @param flushExecutor 所有缓冲区共用的刷新线程池
+     * @param limiter       所有缓冲区共用的内存上限
+     * @param saver         写入一批数据，失败时抛出异常
+     */
+    public CkTableBuffer(String key, CkBuffer config, Executor flushExecutor, CkBufferLimiter limiter,
+                         Consumer<List<CkLoadServiceImpl.InsertItem>> saver) {
+        this.key = key;
+        this.config = config;
+        this.flushExecutor = flushExecutor;
+        this.limiter = limiter;
+        this.saver = saver;
+        String targetDbId = key.substring(0, Math.max(key.indexOf('$'), 0));
+        this.flushTimer = SyncMetrics.timer("ck.flush", "db", targetDbId);
+        this.flushRowsSummary = SyncMetrics.summary("ck.flush.rows", "db", targetDbId);
+    }
+
+    public void add(CkLoadServiceImpl.InsertItem item) {
+        boolean full;
+        synchronized (this) {
+            if (itemList.isEmpty()) {
+                firstAddTime = System.currentTimeMillis();
+            }
+            itemList.add(item);
+            full = itemList.size() >= config.getMaxRows();
+        }
+        limiter.acquire(item.getBytes());
+        if (full) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 由定时任务调用：最早的一行等待超时则写入
+     *
+     * @param now
+     */
+    public void flushIfExpired(long now) {
+        boolean expired;
+        synchronized (this) {
+            expired = !itemList.isEmpty() && now - firstAddTime >= config.getMaxAgeMs();
+        }
+        if (expired) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 已有刷新任务时什么也不做，该任务结束前会再次检查
+     */
+    public void scheduleFlush() {
+        if (flushing.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(this::flush);
+            } catch (RuntimeException e) {
+                flushing.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            while (true) {
+                List<CkLoadServiceImpl.InsertItem> batch = drain();
+                if (batch.isEmpty()) {
+                    break;
+                }
+                try {
+                    long startTime = System.currentTimeMillis();
+                    saver.accept(batch);
+                    flushTimer.record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+                    flushRowsSummary.record(batch.size());
+                } catch (Exception e) {
+                    log.error("ck buffer flush error, key:{} size:{}", key, batch.size(), e);
+                } finally {
+                    limiter.release(batch.size(), batch.stream().mapToLong(CkLoadServiceImpl.InsertItem::getBytes).sum());
+                }
+                synchronized (this) {
+                    //剩余的不足一批时，等待下一次超时或写满
+                    if (itemList.size() < config.getMaxRows()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            flushing.set(false);
+        }
+        //刷新期间写满的缓冲区调用scheduleFlush时会被忽略，这里补上
+        synchronized (this) {
+            if (itemList.size() < config.getMaxRows()) {
+                return;
+            }
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * 取出最多maxRows行
+     */
+    private synchronized List<CkLoadServiceImpl.InsertItem> drain() {
+        List<CkLoadServiceImpl.InsertItem> batch;
+        if (itemList.size() <= config.getMaxRows()) {
+            batch = itemList;
+            itemList = new ArrayList<>();
+        } else {
+            List<CkLoadServiceImpl.InsertItem> head = itemList.subList(0, config.getMaxRows());
+            batch = new ArrayList<>(head);
+            head.clear();
+            //剩余的行重新计时
+            firstAddTime = System.currentTimeMillis();
+        }
+        return batch;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public synchronized int size() {
+        return itemList.size();
+    }
+
+    /**
+     * 没有待写入的数据，也没有正在写入的数据
+     */
+    public boolean isEmpty() {
+        return size() == 0 && !flushing.get();
+    }
+}
@@ -0,0 +1,252 @@
+package com.jte.sync2any.load.impl;
+
+import com.jte.sync2any.core.SyncMetrics;
+import com.jte.sync2any.model.config.EsBulk;
+import com.jte.sync2any.model.es.CudRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.*;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 增量同步写入es的bulk管道（每个目标es一个）
+ * 按“index+主键”的hash分为多个BulkProcessor，每个BulkProcessor同时只有一个在途的bulk，
+ * 所以同一主键的写入顺序不变，不同通道之间并行提交。
+ * 每个写请求都记录了对应的CudRequest（含kafka offset），bulk中失败的操作按topicGroup收集起来，
+ * 在checkpoint提交offset之前由{@link #flushPending(String)}等待在途的bulk完成，并同步重试失败的操作。
+ */
+@Slf4j
+public class EsBulkPipeline {
+
+    public static final int MAX_RETRY_TIMES = 3;
+
+    private final String dbId;
+    private final RestHighLevelClient client;
+    private final BulkProcessor[] processors;
+    private final Function<CudRequest, DocWriteRequest<?>> requestBuilder;
+
+    /**
+     * 已经放入管道、还未收到bulk结果的请求
+     */
+    private final Map<DocWriteRequest<?>, CudRequest> pendingMap = Collections.synchronizedMap(new IdentityHashMap<>());
+    /**
+     * key: topicGroup
+     */
+    private final Map<String, Tracker> trackerMap = new ConcurrentHashMap<>();
+
+    /**
+     * 运行指标：每个bulk的耗时（es返回的took）、操作数和失败的操作数
+     */
+    private final Timer bulkTimer;
+    private final DistributionSummary bulkSizeSummary;
+    private final Counter failureCounter;
+
+    public EsBulkPipeline(String dbId, RestHighLevelClient client, EsBulk config, Function<CudRequest, DocWriteRequest<?>> requestBuilder) {
+        this.dbId = dbId;
+        this.client = client;
+        this.requestBuilder = requestBuilder;
+        this.processors = new BulkProcessor[Math.max(config.getConcurrentRequests(), 1)];
+        for (int i = 0; i < processors.length; i++) {
+            processors[i] = BulkProcessor.builder((request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener), new ResultListener())
+                    .setBulkActions(config.getBulkActions())
+                    .setBulkSize(new ByteSizeValue(config.getBulkSizeMb(), ByteSizeUnit.MB))
+                    .setFlushInterval(TimeValue.timeValueMillis(config.getFlushIntervalMs()))
+                    .setConcurrentRequests(1)
+                    .setBackoffPolicy(BackoffPolicy.constantBackoff(TimeValue.timeValueMillis(config.getBackoffDelayMs()), config.getBackoffRetries()))
+                    .build();
+        }
+        this.bulkTimer = SyncMetrics.timer("es.bulk", "db", dbId);
+        this.bulkSizeSummary = SyncMetrics.summary("es.bulk.size", "db", dbId);
+        this.failureCounter = SyncMetrics.counter("es.bulk.failures", "db", dbId);
+        SyncMetrics.gauge("es.bulk.pending", pendingMap::size, "db", dbId);
+        log.warn("new EsBulkPipeline dbId:{}, config:{}", dbId, config);
+    }
+
+    /**
+     * 将请求放入管道，在途的bulk已满时会阻塞调用方
+     *
+     * @param request
+     */
+    public void add(CudRequest request) {
+        DocWriteRequest<?> writeRequest = requestBuilder.apply(request);
+        Tracker tracker = trackerMap.computeIfAbsent(request.getTableMeta().getTopicGroup(), k -> new Tracker());
+        synchronized (tracker) {
+            tracker.inFlight++;
+        }
+        pendingMap.put(writeRequest, request);
+        int hash = 31 * Objects.hashCode(request.getTable()) + Objects.hashCode(request.getPkValueStr());
+        processors[Math.floorMod(hash, processors.length)].add(writeRequest);
+    }
+
+    /**
+     * 等待某个topicGroup在途的写入全部完成，并同步重试其中失败的操作
+     *
+     * @param topicGroup
+     * @throws IOException 重试之后依然失败，异常信息中包含失败数据的kafka offset
+     */
+    public void flushPending(String topicGroup) throws IOException {
+        Tracker tracker = trackerMap.get(topicGroup);
+        if (Objects.isNull(tracker)) {
+            return;
+        }
+        for (BulkProcessor processor : processors) {
+            processor.flush();
+        }
+        Map<String, List<CudRequest>> failedMap = new LinkedHashMap<>();
+        synchronized (tracker) {
+            while (tracker.inFlight > 0) {
+                try {
+                    tracker.wait(TimeUnit.SECONDS.toMillis(1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting for es bulk, topicGroup:" + topicGroup, e);
+                }
+            }
+            tracker.failed.forEach((key, list) -> failedMap.put(key, new ArrayList<>(list)));
+        }
+        if (failedMap.isEmpty()) {
+            return;
+        }
+        List<CudRequest> failedList = failedMap.values().stream().flatMap(List::stream)
+                .sorted(Comparator.comparingLong(CudRequest::getKafkaOffset))
+                .collect(Collectors.toList());
+        log.warn("retry failed es bulk items, dbId:{}, topicGroup:{}, size:{}", dbId, topicGroup, failedList.size());
+        //重试成功之后才移除，重试失败时保留，之后的checkpoint依然会重试，不会越过这些数据提交offset
+        retry(topicGroup, failedList);
+        synchronized (tracker) {
+            failedMap.forEach((key, retried) -> {
+                List<CudRequest> list = tracker.failed.get(key);
+                if (Objects.nonNull(list)) {
+                    list.removeIf(r -> retried.stream().anyMatch(x -> x == r));
+                    if (list.isEmpty()) {
+                        tracker.failed.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+    private void retry(String topicGroup, List<CudRequest> failedList) throws IOException {
+        BulkResponse response = null;
+        for (int i = 1; i <= MAX_RETRY_TIMES; i++) {
+            BulkRequest bulkRequest = new BulkRequest();
+            failedList.forEach(r -> bulkRequest.add(requestBuilder.apply(r)));
+            response = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+            if (!response.hasFailures()) {
+                failedList.forEach(r -> r.getTableMeta().recordLag(r.getBinlogTimestamp()));
+                return;
+            }
+            log.error("retry es bulk error,retry times count:{},{}", i, response.buildFailureMessage());
+        }
+        Set<String> failedKeys = failedKeys(response);
+        String offsets = failedList.stream()
+                .filter(r -> failedKeys.contains(keyOf(r.getTable(), r.getPkValueStr())))
+                .map(r -> String.valueOf(r.getKafkaOffset()))
+                .distinct()
+                .collect(Collectors.joining(","));
+        throw new IOException("es bulk write failed, topicGroup:" + topicGroup + ", kafka offsets:[" + offsets + "], reason:" + response.buildFailureMessage());
+    }
+
+    public void close() {
+        for (BulkProcessor processor : processors) {
+            try {
+                processor.awaitClose(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String keyOf(String index, String id) {
+        return index + "#" + id;
+    }
+
+    private static Set<String> failedKeys(BulkResponse response) {
+        Set<String> failedKeys = new HashSet<>();
+        for (BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failedKeys.add(keyOf(item.getIndex(), item.getId()));
+            }
+        }
+        return failedKeys;
+    }
+
+    /**
+     * 将bulk的结果对应回CudRequest。
+     * 重试（backoff）之后的结果顺序可能与请求不一致，所以按index+id对应；
+     * 同一主键后面的写入成功之后，前面失败的写入就不需要重试了（后面的写入包含完整的行数据）。
+     */
+    private void complete(BulkRequest request, Set<String> failedKeys) {
+        for (DocWriteRequest<?> writeRequest : request.requests()) {
+            CudRequest cudRequest = pendingMap.remove(writeRequest);
+            if (Objects.isNull(cudRequest)) {
+                continue;
+            }
+            Tracker tracker = trackerMap.get(cudRequest.getTableMeta().getTopicGroup());
+            String key = keyOf(writeRequest.index(), writeRequest.id());
+            synchronized (tracker) {
+                if (failedKeys.contains(key)) {
+                    tracker.failed.computeIfAbsent(key, k -> new ArrayList<>()).add(cudRequest);
+                } else {
+                    tracker.failed.remove(key);
+                    cudRequest.getTableMeta().recordLag(cudRequest.getBinlogTimestamp());
+                }
+                tracker.inFlight--;
+                tracker.notifyAll();
+            }
+        }
+    }
+
+    static class Tracker {
+        int inFlight;
+        /**
+         * key: index#id
+         */
+        final Map<String, List<CudRequest>> failed = new LinkedHashMap<>();
+    }
+
+    class ResultListener implements BulkProcessor.Listener {
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("es bulk start, dbId:{}, executionId:{}, actions:{}", dbId, executionId, request.numberOfActions());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            bulkTimer.record(response.getTook().millis(), TimeUnit.MILLISECONDS);
+            bulkSizeSummary.record(request.numberOfActions());
+            Set<String> failedKeys = Collections.emptySet();
+            if (response.hasFailures()) {
+                log.error("es bulk has failures, dbId:{}, executionId:{}, {}", dbId, executionId, response.buildFailureMessage());
+                failedKeys = failedKeys(response);
+                failureCounter.increment(failedKeys.size());
+            }
+            complete(request, failedKeys);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("es bulk error, dbId:{}, executionId:{}", dbId, executionId, failure);
+            bulkSizeSummary.record(request.numberOfActions());
+            failureCounter.increment(request.numberOfActions());
+            Set<String> failedKeys = request.requests().stream()
+                    .map(r -> keyOf(r.index(), r.id()))
+                    .collect(Collectors.toSet());
+            complete(request, failedKeys);
+        }
+    }
+}
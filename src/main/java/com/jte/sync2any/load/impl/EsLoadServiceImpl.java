@@ -2,15 +2,19 @@ package com.jte.sync2any.load.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jte.sync2any.core.Constants;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
 import com.jte.sync2any.load.AbstractLoadService;
 import com.jte.sync2any.model.config.Conn;
+import com.jte.sync2any.model.config.Sync2any;
 import com.jte.sync2any.model.es.CudRequest;
 import com.jte.sync2any.model.es.EsDateType;
 import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.util.CollectionUtils;
 import com.jte.sync2any.util.DbUtils;
 import com.jte.sync2any.util.JsonUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -32,9 +36,11 @@ import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.rest.RestStatus;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
@@ -45,11 +51,30 @@ public class EsLoadServiceImpl extends AbstractLoadService {
 
     @Resource
     Map<String,Object> allTargetDatasource;
+    @Resource
+    Sync2any sync2any;
+
+    /**
+     * 增量同步的bulk管道
+     * key: targetDbId
+     */
+    private final Map<String, EsBulkPipeline> pipelineMap = new ConcurrentHashMap<>();
 
 
     @Override
     public int operateData(CudRequest request) throws IOException {
         checkAndCreateStorage(request.getTableMeta());
+        if (Constants.YES.equals(sync2any.getEsBulk().getEnabled())) {
+            //放入bulk管道，在checkpoint处由flushPending确认写入结果，bulk成功后记录延迟
+            getPipeline(request.getTableMeta().getTargetDbId()).add(request);
+            return 1;
+        }
+        int effectNums = applyData(request);
+        request.getTableMeta().recordLag(request.getBinlogTimestamp());
+        return effectNums;
+    }
+
+    private int applyData(CudRequest request) throws IOException {
         RestHighLevelClient client = (RestHighLevelClient) DbUtils.getTargetDsByDbId(allTargetDatasource,request.getTableMeta().getTargetDbId());
         if(INSERT == request.getDmlType())
         {
@@ -109,6 +134,75 @@ public class EsLoadServiceImpl extends AbstractLoadService {
         return 0;
     }
 
+    private EsBulkPipeline getPipeline(String dbId) {
+        return CollectionUtils.computeIfAbsent(pipelineMap, dbId, key -> {
+            RestHighLevelClient client = (RestHighLevelClient) DbUtils.getTargetDsByDbId(allTargetDatasource, key);
+            return new EsBulkPipeline(key, client, sync2any.getEsBulk(), this::toWriteRequest);
+        });
+    }
+
+    @Override
+    public void flushPending(String topicGroup) throws IOException {
+        for (EsBulkPipeline pipeline : pipelineMap.values()) {
+            pipeline.flushPending(topicGroup);
+        }
+    }
+
+    @PreDestroy
+    public void closePipeline() {
+        pipelineMap.values().forEach(EsBulkPipeline::close);
+    }
+
+    /**
+     * 将一组增删改请求放在同一个bulk请求中提交，bulk内的操作按顺序执行。
+     * 新增用index，修改用update(docAsUpsert)，删除用delete，都可以重复执行，所以失败时整组重试是安全的。
+     * @param requestList
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public int batchOperateData(List<CudRequest> requestList) throws IOException {
+        if (requestList.isEmpty()) {
+            return 0;
+        }
+        Set<TableMeta> checkedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        BulkRequest bulkRequest = new BulkRequest();
+        for (CudRequest request : requestList) {
+            if (checkedSet.add(request.getTableMeta())) {
+                checkAndCreateStorage(request.getTableMeta());
+            }
+            bulkRequest.add(toWriteRequest(request));
+        }
+        RestHighLevelClient client = (RestHighLevelClient) DbUtils.getTargetDsByDbId(allTargetDatasource, requestList.get(0).getTableMeta().getTargetDbId());
+        BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+        if (bulkResponse.hasFailures()) {
+            throw new IOException("bulk operate error:" + bulkResponse.buildFailureMessage());
+        }
+        requestList.forEach(r -> r.getTableMeta().recordLag(r.getBinlogTimestamp()));
+        return requestList.size();
+    }
+
+    /**
+     * 将增删改请求转为es的写请求
+     * @param request
+     * @return
+     */
+    DocWriteRequest<?> toWriteRequest(CudRequest request) {
+        if (INSERT == request.getDmlType()) {
+            return new IndexRequest(request.getTable())
+                    .id(request.getPkValueStr())
+                    .source(JsonUtil.objectToJson(request.getParameters()), XContentType.JSON);
+        } else if (UPDATE == request.getDmlType()) {
+            return new UpdateRequest(request.getTable(), request.getPkValueStr())
+                    .doc(JsonUtil.objectToJson(request.getParameters()), XContentType.JSON)
+                    .docAsUpsert(true);
+        } else if (DELETE == request.getDmlType()) {
+            return new DeleteRequest(request.getTable(), request.getPkValueStr());
+        } else {
+            throw new ShouldNeverHappenException("unknown operation type:" + request.getDmlType());
+        }
+    }
+
     @Override
     public int batchAdd(List<CudRequest> requestList) throws IOException {
         int effectNums = 0;
@@ -143,6 +237,14 @@ public class EsLoadServiceImpl extends AbstractLoadService {
         return effectNums;
     }
 
+    /**
+     * 每次batchAdd是一个独立的bulk请求，没有共享的状态
+     */
+    @Override
+    public boolean isConcurrentBatchAdd() {
+        return true;
+    }
+
     @Override
     public int flushBatchAdd() {
         return 0;
@@ -182,7 +284,7 @@ public class EsLoadServiceImpl extends AbstractLoadService {
      * @return
      */
     @Override
-    public void checkAndCreateStorage(TableMeta tableMeta) throws IOException {
+    public synchronized void checkAndCreateStorage(TableMeta tableMeta) throws IOException {
         String indexName=tableMeta.getTargetTableName();
         String existsEvidence= Conn.DB_TYPE_ES+"$"+tableMeta.getTargetDbId()+"$"+tableMeta.getTableName();
         if(LOAD_STORAGE.contains(existsEvidence)){
@@ -1,10 +1,13 @@
 package com.jte.sync2any.load.impl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
 import com.jte.sync2any.load.AbstractLoadService;
 import com.jte.sync2any.model.es.CudRequest;
 import com.jte.sync2any.model.mysql.ColumnMeta;
 import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.util.CollectionUtils;
 import com.jte.sync2any.util.ColumnUtils;
 import com.jte.sync2any.util.DbUtils;
 import lombok.extern.slf4j.Slf4j;
@@ -13,10 +16,10 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
@@ -44,18 +47,55 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
      */
     private static final String DELETE_SQL_TEMPLATE = "DELETE FROM %s WHERE %s ";
 
+    /**
+     * INSERT INTO a (x, y, pk) VALUES (?, ?, ?), (?, ?, ?) ON DUPLICATE KEY UPDATE x = VALUES(x), y = VALUES(y)
+     */
+    private static final String UPSERT_SQL_TEMPLATE = "INSERT INTO %s (%s) VALUES %s ON DUPLICATE KEY UPDATE %s";
+
+    /**
+     * DELETE FROM a WHERE (pk1, pk2) IN ((?, ?), (?, ?))
+     */
+    private static final String DELETE_IN_SQL_TEMPLATE = "DELETE FROM %s WHERE (%s) IN (%s)";
+
     /**
      * SELECT count(*) FROM a;
      */
     private static final String COUNT_SQL_TEMPLATE = "SELECT COUNT(*) FROM %s ";
 
+    /**
+     * 批量写入时，每条sql最多包含的行数
+     */
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    /**
+     * 批量写入时，每条sql参数的最大字节数（估算值），需小于目标库的max_allowed_packet（默认4MB）
+     */
+    private static final int MAX_BYTES_PER_STATEMENT = 1024 * 1024;
+
     @Resource
     Map<String, Object> allTargetDatasource;
 
+    /**
+     * 编译好的sql及参数顺序，每个TableMeta（按对象比较）每个目标表一份。
+     * 表结构重新载入时会生成新的TableMeta，旧的TableMeta不再被引用后，对应的缓存会被回收。
+     * key: TableMeta，value: key为目标表名（分表后的表名）
+     */
+    private final Cache<TableMeta, Map<String, SqlPlan>> sqlPlanCache = CacheBuilder.newBuilder().weakKeys().build();
+
     @Override
     public int operateData(CudRequest request) {
+        int effectNums = applyData(request);
+        request.getTableMeta().recordLag(request.getBinlogTimestamp());
+        return effectNums;
+    }
+
+    private int applyData(CudRequest request) {
         JdbcTemplate jdbcTemplate = (JdbcTemplate) DbUtils.getTargetDsByDbId(allTargetDatasource, request.getTableMeta().getTargetDbId());
         if (INSERT == request.getDmlType()) {
+            if (request.isCoalesced()) {
+                //合并了之后的UPDATE，重新投递时目标表中可能已经有这一行，需要覆盖
+                return upsertData(request, jdbcTemplate);
+            }
             try{
                 return addData(request, jdbcTemplate);
             }catch (DuplicateKeyException e){
@@ -72,50 +112,265 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
     }
 
     private int addData(CudRequest request, JdbcTemplate jdbcTemplate) {
-        String sql = buildInsertSqlByPks(request);
-        Object[] params = fillInsertParam(request);
-        log.debug("sql:{},params:{}", sql,params);
-        return jdbcTemplate.update(sql,params);
+        SqlPlan plan = getSqlPlan(request);
+        Object[] params = plan.fillInsertParam(request);
+        log.debug("sql:{},params:{}", plan.insertSql,params);
+        return jdbcTemplate.update(plan.insertSql,params);
+    }
+
+    private int upsertData(CudRequest request, JdbcTemplate jdbcTemplate) {
+        SqlPlan plan = getSqlPlan(request);
+        Object[] params = plan.fillInsertParam(request);
+        String sql = plan.upsertSql(1);
+        log.debug("sql:{},params:{}", sql, params);
+        return jdbcTemplate.update(sql, params);
     }
 
     private int deleteData(CudRequest request, JdbcTemplate jdbcTemplate) {
-        TableMeta tableMeta = request.getTableMeta();
-        String whereSql = buildWhereConditionSqlByPks(tableMeta);
-        String deleteSql = String.format(DELETE_SQL_TEMPLATE, request.getTable(), whereSql);
-        Object[] params = fillDeleteParam(request);
-        log.debug("sql:{},params:{}", deleteSql,params);
-        return jdbcTemplate.update(deleteSql,params);
+        SqlPlan plan = getSqlPlan(request);
+        Object[] params = plan.fillDeleteParam(request);
+        log.debug("sql:{},params:{}", plan.deleteSql,params);
+        return jdbcTemplate.update(plan.deleteSql,params);
     }
 
     private int updateData(CudRequest request, JdbcTemplate jdbcTemplate) {
-        String sql = buildUpdateSqlByPks(request);
-        Object[] params = fillUpdateParam(request);
-        log.debug("sql:{},params:{}", sql,params);
-        return jdbcTemplate.update(sql,params);
+        SqlPlan plan = getSqlPlan(request);
+        Object[] params = plan.fillUpdateParam(request);
+        log.debug("sql:{},params:{}", plan.updateSql,params);
+        return jdbcTemplate.update(plan.updateSql,params);
     }
 
+    /**
+     * 请求对应的目标表编译好的sql
+     *
+     * @param request
+     * @return
+     */
+    public SqlPlan getSqlPlan(CudRequest request) {
+        TableMeta tableMeta = request.getTableMeta();
+        Map<String, SqlPlan> tablePlanMap = CollectionUtils.computeIfAbsent(sqlPlanCache.asMap(), tableMeta, k -> new ConcurrentHashMap<>());
+        return CollectionUtils.computeIfAbsent(tablePlanMap, request.getTable(), table -> new SqlPlan(this, table, tableMeta));
+    }
+
+    /**
+     * 载入原始数据：按目标表分组后，以多行的INSERT ... ON DUPLICATE KEY UPDATE批量写入（可重复载入）
+     *
+     * @param requestList
+     * @return
+     */
     @Override
     public int batchAdd(List<CudRequest> requestList) {
         int effectNums = 0;
-        Map<TableMeta, List<CudRequest>> requestMap = requestList.stream().parallel().collect(Collectors.groupingBy(CudRequest::getTableMeta));
-        Set<TableMeta> tableMeteSet = requestMap.keySet();
-        Iterator<TableMeta> it = tableMeteSet.iterator();
-        while (it.hasNext()) {
-            TableMeta tableMeta = it.next();
-            JdbcTemplate jdbcTemplate = (JdbcTemplate) DbUtils.getTargetDsByDbId(allTargetDatasource, tableMeta.getTargetDbId());
-            List<CudRequest> groupByList = requestMap.get(tableMeta);
-            for (CudRequest e : groupByList) {
-                effectNums += addData(e, jdbcTemplate);
+        Map<String, List<CudRequest>> requestMap = requestList.stream().collect(Collectors.groupingBy(CudRequest::getTable, LinkedHashMap::new, Collectors.toList()));
+        for (List<CudRequest> groupByList : requestMap.values()) {
+            JdbcTemplate jdbcTemplate = (JdbcTemplate) DbUtils.getTargetDsByDbId(allTargetDatasource, groupByList.get(0).getTableMeta().getTargetDbId());
+            effectNums += batchUpsert(groupByList, jdbcTemplate);
+        }
+        return effectNums;
+    }
+
+    /**
+     * 增量数据批量写入，保持原有顺序：
+     * 连续的INSERT合并为多行的INSERT ... ON DUPLICATE KEY UPDATE；
+     * 连续的UPDATE使用同一个PreparedStatement批量执行（目标表中不存在的行不会被创建）；
+     * 连续的DELETE合并为DELETE ... WHERE (pk) IN (...)；
+     * 修改了主键的UPDATE单独执行。
+     *
+     * @param requestList
+     * @return 影响的行数（各条sql返回的影响行数之和）
+     */
+    @Override
+    public int batchOperateData(List<CudRequest> requestList) {
+        int effectNums = 0;
+        List<CudRequest> run = new ArrayList<>();
+        for (CudRequest request : requestList) {
+            if (UPDATE == request.getDmlType() && isPrimaryKeyChanged(request)) {
+                effectNums += flushRun(run);
+                effectNums += applyData(request);
+                continue;
+            }
+            if (!run.isEmpty() && !isSameRun(run.get(0), request)) {
+                effectNums += flushRun(run);
             }
+            run.add(request);
         }
+        effectNums += flushRun(run);
+        requestList.forEach(r -> r.getTableMeta().recordLag(r.getBinlogTimestamp()));
         return effectNums;
     }
 
+    private boolean isSameRun(CudRequest first, CudRequest request) {
+        return first.getDmlType() == request.getDmlType() && first.getTable().equals(request.getTable());
+    }
+
+    private int flushRun(List<CudRequest> run) {
+        if (run.isEmpty()) {
+            return 0;
+        }
+        JdbcTemplate jdbcTemplate = (JdbcTemplate) DbUtils.getTargetDsByDbId(allTargetDatasource, run.get(0).getTableMeta().getTargetDbId());
+        int effectNums;
+        if (DELETE == run.get(0).getDmlType()) {
+            effectNums = batchDelete(run, jdbcTemplate);
+        } else if (UPDATE == run.get(0).getDmlType()) {
+            effectNums = batchUpdate(run, jdbcTemplate);
+        } else {
+            effectNums = batchUpsert(run, jdbcTemplate);
+        }
+        run.clear();
+        return effectNums;
+    }
+
+    /**
+     * 是否修改了主键（where中的主键与修改后的主键不一致）
+     *
+     * @param request
+     * @return
+     */
+    private boolean isPrimaryKeyChanged(CudRequest request) {
+        for (String pkName : getSqlPlan(request).pkColumns) {
+            Object oldValue = request.getPkValueMap().get(pkName).getValue();
+            if (!Objects.equals(oldValue, request.getParameters().get(pkName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 同一个目标表的多行数据以INSERT ... ON DUPLICATE KEY UPDATE写入
+     *
+     * @param requestList
+     * @param jdbcTemplate
+     * @return 影响的行数（mysql中新增的行计1，修改的行计2）
+     */
+    private int batchUpsert(List<CudRequest> requestList, JdbcTemplate jdbcTemplate) {
+        SqlPlan plan = getSqlPlan(requestList.get(0));
+        List<List<Object[]>> chunkList = splitChunks(requestList, plan::fillInsertParam);
+        return executeChunks(chunkList, plan::upsertSql, jdbcTemplate);
+    }
+
+    /**
+     * 同一个目标表的多行UPDATE使用同一个PreparedStatement批量执行
+     *
+     * @param requestList
+     * @param jdbcTemplate
+     * @return 修改的行数
+     */
+    private int batchUpdate(List<CudRequest> requestList, JdbcTemplate jdbcTemplate) {
+        SqlPlan plan = getSqlPlan(requestList.get(0));
+        List<Object[]> batchArgs = requestList.stream().map(plan::fillUpdateParam).collect(Collectors.toList());
+        log.debug("sql:{},batch size:{}", plan.updateSql, batchArgs.size());
+        return sumEffect(jdbcTemplate.batchUpdate(plan.updateSql, batchArgs));
+    }
+
+    /**
+     * 同一个目标表的多行数据以DELETE ... WHERE (pk) IN (...)删除
+     *
+     * @param requestList
+     * @param jdbcTemplate
+     * @return 删除的行数
+     */
+    private int batchDelete(List<CudRequest> requestList, JdbcTemplate jdbcTemplate) {
+        SqlPlan plan = getSqlPlan(requestList.get(0));
+        List<List<Object[]>> chunkList = splitChunks(requestList, plan::fillDeleteParam);
+        return executeChunks(chunkList, plan::deleteInSql, jdbcTemplate);
+    }
+
+    /**
+     * 按行数和字节数将参数切分为多条sql
+     *
+     * @param requestList
+     * @param paramFiller
+     * @return 每个元素对应一条sql，包含多行参数
+     */
+    private List<List<Object[]>> splitChunks(List<CudRequest> requestList, Function<CudRequest, Object[]> paramFiller) {
+        List<List<Object[]>> chunkList = new ArrayList<>();
+        List<Object[]> chunk = new ArrayList<>();
+        long chunkBytes = 0;
+        for (CudRequest request : requestList) {
+            Object[] params = paramFiller.apply(request);
+            long rowBytes = estimateBytes(params);
+            if (!chunk.isEmpty() && (chunk.size() >= MAX_ROWS_PER_STATEMENT || chunkBytes + rowBytes > MAX_BYTES_PER_STATEMENT)) {
+                chunkList.add(chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+            chunk.add(params);
+            chunkBytes += rowBytes;
+        }
+        if (!chunk.isEmpty()) {
+            chunkList.add(chunk);
+        }
+        return chunkList;
+    }
+
+    /**
+     * 按顺序执行切分好的sql，行数相同的相邻sql使用同一个PreparedStatement批量执行
+     *
+     * @param chunkList
+     * @param sqlBuilder 参数为行数，返回对应的sql
+     * @param jdbcTemplate
+     * @return 影响的行数
+     */
+    private int executeChunks(List<List<Object[]>> chunkList, IntFunction<String> sqlBuilder, JdbcTemplate jdbcTemplate) {
+        int effectNums = 0;
+        int i = 0;
+        while (i < chunkList.size()) {
+            int rows = chunkList.get(i).size();
+            List<Object[]> batchArgs = new ArrayList<>();
+            while (i < chunkList.size() && chunkList.get(i).size() == rows) {
+                List<Object> args = new ArrayList<>();
+                chunkList.get(i).forEach(params -> args.addAll(Arrays.asList(params)));
+                batchArgs.add(args.toArray());
+                i++;
+            }
+            String sql = sqlBuilder.apply(rows);
+            log.debug("sql:{},batch size:{}", sql, batchArgs.size());
+            effectNums += sumEffect(jdbcTemplate.batchUpdate(sql, batchArgs));
+        }
+        return effectNums;
+    }
+
+    /**
+     * @param effects batchUpdate返回的每条sql影响的行数，SUCCESS_NO_INFO等负数计为0
+     * @return
+     */
+    private int sumEffect(int[] effects) {
+        int effectNums = 0;
+        for (int effect : effects) {
+            effectNums += Math.max(effect, 0);
+        }
+        return effectNums;
+    }
+
+    private long estimateBytes(Object[] params) {
+        long bytes = 0;
+        for (Object param : params) {
+            if (param instanceof CharSequence) {
+                //utf8每个字符最多3个字节，转义后可能更长
+                bytes += ((CharSequence) param).length() * 3L + 2;
+            } else if (param instanceof byte[]) {
+                bytes += ((byte[]) param).length * 2L + 3;
+            } else {
+                bytes += 16;
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public int flushBatchAdd() {
         return 0;
     }
 
+    /**
+     * 每次batchAdd直接执行upsert，没有共享的状态
+     */
+    @Override
+    public boolean isConcurrentBatchAdd() {
+        return true;
+    }
+
     @Override
     public Long countData(String dbId, String table) {
         JdbcTemplate jdbcTemplate = (JdbcTemplate) DbUtils.getTargetDsByDbId(allTargetDatasource, dbId);
@@ -131,31 +386,15 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
 
 
     /**
-     * 为insert语句填充参数
+     * 为update语句填充参数
      *
      * @param cudRequest
      * @return
      */
     public Object[] fillUpdateParam(CudRequest cudRequest) {
-        TableMeta tableMeta = cudRequest.getTableMeta();
-        Object[] params = new Object[tableMeta.getAllColumnList().size()];
-        int index = 0;
-        List<String> pkNameList = tableMeta.getPrimaryKeyOnlyName();
-        List<ColumnMeta> nonPkColumnMateList = tableMeta.getAllColumnList().stream()
-                .filter(e -> !pkNameList.contains(e.getColumnName()))
-                .collect(Collectors.toList());
-        for (ColumnMeta columnMeta : nonPkColumnMateList) {
-            params[index] = cudRequest.getParameters().get(columnMeta.getColumnName());
-            index++;
-        }
-        for (String pkColumnName : tableMeta.getPrimaryKeyOnlyName()) {
-            params[index] = cudRequest.getPkValueMap().get(pkColumnName).getValue();
-            index++;
-        }
-        return params;
+        return newSqlPlan(cudRequest).fillUpdateParam(cudRequest);
     }
 
-
     /**
      * 构建update sql，更新值不包括主键；where以主键为条件
      *
@@ -163,14 +402,17 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
      * @return
      */
     public String buildUpdateSqlByPks(CudRequest cudRequest) {
-        TableMeta tableMeta = cudRequest.getTableMeta();
+        return newSqlPlan(cudRequest).updateSql;
+    }
+
+    public String buildUpdateSql(String table, TableMeta tableMeta) {
         List<String> pkNameList = tableMeta.getPrimaryKeyOnlyName();
         String updateColumns = tableMeta.getAllColumnList().stream()
                 .filter(e -> !pkNameList.contains(e.getColumnName()))
                 .map(c -> ColumnUtils.addEscape(c.getColumnName()) + " = ?")
                 .collect(Collectors.joining(", "));
         String whereSql = buildWhereConditionSqlByPks(tableMeta);
-        return String.format(UPDATE_SQL_TEMPLATE, cudRequest.getTable(), updateColumns, whereSql);
+        return String.format(UPDATE_SQL_TEMPLATE, table, updateColumns, whereSql);
     }
 
 
@@ -204,14 +446,7 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
      * @return 返回一个数组，数组中的元素对应sql中的placeholder
      */
     public Object[] fillDeleteParam(CudRequest cudRequest) {
-        TableMeta tableMeta = cudRequest.getTableMeta();
-        Object[] params = new Object[tableMeta.getPrimaryKeyOnlyName().size()];
-        int i = 0;
-        for (String pkName : tableMeta.getPrimaryKeyOnlyName()) {
-            params[i] = cudRequest.getPkValueMap().get(pkName).getValue();
-            i++;
-        }
-        return params;
+        return newSqlPlan(cudRequest).fillDeleteParam(cudRequest);
     }
 
     /**
@@ -221,14 +456,61 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
      * @return
      */
     public String buildInsertSqlByPks(CudRequest cudRequest) {
-        TableMeta tableMeta = cudRequest.getTableMeta();
+        return newSqlPlan(cudRequest).insertSql;
+    }
+
+    public String buildInsertSql(String table, TableMeta tableMeta) {
         String insertColumns = tableMeta.getAllColumnList().stream()
                 .map(field -> ColumnUtils.addEscape(field.getColumnName()))
                 .collect(Collectors.joining(", "));
         String insertValues = tableMeta.getAllColumnList().stream().map(field -> "?")
                 .collect(Collectors.joining(", "));
 
-        return String.format(INSERT_SQL_TEMPLATE, cudRequest.getTable(), insertColumns, insertValues);
+        return String.format(INSERT_SQL_TEMPLATE, table, insertColumns, insertValues);
+    }
+
+    /**
+     * 构建多行的INSERT ... ON DUPLICATE KEY UPDATE语句，更新值不包括主键
+     *
+     * @param table
+     * @param tableMeta
+     * @param rows 行数
+     * @return
+     */
+    public String buildUpsertSql(String table, TableMeta tableMeta, int rows) {
+        List<String> pkNameList = tableMeta.getPrimaryKeyOnlyName();
+        String insertColumns = tableMeta.getAllColumnList().stream()
+                .map(field -> ColumnUtils.addEscape(field.getColumnName()))
+                .collect(Collectors.joining(", "));
+        String rowValues = tableMeta.getAllColumnList().stream().map(field -> "?")
+                .collect(Collectors.joining(", ", "(", ")"));
+        List<String> updateColumnList = tableMeta.getAllColumnList().stream()
+                .map(ColumnMeta::getColumnName)
+                .filter(name -> !pkNameList.contains(name))
+                .collect(Collectors.toList());
+        if (updateColumnList.isEmpty()) {
+            //只有主键列
+            updateColumnList = pkNameList;
+        }
+        String updateColumns = updateColumnList.stream()
+                .map(name -> ColumnUtils.addEscape(name) + " = VALUES(" + ColumnUtils.addEscape(name) + ")")
+                .collect(Collectors.joining(", "));
+        return String.format(UPSERT_SQL_TEMPLATE, table, insertColumns, String.join(", ", Collections.nCopies(rows, rowValues)), updateColumns);
+    }
+
+    /**
+     * 构建按主键批量删除的语句，参数顺序与fillDeleteParam一致
+     *
+     * @param table
+     * @param tableMeta
+     * @param rows 行数
+     * @return
+     */
+    public String buildDeleteInSql(String table, TableMeta tableMeta, int rows) {
+        List<String> pkNameList = tableMeta.getPrimaryKeyOnlyName();
+        String pkColumns = pkNameList.stream().map(pk -> ColumnUtils.addEscape(pk)).collect(Collectors.joining(", "));
+        String rowValues = pkNameList.stream().map(pk -> "?").collect(Collectors.joining(", ", "(", ")"));
+        return String.format(DELETE_IN_SQL_TEMPLATE, table, pkColumns, String.join(", ", Collections.nCopies(rows, rowValues)));
     }
 
     /**
@@ -238,13 +520,95 @@ public class MysqlLoadServiceImpl extends AbstractLoadService {
      * @return 返回一个数组，数组中的元素对应sql中的placeholder
      */
     public Object[] fillInsertParam(CudRequest cudRequest) {
-        TableMeta tableMeta = cudRequest.getTableMeta();
-        Object[] params = new Object[tableMeta.getAllColumnList().size()];
-        int i = 0;
-        for (ColumnMeta columnMeta : tableMeta.getAllColumnList()) {
-            params[i] = cudRequest.getParameters().get(columnMeta.getColumnName());
-            i++;
+        return newSqlPlan(cudRequest).fillInsertParam(cudRequest);
+    }
+
+    /**
+     * 不经过缓存生成SqlPlan，用于单独构建一条sql；写入数据时使用{@link #getSqlPlan(CudRequest)}
+     */
+    private SqlPlan newSqlPlan(CudRequest cudRequest) {
+        return new SqlPlan(this, cudRequest.getTable(), cudRequest.getTableMeta());
+    }
+
+    /**
+     * 某个目标表编译好的sql以及参数的填充顺序，写入每行数据时只需要按顺序填充Object[]
+     */
+    public static class SqlPlan {
+        public final String insertSql;
+        public final String updateSql;
+        public final String deleteSql;
+        /**
+         * insert语句的参数顺序
+         */
+        final String[] insertColumns;
+        /**
+         * update语句set部分的参数顺序（不包括主键）
+         */
+        final String[] updateColumns;
+        /**
+         * where部分的参数顺序
+         */
+        final String[] pkColumns;
+        /**
+         * 多行sql，key为行数（最多MAX_ROWS_PER_STATEMENT种）
+         */
+        private final Map<Integer, String> upsertSqlMap = new ConcurrentHashMap<>();
+        private final Map<Integer, String> deleteInSqlMap = new ConcurrentHashMap<>();
+
+        private final MysqlLoadServiceImpl builder;
+        private final String table;
+        private final TableMeta tableMeta;
+
+        SqlPlan(MysqlLoadServiceImpl builder, String table, TableMeta tableMeta) {
+            this.builder = builder;
+            this.table = table;
+            this.tableMeta = tableMeta;
+            List<String> pkNameList = tableMeta.getPrimaryKeyOnlyName();
+            this.insertSql = builder.buildInsertSql(table, tableMeta);
+            this.updateSql = builder.buildUpdateSql(table, tableMeta);
+            this.deleteSql = String.format(DELETE_SQL_TEMPLATE, table, builder.buildWhereConditionSqlByPks(tableMeta));
+            this.insertColumns = tableMeta.getAllColumnList().stream().map(ColumnMeta::getColumnName).toArray(String[]::new);
+            this.updateColumns = tableMeta.getAllColumnList().stream().map(ColumnMeta::getColumnName)
+                    .filter(name -> !pkNameList.contains(name)).toArray(String[]::new);
+            this.pkColumns = pkNameList.toArray(new String[0]);
+        }
+
+        public String upsertSql(int rows) {
+            return CollectionUtils.computeIfAbsent(upsertSqlMap, rows, r -> builder.buildUpsertSql(table, tableMeta, r));
+        }
+
+        public String deleteInSql(int rows) {
+            return CollectionUtils.computeIfAbsent(deleteInSqlMap, rows, r -> builder.buildDeleteInSql(table, tableMeta, r));
+        }
+
+        Object[] fillInsertParam(CudRequest cudRequest) {
+            Map<String, Object> parameters = cudRequest.getParameters();
+            Object[] params = new Object[insertColumns.length];
+            for (int i = 0; i < insertColumns.length; i++) {
+                params[i] = parameters.get(insertColumns[i]);
+            }
+            return params;
+        }
+
+        Object[] fillUpdateParam(CudRequest cudRequest) {
+            Map<String, Object> parameters = cudRequest.getParameters();
+            Object[] params = new Object[updateColumns.length + pkColumns.length];
+            int index = 0;
+            for (String column : updateColumns) {
+                params[index++] = parameters.get(column);
+            }
+            for (String pkColumn : pkColumns) {
+                params[index++] = cudRequest.getPkValueMap().get(pkColumn).getValue();
+            }
+            return params;
+        }
+
+        Object[] fillDeleteParam(CudRequest cudRequest) {
+            Object[] params = new Object[pkColumns.length];
+            for (int i = 0; i < pkColumns.length; i++) {
+                params[i] = cudRequest.getPkValueMap().get(pkColumns[i]).getValue();
+            }
+            return params;
         }
-        return params;
     }
 }
@@ -0,0 +1,374 @@
+package com.jte.sync2any.load.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的预写日志，按固定大小切分为多个段文件，每个段文件通过内存映射写入。
+ * 每条记录的格式为：长度（int）+ crc32（int）+ 确认标记（byte）+ 内容，长度为0表示段的结尾（文件创建时全部为0）。
+ * 记录按tag（kafka的topicGroup）分组，提交offset之前由{@link #commit(String)}把该tag下新追加的记录标记为已提交并刷盘；
+ * 记录确认写入目标数据源后在映射内存中写入确认标记。重放时只读出已提交、未确认的记录，未提交的记录由kafka重新投递。
+ * 每个段记录还未确认的记录数，段写满（或关闭时）所有记录都已确认则删除该段文件。
+ * 启动时目录中已有的段文件为上次停止时留下的数据，由{@link #replay(RecordHandler, int)}读出未确认的记录后删除。
+ */
+@Slf4j
+public class SegmentLog {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 9;
+    private static final int FLAG_OFFSET = 8;
+    private static final byte RELEASED = 1;
+    private static final byte COMMITTED = 2;
+
+    private static final Object UNSAFE;
+    /**
+     * java9及以上的sun.misc.Unsafe.invokeCleaner(ByteBuffer)，java8为null
+     */
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            //java8
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final File dir;
+    private final int segmentBytes;
+
+    /**
+     * 上次停止时留下的段文件，按序号排列
+     */
+    private final List<File> replayFiles = new ArrayList<>();
+    /**
+     * key: 段的序号
+     */
+    private final Map<Long, Segment> segmentMap = new HashMap<>();
+    /**
+     * 上次commit之后追加的记录位置
+     * key: tag
+     */
+    private final Map<String, PositionList> uncommittedMap = new HashMap<>();
+    private Segment active;
+    private long nextSeq;
+
+    /**
+     * @param dir          段文件所在目录，不存在时创建
+     * @param segmentBytes 每个段文件的大小
+     */
+    public SegmentLog(File dir, int segmentBytes) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can not create wal dir:" + dir.getAbsolutePath());
+        }
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        File[] files = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (Objects.nonNull(files)) {
+            Arrays.sort(files, Comparator.comparingLong(SegmentLog::seqOf));
+            replayFiles.addAll(Arrays.asList(files));
+            nextSeq = files.length == 0 ? 0 : seqOf(files[files.length - 1]) + 1;
+        }
+        log.info("open wal dir:{} segments to replay:{}", dir.getAbsolutePath(), replayFiles.size());
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param tag 记录所属的分组，提交offset之前传给{@link #commit(String)}
+     * @return 记录的位置（高32位为段的序号，低32位为记录在段中的偏移），确认写入后传给{@link #release(long)}
+     */
+    public synchronized long append(String tag, byte[] record) throws IOException {
+        int size = HEADER_BYTES + record.length;
+        //至少保留一个长度为0的结尾
+        if (size + 4 > segmentBytes) {
+            throw new IllegalArgumentException("wal record is larger than segment, size:" + size);
+        }
+        if (Objects.isNull(active) || active.buffer.remaining() < size + 4) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        int offset = active.buffer.position();
+        active.buffer.putInt(record.length);
+        active.buffer.putInt((int) crc.getValue());
+        active.buffer.put((byte) 0);
+        active.buffer.put(record);
+        active.pending++;
+        active.dirty = true;
+        long position = (active.seq << 32) | offset;
+        uncommittedMap.computeIfAbsent(tag, k -> new PositionList()).add(position);
+        return position;
+    }
+
+    /**
+     * 把tag下上次commit之后追加的记录标记为已提交并刷盘，在提交这些记录对应的kafka offset之前调用。
+     * 已确认的记录不需要再标记
+     */
+    public synchronized void commit(String tag) {
+        PositionList positionList = uncommittedMap.remove(tag);
+        if (Objects.nonNull(positionList)) {
+            for (int i = 0; i < positionList.size; i++) {
+                long position = positionList.values[i];
+                Segment segment = segmentMap.get(position >>> 32);
+                if (Objects.isNull(segment)) {
+                    continue;
+                }
+                int flagIndex = (int) position + FLAG_OFFSET;
+                if (segment.buffer.get(flagIndex) == 0) {
+                    segment.buffer.put(flagIndex, COMMITTED);
+                    segment.dirty = true;
+                }
+            }
+        }
+        force();
+    }
+
+    /**
+     * 把已追加的记录写入磁盘，返回后这些记录在进程崩溃后也能恢复
+     */
+    public synchronized void force() {
+        for (Segment segment : segmentMap.values()) {
+            if (segment.dirty) {
+                segment.buffer.force();
+                segment.dirty = false;
+            }
+        }
+    }
+
+    /**
+     * 确认一条记录已经写入目标数据源，重放时不再读出这条记录
+     *
+     * @param position append返回的记录位置
+     */
+    public synchronized void release(long position) {
+        Segment segment = segmentMap.get(position >>> 32);
+        if (Objects.isNull(segment)) {
+            return;
+        }
+        int flagIndex = (int) position + FLAG_OFFSET;
+        if (segment.buffer.get(flagIndex) == RELEASED) {
+            return;
+        }
+        segment.buffer.put(flagIndex, RELEASED);
+        segment.dirty = true;
+        segment.pending--;
+        if (segment.pending <= 0 && segment != active) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * 读出上次停止时留下的已提交、未确认的记录，每读出batchSize条调用一次{@link RecordHandler#finish()}，
+     * 成功后把这些记录标记为已确认；全部处理成功后删除这些段文件。
+     * 处理失败时抛出异常，段文件保留，下次启动时只重放还未确认的记录
+     *
+     * @return 记录数
+     */
+    public synchronized int replay(RecordHandler handler, int batchSize) throws Exception {
+        int count = 0;
+        List<MappedByteBuffer> bufferList = new ArrayList<>();
+        //已交给handler、还未finish的记录的确认标记位置
+        List<Integer> flagIndexList = new ArrayList<>();
+        List<MappedByteBuffer> flagBufferList = new ArrayList<>();
+        try {
+            for (File file : replayFiles) {
+                MappedByteBuffer buffer;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                     FileChannel channel = raf.getChannel()) {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                }
+                bufferList.add(buffer);
+                while (buffer.remaining() >= HEADER_BYTES) {
+                    int offset = buffer.position();
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    byte flag = buffer.get();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    buffer.get(record);
+                    //已确认的不需要重放，未提交的kafka会重新投递
+                    if (flag != COMMITTED) {
+                        continue;
+                    }
+                    CRC32 crc = new CRC32();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        //写到一半时进程退出，之后的数据都没有提交过
+                        log.warn("wal record checksum mismatch, ignore the rest of segment:{}", file.getName());
+                        break;
+                    }
+                    handler.handle(record);
+                    flagIndexList.add(offset + FLAG_OFFSET);
+                    flagBufferList.add(buffer);
+                    count++;
+                    if (flagIndexList.size() >= batchSize) {
+                        finishReplay(handler, flagBufferList, flagIndexList);
+                    }
+                }
+            }
+            finishReplay(handler, flagBufferList, flagIndexList);
+        } finally {
+            bufferList.forEach(SegmentLog::unmap);
+        }
+        for (File file : replayFiles) {
+            if (!file.delete()) {
+                log.warn("can not delete replayed wal segment:{}", file.getAbsolutePath());
+            }
+        }
+        log.warn("replay wal dir:{} segments:{} records:{}", dir.getAbsolutePath(), replayFiles.size(), count);
+        replayFiles.clear();
+        return count;
+    }
+
+    private static void finishReplay(RecordHandler handler, List<MappedByteBuffer> flagBufferList, List<Integer> flagIndexList) throws Exception {
+        handler.finish();
+        Set<MappedByteBuffer> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < flagIndexList.size(); i++) {
+            flagBufferList.get(i).put(flagIndexList.get(i), RELEASED);
+            touched.add(flagBufferList.get(i));
+        }
+        touched.forEach(MappedByteBuffer::force);
+        flagIndexList.clear();
+        flagBufferList.clear();
+    }
+
+    /**
+     * 未确认的记录数
+     */
+    public synchronized long getPending() {
+        long pending = 0;
+        for (Segment segment : segmentMap.values()) {
+            pending += segment.pending;
+        }
+        return pending;
+    }
+
+    /**
+     * 所有记录都已确认的段（包括正在写入的段）直接删除，其余的段刷盘后留给下次启动时重放
+     */
+    public synchronized void close() {
+        force();
+        for (Segment segment : new ArrayList<>(segmentMap.values())) {
+            if (segment.pending <= 0) {
+                delete(segment);
+            } else {
+                unmap(segment.buffer);
+            }
+        }
+        segmentMap.clear();
+        active = null;
+    }
+
+    private void roll() throws IOException {
+        Segment previous = active;
+        File file = new File(dir, SEGMENT_PREFIX + String.format("%020d", nextSeq) + SEGMENT_SUFFIX);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            active = new Segment(nextSeq, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+        segmentMap.put(active.seq, active);
+        nextSeq++;
+        if (Objects.nonNull(previous)) {
+            if (previous.pending <= 0) {
+                delete(previous);
+            }
+        }
+    }
+
+    private void delete(Segment segment) {
+        segmentMap.remove(segment.seq);
+        unmap(segment.buffer);
+        if (!segment.file.delete()) {
+            log.warn("can not delete wal segment:{}", segment.file.getAbsolutePath());
+        }
+    }
+
+    private static long seqOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 没有释放内存映射的公开方法，不释放时windows下无法删除文件。
+     * java9及以上使用Unsafe.invokeCleaner，java8使用DirectByteBuffer.cleaner()，都不可用时留给GC释放
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            if (Objects.nonNull(INVOKE_CLEANER)) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (Objects.nonNull(cleaner)) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            log.debug("unmap wal segment fail", e);
+        }
+    }
+
+    private static class PositionList {
+        long[] values = new long[64];
+        int size;
+
+        void add(long position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+    }
+
+    private static class Segment {
+        final long seq;
+        final File file;
+        final MappedByteBuffer buffer;
+        int pending;
+        /**
+         * 有没有还未force的数据
+         */
+        boolean dirty = true;
+
+        Segment(long seq, File file, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    public interface RecordHandler {
+        void handle(byte[] record) throws Exception;
+
+        /**
+         * 每读出一批记录以及所有记录读完时调用，返回后这批记录被标记为已确认
+         */
+        default void finish() throws Exception {
+        }
+    }
+}
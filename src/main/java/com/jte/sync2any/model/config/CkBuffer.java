@@ -0,0 +1,44 @@
+package com.jte.sync2any.model.config;
+
+import com.jte.sync2any.core.Constants;
+import lombok.Data;
+
+/**
+ * 增量同步写入clickhouse时，每个目标表的缓冲区的配置
+ */
+@Data
+public class CkBuffer {
+    /**
+     * 缓冲区达到多少行时写入（每次insert最多包含的行数）
+     */
+    private int maxRows = 20000;
+    /**
+     * 缓冲区中最早的一行最多等待多久写入（毫秒）
+     */
+    private long maxAgeMs = 5000;
+    /**
+     * 同时写入clickhouse的线程数，不同的表并行写入，同一个表同时只有一个insert
+     */
+    private int flushThreads = 4;
+    /**
+     * 所有表的缓冲区合计最多占用的内存（MB，估算值），超过后暂停消费写入clickhouse的kafka
+     */
+    private int maxBufferedMb = 256;
+    /**
+     * 暂停消费后，缓冲区合计低于多少MB时恢复消费
+     */
+    private int resumeBufferedMb = 128;
+    /**
+     * 是否开启预写日志：数据放入缓冲区前先写入本地磁盘，提交offset前刷盘，写入clickhouse后删除，重启时重放。
+     * 开启后进程意外退出也不会丢失已提交offset但还未写入clickhouse的数据
+     */
+    private String walEnabled = Constants.NO;
+    /**
+     * 预写日志的目录
+     */
+    private String walDir = "./wal/ck";
+    /**
+     * 预写日志每个段文件的大小（MB）
+     */
+    private int walSegmentMb = 64;
+}
@@ -0,0 +1,43 @@
+package com.jte.sync2any.model.config;
+
+import com.jte.sync2any.core.Constants;
+import lombok.Data;
+
+/**
+ * 载入原始数据时，同时载入的表数，每个表解析和写入的并行度，以及载入断点
+ */
+@Data
+public class DumpLoad {
+    /**
+     * 解析dump数据的线程数
+     */
+    private int parseThreads = 4;
+    /**
+     * 写入目标数据源的线程数（ck只支持单线程写入）
+     */
+    private int loadThreads = 4;
+    /**
+     * 解析、写入线程池各自最多排队的任务数
+     */
+    private int queueSize = 16;
+    /**
+     * 同时dump和载入的表数（写入ck的表依次载入）
+     */
+    private int tables = 4;
+    /**
+     * 同一个源数据库同时dump和载入的表数
+     */
+    private int tablesPerDb = 2;
+    /**
+     * 是否记录载入断点，进程在载入时退出后，重启时从断点继续载入
+     */
+    private String checkpointEnabled = Constants.YES;
+    /**
+     * 断点文件的目录
+     */
+    private String checkpointDir = "./checkpoint";
+    /**
+     * 保存断点的间隔（毫秒）
+     */
+    private long checkpointIntervalMs = 10000;
+}
@@ -0,0 +1,40 @@
+package com.jte.sync2any.model.config;
+
+import com.jte.sync2any.core.Constants;
+import lombok.Data;
+
+/**
+ * 增量同步写入es时，bulk管道的配置
+ */
+@Data
+public class EsBulk {
+    /**
+     * 是否开启bulk管道：1是，0否（默认，每行数据单独请求一次es）。
+     * 开启后写入是异步的：operateData放入管道即返回，apply指标只包含放入管道的耗时，写入es的耗时见es_bulk，延迟在bulk成功后记录
+     */
+    private String enabled = Constants.NO;
+    /**
+     * 每个bulk最多包含的操作数
+     */
+    private int bulkActions = 1000;
+    /**
+     * 每个bulk最大的字节数（MB）
+     */
+    private int bulkSizeMb = 5;
+    /**
+     * 未达到上面两个阈值时，最长多久提交一次（毫秒）
+     */
+    private long flushIntervalMs = 1000;
+    /**
+     * 同时在途的bulk数量，按主键hash分到不同的bulk通道，同一主键总在同一通道内按顺序提交
+     */
+    private int concurrentRequests = 4;
+    /**
+     * es返回拒绝（429）时的重试间隔（毫秒）
+     */
+    private long backoffDelayMs = 100;
+    /**
+     * es返回拒绝（429）时的重试次数
+     */
+    private int backoffRetries = 3;
+}
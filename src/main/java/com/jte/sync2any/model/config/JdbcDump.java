@@ -0,0 +1,22 @@
+package com.jte.sync2any.model.config;
+
+import lombok.Data;
+
+/**
+ * dump-mode为jdbc时，按主键范围并行查询原始数据的配置
+ */
+@Data
+public class JdbcDump {
+    /**
+     * 每个表同时查询的连接数
+     */
+    private int threads = 4;
+    /**
+     * 每个分片的主键范围（最大主键-最小主键），主键连续时约等于每个分片的行数
+     */
+    private long chunkRows = 100000;
+    /**
+     * 每次交给载入线程的行数
+     */
+    private int batchRows = 1000;
+}
@@ -1,5 +1,6 @@
 package com.jte.sync2any.model.config;
 
+import com.jte.sync2any.core.Constants;
 import lombok.Data;
 
 @Data
@@ -20,4 +21,9 @@ public class Mq {
      * mq的密码
      */
     private String password;
+    /**
+     * 是否按批消费：1是，0否（默认）。
+     * 开启后一次poll到的所有消息会一起解析，并按目标表分组批量写入
+     */
+    private String batchMode = Constants.NO;
 }
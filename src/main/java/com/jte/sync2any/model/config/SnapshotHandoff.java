@@ -0,0 +1,20 @@
+package com.jte.sync2any.model.config;
+
+import com.jte.sync2any.core.Constants;
+import lombok.Data;
+
+/**
+ * 载入原始数据后开始增量同步时，根据dump之前的binlog位置跳过已经包含在原始数据中的消息
+ */
+@Data
+public class SnapshotHandoff {
+    /**
+     * 是否在dump之前获取binlog位置，增量同步时跳过此位置之前的事件（需要REPLICATION CLIENT权限）
+     */
+    private String enabled = Constants.YES;
+    /**
+     * 新的消费组（没有已提交的offset）并且topic的所有表都刚载入了原始数据时，从dump时间之前多少秒的消息开始消费，
+     * 用于容忍数据库、DTS和kafka之间的时钟误差；小于0时不定位，从最早的消息开始消费
+     */
+    private long seekMarginSeconds = 300;
+}
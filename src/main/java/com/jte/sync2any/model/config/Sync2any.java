@@ -10,6 +10,19 @@ import java.util.List;
 @ConfigurationProperties("sync2any")
 @Data
 public class Sync2any {
+    /**
+     * 先把mysqldump的数据写入文件，dump完后再载入
+     */
+    public static final String DUMP_MODE_FILE = "file";
+    /**
+     * 边dump边载入，不生成临时文件
+     */
+    public static final String DUMP_MODE_STREAM = "stream";
+    /**
+     * 不使用mysqldump，通过jdbc按主键范围并行查询，边查询边载入
+     */
+    public static final String DUMP_MODE_JDBC = "jdbc";
+
     /**
      * "mysqldump" command path
      */
@@ -18,6 +31,31 @@ public class Sync2any {
      * "mysqldump" sql data save location
      */
     private String mysqldumpDataLocation;
+    /**
+     * 同步原始数据的方式：file（默认）、stream、jdbc
+     */
+    private String dumpMode = DUMP_MODE_FILE;
+    /**
+     * stream方式下，dump出来还未载入的数据最多缓存多少行（mysqldump的每行是一条多值的INSERT语句）；
+     * jdbc方式下为最多缓存多少批（每批jdbcDump.batchRows行）
+     */
+    private int dumpQueueSize = 16;
+    /**
+     * jdbc方式的配置
+     */
+    private JdbcDump jdbcDump = new JdbcDump();
+    /**
+     * 载入原始数据时的并行度和断点
+     */
+    private DumpLoad dumpLoad = new DumpLoad();
+    /**
+     * 载入原始数据后衔接增量同步的配置
+     */
+    private SnapshotHandoff snapshotHandoff = new SnapshotHandoff();
+    /**
+     * 状态页面和状态接口使用的快照的刷新间隔（毫秒）
+     */
+    private long stateRefreshMs = 2000;
     /**
      *  which mysql database need to sync.
      */
@@ -26,6 +64,14 @@ public class Sync2any {
      *  alert config
      */
     private Alert alert;
+    /**
+     * 增量同步写入es的bulk管道配置
+     */
+    private EsBulk esBulk = new EsBulk();
+    /**
+     * 增量同步写入clickhouse的缓冲区配置
+     */
+    private CkBuffer ckBuffer = new CkBuffer();
 
     /**
      * 通过topicGroup来找sync-config-list中的配置
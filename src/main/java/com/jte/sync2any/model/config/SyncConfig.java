@@ -33,6 +33,14 @@ public class SyncConfig {
      * 延迟告警(秒)
      */
     private int maxDelayInSecond = -1;
+    /**
+     * 延迟告警按最近一个窗口内每行延迟的哪个百分位判断（0~100）
+     */
+    private double delayPercentile = 99;
+    /**
+     * 统计延迟百分位的窗口(秒)
+     */
+    private int delayWindowSeconds = 60;
     /**
      * 空闲告警(分钟)
      */
@@ -49,4 +57,20 @@ public class SyncConfig {
      * 默认表名后缀
      */
     private String targetTableSuffix = "";
+    /**
+     * 增量数据并行写入的通道数，同一主键的变更总是在同一个通道内按顺序写入
+     */
+    private int applyLanes = 4;
+    /**
+     * 每个写入通道最多缓存的待写入行数，超过后kafka消费线程会阻塞等待
+     */
+    private int applyLaneCapacity = 1000;
+    /**
+     * 是否合并同一主键在一个刷新窗口（到checkpoint为止）内的多次变更
+     */
+    private String coalesce = Constants.YES;
+    /**
+     * 合并缓冲区最多缓存的行数，超过后不等checkpoint直接写入
+     */
+    private int coalesceMaxSize = 5000;
 }
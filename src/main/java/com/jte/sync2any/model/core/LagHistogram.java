@@ -0,0 +1,137 @@
+package com.jte.sync2any.model.core;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个表的同步延迟（毫秒）的滑动窗口直方图，基于HdrHistogram（2位有效数字，按记录到的最大值自动扩容，
+ * 表很多时没有数据的表只占用很少的内存）。
+ * 写入时只记录到Recorder（无锁，可以与读取同时进行）；窗口平均分为3段，每段一个直方图，
+ * 每过一段时间（或读取时）把Recorder中的数据取出累加到当前段，最旧的段清空后作为新的当前段；
+ * 读取时合并3段，包含最近2/3到1个窗口内的数据。
+ */
+public class LagHistogram {
+
+    private static final long HIGHEST_TRACKABLE_MS = TimeUnit.DAYS.toMillis(30);
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int BUFFER_LENGTH = 3;
+
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Histogram[] ring = new Histogram[BUFFER_LENGTH];
+    private final long rotateIntervalMs;
+    private volatile long nextRotateTime;
+    /**
+     * 当前段
+     */
+    private int current;
+    /**
+     * 从Recorder取出数据时复用的直方图
+     */
+    private Histogram interval;
+
+    /**
+     * @param windowMs 窗口大小（毫秒）
+     */
+    public LagHistogram(long windowMs) {
+        this(windowMs, System.currentTimeMillis());
+    }
+
+    LagHistogram(long windowMs, long now) {
+        for (int i = 0; i < BUFFER_LENGTH; i++) {
+            ring[i] = new Histogram(SIGNIFICANT_DIGITS);
+        }
+        this.rotateIntervalMs = Math.max(windowMs / BUFFER_LENGTH, 1);
+        this.nextRotateTime = now + rotateIntervalMs;
+    }
+
+    public void record(long lagMs) {
+        record(lagMs, System.currentTimeMillis());
+    }
+
+    /**
+     * @param lagMs 小于0（时钟误差）时按0记录
+     * @param now
+     */
+    void record(long lagMs, long now) {
+        if (now >= nextRotateTime) {
+            synchronized (this) {
+                rotate(now);
+            }
+        }
+        recorder.recordValue(Math.min(Math.max(lagMs, 0), HIGHEST_TRACKABLE_MS));
+    }
+
+    public Snapshot snapshot() {
+        return snapshot(System.currentTimeMillis());
+    }
+
+    synchronized Snapshot snapshot(long now) {
+        rotate(now);
+        drain();
+        Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+        for (Histogram histogram : ring) {
+            merged.add(histogram);
+        }
+        return merged.getTotalCount() == 0 ? Snapshot.EMPTY : new Snapshot(merged);
+    }
+
+    /**
+     * 把Recorder中的数据累加到当前段，需要持有锁
+     */
+    private void drain() {
+        interval = recorder.getIntervalHistogram(interval);
+        ring[current].add(interval);
+    }
+
+    /**
+     * 需要持有锁
+     */
+    private void rotate(long now) {
+        if (now < nextRotateTime) {
+            return;
+        }
+        //之前记录的数据属于即将结束的段
+        drain();
+        //空闲很久之后最多清空一轮
+        for (int i = 0; i < BUFFER_LENGTH && now >= nextRotateTime; i++) {
+            current = (current + 1) % BUFFER_LENGTH;
+            ring[current].reset();
+            nextRotateTime += rotateIntervalMs;
+        }
+        if (now >= nextRotateTime) {
+            nextRotateTime = now + rotateIntervalMs;
+        }
+    }
+
+    /**
+     * 读取时的窗口数据，窗口内没有数据时各个值都为0
+     */
+    public static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(null);
+
+        private final Histogram histogram;
+
+        Snapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        public long getCount() {
+            return Objects.isNull(histogram) ? 0 : histogram.getTotalCount();
+        }
+
+        /**
+         * @param percentile 0~100，如99
+         * @return
+         */
+        public long getValueAtPercentile(double percentile) {
+            return Objects.isNull(histogram) ? 0 : histogram.getValueAtPercentile(percentile);
+        }
+
+        public long getMax() {
+            return Objects.isNull(histogram) ? 0 : histogram.getMaxValue();
+        }
+    }
+}
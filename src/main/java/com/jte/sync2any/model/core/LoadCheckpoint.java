@@ -0,0 +1,42 @@
+package com.jte.sync2any.model.core;
+
+import com.jte.sync2any.model.mysql.BinlogPosition;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一个表的原始数据的载入断点，载入完成后删除。
+ * 重启时存在断点的表从断点继续载入，而不是因为目标表已有数据而跳过。
+ */
+@Data
+public class LoadCheckpoint {
+    /**
+     * 开始载入时的dump方式，与当前的方式不同时重新载入
+     */
+    private String dumpMode;
+    /**
+     * file方式下dump出来的文件
+     */
+    private String dataFile;
+    /**
+     * file方式下dump文件中已载入的行数
+     */
+    private long loadedLines;
+    /**
+     * 单列整数主键的表（mysqldump方式）：主键小于等于此值的数据都已载入
+     */
+    private Long loadedPk;
+    /**
+     * 单列整数主键的表（jdbc方式）：还未载入的主键范围，每个为[起始主键, 结束主键]
+     */
+    private List<long[]> chunks;
+    /**
+     * 第一次开始载入时dump之前的binlog位置，从断点继续载入时沿用
+     */
+    private BinlogPosition snapshotPosition;
+    /**
+     * 保存时间
+     */
+    private long updateTime;
+}
@@ -0,0 +1,25 @@
+package com.jte.sync2any.model.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 分页的同步状态
+ */
+@Getter
+@AllArgsConstructor
+public class StatePage {
+    /**
+     * 符合条件的表的总数
+     */
+    private final int total;
+    private final int page;
+    private final int size;
+    /**
+     * 状态快照的生成时间
+     */
+    private final long refreshTime;
+    private final List<TableState> items;
+}
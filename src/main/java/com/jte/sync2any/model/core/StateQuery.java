@@ -0,0 +1,37 @@
+package com.jte.sync2any.model.core;
+
+import lombok.Data;
+
+/**
+ * 查询同步状态的条件，为空的条件不过滤
+ */
+@Data
+public class StateQuery {
+    private String topicName;
+    private String topicGroup;
+    /**
+     * 源表名包含的字符串
+     */
+    private String tableName;
+    /**
+     * SyncState的名称，如SYNCING
+     */
+    private String state;
+    /**
+     * 最近一个窗口内p99延迟不小于此值（毫秒）
+     */
+    private Long minLag;
+    /**
+     * 排序字段，见TableStateCache.SORT_FIELDS
+     */
+    private String sort = "tableName";
+    /**
+     * asc或desc
+     */
+    private String order = "asc";
+    /**
+     * 从1开始
+     */
+    private int page = 1;
+    private int size = 50;
+}
@@ -0,0 +1,61 @@
+package com.jte.sync2any.model.core;
+
+import com.jte.sync2any.model.mysql.TableMeta;
+import lombok.Getter;
+
+import java.util.Objects;
+
+/**
+ * 某一时刻一个表的同步状态（只读），由状态快照定时生成，查询时不再访问TableMeta
+ */
+@Getter
+public class TableState {
+    private final String ruleKey;
+    private final String dbName;
+    private final String tableName;
+    private final String targetTableName;
+    private final String topicName;
+    private final String topicGroup;
+    private final SyncState state;
+    private final String stateDesc;
+    private final long lastSyncTime;
+    /**
+     * 最后一行数据的延迟（毫秒）
+     */
+    private final long delay;
+    /**
+     * 最近一个窗口内每行数据的延迟（毫秒）
+     */
+    private final long lagCount;
+    private final long lagP50;
+    private final long lagP95;
+    private final long lagP99;
+    private final long lagMax;
+    private final long tpq;
+    private final long lastOffset;
+    private final long coalescedWrites;
+    private final String errorReason;
+
+    public TableState(String ruleKey, TableMeta meta) {
+        this.ruleKey = ruleKey;
+        this.dbName = meta.getDbName();
+        this.tableName = meta.getTableName();
+        this.targetTableName = meta.getTargetTableName();
+        this.topicName = meta.getTopicName();
+        this.topicGroup = meta.getTopicGroup();
+        this.state = meta.getState();
+        this.stateDesc = meta.getState().desc();
+        this.lastSyncTime = meta.getLastSyncTime();
+        this.delay = meta.getLastSyncTime() - meta.getLastDataManipulateTime();
+        LagHistogram.Snapshot lag = Objects.isNull(meta.getLagHistogram()) ? LagHistogram.Snapshot.EMPTY : meta.getLagHistogram().snapshot();
+        this.lagCount = lag.getCount();
+        this.lagP50 = lag.getValueAtPercentile(50);
+        this.lagP95 = lag.getValueAtPercentile(95);
+        this.lagP99 = lag.getValueAtPercentile(99);
+        this.lagMax = lag.getMax();
+        this.tpq = meta.getTpq();
+        this.lastOffset = meta.getLastOffset();
+        this.coalescedWrites = meta.getCoalescedWrites();
+        this.errorReason = meta.getErrorReason();
+    }
+}
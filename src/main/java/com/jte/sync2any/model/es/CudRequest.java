@@ -1,6 +1,7 @@
 package com.jte.sync2any.model.es;
 
 import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.DecodedRow;
 import com.jte.sync2any.model.mysql.Field;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.model.mysql.TableRecords;
@@ -40,7 +41,32 @@ public class CudRequest {
 
     private TableMeta tableMeta;
     /**
-     * 父级
+     * 父级（只有通过TableRecords转换时才有值）
      */
     private TableRecords records;
+
+    /**
+     * 修改前的行（INSERT时为null），按allColumnList的位置保存值
+     */
+    private DecodedRow oldRow;
+
+    /**
+     * 修改后的行（DELETE时为null），按allColumnList的位置保存值
+     */
+    private DecodedRow newRow;
+
+    /**
+     * 增量数据对应的kafka offset（载入原始数据时为0）
+     */
+    private long kafkaOffset;
+
+    /**
+     * 增量数据对应的binlog时间戳（秒）
+     */
+    private int binlogTimestamp;
+
+    /**
+     * 由同一主键的多次变更合并而来（见CoalescingBuffer），其中的部分变更可能在重启前已经写入过
+     */
+    private boolean coalesced;
 }
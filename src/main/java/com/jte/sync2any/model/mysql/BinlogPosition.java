@@ -0,0 +1,121 @@
+package com.jte.sync2any.model.mysql;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * 源数据库的binlog位置（SHOW MASTER STATUS），在dump原始数据之前获取。
+ * 在此之前提交的事务都已经包含在dump的数据中，增量同步时可以跳过。
+ */
+@Data
+public class BinlogPosition {
+    /**
+     * 获取位置的数据库的server_id
+     */
+    private long serverId;
+    private String fileName;
+    private long position;
+    /**
+     * 已执行的gtid集合（Executed_Gtid_Set），未开启gtid时为空
+     */
+    private String gtidSet;
+    /**
+     * 获取位置的时间（毫秒）
+     */
+    private long timestamp;
+
+    /**
+     * 解析后的gtid集合，key：server uuid，value：已执行的事务号区间
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private transient volatile Map<String, List<long[]>> gtidIntervals;
+
+    /**
+     * binlog中的事件是否已经包含在此位置之前。
+     * 开启了gtid时按gtid判断（主从切换后仍然有效）；否则同一个server的binlog按文件名和位置判断；
+     * 都无法判断时返回false，事件照常写入。
+     *
+     * @param gtid      事件所在事务的gtid，格式为uuid:事务号
+     * @param serverId  产生事件的server_id
+     * @param fileName  事件所在的binlog文件
+     * @param position  事件在binlog文件中的位置
+     * @return
+     */
+    public boolean includes(String gtid, long serverId, String fileName, long position) {
+        if (StringUtils.isNotBlank(gtidSet) && StringUtils.isNotBlank(gtid)) {
+            return containsGtid(gtid);
+        }
+        if (this.serverId == 0 || this.serverId != serverId || StringUtils.isBlank(this.fileName) || StringUtils.isBlank(fileName)) {
+            return false;
+        }
+        int fileDot = fileName.lastIndexOf('.');
+        int thisDot = this.fileName.lastIndexOf('.');
+        //不同的binlog文件名前缀（如主从切换后）无法比较
+        if (fileDot < 0 || thisDot < 0 || !fileName.substring(0, fileDot).equals(this.fileName.substring(0, thisDot))) {
+            return false;
+        }
+        long fileIndex;
+        long thisIndex;
+        try {
+            fileIndex = Long.parseLong(fileName.substring(fileDot + 1));
+            thisIndex = Long.parseLong(this.fileName.substring(thisDot + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return fileIndex < thisIndex || (fileIndex == thisIndex && position < this.position);
+    }
+
+    private boolean containsGtid(String gtid) {
+        int colon = gtid.lastIndexOf(':');
+        if (colon < 0) {
+            return false;
+        }
+        long transactionId;
+        try {
+            transactionId = Long.parseLong(gtid.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        List<long[]> intervals = getGtidIntervals().get(gtid.substring(0, colon).trim().toLowerCase());
+        if (Objects.isNull(intervals)) {
+            return false;
+        }
+        for (long[] interval : intervals) {
+            if (transactionId >= interval[0] && transactionId <= interval[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析形如 uuid1:1-100:105,uuid2:1-5 的gtid集合
+     */
+    private Map<String, List<long[]>> getGtidIntervals() {
+        if (Objects.isNull(gtidIntervals)) {
+            Map<String, List<long[]>> intervalMap = new HashMap<>();
+            for (String uuidSet : gtidSet.split(",")) {
+                String[] parts = uuidSet.trim().split(":");
+                if (parts.length < 2) {
+                    continue;
+                }
+                List<long[]> intervals = intervalMap.computeIfAbsent(parts[0].trim().toLowerCase(), k -> new ArrayList<>());
+                for (int i = 1; i < parts.length; i++) {
+                    String[] range = parts[i].trim().split("-");
+                    long start = Long.parseLong(range[0]);
+                    intervals.add(new long[]{start, range.length > 1 ? Long.parseLong(range[1]) : start});
+                }
+            }
+            gtidIntervals = intervalMap;
+        }
+        return gtidIntervals;
+    }
+}
@@ -0,0 +1,116 @@
+package com.jte.sync2any.model.mysql;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 解析后的一行数据，按列在TableMeta.allColumnList中的位置保存值。
+ * 相比Row（每列一个Field对象），每行只有两个数组，按位置取值不需要按列名查找。
+ * 消息中没有的列（DTS的NA）和被过滤的列视为不存在，与值为null（NIL）区分开。
+ */
+public class DecodedRow {
+
+    private final Object[] values;
+    private final boolean[] present;
+    private int presentCount;
+
+    public DecodedRow(int columnCount) {
+        this.values = new Object[columnCount];
+        this.present = new boolean[columnCount];
+    }
+
+    /**
+     * 由Row转换而来（兼容TableRecords的解析方式）
+     *
+     * @param tableMeta
+     * @param row
+     * @return
+     */
+    public static DecodedRow of(TableMeta tableMeta, Row row) {
+        DecodedRow decodedRow = new DecodedRow(tableMeta.getAllColumnList().size());
+        for (Field field : row.getFields()) {
+            int position = tableMeta.getColumnPosition(field.getName());
+            if (position >= 0) {
+                decodedRow.set(position, field.getValue());
+            }
+        }
+        return decodedRow;
+    }
+
+    /**
+     * 由Row转换而来，rows为空时返回null
+     */
+    public static DecodedRow of(TableMeta tableMeta, List<Row> rows) {
+        return rows.isEmpty() ? null : of(tableMeta, rows.get(0));
+    }
+
+    public void set(int position, Object value) {
+        if (!present[position]) {
+            present[position] = true;
+            presentCount++;
+        }
+        values[position] = value;
+    }
+
+    public Object get(int position) {
+        return values[position];
+    }
+
+    public boolean isPresent(int position) {
+        return present[position];
+    }
+
+    /**
+     * 列数（与allColumnList一致）
+     */
+    public int size() {
+        return values.length;
+    }
+
+    public boolean isEmpty() {
+        return presentCount == 0;
+    }
+
+    public int getPresentCount() {
+        return presentCount;
+    }
+
+    /**
+     * 估算占用的内存（字节），用于限制缓冲区的大小
+     */
+    public long estimateBytes() {
+        //对象头、两个数组
+        long bytes = 48 + 5L * values.length;
+        for (Object value : values) {
+            if (value instanceof String) {
+                bytes += 40 + 2L * ((String) value).length();
+            } else if (value != null) {
+                bytes += 16;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 以字符串的形式获取主键值，多个主键以“_”拼接
+     *
+     * @param pkPositions 主键列的位置，见{@link TableMeta#getSortedPrimaryKeyPositions()}
+     * @return 一个主键列都不存在时返回null
+     */
+    public String pkValueStr(int[] pkPositions) {
+        StringBuilder pkValueStr = null;
+        for (int position : pkPositions) {
+            if (position < 0 || !present[position]) {
+                //主键不完整（如字段被过滤），以实际的字段为准
+                continue;
+            }
+            if (Objects.isNull(pkValueStr)) {
+                pkValueStr = new StringBuilder();
+            } else {
+                pkValueStr.append("_");
+            }
+            pkValueStr.append(values[position]);
+        }
+        return Objects.isNull(pkValueStr) ? null : pkValueStr.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package com.jte.sync2any.model.mysql;
+
+import com.jte.sync2any.exception.ShouldNeverHappenException;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * 将DTS消息中的行数据直接解析为DecodedRow。
+ * 与TableRecords.buildRecords()的解析规则一致（跳过NA、跳过被过滤的列、TIMESTAMP转换时区），
+ * 区别在于列名到列位置的对应关系对同一个DMLEvent只计算一次，每个值按位置直接写入数组，不再为每列创建Field。
+ */
+public final class RowDecoder {
+
+    private RowDecoder() {
+    }
+
+    /**
+     * 计算DMLEvent中每一列在TableMeta.allColumnList中的位置，同一个DMLEvent中的所有行共用
+     *
+     * @param tableMeta
+     * @param dmlEvt
+     * @return 下标为消息中列的序号，值为allColumnList中的位置；找不到或被过滤的列为-1
+     */
+    public static int[] columnPositions(TableMeta tableMeta, SubscribeDataProto.DMLEvent dmlEvt) {
+        int[] positions = new int[dmlEvt.getColumnsCount()];
+        boolean[] included = tableMeta.getIncludedColumns();
+        for (int i = 0; i < positions.length; i++) {
+            ColumnMeta columnMeta = tableMeta.getColumnMeta(dmlEvt.getColumns(i).getName().toLowerCase());
+            //TODO 如果更新了表结构，那么这个地方可能找不到最新的字段
+            int position = columnMeta == null ? -1 : tableMeta.getColumnPosition(columnMeta.getColumnName());
+            positions[i] = position >= 0 && included[position] ? position : -1;
+        }
+        return positions;
+    }
+
+    /**
+     * 解析修改前的行
+     *
+     * @return 没有任何列时返回null
+     */
+    public static DecodedRow decodeOld(TableMeta tableMeta, int[] positions, SubscribeDataProto.RowChange row) {
+        DecodedRow decodedRow = new DecodedRow(tableMeta.getAllColumnList().size());
+        boolean[] timestampColumns = tableMeta.getTimestampColumns();
+        int columnCount = Math.min(row.getOldColumnsCount(), positions.length);
+        for (int i = 0; i < columnCount; i++) {
+            decodeColumn(decodedRow, positions[i], row.getOldColumns(i), timestampColumns);
+        }
+        return decodedRow.isEmpty() ? null : decodedRow;
+    }
+
+    /**
+     * 解析修改后的行
+     *
+     * @return 没有任何列时返回null
+     */
+    public static DecodedRow decodeNew(TableMeta tableMeta, int[] positions, SubscribeDataProto.RowChange row) {
+        DecodedRow decodedRow = new DecodedRow(tableMeta.getAllColumnList().size());
+        boolean[] timestampColumns = tableMeta.getTimestampColumns();
+        int columnCount = Math.min(row.getNewColumnsCount(), positions.length);
+        for (int i = 0; i < columnCount; i++) {
+            decodeColumn(decodedRow, positions[i], row.getNewColumns(i), timestampColumns);
+        }
+        return decodedRow.isEmpty() ? null : decodedRow;
+    }
+
+    private static void decodeColumn(DecodedRow decodedRow, int position, SubscribeDataProto.Data col, boolean[] timestampColumns) {
+        if (position < 0 || col.getDataType() == SubscribeDataProto.DataType.NA) {
+            return;
+        }
+        try {
+            decodedRow.set(position, TableRecords.convertValue(TableRecords.decode(col), timestampColumns[position]));
+        } catch (UnsupportedEncodingException e) {
+            throw new ShouldNeverHappenException("UnsupportedEncodingException " + e.getMessage());
+        }
+    }
+}
@@ -17,11 +17,14 @@ package com.jte.sync2any.model.mysql;
 
 
 import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.core.LagHistogram;
 import com.jte.sync2any.model.core.SyncState;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 /**
  * The type Table meta.
@@ -76,7 +79,19 @@ public class TableMeta {
     /**
      * 当前同步状态
      */
-    private SyncState state=SyncState.INACTIVE;
+    private volatile SyncState state=SyncState.INACTIVE;
+
+    /**
+     * 最后一次收到增量数据、最后一次确认写入的本地时间（毫秒），以及开始有未确认数据的时间
+     */
+    private volatile long lastReceiveTime;
+    private volatile long lastAckTime;
+    private volatile long pendingSince;
+
+    /**
+     * 状态变化时的回调（参数为变化前的状态），由RuleRegistry注册，用于更新状态索引
+     */
+    private BiConsumer<TableMeta, SyncState> stateListener;
 
     /**
      * key: column name
@@ -98,13 +113,111 @@ public class TableMeta {
     private String shardingKey;
     private String ckTableEngine;
 
+    /**
+     * 增量同步时，合并同一主键的多次变更所节省的写入次数
+     */
+    private final AtomicLong coalescedWrites = new AtomicLong();
+
+    /**
+     * 预先计算的主键及列位置信息，避免在每行数据上重复计算。
+     * 规则解析完成后由initMetaCache()生成；未生成时在第一次使用时生成。
+     */
+    private volatile MetaCache metaCache;
+
+    /**
+     * 载入原始数据时，dump之前的binlog位置。增量同步追上此位置之前，跳过已经包含在原始数据中的事件；为null时不跳过
+     */
+    private volatile BinlogPosition snapshotPosition;
+
+    /**
+     * 每行增量数据从源库提交到写入目标数据源的延迟，为null时不记录
+     */
+    private volatile LagHistogram lagHistogram;
+
+    public LagHistogram getLagHistogram() {
+        return lagHistogram;
+    }
+
+    public void setLagHistogram(LagHistogram lagHistogram) {
+        this.lagHistogram = lagHistogram;
+    }
+
+    /**
+     * 收到增量数据（还未写入目标数据源）时调用
+     */
+    public void markReceived() {
+        long now = System.currentTimeMillis();
+        if (lastAckTime >= lastReceiveTime) {
+            pendingSince = now;
+        }
+        lastReceiveTime = now;
+    }
+
+    /**
+     * 增量数据确认写入目标数据源（或合并后不需要写入）时调用
+     */
+    public void markAcked() {
+        lastAckTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 有收到但还未确认写入的数据时，距离最近一次进展（确认写入或者开始有未确认的数据）的时间（毫秒），
+     * 消费卡住、被暂停或者一直在重试时会一直增长
+     *
+     * @param now
+     * @return 没有未确认的数据时为0
+     */
+    public long getPendingTime(long now) {
+        if (lastReceiveTime <= lastAckTime) {
+            return 0;
+        }
+        return Math.max(now - Math.max(lastAckTime, pendingSince), 0);
+    }
+
+    /**
+     * 确认一行增量数据已写入目标数据源后调用，记录延迟：当前时间 - binlog时间戳（精确到秒）
+     *
+     * @param binlogTimestamp 载入原始数据时为0，不记录
+     */
+    public void recordLag(int binlogTimestamp) {
+        markAcked();
+        LagHistogram histogram = lagHistogram;
+        if (binlogTimestamp > 0 && Objects.nonNull(histogram)) {
+            histogram.record(System.currentTimeMillis() - binlogTimestamp * 1000L);
+        }
+    }
+
+
+    public BinlogPosition getSnapshotPosition() {
+        return snapshotPosition;
+    }
+
+    public void setSnapshotPosition(BinlogPosition snapshotPosition) {
+        this.snapshotPosition = snapshotPosition;
+    }
+
+    public long getCoalescedWrites() {
+        return coalescedWrites.get();
+    }
+
+    public void addCoalescedWrites(long delta) {
+        coalescedWrites.addAndGet(delta);
+    }
 
     public SyncState getState() {
         return state;
     }
 
-    public void setState(SyncState state) {
+    public synchronized void setState(SyncState state) {
+        SyncState oldState = this.state;
         this.state = state;
+        if (oldState != state && Objects.nonNull(stateListener)) {
+            stateListener.accept(this, oldState);
+        }
+    }
+
+    public synchronized void setStateListener(BiConsumer<TableMeta, SyncState> stateListener) {
+        this.stateListener = stateListener;
     }
 
     public String getTopicName() {
@@ -236,36 +349,116 @@ public class TableMeta {
     /**
      * Gets primary key map.
      *
-     * @return the primary key map
+     * @return the primary key map (unmodifiable)
      */
     public Map<String, ColumnMeta> getPrimaryKeyMap() {
-        Map<String, ColumnMeta> pk = new HashMap<String, ColumnMeta>();
-        for (Entry<String, IndexMeta> entry : allIndexes.entrySet()) {
-            IndexMeta index = entry.getValue();
-            if (index.getIndextype().value() == IndexType.PRIMARY.value()) {
-                for (ColumnMeta col : index.getValues()) {
-                    pk.put(col.getColumnName(), col);
-                }
-            }
-        }
-        return pk;
+        return metaCache().primaryKeyMap;
     }
 
     /**
      * Gets primary key only name.
      *
-     * @return the primary key only name
+     * @return the primary key only name (lower case, unmodifiable)
      */
-    @SuppressWarnings("serial")
     public List<String> getPrimaryKeyOnlyName() {
-        List<String> list = new ArrayList<>();
-        for (Entry<String, ColumnMeta> entry : getPrimaryKeyMap().entrySet()) {
-            list.add(entry.getKey().toLowerCase());
+        return metaCache().primaryKeyOnlyName;
+    }
+
+    /**
+     * 是否为主键列（不区分大小写）
+     *
+     * @param columnName
+     * @return
+     */
+    public boolean isPrimaryKey(String columnName) {
+        Set<String> nameSet = metaCache().primaryKeyNameSet;
+        return nameSet.contains(columnName) || nameSet.contains(columnName.toLowerCase());
+    }
+
+    /**
+     * 按名称排序后的主键列名（原始大小写）
+     *
+     * @return
+     */
+    public List<String> getSortedPrimaryKeyName() {
+        return metaCache().sortedPrimaryKeyName;
+    }
+
+    /**
+     * 主键列在allColumnList中的位置，按主键名称（小写）排序
+     *
+     * @return
+     */
+    public int[] getSortedPrimaryKeyPositions() {
+        return metaCache().sortedPrimaryKeyPositions;
+    }
+
+    /**
+     * 每一列（allColumnList的位置）是否需要同步
+     *
+     * @return
+     */
+    public boolean[] getIncludedColumns() {
+        return metaCache().includedColumns;
+    }
+
+    /**
+     * 每一列（allColumnList的位置）在目标数据源中的列名
+     *
+     * @return
+     */
+    public String[] getTargetColumnNames() {
+        return metaCache().targetColumnNames;
+    }
+
+    /**
+     * 每一列（allColumnList的位置）在需要同步的列中的位置，不需要同步的为-1
+     *
+     * @return
+     */
+    public int[] getSourceToTargetIndex() {
+        return metaCache().sourceToTargetIndex;
+    }
+
+    /**
+     * 每一列（allColumnList的位置）是否为TIMESTAMP类型（DTS中的TIMESTAMP为UTC时间，需要转换时区）
+     *
+     * @return
+     */
+    public boolean[] getTimestampColumns() {
+        return metaCache().timestampColumns;
+    }
+
+    /**
+     * 列在allColumnList中的位置（列名不区分大小写）
+     *
+     * @param columnName
+     * @return 不存在时返回-1
+     */
+    public int getColumnPosition(String columnName) {
+        Map<String, Integer> positionMap = metaCache().columnPositionMap;
+        Integer position = positionMap.get(columnName);
+        if (Objects.isNull(position)) {
+            position = positionMap.get(columnName.toLowerCase());
         }
-        return list;
+        return Objects.isNull(position) ? -1 : position;
     }
 
+    /**
+     * 列结构、索引及同步规则都确定之后调用，重新生成主键及列位置信息
+     */
+    public void initMetaCache() {
+        metaCache = new MetaCache(this);
+    }
 
+    private MetaCache metaCache() {
+        MetaCache cache = metaCache;
+        if (Objects.isNull(cache)) {
+            cache = new MetaCache(this);
+            metaCache = cache;
+        }
+        return cache;
+    }
 
     /**
      * Contains pk boolean.
@@ -353,4 +546,83 @@ public class TableMeta {
     public void setCkTableEngine(String ckTableEngine) {
         this.ckTableEngine = ckTableEngine;
     }
+
+    /**
+     * 主键及列位置信息，生成之后不再修改
+     */
+    static class MetaCache {
+        final Map<String, ColumnMeta> primaryKeyMap;
+        final List<String> primaryKeyOnlyName;
+        /**
+         * 同时包含原始大小写和小写的主键名
+         */
+        final Set<String> primaryKeyNameSet;
+        final List<String> sortedPrimaryKeyName;
+        final int[] sortedPrimaryKeyPositions;
+        final boolean[] includedColumns;
+        final String[] targetColumnNames;
+        final int[] sourceToTargetIndex;
+        final boolean[] timestampColumns;
+        /**
+         * key: 列名（同时包含原始大小写和小写），value: 在allColumnList中的位置
+         */
+        final Map<String, Integer> columnPositionMap;
+
+        MetaCache(TableMeta tableMeta) {
+            Map<String, ColumnMeta> pk = new LinkedHashMap<>();
+            for (IndexMeta index : tableMeta.getAllIndexes().values()) {
+                if (index.getIndextype().value() == IndexType.PRIMARY.value()) {
+                    for (ColumnMeta col : index.getValues()) {
+                        pk.put(col.getColumnName(), col);
+                    }
+                }
+            }
+            this.primaryKeyMap = Collections.unmodifiableMap(pk);
+
+            List<String> lowerNameList = new ArrayList<>(pk.size());
+            Set<String> nameSet = new HashSet<>();
+            for (String name : pk.keySet()) {
+                lowerNameList.add(name.toLowerCase());
+                nameSet.add(name);
+                nameSet.add(name.toLowerCase());
+            }
+            this.primaryKeyOnlyName = Collections.unmodifiableList(lowerNameList);
+            this.primaryKeyNameSet = Collections.unmodifiableSet(nameSet);
+
+            List<String> sortedNameList = new ArrayList<>(pk.keySet());
+            Collections.sort(sortedNameList);
+            this.sortedPrimaryKeyName = Collections.unmodifiableList(sortedNameList);
+
+            List<ColumnMeta> columnList = tableMeta.getAllColumnList();
+            List<String> sortedLowerNameList = new ArrayList<>(lowerNameList);
+            Collections.sort(sortedLowerNameList);
+            this.sortedPrimaryKeyPositions = new int[sortedLowerNameList.size()];
+            for (int i = 0; i < sortedLowerNameList.size(); i++) {
+                sortedPrimaryKeyPositions[i] = -1;
+                for (int c = 0; c < columnList.size(); c++) {
+                    if (columnList.get(c).getColumnName().equalsIgnoreCase(sortedLowerNameList.get(i))) {
+                        sortedPrimaryKeyPositions[i] = c;
+                        break;
+                    }
+                }
+            }
+
+            this.includedColumns = new boolean[columnList.size()];
+            this.targetColumnNames = new String[columnList.size()];
+            this.sourceToTargetIndex = new int[columnList.size()];
+            this.timestampColumns = new boolean[columnList.size()];
+            Map<String, Integer> positionMap = new HashMap<>(columnList.size() * 4);
+            int targetIndex = 0;
+            for (int c = 0; c < columnList.size(); c++) {
+                ColumnMeta columnMeta = columnList.get(c);
+                includedColumns[c] = columnMeta.isInclude();
+                targetColumnNames[c] = columnMeta.getTargetColumnName();
+                sourceToTargetIndex[c] = columnMeta.isInclude() ? targetIndex++ : -1;
+                timestampColumns[c] = "TIMESTAMP".equalsIgnoreCase(columnMeta.getDataTypeName());
+                positionMap.putIfAbsent(columnMeta.getColumnName(), c);
+                positionMap.putIfAbsent(columnMeta.getColumnName().toLowerCase(), c);
+            }
+            this.columnPositionMap = Collections.unmodifiableMap(positionMap);
+        }
+    }
 }
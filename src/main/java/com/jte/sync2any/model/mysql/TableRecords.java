@@ -158,13 +158,13 @@ public class TableRecords {
      * @return return a list. each element of list is a map as a row,the map hold the pk column name as a key and field as the value
      */
     public List<Map<String,Field>> pkRows(List<Row> rows) {
-        final List<String> pkNameList = getTableMeta().getPrimaryKeyOnlyName();
-        List<Map<String,Field>> pkRows = new ArrayList<>();
+        final TableMeta meta = getTableMeta();
+        List<Map<String,Field>> pkRows = new ArrayList<>(rows.size());
         for (Row row : rows) {
             List<Field> fields = row.getFields();
             Map<String,Field> rowMap = new HashMap<>(3);
             for (Field field : fields) {
-                if (pkNameList.stream().anyMatch(e -> field.getName().equalsIgnoreCase(e))) {
+                if (meta.isPrimaryKey(field.getName())) {
                     rowMap.put(field.getName(),field);
                 }
             }
@@ -297,22 +297,31 @@ public class TableRecords {
     private static Field createFieldValue(String value,ColumnMeta columnMeta,TableMeta meta){
         Field field = new Field();
         field.setName(columnMeta.getColumnName());
-        if (meta.getPrimaryKeyOnlyName().stream().anyMatch(e -> field.getName().equalsIgnoreCase(e))) {
+        if (meta.isPrimaryKey(field.getName())) {
             field.setKeyType(KeyType.PRIMARY_KEY);
         }
         field.setType(columnMeta.getDataType());
-        if(Objects.nonNull(value) && "TIMESTAMP".equalsIgnoreCase(columnMeta.getDataTypeName())){
+        field.setValue(convertValue(value,"TIMESTAMP".equalsIgnoreCase(columnMeta.getDataTypeName())));
+        return field;
+    }
+
+    /**
+     * DTS中TIMESTAMP类型的值为UTC时间，转换为东八区时间
+     * @param value
+     * @param isTimestamp
+     * @return
+     */
+    static String convertValue(String value,boolean isTimestamp){
+        if(Objects.nonNull(value) && isTimestamp){
             DateTime dateTime = new DateTime(value, DatePattern.NORM_DATETIME_FORMAT);
             dateTime.offset(DateField.HOUR,8);
-            field.setValue(dateTime.toString());
-        }else {
-            field.setValue(value);
+            return dateTime.toString();
         }
-        return field;
+        return value;
     }
 
 
-    private static String decode(SubscribeDataProto.Data data) throws UnsupportedEncodingException {
+    static String decode(SubscribeDataProto.Data data) throws UnsupportedEncodingException {
         switch (data.getDataType()) {
             case INT8:
             case INT16:
@@ -1,10 +1,12 @@
 package com.jte.sync2any.transform;
 
+import com.jte.sync2any.model.es.CudRequest;
 import com.jte.sync2any.model.mysql.TableMeta;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * 将从mysql导出的dumpfile文件转化为CudRequest
@@ -18,4 +20,13 @@ public interface DumpTransform {
      * @return
      */
     Iterator transform(File file, TableMeta tableMeta) throws FileNotFoundException;
+
+    /**
+     * 转换dump数据中的一行（一条INSERT语句），可以在多个线程中同时调用
+     * @param line
+     * @param tableMeta 表的元信息
+     *
+     * @return
+     */
+    List<CudRequest> transformLine(String line, TableMeta tableMeta);
 }
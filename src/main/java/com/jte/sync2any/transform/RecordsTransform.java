@@ -3,14 +3,13 @@ package com.jte.sync2any.transform;
 import com.jte.sync2any.exception.ShouldNeverHappenException;
 import com.jte.sync2any.model.es.CudRequest;
 import com.jte.sync2any.model.mq.SubscribeDataProto;
-import com.jte.sync2any.model.mysql.ColumnMeta;
-import com.jte.sync2any.model.mysql.Field;
-import com.jte.sync2any.model.mysql.TableRecords;
+import com.jte.sync2any.model.mysql.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
@@ -42,6 +41,17 @@ public abstract class RecordsTransform {
      */
     public abstract CudRequest transform(TableRecords records);
 
+    /**
+     * 将RowDecoder解析出的行转换为目标数据库可使用的中间类型，规则与{@link #transform(TableRecords)}一致
+     *
+     * @param tableMeta
+     * @param dmlType
+     * @param oldRow    修改前的行，INSERT时为null
+     * @param newRow    修改后的行，DELETE时为null
+     * @return
+     */
+    public abstract CudRequest transform(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, DecodedRow oldRow, DecodedRow newRow);
+
 
     /**
      * 获取对应的参数值。key为列名，value为值
@@ -111,9 +121,11 @@ public abstract class RecordsTransform {
         StringBuilder pkValueStr = new StringBuilder();
         Map<String, Field> pkRow = getPkValueMap(records);
         int index = 0;
-        List<String> nameList = new ArrayList<>();
-        nameList.addAll(pkRow.keySet());
-        nameList = nameList.stream().sorted().collect(Collectors.toList());
+        List<String> nameList = records.getTableMeta().getSortedPrimaryKeyName();
+        if (nameList.size() != pkRow.size() || !pkRow.keySet().containsAll(nameList)) {
+            //主键不完整（如字段被过滤），以实际的字段为准
+            nameList = pkRow.keySet().stream().sorted().collect(Collectors.toList());
+        }
         for (String columnName : nameList) {
             if (index > 0) {
                 pkValueStr.append("_");
@@ -124,4 +136,93 @@ public abstract class RecordsTransform {
         return pkValueStr.toString();
     }
 
+    /**
+     * 获取对应的参数值，规则同{@link #getParameters(TableRecords)}。key为目标列名，value为值
+     *
+     * @param tableMeta
+     * @param dmlType
+     * @param oldRow
+     * @param newRow
+     * @return
+     */
+    protected Map<String, Object> getParameters(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, DecodedRow oldRow, DecodedRow newRow) {
+        String[] targetColumnNames = tableMeta.getTargetColumnNames();
+        if (dmlType.equals(DELETE) && Objects.nonNull(oldRow)) {
+            //以修改前的数据为准，只需要主键
+            int[] pkPositions = tableMeta.getSortedPrimaryKeyPositions();
+            Map<String, Object> params = new HashMap<>(pkPositions.length * 2);
+            for (int position : pkPositions) {
+                if (position >= 0 && oldRow.isPresent(position)) {
+                    params.put(targetColumnNames[position], oldRow.get(position));
+                }
+            }
+            return params;
+        } else if ((dmlType.equals(INSERT) || dmlType.equals(UPDATE)) && Objects.nonNull(newRow)) {
+            //以修改后的数据为准
+            Map<String, Object> params = new HashMap<>(newRow.getPresentCount() * 4 / 3 + 1);
+            for (int position = 0; position < newRow.size(); position++) {
+                if (newRow.isPresent(position)) {
+                    params.put(targetColumnNames[position], newRow.get(position));
+                }
+            }
+            return params;
+        }
+        throw new ShouldNeverHappenException("can't find parameters!");
+    }
+
+    /**
+     * 以Map的形式获取主键值，规则同{@link #getPkValueMap(TableRecords)}
+     *
+     * @param tableMeta
+     * @param dmlType
+     * @param oldRow
+     * @param newRow
+     * @return
+     */
+    protected Map<String, Field> getPkValueMap(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, DecodedRow oldRow, DecodedRow newRow) {
+        DecodedRow pkRow = pkRowOf(dmlType, oldRow, newRow);
+        int[] pkPositions = tableMeta.getSortedPrimaryKeyPositions();
+        List<ColumnMeta> columnList = tableMeta.getAllColumnList();
+        Map<String, Field> pkValueMap = new HashMap<>(pkPositions.length * 2);
+        for (int position : pkPositions) {
+            if (position >= 0 && pkRow.isPresent(position)) {
+                ColumnMeta columnMeta = columnList.get(position);
+                Field field = new Field(columnMeta.getColumnName(), columnMeta.getDataType(), pkRow.get(position));
+                field.setKeyType(KeyType.PRIMARY_KEY);
+                pkValueMap.put(field.getName(), field);
+            }
+        }
+        return pkValueMap;
+    }
+
+    /**
+     * 以字符串的形式获取主键值，规则同{@link #getPkValueStr(TableRecords)}
+     *
+     * @param tableMeta
+     * @param dmlType
+     * @param oldRow
+     * @param newRow
+     * @return
+     */
+    protected String getPkValueStr(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, DecodedRow oldRow, DecodedRow newRow) {
+        String pkValueStr = pkRowOf(dmlType, oldRow, newRow).pkValueStr(tableMeta.getSortedPrimaryKeyPositions());
+        return Objects.isNull(pkValueStr) ? "" : pkValueStr;
+    }
+
+    /**
+     * DELETE、UPDATE以修改前的行为主，INSERT以修改后的行为主
+     */
+    private static DecodedRow pkRowOf(SubscribeDataProto.DMLType dmlType, DecodedRow oldRow, DecodedRow newRow) {
+        DecodedRow pkRow = null;
+        if (dmlType.equals(DELETE) || dmlType.equals(UPDATE)) {
+            pkRow = oldRow;
+        } else if (dmlType.equals(INSERT)) {
+            pkRow = newRow;
+        }
+        if (Objects.isNull(pkRow)) {
+            throw new ShouldNeverHappenException("row is empty");
+        }
+        return pkRow;
+    }
+
 }
@@ -0,0 +1,292 @@
+package com.jte.sync2any.transform.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * mysqldump（-t -c --compact）导出的扩展INSERT语句的解析器：
+ * INSERT INTO `t` (`id`, `name`) VALUES (1,'a'),(2,'b\'c'),(3,NULL);
+ * 只扫描一遍，每条记录的值直接放入按列排列的数组，不生成语法树。
+ * 字符串按mysql的转义规则还原；NULL为null；数字、0x..、b'..'等其他字面量按原文保留（与druid解析后的toString一致）；
+ * 忽略_binary等字符集前缀。遇到不认识的格式时抛出IllegalArgumentException，由调用方改用druid解析。
+ */
+public class DumpInsertParser {
+
+    private static final String INSERT_INTO = "INSERT INTO";
+    private static final String VALUES = "VALUES";
+
+    private final String sql;
+    private final int length;
+    private int pos;
+
+    private DumpInsertParser(String sql) {
+        this.sql = sql;
+        this.length = sql.length();
+    }
+
+    /**
+     * @param sql         一行INSERT语句
+     * @param columnCount 每条记录的列数，与之不符时抛出异常
+     * @return 每条记录的值，按列的顺序排列
+     */
+    public static List<String[]> parse(String sql, int columnCount) {
+        return new DumpInsertParser(sql).parseRows(columnCount);
+    }
+
+    private List<String[]> parseRows(int columnCount) {
+        if (!sql.regionMatches(true, 0, INSERT_INTO, 0, INSERT_INTO.length())) {
+            throw error("not an insert statement");
+        }
+        pos = INSERT_INTO.length();
+        skipSpaces();
+        skipIdentifier();
+        skipSpaces();
+        //-c导出的列名
+        if (peek() == '(') {
+            skipColumnList();
+            skipSpaces();
+        }
+        if (!sql.regionMatches(true, pos, VALUES, 0, VALUES.length())) {
+            throw error("VALUES expected");
+        }
+        pos += VALUES.length();
+
+        List<String[]> rows = new ArrayList<>();
+        while (true) {
+            skipSpaces();
+            expect('(');
+            String[] values = new String[columnCount];
+            int column = 0;
+            while (true) {
+                skipSpaces();
+                if (column >= columnCount) {
+                    throw error("too many values, expected:" + columnCount);
+                }
+                values[column++] = parseValue();
+                skipSpaces();
+                char c = next();
+                if (c == ')') {
+                    break;
+                }
+                if (c != ',') {
+                    throw error("',' or ')' expected");
+                }
+            }
+            if (column != columnCount) {
+                throw error("too few values, expected:" + columnCount + " actual:" + column);
+            }
+            rows.add(values);
+            skipSpaces();
+            if (pos >= length) {
+                return rows;
+            }
+            char c = next();
+            if (c == ';') {
+                skipSpaces();
+                if (pos < length) {
+                    throw error("unexpected content after ';'");
+                }
+                return rows;
+            }
+            if (c != ',') {
+                throw error("',' or ';' expected");
+            }
+        }
+    }
+
+    private String parseValue() {
+        char c = peek();
+        if (c == '\'') {
+            return parseString();
+        }
+        if ((c == 'N' || c == 'n') && sql.regionMatches(true, pos, "NULL", 0, 4) && isValueEnd(pos + 4)) {
+            pos += 4;
+            return null;
+        }
+        if (c == '_') {
+            //字符集前缀，如_binary 'abc'
+            while (pos < length && (Character.isLetterOrDigit(sql.charAt(pos)) || sql.charAt(pos) == '_')) {
+                pos++;
+            }
+            skipSpaces();
+            return parseValue();
+        }
+        //数字、0x..、b'..'、x'..'等，按原文保留
+        int start = pos;
+        while (pos < length) {
+            char v = sql.charAt(pos);
+            if (v == ',' || v == ')' || v == ' ') {
+                break;
+            }
+            if (v == '\'') {
+                int end = sql.indexOf('\'', pos + 1);
+                if (end < 0) {
+                    throw error("unterminated literal");
+                }
+                pos = end;
+            }
+            pos++;
+        }
+        if (start == pos) {
+            throw error("value expected");
+        }
+        return sql.substring(start, pos);
+    }
+
+    /**
+     * 单引号字符串，没有转义时直接截取
+     */
+    private String parseString() {
+        pos++;
+        int start = pos;
+        StringBuilder sb = null;
+        while (true) {
+            if (pos >= length) {
+                throw error("unterminated string");
+            }
+            char c = sql.charAt(pos);
+            if (c == '\'') {
+                //''表示一个单引号
+                if (pos + 1 < length && sql.charAt(pos + 1) == '\'') {
+                    sb = append(sb, start, pos + 1);
+                    pos += 2;
+                    start = pos;
+                    continue;
+                }
+                String value = Objects.isNull(sb) ? sql.substring(start, pos) : sb.append(sql, start, pos).toString();
+                pos++;
+                return value;
+            }
+            if (c == '\\') {
+                if (pos + 1 >= length) {
+                    throw error("unterminated string");
+                }
+                sb = append(sb, start, pos);
+                sb.append(unescape(sql.charAt(pos + 1)));
+                pos += 2;
+                start = pos;
+                continue;
+            }
+            pos++;
+        }
+    }
+
+    private StringBuilder append(StringBuilder sb, int start, int end) {
+        if (Objects.isNull(sb)) {
+            sb = new StringBuilder(end - start + 16);
+        }
+        return sb.append(sql, start, end);
+    }
+
+    /**
+     * mysql的转义字符，\%和\_保留反斜杠
+     */
+    private static String unescape(char c) {
+        switch (c) {
+            case '0':
+                return "\u0000";
+            case 'b':
+                return "\b";
+            case 'n':
+                return "\n";
+            case 'r':
+                return "\r";
+            case 't':
+                return "\t";
+            case 'Z':
+                return "\u001A";
+            case '%':
+                return "\\%";
+            case '_':
+                return "\\_";
+            default:
+                return String.valueOf(c);
+        }
+    }
+
+    private void skipIdentifier() {
+        if (peek() == '`') {
+            skipQuoted('`');
+            return;
+        }
+        while (pos < length && !Character.isWhitespace(sql.charAt(pos)) && sql.charAt(pos) != '(') {
+            pos++;
+        }
+    }
+
+    private void skipColumnList() {
+        pos++;
+        while (true) {
+            if (pos >= length) {
+                throw error("unterminated column list");
+            }
+            char c = sql.charAt(pos);
+            if (c == '`') {
+                skipQuoted('`');
+            } else if (c == ')') {
+                pos++;
+                return;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * 跳过以quote包围的内容，两个quote表示一个quote字符
+     */
+    private void skipQuoted(char quote) {
+        pos++;
+        while (true) {
+            int end = sql.indexOf(quote, pos);
+            if (end < 0) {
+                throw error("unterminated identifier");
+            }
+            pos = end + 1;
+            if (pos < length && sql.charAt(pos) == quote) {
+                pos++;
+                continue;
+            }
+            return;
+        }
+    }
+
+    private boolean isValueEnd(int index) {
+        if (index >= length) {
+            return true;
+        }
+        char c = sql.charAt(index);
+        return c == ',' || c == ')' || Character.isWhitespace(c);
+    }
+
+    private void skipSpaces() {
+        while (pos < length && Character.isWhitespace(sql.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= length) {
+            throw error("unexpected end of statement");
+        }
+        return sql.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            pos--;
+            throw error("'" + expected + "' expected");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
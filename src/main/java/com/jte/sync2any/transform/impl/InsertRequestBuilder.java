@@ -0,0 +1,52 @@
+package com.jte.sync2any.transform.impl;
+
+import com.jte.sync2any.load.DynamicDataAssign;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.TableMeta;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.INSERT;
+
+/**
+ * 把原始数据的一行（按allColumnList的位置排列的字符串值，已去掉引号和转义）转换为INSERT的CudRequest。
+ * mysqldump的两种解析方式和jdbc提取共用，保证各种dump方式的转换结果相同。
+ */
+public class InsertRequestBuilder {
+
+    private InsertRequestBuilder() {
+    }
+
+    /**
+     * @param values    一行的值，NULL为null；只会读取需要同步的列和主键列
+     * @param tableMeta
+     * @return
+     */
+    public static CudRequest build(String[] values, TableMeta tableMeta) {
+        boolean[] includedColumns = tableMeta.getIncludedColumns();
+        String[] targetColumnNames = tableMeta.getTargetColumnNames();
+        int[] pkPositions = tableMeta.getSortedPrimaryKeyPositions();
+        Map<String, Object> parameterMap = new HashMap<>(values.length * 2);
+        for (int i = 0; i < values.length; i++) {
+            if (includedColumns[i]) {
+                parameterMap.put(targetColumnNames[i], values[i]);
+            }
+        }
+        StringBuilder pkValueStr = new StringBuilder();
+        for (int i = 0; i < pkPositions.length; i++) {
+            if (i > 0) {
+                pkValueStr.append("_");
+            }
+            pkValueStr.append(values[pkPositions[i]]);
+        }
+        CudRequest cudRequest = new CudRequest();
+        cudRequest.setPkValueStr(pkValueStr.toString());
+        cudRequest.setDmlType(INSERT);
+        cudRequest.setParameters(parameterMap);
+        cudRequest.setTableMeta(tableMeta);
+        Object shardingValue = parameterMap.get(tableMeta.getShardingKey());
+        cudRequest.setTable(DynamicDataAssign.getDynamicTableName(shardingValue, tableMeta));
+        return cudRequest;
+    }
+}
@@ -5,15 +5,14 @@ import cn.hutool.core.io.IORuntimeException;
 import cn.hutool.core.io.IoUtil;
 import com.alibaba.druid.sql.ast.SQLExpr;
 import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLCharExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNullExpr;
 import com.alibaba.druid.sql.ast.statement.SQLInsertStatement;
 import com.alibaba.druid.sql.dialect.mysql.ast.statement.MySqlInsertStatement;
 import com.alibaba.druid.sql.dialect.mysql.parser.MySqlStatementParser;
-import com.jte.sync2any.load.DynamicDataAssign;
 import com.jte.sync2any.model.es.CudRequest;
-import com.jte.sync2any.model.mysql.ColumnMeta;
 import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.transform.DumpTransform;
-import com.jte.sync2any.util.DbUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -25,8 +24,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.INSERT;
-
 /**
  * 将从mysql导出的dumpfile文件转化为CudRequest
  */
@@ -42,54 +39,57 @@ public class MysqlDumpTransformImpl implements DumpTransform {
         return request;
     }
 
-    private String getPkValueStr(SQLInsertStatement.ValuesClause values, TableMeta tableMeta) {
-        StringBuilder docId = new StringBuilder();
-        //主键字段名
-        List<String> pkColumnName = tableMeta.getPrimaryKeyOnlyName()
-                .stream()
-                .sorted()
-                .collect(Collectors.toList());;
-        List<String> allColumnNameList = tableMeta.getAllColumnList()
-                .stream()
-                .map(c->c.getColumnName())
-                .collect(Collectors.toList());
-
-        List<SQLExpr> valueList = values.getValues();
-        for (int i = 0; i < pkColumnName.size(); i++) {
-            int valueIndex = allColumnNameList.indexOf(pkColumnName.get(i));
-            if (i > 0) {
-                docId.append("_");
-            }
-            docId.append(DbUtils.delQuote(valueList.get(valueIndex).toString()));
-        }
-        return docId.toString();
+    @Override
+    public List<CudRequest> transformLine(String line, TableMeta tableMeta) {
+        return sqlToInsertCudRequest(line, tableMeta);
     }
 
     /**
-     * 获取对应的参数值。key为列名，value为值
+     * 把druid解析出的一条记录转换为按列排列的值，与DumpInsertParser的结果相同：
+     * 字符串取词法分析时已还原转义的内容，NULL为null，其他字面量按原文保留
      *
      * @param values 对应一条记录
      * @return
      */
-    private Map<String, Object> getInsertParameters(SQLInsertStatement.ValuesClause values, TableMeta tableMeta) {
-        Map<String, Object> params = new HashMap<>(70);
-        List<ColumnMeta> columnMetaList = tableMeta.getAllColumnList();
+    private String[] getValues(SQLInsertStatement.ValuesClause values) {
         List<SQLExpr> valueList = values.getValues();
+        String[] result = new String[valueList.size()];
         for (int i = 0; i < valueList.size(); i++) {
             SQLExpr currValue = valueList.get(i);
-            ColumnMeta columnMeta = columnMetaList.get(i);
-            if (columnMeta.isInclude()) {
-                String value = currValue.toString();
-                if ("NULL".equals(value) && Objects.isNull(currValue.computeDataType())) {
-                    value = null;
-                }
-                params.put(columnMeta.getTargetColumnName(), DbUtils.delQuote(value));
+            if (currValue instanceof SQLCharExpr) {
+                result[i] = ((SQLCharExpr) currValue).getText();
+            } else if (!(currValue instanceof SQLNullExpr)) {
+                result[i] = currValue.toString();
             }
         }
-        return params;
+        return result;
     }
 
-    private List<CudRequest> sqlToInsertCudRequest(String line, TableMeta tableMeta) {
+    /**
+     * 优先使用DumpInsertParser解析，遇到不支持的格式时改用druid解析
+     */
+    List<CudRequest> sqlToInsertCudRequest(String line, TableMeta tableMeta) {
+        if (!line.startsWith(SQL_START_FLAG)) {
+            return new ArrayList<>();
+        }
+        List<String[]> rows;
+        try {
+            rows = DumpInsertParser.parse(line, tableMeta.getAllColumnList().size());
+        } catch (IllegalArgumentException e) {
+            log.warn("fast parse sql fail, parse by druid instead. table:{} reason:{}", tableMeta.getTableName(), e.getMessage());
+            return sqlToInsertCudRequestByDruid(line, tableMeta);
+        }
+        List<CudRequest> requestList = new ArrayList<>(rows.size());
+        for (String[] values : rows) {
+            requestList.add(InsertRequestBuilder.build(values, tableMeta));
+        }
+        return requestList;
+    }
+
+    /**
+     * 通过druid生成语法树后解析
+     */
+    List<CudRequest> sqlToInsertCudRequestByDruid(String line, TableMeta tableMeta) {
         List<CudRequest> requestList = new ArrayList<>();
         if (line.startsWith(SQL_START_FLAG)) {
             try {
@@ -97,16 +97,13 @@ public class MysqlDumpTransformImpl implements DumpTransform {
                 SQLStatement statement = parser.parseStatement();
                 MySqlInsertStatement insert = (MySqlInsertStatement) statement;
 
+                int columnCount = tableMeta.getAllColumnList().size();
                 for (SQLInsertStatement.ValuesClause values : insert.getValuesList()) {
-                    CudRequest cudRequest = new CudRequest();
-                    cudRequest.setPkValueStr(getPkValueStr(values, tableMeta));
-                    cudRequest.setDmlType(INSERT);
-                    Map<String, Object> parameterMap = getInsertParameters(values, tableMeta);
-                    cudRequest.setParameters(parameterMap);
-                    cudRequest.setTableMeta(tableMeta);
-                    Object shardingValue = parameterMap.get(tableMeta.getShardingKey());
-                    cudRequest.setTable(DynamicDataAssign.getDynamicTableName(shardingValue, tableMeta));
-                    requestList.add(cudRequest);
+                    String[] row = getValues(values);
+                    if (row.length != columnCount) {
+                        throw new IllegalArgumentException("column count mismatch, expected:" + columnCount + " actual:" + row.length);
+                    }
+                    requestList.add(InsertRequestBuilder.build(row, tableMeta));
                 }
             } catch (Exception e) {
                 //TODO告警
@@ -2,11 +2,16 @@ package com.jte.sync2any.transform.impl;
 
 import com.jte.sync2any.load.DynamicDataAssign;
 import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import com.jte.sync2any.model.mysql.TableMeta;
 import com.jte.sync2any.model.mysql.TableRecords;
 import com.jte.sync2any.transform.RecordsTransform;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
+
 @Service
 @Slf4j
 public class RecordsTransformImpl extends RecordsTransform {
@@ -21,6 +26,22 @@ public class RecordsTransformImpl extends RecordsTransform {
         cudRequest.setParameters(getParameters(records));
         cudRequest.setTableMeta(records.getTableMeta());
         cudRequest.setTable(DynamicDataAssign.getDynamicTableName(records,records.getTableMeta()));
+        cudRequest.setOldRow(DecodedRow.of(records.getTableMeta(),records.getOldRows()));
+        cudRequest.setNewRow(DecodedRow.of(records.getTableMeta(),records.getNewRows()));
+        return cudRequest;
+    }
+
+    @Override
+    public CudRequest transform(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, DecodedRow oldRow, DecodedRow newRow) {
+        CudRequest cudRequest = new CudRequest();
+        cudRequest.setOldRow(oldRow);
+        cudRequest.setNewRow(newRow);
+        cudRequest.setPkValueStr(getPkValueStr(tableMeta, dmlType, oldRow, newRow));
+        cudRequest.setPkValueMap(getPkValueMap(tableMeta, dmlType, oldRow, newRow));
+        cudRequest.setDmlType(dmlType);
+        cudRequest.setParameters(getParameters(tableMeta, dmlType, oldRow, newRow));
+        cudRequest.setTableMeta(tableMeta);
+        cudRequest.setTable(DynamicDataAssign.getDynamicTableName(Objects.isNull(newRow) ? oldRow : newRow, tableMeta));
         return cudRequest;
     }
 
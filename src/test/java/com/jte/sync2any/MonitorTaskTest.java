@@ -0,0 +1,47 @@
+package com.jte.sync2any;
+
+import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.core.LagHistogram;
+import com.jte.sync2any.model.mysql.TableMeta;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MonitorTaskTest {
+
+    private TableMeta table() {
+        TableMeta meta = new TableMeta();
+        meta.setSyncConfig(new SyncConfig());
+        meta.setLagHistogram(new LagHistogram(60000));
+        return meta;
+    }
+
+    @Test
+    public void idleTableTest() {
+        TableMeta meta = table();
+        assertEquals(0, MonitorTask.getDelay(meta, System.currentTimeMillis() + 600000));
+    }
+
+    @Test
+    public void stalledTableTest() {
+        TableMeta meta = table();
+        meta.markReceived();
+        //收到数据后一直没有确认写入，窗口内没有延迟数据，延迟为未确认的时长
+        long delay = MonitorTask.getDelay(meta, System.currentTimeMillis() + 120000);
+        assertTrue(delay >= 119000);
+
+        //确认写入后使用窗口内的延迟
+        meta.recordLag((int) (System.currentTimeMillis() / 1000) - 5);
+        delay = MonitorTask.getDelay(meta, System.currentTimeMillis() + 120000);
+        assertTrue(delay >= 4000 && delay < 7000);
+    }
+
+    @Test
+    public void ackedTableTest() {
+        TableMeta meta = table();
+        meta.markReceived();
+        meta.markAcked();
+        //已经全部确认，之后窗口没有数据时按空闲处理
+        assertEquals(0, meta.getPendingTime(System.currentTimeMillis() + 600000));
+    }
+}
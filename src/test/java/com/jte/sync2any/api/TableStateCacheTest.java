@@ -0,0 +1,75 @@
+package com.jte.sync2any.api;
+
+import com.jte.sync2any.model.core.*;
+import com.jte.sync2any.model.mysql.TableMeta;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TableStateCacheTest {
+
+    private TableState table(String tableName, String topicName, SyncState state, long lag) {
+        TableMeta meta = new TableMeta();
+        meta.setDbName("db");
+        meta.setTableName(tableName);
+        meta.setTopicName(topicName);
+        meta.setTopicGroup(topicName + "-group");
+        meta.setState(state);
+        LagHistogram histogram = new LagHistogram(60000);
+        histogram.record(lag);
+        meta.setLagHistogram(histogram);
+        return new TableState("es$db$" + tableName, meta);
+    }
+
+    private TableStateCache.Snapshot snapshot() {
+        List<TableState> tables = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tables.add(table("t_order_" + i, i % 2 == 0 ? "topic-a" : "topic-b",
+                    i == 3 ? SyncState.STOPPED : SyncState.SYNCING, i * 10));
+        }
+        return new TableStateCache.Snapshot(tables, 1000);
+    }
+
+    private List<String> tableNames(StatePage page) {
+        return page.getItems().stream().map(TableState::getTableName).collect(Collectors.toList());
+    }
+
+    @Test
+    public void filterTest() {
+        StateQuery query = new StateQuery();
+        query.setTopicName("topic-b");
+        query.setState("syncing");
+        query.setMinLag(50L);
+        StatePage page = TableStateCache.query(snapshot(), query);
+        assertEquals(3, page.getTotal());
+        assertEquals(1000, page.getRefreshTime());
+        assertEquals(Arrays.asList("t_order_5", "t_order_7", "t_order_9"), tableNames(page));
+    }
+
+    @Test
+    public void sortAndPageTest() {
+        StateQuery query = new StateQuery();
+        query.setSort("lagP99");
+        query.setOrder("desc");
+        query.setPage(2);
+        query.setSize(4);
+        StatePage page = TableStateCache.query(snapshot(), query);
+        assertEquals(10, page.getTotal());
+        assertEquals(Arrays.asList("t_order_5", "t_order_4", "t_order_3", "t_order_2"), tableNames(page));
+
+        query.setPage(4);
+        assertTrue(TableStateCache.query(snapshot(), query).getItems().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedSortTest() {
+        StateQuery query = new StateQuery();
+        query.setSort("errorReason");
+        TableStateCache.query(snapshot(), query);
+    }
+}
@@ -0,0 +1,73 @@
+package com.jte.sync2any.config;
+
+import com.jte.sync2any.conf.RuleRegistry;
+import com.jte.sync2any.model.core.SyncState;
+import com.jte.sync2any.model.mysql.TableMeta;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RuleRegistryTest {
+
+    private TableMeta table(String tableName, String topicName, String sourceDbId) {
+        TableMeta meta = new TableMeta();
+        meta.setTableName(tableName);
+        meta.setTopicName(topicName);
+        meta.setTopicGroup(topicName + "-group");
+        meta.setTargetDbId("es");
+        meta.setSourceDbId(sourceDbId);
+        return meta;
+    }
+
+    @Test
+    public void indexTest() {
+        RuleRegistry registry = new RuleRegistry();
+        TableMeta order = table("t_order", "topic-a", "db1");
+        TableMeta member = table("t_member", "topic-a", "db1");
+        TableMeta room = table("t_room", "topic-b", "db2");
+        registry.put("es$db1$t_order", order);
+        registry.put("es$db1$t_member", member);
+        registry.put("es$db2$t_room", room);
+
+        assertEquals(3, registry.size());
+        assertSame(order, registry.getIfPresent("es$db1$t_order"));
+        assertEquals(2, registry.getByMq("topic-a", "topic-a-group").size());
+        assertTrue(registry.getByMq("topic-a", "topic-b-group").isEmpty());
+        assertEquals(1, registry.getByDb("es", "db2").size());
+        assertEquals(3, registry.getByState(SyncState.INACTIVE).size());
+
+        //已存在时不替换
+        assertSame(order, registry.putIfAbsent("es$db1$t_order", table("t_order", "topic-a", "db1")));
+        assertEquals(2, registry.getByMq("topic-a", "topic-a-group").size());
+
+        registry.invalidateAll();
+        assertEquals(0, registry.size());
+        assertTrue(registry.getByDb("es", "db1").isEmpty());
+        assertTrue(registry.getByState(SyncState.INACTIVE).isEmpty());
+    }
+
+    @Test
+    public void stateChangeTest() {
+        RuleRegistry registry = new RuleRegistry();
+        TableMeta order = table("t_order", "topic-a", "db1");
+        TableMeta member = table("t_member", "topic-a", "db1");
+        member.setState(SyncState.LOADING_ORIGIN_DATA);
+        registry.put("es$db1$t_order", order);
+        registry.put("es$db1$t_member", member);
+        assertEquals(2, registry.countByMq("topic-a", "topic-a-group", SyncState.INACTIVE, SyncState.LOADING_ORIGIN_DATA));
+
+        order.setState(SyncState.WAIT_TO_LISTENING);
+        member.setState(SyncState.WAIT_TO_LISTENING);
+        assertEquals(0, registry.countByMq("topic-a", "topic-a-group", SyncState.INACTIVE, SyncState.LOADING_ORIGIN_DATA));
+        assertEquals(2, registry.countByMq("topic-a", "topic-a-group", SyncState.WAIT_TO_LISTENING));
+        assertTrue(registry.getByState(SyncState.WAIT_TO_LISTENING).contains(order));
+        assertFalse(registry.getByState(SyncState.INACTIVE).contains(order));
+
+        //替换后旧的TableMeta不再影响索引
+        registry.put("es$db1$t_order", table("t_order", "topic-a", "db1"));
+        order.setState(SyncState.STOPPED);
+        assertTrue(registry.getByState(SyncState.STOPPED).isEmpty());
+        assertEquals(1, registry.countByMq("topic-a", "topic-a-group", SyncState.INACTIVE));
+        assertEquals(1, registry.countByMq("topic-a", "topic-a-group", SyncState.WAIT_TO_LISTENING));
+    }
+}
@@ -0,0 +1,76 @@
+package com.jte.sync2any.extract;
+
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.model.mysql.TableMetaFixture;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.UPDATE;
+import static org.junit.Assert.*;
+
+public class ApplyLaneDispatcherTest {
+
+    private final TableMeta tableMeta = TableMetaFixture.of("t_order", Types.BIGINT, "id", "name");
+
+    private CudRequest update(long id, long newId) {
+        DecodedRow newRow = new DecodedRow(2);
+        newRow.set(0, newId);
+        newRow.set(1, "a");
+        CudRequest request = new CudRequest();
+        request.setDmlType(UPDATE);
+        request.setTable("t_order");
+        request.setTableMeta(tableMeta);
+        request.setPkValueStr(String.valueOf(id));
+        request.setNewRow(newRow);
+        return request;
+    }
+
+    @Test
+    public void primaryKeyChangeBarrierTest() throws Exception {
+        ApplyLaneDispatcher dispatcher = new ApplyLaneDispatcher("lane-test", 4, 10);
+        //UPDATE id 1→2，之后UPDATE ... WHERE id=2
+        CudRequest changePk = update(1, 2);
+        CudRequest updateNew = update(2, 2);
+        assertNotEquals(dispatcher.laneOf(changePk), dispatcher.laneOf(updateNew));
+
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.dispatch(changePk, () -> {
+            sleep(100);
+            applied.add("1->2");
+        });
+        dispatcher.dispatch(updateNew, () -> applied.add("2"));
+        dispatcher.awaitDrained();
+        dispatcher.shutdown();
+        //放在不同通道时id=2的修改先执行，找不到行而丢失
+        assertEquals(Arrays.asList("1->2", "2"), applied);
+    }
+
+    @Test
+    public void waitForPreviousTasksTest() throws Exception {
+        ApplyLaneDispatcher dispatcher = new ApplyLaneDispatcher("lane-test", 4, 10);
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        //修改主键之前的变更（可能在别的通道）先执行完
+        dispatcher.dispatch(update(3, 3), () -> {
+            sleep(100);
+            applied.add("3");
+        });
+        dispatcher.dispatch(update(1, 2), () -> applied.add("1->2"));
+        assertEquals(Arrays.asList("3", "1->2"), applied);
+        dispatcher.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
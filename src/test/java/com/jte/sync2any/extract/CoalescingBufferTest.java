@@ -0,0 +1,195 @@
+package com.jte.sync2any.extract;
+
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.model.mysql.TableMetaFixture;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
+import static org.junit.Assert.*;
+
+public class CoalescingBufferTest {
+
+    private final TableMeta tableMeta = TableMetaFixture.of("t_order", Types.BIGINT, "id", "name");
+    private long offset = 0;
+
+    private DecodedRow row(long id, String name) {
+        DecodedRow row = new DecodedRow(2);
+        row.set(0, id);
+        row.set(1, name);
+        return row;
+    }
+
+    private CudRequest request(SubscribeDataProto.DMLType dmlType, long id, DecodedRow oldRow, DecodedRow newRow) {
+        CudRequest request = new CudRequest();
+        request.setDmlType(dmlType);
+        request.setTable("t_order");
+        request.setTableMeta(tableMeta);
+        request.setPkValueStr(String.valueOf(id));
+        request.setOldRow(oldRow);
+        request.setNewRow(newRow);
+        Map<String, Object> parameters = new HashMap<>();
+        DecodedRow row = DELETE == dmlType ? oldRow : newRow;
+        parameters.put("id", row.get(0));
+        parameters.put("name", row.get(1));
+        request.setParameters(parameters);
+        request.setKafkaOffset(++offset);
+        return request;
+    }
+
+    private CudRequest insert(long id, String name) {
+        return request(INSERT, id, null, row(id, name));
+    }
+
+    private CudRequest update(long id, String oldName, long newId, String newName) {
+        return request(UPDATE, id, row(id, oldName), row(newId, newName));
+    }
+
+    private CudRequest delete(long id, String name) {
+        return request(DELETE, id, row(id, name), null);
+    }
+
+    private List<CudRequest> drain(CoalescingBuffer buffer) {
+        Map<String, List<CudRequest>> result = buffer.drain();
+        assertEquals(0, buffer.size());
+        return result.isEmpty() ? new ArrayList<>() : result.get("t_order");
+    }
+
+    @Test
+    public void insertThenUpdateTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(100);
+        buffer.add(insert(1, "a"));
+        buffer.add(update(1, "a", 1, "b"));
+        buffer.add(update(1, "b", 1, "c"));
+        assertEquals(1, buffer.size());
+
+        List<CudRequest> requestList = drain(buffer);
+        assertEquals(1, requestList.size());
+        CudRequest merged = requestList.get(0);
+        assertEquals(INSERT, merged.getDmlType());
+        assertEquals("c", merged.getParameters().get("name"));
+        assertNull(merged.getOldRow());
+        assertEquals("c", merged.getNewRow().get(1));
+        assertEquals(3, merged.getKafkaOffset());
+        //重新投递时目标表中可能已经有这一行
+        assertTrue(merged.isCoalesced());
+        assertEquals(2, tableMeta.getCoalescedWrites());
+    }
+
+    @Test
+    public void insertThenDeleteTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(100);
+        buffer.add(insert(1, "a"));
+        buffer.add(update(1, "a", 1, "b"));
+        buffer.add(delete(1, "b"));
+        assertEquals(1, buffer.size());
+
+        //INSERT可能在重启前已经写入，不能直接丢弃，合并为DELETE
+        List<CudRequest> requestList = drain(buffer);
+        assertEquals(1, requestList.size());
+        CudRequest merged = requestList.get(0);
+        assertEquals(DELETE, merged.getDmlType());
+        assertEquals("1", merged.getPkValueStr());
+        assertEquals("b", merged.getOldRow().get(1));
+        assertNull(merged.getNewRow());
+        assertEquals(3, merged.getKafkaOffset());
+
+        //删除后同一主键再次INSERT不合并
+        buffer.add(insert(1, "a"));
+        buffer.add(delete(1, "a"));
+        buffer.add(insert(1, "c"));
+        requestList = drain(buffer);
+        assertEquals(2, requestList.size());
+        assertEquals(DELETE, requestList.get(0).getDmlType());
+        assertEquals(INSERT, requestList.get(1).getDmlType());
+        assertEquals("c", requestList.get(1).getParameters().get("name"));
+        assertFalse(requestList.get(1).isCoalesced());
+    }
+
+    @Test
+    public void updateThenDeleteTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(100);
+        buffer.add(update(1, "a", 1, "b"));
+        buffer.add(update(1, "b", 1, "c"));
+        buffer.add(delete(1, "c"));
+
+        List<CudRequest> requestList = drain(buffer);
+        assertEquals(1, requestList.size());
+        CudRequest merged = requestList.get(0);
+        assertEquals(DELETE, merged.getDmlType());
+        //最早的修改前的值
+        assertEquals("a", merged.getOldRow().get(1));
+        assertNull(merged.getNewRow());
+        assertEquals(3, merged.getKafkaOffset());
+    }
+
+    @Test
+    public void deleteThenInsertNotMergedTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(100);
+        buffer.add(delete(1, "a"));
+        buffer.add(insert(1, "b"));
+
+        List<CudRequest> requestList = drain(buffer);
+        assertEquals(2, requestList.size());
+        assertEquals(DELETE, requestList.get(0).getDmlType());
+        assertEquals(INSERT, requestList.get(1).getDmlType());
+    }
+
+    @Test
+    public void primaryKeyChangeBarrierTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(100);
+        buffer.add(update(1, "a", 1, "b"));
+        //主键1改为2，再改回1
+        buffer.add(update(1, "b", 2, "b"));
+        buffer.add(update(2, "b", 1, "c"));
+        //不能跨过修改主键的UPDATE与第一条合并，否则删除会先于主键的修改执行
+        buffer.add(delete(1, "c"));
+        assertEquals(4, buffer.size());
+
+        List<CudRequest> requestList = drain(buffer);
+        assertEquals(4, requestList.size());
+        assertEquals(UPDATE, requestList.get(0).getDmlType());
+        assertEquals("b", requestList.get(0).getParameters().get("name"));
+        assertEquals(UPDATE, requestList.get(1).getDmlType());
+        assertEquals("1", requestList.get(1).getPkValueStr());
+        assertEquals(2L, requestList.get(1).getNewRow().get(0));
+        assertEquals(UPDATE, requestList.get(2).getDmlType());
+        assertEquals("2", requestList.get(2).getPkValueStr());
+        assertEquals(DELETE, requestList.get(3).getDmlType());
+        assertEquals(0, tableMeta.getCoalescedWrites());
+    }
+
+    @Test
+    public void mergeAfterBarrierTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(100);
+        buffer.add(update(1, "a", 2, "a"));
+        //屏障之后的变更之间可以合并
+        buffer.add(update(2, "a", 2, "b"));
+        buffer.add(update(2, "b", 2, "c"));
+
+        List<CudRequest> requestList = drain(buffer);
+        assertEquals(2, requestList.size());
+        assertEquals("1", requestList.get(0).getPkValueStr());
+        assertEquals(UPDATE, requestList.get(1).getDmlType());
+        assertEquals("a", requestList.get(1).getOldRow().get(1));
+        assertEquals("c", requestList.get(1).getParameters().get("name"));
+    }
+
+    @Test
+    public void isFullTest() {
+        CoalescingBuffer buffer = new CoalescingBuffer(2);
+        buffer.add(insert(1, "a"));
+        buffer.add(update(1, "a", 1, "b"));
+        assertFalse(buffer.isFull());
+        buffer.add(insert(2, "a"));
+        assertTrue(buffer.isFull());
+    }
+}
@@ -0,0 +1,70 @@
+package com.jte.sync2any.extract;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DumpStreamTest {
+
+    @Test
+    public void streamInOrderTest() {
+        DumpStream<String> stream = new DumpStream<>("t_test", 2);
+        stream.start(() -> {
+            for (int i = 0; i < 100; i++) {
+                stream.put("line-" + i);
+            }
+            return null;
+        });
+        List<String> lines = new ArrayList<>();
+        stream.forEachRemaining(lines::add);
+        Assert.assertEquals(100, lines.size());
+        Assert.assertEquals("line-0", lines.get(0));
+        Assert.assertEquals("line-99", lines.get(99));
+        Assert.assertFalse(stream.hasNext());
+    }
+
+    @Test
+    public void boundedQueueTest() throws Exception {
+        DumpStream<String> stream = new DumpStream<>("t_test", 2);
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        stream.start(() -> {
+            try {
+                for (int i = 0; i < 10; i++) {
+                    stream.put("line-" + i);
+                    produced.incrementAndGet();
+                }
+            } finally {
+                done.countDown();
+            }
+            return null;
+        });
+        //没有消费时，生产线程最多放入队列容量的行数
+        Assert.assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, produced.get());
+        stream.close();
+        Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+        Assert.assertFalse(stream.hasNext());
+    }
+
+    @Test
+    public void producerErrorTest() {
+        DumpStream<String> stream = new DumpStream<>("t_test", 2);
+        stream.start(() -> {
+            stream.put("line-0");
+            throw new IllegalAccessException("mysql dump fail! exitValue:2");
+        });
+        Assert.assertEquals("line-0", stream.next());
+        try {
+            stream.hasNext();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalAccessException);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.jte.sync2any.extract.impl;
+
+import com.jte.sync2any.extract.DumpStream;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.*;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JdbcOriginDataExtractImplTest {
+
+    private TableMeta tableMeta(int pkType) {
+        return TableMetaFixture.of("t_order", pkType, "id", "name");
+    }
+
+    private JdbcTemplate minMaxTemplate(long[] minMax) {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.query(anyString(), Mockito.<ResultSetExtractor<long[]>>any())).thenReturn(minMax);
+        return jdbcTemplate;
+    }
+
+    @Test
+    public void splitChunksTest() {
+        List<long[]> chunkList = new JdbcOriginDataExtractImpl()
+                .splitChunks(minMaxTemplate(new long[]{1, 250}), tableMeta(Types.BIGINT), 100);
+        assertEquals(3, chunkList.size());
+        assertArrayEquals(new long[]{1, 100}, chunkList.get(0));
+        assertArrayEquals(new long[]{101, 200}, chunkList.get(1));
+        assertArrayEquals(new long[]{201, 250}, chunkList.get(2));
+
+        chunkList = new JdbcOriginDataExtractImpl()
+                .splitChunks(minMaxTemplate(new long[]{7, 7}), tableMeta(Types.INTEGER), 100);
+        assertEquals(1, chunkList.size());
+        assertArrayEquals(new long[]{7, 7}, chunkList.get(0));
+    }
+
+    @Test
+    public void wholeTableChunkTest() {
+        //非整数主键
+        List<long[]> chunkList = new JdbcOriginDataExtractImpl()
+                .splitChunks(minMaxTemplate(new long[]{1, 250}), tableMeta(Types.VARCHAR), 100);
+        assertEquals(1, chunkList.size());
+        assertNull(chunkList.get(0));
+        //空表
+        chunkList = new JdbcOriginDataExtractImpl()
+                .splitChunks(minMaxTemplate(null), tableMeta(Types.BIGINT), 100);
+        assertEquals(1, chunkList.size());
+        assertNull(chunkList.get(0));
+    }
+
+    @Test
+    public void chunkReaderTest() throws Exception {
+        TableMeta tableMeta = tableMeta(Types.BIGINT);
+        DumpStream<List<CudRequest>> dumpStream = new DumpStream<>("t_order", 10);
+        JdbcOriginDataExtractImpl.ChunkReader reader = new JdbcOriginDataExtractImpl.ChunkReader(tableMeta, 2, dumpStream);
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString(1)).thenReturn("1", "2", "3");
+        when(rs.getString(2)).thenReturn("a", null, "c");
+        for (int i = 0; i < 3; i++) {
+            reader.processRow(rs);
+        }
+        reader.flush();
+
+        List<CudRequest> first = dumpStream.next();
+        assertEquals(2, first.size());
+        assertEquals("1", first.get(0).getPkValueStr());
+        assertEquals("a", first.get(0).getParameters().get("name"));
+        assertTrue(first.get(1).getParameters().containsKey("name"));
+        assertNull(first.get(1).getParameters().get("name"));
+        List<CudRequest> second = dumpStream.next();
+        assertEquals(1, second.size());
+        assertEquals("3", second.get(0).getPkValueStr());
+        assertEquals("t_order", second.get(0).getTable());
+    }
+}
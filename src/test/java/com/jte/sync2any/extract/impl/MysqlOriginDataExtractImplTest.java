@@ -19,7 +19,7 @@ import java.util.Iterator;
 import java.util.List;
 
 public class MysqlOriginDataExtractImplTest  {
-    @Resource
+    @Resource(name = "mysqlOriginDataExtractImpl")
     OriginDataExtract originDataExtract;
 
     @Resource
@@ -0,0 +1,173 @@
+package com.jte.sync2any.harness;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * clickhouse的替身：实现clickhouse-jdbc使用的HTTP协议中用到的部分（需关闭compress）。
+ * 查询timezone()、version()时返回固定值，DESCRIBE TABLE按HarnessTable返回列类型；
+ * INSERT的数据为RowBinary或TabSeparated格式，每行第一列（主键）报告给LatencyRecorder。
+ */
+@Slf4j
+public class ClickHouseStubServer {
+
+    private final HttpServer server;
+    private final HarnessTable table;
+    private volatile LatencyRecorder recorder;
+
+    public ClickHouseStubServer(HarnessTable table) throws IOException {
+        this.table = table;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(2));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void setRecorder(LatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String query = queryParam(exchange.getRequestURI().getRawQuery());
+            InputStream in = new BufferedInputStream(exchange.getRequestBody());
+            if (query == null) {
+                //sql在请求体的第一行
+                query = readLine(in);
+            }
+            String body;
+            if (query == null || "GET".equals(exchange.getRequestMethod())) {
+                body = "Ok.\n";
+            } else if (query.contains("timezone()")) {
+                body = "timezone()\nString\nAsia/Shanghai\n";
+            } else if (query.contains("version()")) {
+                body = "version()\nString\n21.3.1.1\n";
+            } else if (query.trim().toUpperCase().startsWith("DESCRIBE")) {
+                body = describe();
+            } else if (query.trim().toUpperCase().startsWith("INSERT") && query.contains("FORMAT RowBinary")) {
+                readRowBinary(new DataInputStream(in));
+                body = "";
+            } else if (query.trim().toUpperCase().startsWith("INSERT")) {
+                readRows(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+                body = "";
+            } else {
+                body = "1\nUInt8\n1\n";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } catch (Exception e) {
+            log.error("clickhouse stub error", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * TabSeparatedWithNamesAndTypes格式
+     */
+    private String describe() {
+        StringBuilder body = new StringBuilder("name\ttype\nString\tString\n");
+        for (int i = 0; i < table.getWidth(); i++) {
+            body.append(table.columnName(i)).append('\t').append(ckType(i)).append('\n');
+        }
+        return body.toString();
+    }
+
+    private String ckType(int column) {
+        return column == 0 ? "Int64" : table.isTimestamp(column) ? "DateTime" : "String";
+    }
+
+    private void readRowBinary(DataInputStream in) throws IOException {
+        byte[] int64 = new byte[8];
+        while (true) {
+            int first = in.read();
+            if (first < 0) {
+                return;
+            }
+            int64[0] = (byte) first;
+            in.readFully(int64, 1, 7);
+            long id = ByteBuffer.wrap(int64).order(ByteOrder.LITTLE_ENDIAN).getLong();
+            for (int i = 1; i < table.getWidth(); i++) {
+                if (table.isTimestamp(i)) {
+                    in.skipBytes(4);
+                } else {
+                    in.skipBytes(readLeb128(in));
+                }
+            }
+            LatencyRecorder current = recorder;
+            if (current != null) {
+                current.applied(String.valueOf(id));
+            }
+        }
+    }
+
+    private static int readLeb128(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            line.write(b);
+        }
+        return b < 0 && line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void readRows(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            LatencyRecorder current = recorder;
+            if (current != null) {
+                current.applied(tab < 0 ? line : line.substring(0, tab));
+            }
+        }
+    }
+
+    private static String queryParam(String rawQuery) throws IOException {
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String param : rawQuery.split("&")) {
+            if (param.startsWith("query=")) {
+                return URLDecoder.decode(param.substring("query=".length()), "UTF-8");
+            }
+        }
+        return null;
+    }
+}
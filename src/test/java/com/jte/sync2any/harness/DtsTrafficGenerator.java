@@ -0,0 +1,142 @@
+package com.jte.sync2any.harness;
+
+import com.google.protobuf.ByteString;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * 模拟腾讯云DTS向kafka写入的消息：
+ * 每个事务（BEGIN、DML、COMMIT）序列化为一个Entries，超过partSize字节时切分为多个Envelope（total>1）；
+ * 每条消息都带有ps（分片内连续递增的序号）和ShardId消息头。
+ * 生成的表结构与{@link HarnessTable}一致，主键从1开始连续递增。
+ */
+public class DtsTrafficGenerator {
+
+    private final Producer<String, byte[]> producer;
+    private final String topic;
+    private final String shardId;
+    private final HarnessTable table;
+    private final int valueSize;
+    private final int partSize;
+    private final LatencyRecorder recorder;
+
+    private long partitionSeq = 0;
+    private long nextId = 1;
+
+    /**
+     * @param valueSize 每个字符串值的长度
+     * @param partSize  每个Envelope最多包含的字节数，超过时切分为多个Envelope
+     */
+    public DtsTrafficGenerator(Producer<String, byte[]> producer, String topic, String shardId, HarnessTable table,
+                               int valueSize, int partSize, LatencyRecorder recorder) {
+        this.producer = producer;
+        this.topic = topic;
+        this.shardId = shardId;
+        this.table = table;
+        this.valueSize = valueSize;
+        this.partSize = partSize;
+        this.recorder = recorder;
+    }
+
+    /**
+     * 发送一个包含rows行INSERT的事务
+     */
+    public void sendTransaction(int rows) throws Exception {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        SubscribeDataProto.DMLEvent.Builder dmlEvt = SubscribeDataProto.DMLEvent.newBuilder()
+                .setDmlEventType(SubscribeDataProto.DMLType.INSERT);
+        for (int i = 0; i < table.getWidth(); i++) {
+            dmlEvt.addColumns(SubscribeDataProto.Column.newBuilder().setName(table.columnName(i)));
+        }
+        List<String> idList = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            long id = nextId++;
+            idList.add(String.valueOf(id));
+            SubscribeDataProto.RowChange.Builder row = SubscribeDataProto.RowChange.newBuilder();
+            for (int i = 0; i < table.getWidth(); i++) {
+                row.addNewColumns(value(i, id));
+            }
+            dmlEvt.addRows(row);
+        }
+        SubscribeDataProto.Entries entries = SubscribeDataProto.Entries.newBuilder()
+                .addItems(entry(SubscribeDataProto.MessageType.BEGIN, timestamp))
+                .addItems(entry(SubscribeDataProto.MessageType.DML, timestamp)
+                        .setEvent(SubscribeDataProto.Event.newBuilder().setDmlEvent(dmlEvt)))
+                .addItems(entry(SubscribeDataProto.MessageType.COMMIT, timestamp))
+                .build();
+        long sendTime = System.nanoTime();
+        idList.forEach(id -> recorder.sent(id, sendTime));
+        send(entries);
+    }
+
+    /**
+     * 发送checkpoint，监听器在此处提交offset
+     */
+    public void sendCheckpoint() throws Exception {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+        send(SubscribeDataProto.Entries.newBuilder()
+                .addItems(entry(SubscribeDataProto.MessageType.CHECKPOINT, timestamp))
+                .build());
+    }
+
+    public void flush() {
+        producer.flush();
+    }
+
+    private void send(SubscribeDataProto.Entries entries) throws Exception {
+        byte[] data = entries.toByteArray();
+        int total = Math.max(1, (data.length + partSize - 1) / partSize);
+        Future<?> last = null;
+        for (int index = 0; index < total; index++) {
+            int from = index * partSize;
+            int to = Math.min(from + partSize, data.length);
+            byte[] envelope = SubscribeDataProto.Envelope.newBuilder()
+                    .setVersion(1)
+                    .setTotal(total)
+                    .setIndex(index)
+                    .setData(ByteString.copyFrom(data, from, to - from))
+                    .build()
+                    .toByteArray();
+            RecordHeaders headers = new RecordHeaders();
+            headers.add("ps", String.valueOf(++partitionSeq).getBytes(StandardCharsets.UTF_8));
+            headers.add("ShardId", shardId.getBytes(StandardCharsets.UTF_8));
+            last = producer.send(new ProducerRecord<>(topic, 0, null, envelope, headers));
+        }
+        if (total > 1) {
+            //分包必须按顺序写入同一个分区
+            last.get();
+        }
+    }
+
+    private SubscribeDataProto.Entry.Builder entry(SubscribeDataProto.MessageType messageType, int timestamp) {
+        return SubscribeDataProto.Entry.newBuilder().setHeader(SubscribeDataProto.Header.newBuilder()
+                .setMessageType(messageType)
+                .setSchemaName(HarnessTable.DB_NAME)
+                .setTableName(table.getTableName())
+                .setTimestamp(timestamp));
+    }
+
+    private SubscribeDataProto.Data value(int column, long id) {
+        if (column == 0) {
+            return SubscribeDataProto.Data.newBuilder().setDataType(SubscribeDataProto.DataType.INT64).setSv(String.valueOf(id)).build();
+        }
+        String value;
+        if (table.isTimestamp(column)) {
+            value = "2021-01-01 00:00:00";
+        } else {
+            StringBuilder sb = new StringBuilder(valueSize);
+            while (sb.length() < valueSize) {
+                sb.append((char) ('a' + (column + id + sb.length()) % 26));
+            }
+            value = sb.toString();
+        }
+        return SubscribeDataProto.Data.newBuilder().setDataType(SubscribeDataProto.DataType.STRING).setBv(ByteString.copyFromUtf8(value)).build();
+    }
+}
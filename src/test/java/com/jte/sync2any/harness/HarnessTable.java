@@ -0,0 +1,110 @@
+package com.jte.sync2any.harness;
+
+import com.jte.sync2any.model.config.SyncConfig;
+import com.jte.sync2any.model.core.SyncState;
+import com.jte.sync2any.model.mysql.ColumnMeta;
+import com.jte.sync2any.model.mysql.IndexMeta;
+import com.jte.sync2any.model.mysql.IndexType;
+import com.jte.sync2any.model.mysql.TableMeta;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压测使用的表结构：第一列为主键id（BIGINT），每隔10列有一列TIMESTAMP，其余为VARCHAR
+ */
+public class HarnessTable {
+
+    public static final String DB_NAME = "harness";
+
+    private final String tableName;
+    private final int width;
+
+    public HarnessTable(String tableName, int width) {
+        this.tableName = tableName;
+        this.width = width;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public String columnName(int i) {
+        return i == 0 ? "id" : "col_" + i;
+    }
+
+    public boolean isTimestamp(int i) {
+        return i > 0 && i % 10 == 0;
+    }
+
+    /**
+     * 与RuleConfigParser解析出的规则一致，但不需要连接源数据库
+     */
+    public TableMeta tableMeta(SyncConfig syncConfig) {
+        TableMeta tableMeta = new TableMeta();
+        tableMeta.setSyncConfig(syncConfig);
+        tableMeta.setDbName(DB_NAME);
+        tableMeta.setTableName(tableName);
+        tableMeta.setTargetTableName(tableName);
+        tableMeta.setSourceDbId(syncConfig.getSourceDbId());
+        tableMeta.setTargetDbId(syncConfig.getTargetDbId());
+        tableMeta.setTopicName(syncConfig.getMq().getTopicName());
+        tableMeta.setTopicGroup(syncConfig.getMq().getTopicGroup());
+        tableMeta.setCkTableEngine("MergeTree");
+        List<ColumnMeta> columnList = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            ColumnMeta columnMeta = new ColumnMeta();
+            columnMeta.setColumnName(columnName(i));
+            columnMeta.setTargetColumnName(columnName(i));
+            if (i == 0) {
+                columnMeta.setDataType(Types.BIGINT);
+                columnMeta.setDataTypeName("BIGINT");
+                columnMeta.setEsDataType("long");
+            } else if (isTimestamp(i)) {
+                columnMeta.setDataType(Types.TIMESTAMP);
+                columnMeta.setDataTypeName("TIMESTAMP");
+                columnMeta.setEsDataType("date");
+            } else {
+                columnMeta.setDataType(Types.VARCHAR);
+                columnMeta.setDataTypeName("VARCHAR");
+                columnMeta.setEsDataType("keyword");
+            }
+            columnList.add(columnMeta);
+            tableMeta.getAllColumnMap().put(columnMeta.getColumnName(), columnMeta);
+        }
+        tableMeta.setAllColumnList(columnList);
+        IndexMeta primary = new IndexMeta();
+        primary.setIndextype(IndexType.PRIMARY);
+        primary.getValues().add(columnList.get(0));
+        tableMeta.getAllIndexes().put("PRIMARY", primary);
+        tableMeta.initMetaCache();
+        tableMeta.setState(SyncState.SYNCING);
+        return tableMeta;
+    }
+
+    /**
+     * 目标mysql（H2）中的建表语句
+     */
+    public String createTableSql() {
+        StringBuilder sql = new StringBuilder("CREATE TABLE ").append(tableName).append(" (");
+        for (int i = 0; i < width; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columnName(i));
+            if (i == 0) {
+                sql.append(" BIGINT PRIMARY KEY");
+            } else if (isTimestamp(i)) {
+                sql.append(" TIMESTAMP");
+            } else {
+                sql.append(" VARCHAR(1024)");
+            }
+        }
+        return sql.append(")").toString();
+    }
+}
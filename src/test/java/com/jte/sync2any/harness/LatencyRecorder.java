@@ -0,0 +1,81 @@
+package com.jte.sync2any.harness;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录每一行从写入kafka到写入目标数据源（的替身）所用的时间，按主键对应
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Long> sentMap = new ConcurrentHashMap<>();
+    private final long[] latencies;
+    private final AtomicInteger applied = new AtomicInteger();
+    private final CountDownLatch done;
+    private volatile long firstSentTime;
+    private volatile long lastAppliedTime;
+
+    /**
+     * @param expectedRows 预计写入的总行数
+     */
+    public LatencyRecorder(int expectedRows) {
+        this.latencies = new long[expectedRows];
+        this.done = new CountDownLatch(expectedRows);
+    }
+
+    public void sent(String id, long nanoTime) {
+        if (firstSentTime == 0) {
+            firstSentTime = nanoTime;
+        }
+        sentMap.put(id, nanoTime);
+    }
+
+    /**
+     * 目标数据源（的替身）确认写入，同一主键只记录第一次
+     */
+    public void applied(String id) {
+        long now = System.nanoTime();
+        Long sentTime = sentMap.remove(id);
+        if (sentTime == null) {
+            return;
+        }
+        int index = applied.getAndIncrement();
+        if (index < latencies.length) {
+            latencies[index] = now - sentTime;
+        }
+        lastAppliedTime = now;
+        done.countDown();
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public int getApplied() {
+        return Math.min(applied.get(), latencies.length);
+    }
+
+    public double rowsPerSecond() {
+        long elapsed = lastAppliedTime - firstSentTime;
+        return elapsed <= 0 ? 0 : getApplied() * 1e9 / elapsed;
+    }
+
+    /**
+     * @param percentile 0~100
+     * @return 毫秒
+     */
+    public double percentileMillis(double percentile) {
+        int count = getApplied();
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1e6;
+    }
+}
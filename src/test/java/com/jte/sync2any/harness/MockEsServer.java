@@ -0,0 +1,112 @@
+package com.jte.sync2any.harness;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * es的替身：只实现增量同步用到的接口。
+ * HEAD /{index}：index总是存在；POST /_bulk：每个操作都成功，并把文档id报告给LatencyRecorder。
+ */
+@Slf4j
+public class MockEsServer {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private volatile LatencyRecorder recorder;
+
+    public MockEsServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void setRecorder(LatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+            } else if (path.endsWith("/_bulk")) {
+                respond(exchange, bulk(exchange));
+            } else {
+                respond(exchange, "{\"acknowledged\":true}");
+            }
+        } catch (Exception e) {
+            log.error("mock es error", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * bulk请求体为NDJSON：一行操作（index、update、delete），除delete外再跟一行文档
+     */
+    private String bulk(HttpExchange exchange) throws IOException {
+        StringBuilder items = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            Iterator<Map.Entry<String, JsonNode>> it = mapper.readTree(line).fields();
+            Map.Entry<String, JsonNode> action = it.next();
+            String op = action.getKey();
+            String index = action.getValue().path("_index").asText();
+            String id = action.getValue().path("_id").asText();
+            if (!"delete".equals(op)) {
+                //跳过文档
+                reader.readLine();
+            }
+            if (items.length() > 0) {
+                items.append(',');
+            }
+            int status = "index".equals(op) || "create".equals(op) ? 201 : 200;
+            items.append("{\"").append(op).append("\":{\"_index\":\"").append(index)
+                    .append("\",\"_type\":\"_doc\",\"_id\":\"").append(id)
+                    .append("\",\"_version\":1,\"result\":\"").append(status == 201 ? "created" : "updated")
+                    .append("\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0},\"_seq_no\":0,\"_primary_term\":1,\"status\":")
+                    .append(status).append("}}");
+            LatencyRecorder current = recorder;
+            if (current != null) {
+                current.applied(id);
+            }
+        }
+        return "{\"took\":1,\"errors\":false,\"items\":[" + items + "]}";
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.jte.sync2any.harness;
+
+import com.jte.sync2any.conf.KafkaConfig;
+import com.jte.sync2any.conf.RuleConfigParser;
+import com.jte.sync2any.conf.SpringContextUtils;
+import com.jte.sync2any.core.Constants;
+import com.jte.sync2any.load.impl.CkLoadServiceImpl;
+import com.jte.sync2any.load.impl.EsLoadServiceImpl;
+import com.jte.sync2any.model.config.*;
+import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.transform.impl.RecordsTransformImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.clickhouse.ClickHouseDataSource;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static com.jte.sync2any.conf.RuleConfigParser.RULES_MAP;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 端到端吞吐量压测：DtsTrafficGenerator向内嵌kafka写入DTS格式的消息，
+ * 完整的增量同步流程（KafkaConfig创建的监听器、解析、转换、写入服务）写入本地的替身：
+ * es为MockEsServer，mysql为H2（MySQL模式），clickhouse为ClickHouseStubServer。
+ * 按目标类型输出rows/sec、写入延迟的p50/p99以及堆内存峰值。
+ * <p>
+ * 本项目的surefire跳过了所有测试，在IDE中直接运行本类，参数通过系统属性指定：
+ * -Dharness.targets=es,mysql,clickhouse -Dharness.rows=100000 -Dharness.txRows=100 -Dharness.width=20
+ * -Dharness.valueSize=32 -Dharness.partSize=65536 -Dharness.checkpointEvery=10 -Dharness.batchMode=0
+ */
+@Slf4j
+public class ThroughputHarness {
+
+    private static final String SOURCE_DB_ID = "harness_src";
+    private static final String TABLE_NAME = "t_harness";
+
+    private final List<String> targets = Arrays.asList(System.getProperty("harness.targets", "es,mysql,clickhouse").split(","));
+    private final int rows = Integer.getInteger("harness.rows", 100000);
+    private final int txRows = Integer.getInteger("harness.txRows", 100);
+    private final int width = Integer.getInteger("harness.width", 20);
+    private final int valueSize = Integer.getInteger("harness.valueSize", 32);
+    private final int partSize = Integer.getInteger("harness.partSize", 64 * 1024);
+    private final int checkpointEvery = Integer.getInteger("harness.checkpointEvery", 10);
+    private final String batchMode = System.getProperty("harness.batchMode", Constants.NO);
+    private final long timeoutSeconds = Long.getLong("harness.timeoutSeconds", 600);
+
+    private final HarnessTable table = new HarnessTable(TABLE_NAME, width);
+
+    private EmbeddedKafkaBroker broker;
+    private MockEsServer esServer;
+    private ClickHouseStubServer ckServer;
+    private TimedMysqlLoadService mysqlLoadService;
+    private AnnotationConfigApplicationContext context;
+    private KafkaConfig kafkaConfig;
+    private Sync2any sync2any;
+
+    @Before
+    public void setUp() throws Exception {
+        //每行一条的info日志会掩盖真实的吞吐量
+        Configurator.setLevel("com.jte", Level.WARN);
+
+        broker = new EmbeddedKafkaBroker(1, true, 1, targets.stream().map(this::topicName).toArray(String[]::new));
+        broker.afterPropertiesSet();
+        esServer = new MockEsServer();
+        ckServer = new ClickHouseStubServer(table);
+        mysqlLoadService = new TimedMysqlLoadService();
+
+        sync2any = new Sync2any();
+        List<SyncConfig> syncConfigList = new ArrayList<>();
+        Map<String, Object> allTargetDatasource = new HashMap<>();
+        for (String target : targets) {
+            syncConfigList.add(syncConfig(target));
+            allTargetDatasource.put(target, targetDatasource(target));
+        }
+        sync2any.setSyncConfigList(syncConfigList);
+
+        KafkaMate kafkaMate = new KafkaMate();
+        kafkaMate.setAddress(broker.getBrokersAsString());
+        SourceMysqlDb sourceMysqlDb = new SourceMysqlDb();
+        sourceMysqlDb.setDatasources(new ArrayList<>());
+
+        //只注册写入服务需要的bean，AbstractLoadService通过SpringContextUtils按名称查找
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean("allTargetDatasource", Map.class, () -> allTargetDatasource);
+        context.registerBean("sync2any", Sync2any.class, () -> sync2any);
+        context.registerBean("springContextUtils", SpringContextUtils.class);
+        context.registerBean("esLoadServiceImpl", EsLoadServiceImpl.class);
+        context.registerBean("ckLoadServiceImpl", CkLoadServiceImpl.class);
+        context.registerBean("mysqlLoadServiceImpl", TimedMysqlLoadService.class, () -> mysqlLoadService);
+        context.refresh();
+
+        //不启动initKafka，只借用createContainer，保证消费者配置与线上一致
+        kafkaConfig = new KafkaConfig();
+        ReflectionTestUtils.setField(kafkaConfig, "kafkaMate", kafkaMate);
+        ReflectionTestUtils.setField(kafkaConfig, "sync2any", sync2any);
+        ReflectionTestUtils.setField(kafkaConfig, "transform", new RecordsTransformImpl());
+        ReflectionTestUtils.setField(kafkaConfig, "ruleConfigParser", Mockito.mock(RuleConfigParser.class));
+        ReflectionTestUtils.setField(kafkaConfig, "sourceMysqlDb", sourceMysqlDb);
+
+        //跳过源库表结构的读取，直接放入规则
+        for (SyncConfig syncConfig : syncConfigList) {
+            TableMeta tableMeta = table.tableMeta(syncConfig);
+            RULES_MAP.put(syncConfig.getTargetDbId() + "$" + SOURCE_DB_ID + "$" + TABLE_NAME, tableMeta);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        RULES_MAP.invalidateAll();
+        if (context != null) {
+            context.close();
+        }
+        if (esServer != null) {
+            esServer.stop();
+        }
+        if (ckServer != null) {
+            ckServer.stop();
+        }
+        if (broker != null) {
+            broker.destroy();
+        }
+    }
+
+    @Test
+    public void run() throws Exception {
+        List<String> reports = new ArrayList<>();
+        for (SyncConfig syncConfig : sync2any.getSyncConfigList()) {
+            reports.add(runTarget(syncConfig));
+        }
+        log.warn("harness rows:{} txRows:{} width:{} valueSize:{} partSize:{} batchMode:{}",
+                rows, txRows, width, valueSize, partSize, batchMode);
+        reports.forEach(log::warn);
+    }
+
+    private String runTarget(SyncConfig syncConfig) throws Exception {
+        String target = syncConfig.getTargetConn().getType();
+        LatencyRecorder recorder = new LatencyRecorder(rows);
+        esServer.setRecorder(Conn.DB_TYPE_ES.equals(target) ? recorder : null);
+        ckServer.setRecorder(Conn.DB_TYPE_CLICKHOUSE.equals(target) ? recorder : null);
+        mysqlLoadService.setRecorder(Conn.DB_TYPE_MYSQL.equals(target) ? recorder : null);
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        KafkaMessageListenerContainer<String, byte[]> container = kafkaConfig.createContainer(syncConfig.getMq(), null, SOURCE_DB_ID);
+        container.start();
+        try (KafkaProducer<String, byte[]> producer = producer()) {
+            DtsTrafficGenerator generator = new DtsTrafficGenerator(producer, syncConfig.getMq().getTopicName(),
+                    "harness_shard", table, valueSize, partSize, recorder);
+            int sent = 0;
+            int transactions = 0;
+            while (sent < rows) {
+                int txSize = Math.min(txRows, rows - sent);
+                generator.sendTransaction(txSize);
+                sent += txSize;
+                if (++transactions % checkpointEvery == 0) {
+                    generator.sendCheckpoint();
+                }
+            }
+            generator.sendCheckpoint();
+            generator.flush();
+
+            boolean finished = recorder.await(timeoutSeconds, TimeUnit.SECONDS);
+            assertTrue(target + " applied " + recorder.getApplied() + " of " + rows + " rows", finished);
+        } finally {
+            container.stop();
+        }
+
+        long peakHeap = heapPools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+        return String.format("target:%s rows/sec:%.0f p50:%.1fms p99:%.1fms peakHeap:%dMB",
+                target, recorder.rowsPerSecond(), recorder.percentileMillis(50), recorder.percentileMillis(99),
+                peakHeap / 1024 / 1024);
+    }
+
+    private SyncConfig syncConfig(String target) {
+        Mq mq = new Mq();
+        mq.setTopicName(topicName(target));
+        mq.setTopicGroup(topicName(target) + "_group");
+        mq.setBatchMode(batchMode);
+        Conn targetConn = new Conn();
+        targetConn.setType(target);
+        targetConn.setDbId(target);
+        targetConn.setDbName(HarnessTable.DB_NAME);
+        SyncConfig syncConfig = new SyncConfig();
+        syncConfig.setMq(mq);
+        syncConfig.setSourceDbId(SOURCE_DB_ID);
+        syncConfig.setTargetDbId(target);
+        syncConfig.setTargetConn(targetConn);
+        syncConfig.setSyncTables(TABLE_NAME);
+        syncConfig.setDumpOriginData(Constants.NO);
+        return syncConfig;
+    }
+
+    private Object targetDatasource(String target) {
+        if (Conn.DB_TYPE_ES.equals(target)) {
+            return new RestHighLevelClient(RestClient.builder(new HttpHost("127.0.0.1", esServer.getPort(), "http")));
+        } else if (Conn.DB_TYPE_MYSQL.equals(target)) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                    "jdbc:h2:mem:harness;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"));
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + TABLE_NAME);
+            jdbcTemplate.execute(table.createTableSql());
+            return jdbcTemplate;
+        } else if (Conn.DB_TYPE_CLICKHOUSE.equals(target)) {
+            ClickHouseProperties properties = new ClickHouseProperties();
+            //替身不支持压缩
+            properties.setCompress(false);
+            return new ClickHouseDataSource("jdbc:clickhouse://127.0.0.1:" + ckServer.getPort() + "/" + HarnessTable.DB_NAME, properties);
+        }
+        throw new IllegalArgumentException("unknown harness target:" + target);
+    }
+
+    private KafkaProducer<String, byte[]> producer() {
+        Map<String, Object> props = new HashMap<>(8);
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "1");
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        //多个分包合起来可能超过默认的1MB
+        props.put(ProducerConfig.MAX_REQUEST_SIZE_CONFIG, Math.max(1024 * 1024, partSize * 2));
+        return new KafkaProducer<>(props);
+    }
+
+    private String topicName(String target) {
+        return "harness_" + target;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType()) {
+                heapPools.add(pool);
+            }
+        }
+        return heapPools;
+    }
+}
@@ -0,0 +1,39 @@
+package com.jte.sync2any.harness;
+
+import com.jte.sync2any.load.impl.MysqlLoadServiceImpl;
+import com.jte.sync2any.model.es.CudRequest;
+
+import java.util.List;
+
+/**
+ * 写入H2后把主键报告给LatencyRecorder，mysql没有像es、clickhouse那样的HTTP替身，只能在写入服务上计时
+ */
+public class TimedMysqlLoadService extends MysqlLoadServiceImpl {
+
+    private volatile LatencyRecorder recorder;
+
+    public void setRecorder(LatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public int operateData(CudRequest request) {
+        int effectNum = super.operateData(request);
+        applied(request);
+        return effectNum;
+    }
+
+    @Override
+    public int batchOperateData(List<CudRequest> requestList) {
+        int effectNum = super.batchOperateData(requestList);
+        requestList.forEach(this::applied);
+        return effectNum;
+    }
+
+    private void applied(CudRequest request) {
+        LatencyRecorder current = recorder;
+        if (current != null) {
+            current.applied(request.getPkValueStr());
+        }
+    }
+}
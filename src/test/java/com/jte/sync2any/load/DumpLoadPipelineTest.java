@@ -0,0 +1,110 @@
+package com.jte.sync2any.load;
+
+import com.jte.sync2any.model.config.DumpLoad;
+import com.jte.sync2any.model.es.CudRequest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class DumpLoadPipelineTest {
+
+    private List<CudRequest> parse(String line) {
+        if (line.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(line.split(",")).map(pk -> {
+            CudRequest request = new CudRequest();
+            request.setPkValueStr(pk);
+            return request;
+        }).collect(Collectors.toList());
+    }
+
+    private List<String> lines(int count) {
+        return IntStream.range(0, count).mapToObj(i -> i % 10 == 0 ? "" : (i + "a," + i + "b")).collect(Collectors.toList());
+    }
+
+    @Test
+    public void concurrentLoadTest() throws Exception {
+        Set<String> loaded = ConcurrentHashMap.newKeySet();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AbstractLoadService loadService = mock(AbstractLoadService.class);
+        when(loadService.isConcurrentBatchAdd()).thenReturn(true);
+        when(loadService.batchAdd(anyList())).thenAnswer(invocation -> {
+            List<CudRequest> requestList = invocation.getArgument(0);
+            requestList.forEach(r -> loaded.add(r.getPkValueStr()));
+            threads.add(Thread.currentThread().getName());
+            Thread.sleep(2);
+            return requestList.size();
+        });
+        DumpLoad config = new DumpLoad();
+        config.setQueueSize(2);
+
+        long count = new DumpLoadPipeline(config, "t_test").load(lines(200).iterator(), this::parse, loadService);
+        //每10行有一行不是INSERT
+        assertEquals(360, count);
+        assertEquals(360, loaded.size());
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    public void singleLoaderTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AbstractLoadService loadService = mock(AbstractLoadService.class);
+        when(loadService.batchAdd(anyList())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            running.decrementAndGet();
+            return 0;
+        });
+
+        long count = new DumpLoadPipeline(new DumpLoad(), "t_test").load(lines(100).iterator(), this::parse, loadService);
+        assertEquals(180, count);
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void onLoadedOrderTest() throws Exception {
+        AbstractLoadService loadService = mock(AbstractLoadService.class);
+        when(loadService.isConcurrentBatchAdd()).thenReturn(true);
+        when(loadService.batchAdd(anyList())).thenAnswer(invocation -> {
+            //后面的批次可能先完成
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            return 0;
+        });
+        DumpLoad config = new DumpLoad();
+        config.setQueueSize(4);
+        List<String> loadedPk = Collections.synchronizedList(new ArrayList<>());
+
+        new DumpLoadPipeline(config, "t_test").load(lines(200).iterator(), this::parse, loadService,
+                lastRequest -> loadedPk.add(Objects.isNull(lastRequest) ? null : lastRequest.getPkValueStr()));
+        //每一项都按读取的顺序回调一次，没有请求的项为null
+        assertEquals(200, loadedPk.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 10 == 0 ? null : i + "b", loadedPk.get(i));
+        }
+    }
+
+    @Test
+    public void loadErrorTest() throws Exception {
+        AbstractLoadService loadService = mock(AbstractLoadService.class);
+        when(loadService.isConcurrentBatchAdd()).thenReturn(true);
+        when(loadService.batchAdd(anyList())).thenThrow(new IOException("target is down"));
+        try {
+            new DumpLoadPipeline(new DumpLoad(), "t_test").load(lines(1000).iterator(), this::parse, loadService);
+            fail();
+        } catch (IOException e) {
+            assertEquals("target is down", e.getCause().getMessage());
+        }
+    }
+}
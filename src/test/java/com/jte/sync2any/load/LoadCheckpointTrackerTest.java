@@ -0,0 +1,104 @@
+package com.jte.sync2any.load;
+
+import com.jte.sync2any.model.core.LoadCheckpoint;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.*;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class LoadCheckpointTrackerTest {
+
+    private static final String KEY = "es$db$t_order";
+
+    private File dir;
+    private LoadCheckpointStore store;
+    private AbstractLoadService loadService;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("checkpoint").toFile();
+        store = new LoadCheckpointStore(dir.getAbsolutePath());
+        loadService = mock(AbstractLoadService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private TableMeta tableMeta(int pkType) {
+        return TableMetaFixture.of("t_order", pkType, "id");
+    }
+
+    private CudRequest request(long pk) {
+        CudRequest request = new CudRequest();
+        request.setPkValueStr(String.valueOf(pk));
+        return request;
+    }
+
+    @Test
+    public void dumpLinesTest() throws Exception {
+        LoadCheckpoint checkpoint = new LoadCheckpoint();
+        checkpoint.setDumpMode("file");
+        checkpoint.setDataFile("/tmp/t_order.data.sql");
+        LoadCheckpointTracker tracker = new LoadCheckpointTracker(store, KEY, checkpoint, tableMeta(Types.BIGINT), loadService, 60000);
+        tracker.loaded(request(10));
+        tracker.loaded(null);
+        tracker.loaded(request(25));
+        //未到保存间隔
+        assertNull(store.get(KEY));
+
+        tracker.save();
+        verify(loadService).flushBatchAdd();
+        LoadCheckpoint saved = store.get(KEY);
+        assertEquals("file", saved.getDumpMode());
+        assertEquals("/tmp/t_order.data.sql", saved.getDataFile());
+        assertEquals(3, saved.getLoadedLines());
+        assertEquals(Long.valueOf(25), saved.getLoadedPk());
+
+        store.delete(KEY);
+        assertNull(store.get(KEY));
+    }
+
+    @Test
+    public void nonIntegerPkTest() throws Exception {
+        LoadCheckpoint checkpoint = new LoadCheckpoint();
+        LoadCheckpointTracker tracker = new LoadCheckpointTracker(store, KEY, checkpoint, tableMeta(Types.VARCHAR), loadService, 0);
+        CudRequest request = new CudRequest();
+        request.setPkValueStr("abc");
+        //间隔为0时每次都保存
+        tracker.loaded(request);
+        LoadCheckpoint saved = store.get(KEY);
+        assertEquals(1, saved.getLoadedLines());
+        assertNull(saved.getLoadedPk());
+    }
+
+    @Test
+    public void chunksTest() throws Exception {
+        LoadCheckpoint checkpoint = new LoadCheckpoint();
+        checkpoint.setDumpMode("jdbc");
+        checkpoint.setChunks(Arrays.asList(new long[]{1, 100}, new long[]{101, 200}, new long[]{201, 250}));
+        LoadCheckpointTracker tracker = new LoadCheckpointTracker(store, KEY, checkpoint, tableMeta(Types.INTEGER), loadService, 60000);
+        tracker.loaded(request(150));
+        tracker.loaded(request(100));
+        tracker.loaded(request(230));
+        tracker.save();
+
+        List<long[]> chunks = store.get(KEY).getChunks();
+        //第一个分片已全部载入
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new long[]{151, 200}, chunks.get(0));
+        assertArrayEquals(new long[]{231, 250}, chunks.get(1));
+    }
+}
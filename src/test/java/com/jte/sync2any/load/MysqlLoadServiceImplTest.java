@@ -2,19 +2,26 @@ package com.jte.sync2any.load;
 
 import com.jte.sync2any.load.impl.MysqlLoadServiceImpl;
 import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
 import com.jte.sync2any.model.mysql.ColumnMeta;
 import com.jte.sync2any.model.mysql.Field;
 import com.jte.sync2any.model.mysql.TableMeta;
+import com.jte.sync2any.model.mysql.TableMetaFixture;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.annotation.Resource;
+import java.sql.Types;
 import java.util.*;
 
-import static org.junit.Assert.assertArrayEquals;
-import static org.junit.Assert.assertEquals;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static com.jte.sync2any.model.mq.SubscribeDataProto.DMLType.*;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 
 /**
  * @author JerryYin
@@ -179,4 +186,138 @@ public class MysqlLoadServiceImplTest  {
         assertArrayEquals(new Object[]{"jerry","18",1,"66666"},params);
     }
 
+
+    @Test
+    public void buildUpsertSqlTest(){
+        ColumnMeta idColumn = new ColumnMeta();
+        idColumn.setColumnName("id");
+        ColumnMeta groupCodeColumn = new ColumnMeta();
+        groupCodeColumn.setColumnName("group_code");
+        ColumnMeta nameColumn = new ColumnMeta();
+        nameColumn.setColumnName("name");
+        List<ColumnMeta> allColumnList =new ArrayList<>();
+        allColumnList.add(idColumn);
+        allColumnList.add(groupCodeColumn);
+        allColumnList.add(nameColumn);
+
+        TableMeta tableMeta =mock(TableMeta.class);
+        when(tableMeta.getPrimaryKeyOnlyName()).thenReturn(pkNameList);
+        when(tableMeta.getAllColumnList()).thenReturn(allColumnList);
+
+        String sql =new MysqlLoadServiceImpl().buildUpsertSql("t_user",tableMeta,2);
+        assertEquals("INSERT INTO t_user (id, group_code, name) VALUES (?, ?, ?), (?, ?, ?) ON DUPLICATE KEY UPDATE name = VALUES(name)",sql);
+    }
+
+    @Test
+    public void buildDeleteInSqlTest(){
+        TableMeta tableMeta =mock(TableMeta.class);
+        when(tableMeta.getPrimaryKeyOnlyName()).thenReturn(pkNameList);
+
+        String sql =new MysqlLoadServiceImpl().buildDeleteInSql("t_user",tableMeta,3);
+        assertEquals("DELETE FROM t_user WHERE (id, group_code) IN ((?, ?), (?, ?), (?, ?))",sql);
+    }
+
+    private TableMeta tableMeta() {
+        TableMeta tableMeta = TableMetaFixture.of("t_order", Types.BIGINT, "id", "name");
+        tableMeta.setTargetDbId("db");
+        return tableMeta;
+    }
+
+    private CudRequest request(TableMeta tableMeta, String table) {
+        CudRequest request = new CudRequest();
+        request.setDmlType(INSERT);
+        request.setTableMeta(tableMeta);
+        request.setTable(table);
+        return request;
+    }
+
+    private CudRequest request(TableMeta tableMeta, SubscribeDataProto.DMLType dmlType, long id) {
+        CudRequest request = request(tableMeta, "t_order");
+        request.setDmlType(dmlType);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("id", id);
+        parameters.put("name", "n" + id);
+        request.setParameters(parameters);
+        Map<String, Field> pkValueMap = new HashMap<>();
+        pkValueMap.put("id", new Field("id", Types.BIGINT, id));
+        request.setPkValueMap(pkValueMap);
+        return request;
+    }
+
+    @Test
+    public void planCacheTest() {
+        MysqlLoadServiceImpl loadService = new MysqlLoadServiceImpl();
+        TableMeta tableMeta = tableMeta();
+        MysqlLoadServiceImpl.SqlPlan plan = loadService.getSqlPlan(request(tableMeta, "t_order"));
+        assertSame(plan, loadService.getSqlPlan(request(tableMeta, "t_order")));
+        //结构相同但不是同一个TableMeta时重新生成
+        assertNotSame(plan, loadService.getSqlPlan(request(tableMeta(), "t_order")));
+    }
+
+    @Test
+    public void dynamicTableTest() {
+        MysqlLoadServiceImpl loadService = new MysqlLoadServiceImpl();
+        TableMeta tableMeta = tableMeta();
+        MysqlLoadServiceImpl.SqlPlan plan0 = loadService.getSqlPlan(request(tableMeta, "t_order_0"));
+        MysqlLoadServiceImpl.SqlPlan plan1 = loadService.getSqlPlan(request(tableMeta, "t_order_1"));
+        assertNotSame(plan0, plan1);
+        assertTrue(plan0.insertSql.startsWith("INSERT INTO t_order_0 "));
+        assertTrue(plan1.insertSql.startsWith("INSERT INTO t_order_1 "));
+        assertTrue(plan1.upsertSql(2).startsWith("INSERT INTO t_order_1 "));
+        assertSame(plan1, loadService.getSqlPlan(request(tableMeta, "t_order_1")));
+    }
+
+    @Test
+    public void partialChunkSqlTest() {
+        MysqlLoadServiceImpl loadService = new MysqlLoadServiceImpl();
+        TableMeta tableMeta = tableMeta();
+        MysqlLoadServiceImpl.SqlPlan plan = loadService.getSqlPlan(request(tableMeta, "t_order"));
+        String upsertSql = plan.upsertSql(3);
+        assertEquals(loadService.buildUpsertSql("t_order", tableMeta, 3), upsertSql);
+        assertTrue(upsertSql.contains("VALUES (?, ?), (?, ?), (?, ?) ON"));
+        assertSame(upsertSql, plan.upsertSql(3));
+        String deleteInSql = plan.deleteInSql(2);
+        assertTrue(deleteInSql.endsWith("IN ((?), (?))"));
+        assertSame(deleteInSql, plan.deleteInSql(2));
+        assertNotEquals(upsertSql, plan.upsertSql(2));
+    }
+
+    @Test
+    public void batchOperateDataTest() {
+        MysqlLoadServiceImpl loadService = new MysqlLoadServiceImpl();
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        ReflectionTestUtils.setField(loadService, "allTargetDatasource", Collections.singletonMap("db", jdbcTemplate));
+        TableMeta tableMeta = tableMeta();
+        String upsertSql = loadService.buildUpsertSql("t_order", tableMeta, 2);
+        String updateSql = loadService.buildUpdateSql("t_order", tableMeta);
+        //upsert：新增1行、修改1行；update：第二行在目标表中不存在；delete：删除1行
+        when(jdbcTemplate.batchUpdate(eq(upsertSql), anyList())).thenReturn(new int[]{3});
+        when(jdbcTemplate.batchUpdate(eq(updateSql), anyList())).thenReturn(new int[]{1, 0});
+        when(jdbcTemplate.batchUpdate(eq(loadService.buildDeleteInSql("t_order", tableMeta, 1)), anyList())).thenReturn(new int[]{1});
+
+        List<CudRequest> requestList = Arrays.asList(request(tableMeta, INSERT, 1), request(tableMeta, INSERT, 2),
+                request(tableMeta, UPDATE, 3), request(tableMeta, UPDATE, 4), request(tableMeta, DELETE, 5));
+        assertEquals(5, loadService.batchOperateData(requestList));
+        //UPDATE不合并到upsert中
+        verify(jdbcTemplate).batchUpdate(eq(updateSql), argThat((List<Object[]> args) -> args.size() == 2));
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    public void coalescedInsertTest() {
+        MysqlLoadServiceImpl loadService = new MysqlLoadServiceImpl();
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        ReflectionTestUtils.setField(loadService, "allTargetDatasource", Collections.singletonMap("db", jdbcTemplate));
+        TableMeta tableMeta = tableMeta();
+        CudRequest request = request(tableMeta, INSERT, 1);
+        request.setCoalesced(true);
+        String upsertSql = loadService.buildUpsertSql("t_order", tableMeta, 1);
+        when(jdbcTemplate.update(eq(upsertSql), any(Object[].class))).thenReturn(2);
+
+        //合并了UPDATE的INSERT重新投递时目标表中可能已经有这一行，按upsert写入
+        assertEquals(2, loadService.operateData(request));
+        verify(jdbcTemplate).update(eq(upsertSql), any(Object[].class));
+        verify(jdbcTemplate, never()).update(eq(loadService.buildInsertSql("t_order", tableMeta)), any(Object[].class));
+    }
+
 }
@@ -0,0 +1,94 @@
+package com.jte.sync2any.load;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TableLoadSchedulerTest {
+
+    @Test
+    public void parallelismLimitTest() throws Exception {
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+        AtomicInteger totalRunning = new AtomicInteger();
+        AtomicInteger maxTotalRunning = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+
+        TableLoadScheduler scheduler = new TableLoadScheduler(4, 2);
+        for (int i = 0; i < 30; i++) {
+            String db = "db" + (i % 3);
+            //db0的表都是同一个exclusiveKey
+            String exclusiveKey = "db0".equals(db) ? "ck" : null;
+            String key = db + "$" + exclusiveKey;
+            scheduler.submit("t_" + i, db, exclusiveKey, () -> {
+                maxTotalRunning.accumulateAndGet(totalRunning.incrementAndGet(), Math::max);
+                AtomicInteger dbRunning = running.computeIfAbsent(key, k -> new AtomicInteger());
+                maxRunning.computeIfAbsent(key, k -> new AtomicInteger()).accumulateAndGet(dbRunning.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                dbRunning.decrementAndGet();
+                totalRunning.decrementAndGet();
+                return finished.incrementAndGet();
+            });
+        }
+        scheduler.awaitAll();
+
+        assertEquals(30, finished.get());
+        assertTrue(maxTotalRunning.get() <= 4);
+        assertEquals(1, maxRunning.get("db0$ck").get());
+        assertTrue(maxRunning.get("db1$null").get() <= 2);
+        assertTrue(maxRunning.get("db2$null").get() <= 2);
+    }
+
+    @Test
+    public void noHeadOfLineBlockingTest() throws Exception {
+        //ck的表要等db1的表执行后才能完成，排在后面的ck表不能占住线程让db1的表无法执行
+        CountDownLatch db1Done = new CountDownLatch(1);
+        AtomicInteger ckDone = new AtomicInteger();
+        AtomicInteger db2Done = new AtomicInteger();
+        TableLoadScheduler scheduler = new TableLoadScheduler(2, 2);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit("t_ck_" + i, "db0", "ck", () -> {
+                assertTrue(db1Done.await(5, TimeUnit.SECONDS));
+                return ckDone.incrementAndGet();
+            });
+        }
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit("t_db2_" + i, "db2", null, db2Done::incrementAndGet);
+        }
+        scheduler.submit("t_db1", "db1", null, () -> {
+            db1Done.countDown();
+            return 1;
+        });
+        scheduler.awaitAll();
+
+        assertEquals(3, ckDone.get());
+        assertEquals(3, db2Done.get());
+    }
+
+    @Test
+    public void errorTest() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        TableLoadScheduler scheduler = new TableLoadScheduler(1, 1);
+        scheduler.submit("t_fail", "db", null, () -> {
+            started.incrementAndGet();
+            throw new IllegalStateException("dump fail");
+        });
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("t_" + i, "db", null, started::incrementAndGet);
+        }
+        try {
+            scheduler.awaitAll();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("dump fail", e.getMessage());
+        }
+        //失败后还未开始的表不再执行
+        assertEquals(1, started.get());
+    }
+}
@@ -0,0 +1,72 @@
+package com.jte.sync2any.load.impl;
+
+import com.jte.sync2any.model.mysql.*;
+import org.junit.Test;
+import ru.yandex.clickhouse.settings.ClickHouseProperties;
+import ru.yandex.clickhouse.util.ClickHouseRowBinaryStream;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Types;
+import java.time.ZoneId;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CkRowBinaryWriterTest {
+
+    private TableMeta tableMeta(String... names) {
+        return TableMetaFixture.of("t_order", Types.VARCHAR, names);
+    }
+
+    @Test
+    public void writeRowTest() throws Exception {
+        TableMeta tableMeta = tableMeta("id", "amount_int", "name", "create_time", "price");
+        Map<String, String> typeMap = new HashMap<>();
+        typeMap.put("id", "Int64");
+        typeMap.put("amount_int", "Nullable(Int32)");
+        typeMap.put("name", "LowCardinality(String)");
+        typeMap.put("create_time", "DateTime('UTC')");
+        typeMap.put("price", "Decimal(10, 2)");
+        typeMap.put("_sign", "Int8");
+        CkRowBinaryWriter.InsertPlan plan = CkRowBinaryWriter.buildPlan(tableMeta, typeMap, ZoneId.of("Asia/Shanghai"), true);
+        assertEquals("INSERT INTO t_order (id, amount_int, name, create_time, price, _sign)", plan.insertSql);
+
+        DecodedRow row = new DecodedRow(5);
+        row.set(0, "5");
+        row.set(1, null);
+        row.set(2, "abc");
+        row.set(3, "1970-01-02 00:00:00");
+        row.set(4, "1.5");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClickHouseRowBinaryStream stream = new ClickHouseRowBinaryStream(out, TimeZone.getTimeZone("UTC"), new ClickHouseProperties());
+        CkRowBinaryWriter.writeRow(stream, plan, new CkLoadServiceImpl.InsertItem(tableMeta, row, "-1"));
+
+        byte[] expected = {
+                //Int64 5
+                5, 0, 0, 0, 0, 0, 0, 0,
+                //Nullable：NULL
+                1,
+                //String：长度 + 内容
+                3, 'a', 'b', 'c',
+                //DateTime：UInt32 86400
+                (byte) 0x80, 0x51, 0x01, 0x00,
+                //Decimal64(2)：150
+                (byte) 150, 0, 0, 0, 0, 0, 0, 0,
+                //_sign：Int8 -1
+                (byte) 0xff
+        };
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void unsupportedTypeTest() {
+        TableMeta tableMeta = tableMeta("id", "status");
+        Map<String, String> typeMap = new HashMap<>();
+        typeMap.put("id", "UInt64");
+        typeMap.put("status", "Enum8('a' = 1, 'b' = 2)");
+        assertNull(CkRowBinaryWriter.ColumnWriter.of(1, typeMap.get("status"), ZoneId.of("UTC")));
+        assertNull(CkRowBinaryWriter.ColumnWriter.of(1, null, ZoneId.of("UTC")));
+        assertNotNull(CkRowBinaryWriter.ColumnWriter.of(0, typeMap.get("id"), ZoneId.of("UTC")));
+        assertNull(CkRowBinaryWriter.buildPlan(tableMeta, typeMap, ZoneId.of("UTC"), false).insertSql);
+    }
+}
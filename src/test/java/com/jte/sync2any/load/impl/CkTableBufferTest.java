@@ -0,0 +1,109 @@
+package com.jte.sync2any.load.impl;
+
+import com.jte.sync2any.model.config.CkBuffer;
+import com.jte.sync2any.model.mysql.DecodedRow;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CkTableBufferTest {
+
+    private CkLoadServiceImpl.InsertItem item(String sign) {
+        return new CkLoadServiceImpl.InsertItem(null, null, sign);
+    }
+
+    private CkBufferLimiter limiter(CkBuffer config) {
+        return new CkBufferLimiter(config, Collections::emptyList);
+    }
+
+    @Test
+    public void flushBySizeTest() {
+        CkBuffer config = new CkBuffer();
+        config.setMaxRows(3);
+        config.setMaxAgeMs(60000);
+        List<List<CkLoadServiceImpl.InsertItem>> saved = new ArrayList<>();
+        //同步执行刷新任务
+        CkTableBuffer buffer = new CkTableBuffer("1$t_order", config, Runnable::run, limiter(config), saved::add);
+
+        buffer.add(item("1"));
+        buffer.add(item("2"));
+        assertTrue(saved.isEmpty());
+        assertEquals(2, buffer.size());
+
+        buffer.add(item("3"));
+        assertEquals(1, saved.size());
+        assertEquals(3, saved.get(0).size());
+        assertEquals("1", saved.get(0).get(0).getSign());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void flushByAgeTest() {
+        CkBuffer config = new CkBuffer();
+        config.setMaxRows(100);
+        config.setMaxAgeMs(1000);
+        List<List<CkLoadServiceImpl.InsertItem>> saved = new ArrayList<>();
+        CkTableBuffer buffer = new CkTableBuffer("1$t_order", config, Runnable::run, limiter(config), saved::add);
+
+        buffer.add(item("1"));
+        buffer.flushIfExpired(System.currentTimeMillis());
+        assertTrue(saved.isEmpty());
+
+        buffer.flushIfExpired(System.currentTimeMillis() + 1000);
+        assertEquals(1, saved.size());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void backpressureTest() {
+        CkBuffer config = new CkBuffer();
+        config.setMaxRows(100);
+        config.setMaxBufferedMb(1);
+        config.setResumeBufferedMb(0);
+        KafkaMessageListenerContainer container = mock(KafkaMessageListenerContainer.class);
+        when(container.isRunning()).thenReturn(true);
+        CkBufferLimiter limiter = new CkBufferLimiter(config, () -> Collections.singletonList(container));
+        List<Runnable> flushTasks = new ArrayList<>();
+        CkTableBuffer buffer = new CkTableBuffer("1$t_order", config, flushTasks::add, limiter, list -> {
+        });
+
+        DecodedRow row = new DecodedRow(1);
+        row.set(0, StringUtils.repeat('a', 200 * 1024));
+        buffer.add(new CkLoadServiceImpl.InsertItem(null, row, null));
+        buffer.add(new CkLoadServiceImpl.InsertItem(null, row, null));
+        assertFalse(limiter.isPaused());
+        verify(container, never()).pause();
+
+        buffer.add(new CkLoadServiceImpl.InsertItem(null, row, null));
+        assertTrue(limiter.isPaused());
+        assertEquals(3, limiter.getBufferedRows());
+        verify(container).pause();
+
+        buffer.flushIfExpired(System.currentTimeMillis() + config.getMaxAgeMs());
+        flushTasks.forEach(Runnable::run);
+        assertFalse(limiter.isPaused());
+        assertEquals(0, limiter.getBufferedBytes());
+        verify(container).resume();
+    }
+
+    @Test
+    public void flushErrorTest() {
+        CkBuffer config = new CkBuffer();
+        config.setMaxRows(1);
+        CkTableBuffer buffer = new CkTableBuffer("1$t_order", config, Runnable::run, limiter(config), list -> {
+            throw new IllegalStateException("ck is down");
+        });
+        buffer.add(item("1"));
+        //失败只记录日志，不影响之后的写入
+        assertTrue(buffer.isEmpty());
+        buffer.add(item("2"));
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+package com.jte.sync2any.load.impl;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SegmentLogTest {
+
+    private static final String TAG = "group";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayUnreleasedTest() throws Exception {
+        File dir = folder.newFolder("wal");
+        SegmentLog wal = new SegmentLog(dir, 64);
+        long position1 = wal.append(TAG, bytes("row-1"));
+        wal.append(TAG, bytes("row-2"));
+        wal.commit(TAG);
+        wal.release(position1);
+        //未调用close，相当于进程意外退出
+
+        SegmentLog reopened = new SegmentLog(dir, 64);
+        List<String> replayed = new ArrayList<>();
+        Assert.assertEquals(1, reopened.replay(record -> replayed.add(new String(record, StandardCharsets.UTF_8)), 10));
+        //已确认的记录不会重放
+        Assert.assertEquals(Arrays.asList("row-2"), replayed);
+        Assert.assertEquals(0, new SegmentLog(dir, 64).replay(record -> Assert.fail(), 10));
+    }
+
+    @Test
+    public void skipUncommittedTest() throws Exception {
+        File dir = folder.newFolder("wal");
+        SegmentLog wal = new SegmentLog(dir, 128);
+        wal.append(TAG, bytes("row-1"));
+        wal.append("other", bytes("row-2"));
+        wal.commit(TAG);
+        wal.append(TAG, bytes("row-3"));
+        wal.force();
+
+        //只有row-1的offset已经提交，其余的kafka会重新投递，重放会重复写入
+        List<String> replayed = new ArrayList<>();
+        Assert.assertEquals(1, new SegmentLog(dir, 128).replay(record -> replayed.add(new String(record, StandardCharsets.UTF_8)), 10));
+        Assert.assertEquals(Arrays.asList("row-1"), replayed);
+    }
+
+    @Test
+    public void closeDeletesReleasedSegmentTest() throws Exception {
+        File dir = folder.newFolder("wal");
+        SegmentLog wal = new SegmentLog(dir, 64);
+        wal.release(wal.append(TAG, bytes("row-1")));
+        wal.release(wal.append(TAG, bytes("row-2")));
+        wal.close();
+        //正常停止时所有记录都已确认，不留下段文件
+        Assert.assertEquals(0, dir.listFiles().length);
+        Assert.assertEquals(0, new SegmentLog(dir, 64).replay(record -> Assert.fail(), 10));
+    }
+
+    @Test
+    public void deleteReleasedSegmentTest() throws Exception {
+        File dir = folder.newFolder("wal");
+        SegmentLog wal = new SegmentLog(dir, 32);
+        List<Long> seqList = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            seqList.add(wal.append(TAG, bytes("row-" + i)));
+        }
+        //每个段只能放下两条记录
+        Assert.assertEquals(3, dir.listFiles().length);
+        wal.release(seqList.get(0));
+        wal.release(seqList.get(1));
+        Assert.assertEquals(2, dir.listFiles().length);
+        Assert.assertEquals(4, wal.getPending());
+        wal.commit(TAG);
+        wal.close();
+
+        List<String> replayed = new ArrayList<>();
+        new SegmentLog(dir, 32).replay(record -> replayed.add(new String(record, StandardCharsets.UTF_8)), 10);
+        Assert.assertEquals(4, replayed.size());
+        Assert.assertEquals("row-2", replayed.get(0));
+    }
+
+    @Test
+    public void keepSegmentWhenReplayFailTest() throws Exception {
+        File dir = folder.newFolder("wal");
+        SegmentLog wal = new SegmentLog(dir, 64);
+        wal.append(TAG, bytes("row-1"));
+        wal.append(TAG, bytes("row-2"));
+        wal.commit(TAG);
+        wal.close();
+        List<String> replayed = new ArrayList<>();
+        try {
+            new SegmentLog(dir, 64).replay(new SegmentLog.RecordHandler() {
+                @Override
+                public void handle(byte[] record) {
+                    replayed.add(new String(record, StandardCharsets.UTF_8));
+                }
+
+                @Override
+                public void finish() {
+                    if (replayed.size() > 1) {
+                        throw new IllegalStateException("target is down");
+                    }
+                }
+            }, 1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, dir.listFiles().length);
+        }
+        //第一批已经写入成功，下次只重放失败的一批
+        replayed.clear();
+        Assert.assertEquals(1, new SegmentLog(dir, 64).replay(record -> replayed.add(new String(record, StandardCharsets.UTF_8)), 1));
+        Assert.assertEquals(Arrays.asList("row-2"), replayed);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,42 @@
+package com.jte.sync2any.model.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LagHistogramTest {
+
+    @Test
+    public void percentileTest() {
+        LagHistogram histogram = new LagHistogram(3000, 0);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, 0);
+        }
+        //时钟误差导致的负数按0记录
+        histogram.record(-5, 0);
+        LagHistogram.Snapshot snapshot = histogram.snapshot(500);
+        assertEquals(101, snapshot.getCount());
+        assertEquals(50, snapshot.getValueAtPercentile(50));
+        assertEquals(99, snapshot.getValueAtPercentile(99));
+        assertEquals(100, snapshot.getMax());
+    }
+
+    @Test
+    public void slidingWindowTest() {
+        LagHistogram histogram = new LagHistogram(3000, 0);
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, 0);
+        }
+        histogram.record(200, 1500);
+        //第一段已清空，读取的一段仍包含窗口开始以来的数据
+        assertEquals(101, histogram.snapshot(1500).getCount());
+        //超过一个窗口后只剩最近的数据
+        LagHistogram.Snapshot snapshot = histogram.snapshot(3000);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(200, snapshot.getMax());
+        //空闲超过一个窗口后没有数据
+        snapshot = histogram.snapshot(100000);
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+}
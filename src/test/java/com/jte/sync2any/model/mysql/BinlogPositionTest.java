@@ -0,0 +1,44 @@
+package com.jte.sync2any.model.mysql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BinlogPositionTest {
+
+    private static final String UUID_A = "3E11FA47-71CA-11E1-9E33-C80AA9429562";
+    private static final String UUID_B = "8a94f357-aab4-11df-86ab-c80aa9429563";
+
+    private BinlogPosition position(String gtidSet) {
+        BinlogPosition position = new BinlogPosition();
+        position.setServerId(1);
+        position.setFileName("mysql-bin.000012");
+        position.setPosition(4000);
+        position.setGtidSet(gtidSet);
+        return position;
+    }
+
+    @Test
+    public void gtidTest() {
+        BinlogPosition position = position(UUID_A + ":1-100:105,\n" + UUID_B + ":1-5");
+        assertTrue(position.includes(UUID_A.toLowerCase() + ":1", 2, "other-bin.000001", 99999));
+        assertTrue(position.includes(UUID_A + ":100", 0, "", 0));
+        assertTrue(position.includes(UUID_A + ":105", 0, "", 0));
+        assertFalse(position.includes(UUID_A + ":101", 1, "mysql-bin.000001", 4));
+        assertFalse(position.includes(UUID_A + ":106", 0, "", 0));
+        assertTrue(position.includes(UUID_B + ":5", 0, "", 0));
+        assertFalse(position.includes("11111111-2222-3333-4444-555555555555:1", 0, "", 0));
+    }
+
+    @Test
+    public void filePositionTest() {
+        BinlogPosition position = position(null);
+        assertTrue(position.includes("", 1, "mysql-bin.000011", 99999));
+        assertTrue(position.includes("", 1, "mysql-bin.000012", 3999));
+        assertFalse(position.includes("", 1, "mysql-bin.000012", 4000));
+        assertFalse(position.includes("", 1, "mysql-bin.000013", 4));
+        //其他server或其他前缀的binlog无法比较
+        assertFalse(position.includes("", 2, "mysql-bin.000011", 4));
+        assertFalse(position.includes("", 1, "relay-bin.000011", 4));
+    }
+}
@@ -0,0 +1,89 @@
+package com.jte.sync2any.model.mysql;
+
+import com.google.protobuf.ByteString;
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mq.SubscribeDataProto;
+import com.jte.sync2any.transform.impl.RecordsTransformImpl;
+import org.junit.Test;
+
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+
+public class RowDecoderTest {
+
+    private TableMeta tableMeta() {
+        ColumnMeta remark = TableMetaFixture.column("remark", Types.VARCHAR);
+        remark.setInclude(false);
+        return TableMetaFixture.of("t_member", TableMetaFixture.column("id", Types.BIGINT),
+                TableMetaFixture.column("name", Types.VARCHAR), remark, TableMetaFixture.column("update_time", Types.TIMESTAMP));
+    }
+
+    private SubscribeDataProto.Data sv(SubscribeDataProto.DataType type, String value) {
+        return SubscribeDataProto.Data.newBuilder().setDataType(type).setSv(value).build();
+    }
+
+    private SubscribeDataProto.Data bv(String value) {
+        return SubscribeDataProto.Data.newBuilder().setDataType(SubscribeDataProto.DataType.STRING).setBv(ByteString.copyFromUtf8(value)).build();
+    }
+
+    private SubscribeDataProto.DMLEvent updateEvent() {
+        SubscribeDataProto.RowChange row = SubscribeDataProto.RowChange.newBuilder()
+                .addOldColumns(sv(SubscribeDataProto.DataType.INT64, "1"))
+                .addOldColumns(bv("old"))
+                .addOldColumns(bv("remark"))
+                .addOldColumns(bv("2021-01-01 00:00:00"))
+                .addNewColumns(sv(SubscribeDataProto.DataType.INT64, "1"))
+                .addNewColumns(bv("new"))
+                .addNewColumns(bv("remark"))
+                .addNewColumns(SubscribeDataProto.Data.newBuilder().setDataType(SubscribeDataProto.DataType.NA).build())
+                .build();
+        return SubscribeDataProto.DMLEvent.newBuilder()
+                .setDmlEventType(SubscribeDataProto.DMLType.UPDATE)
+                .addColumns(SubscribeDataProto.Column.newBuilder().setName("ID"))
+                .addColumns(SubscribeDataProto.Column.newBuilder().setName("name"))
+                .addColumns(SubscribeDataProto.Column.newBuilder().setName("remark"))
+                .addColumns(SubscribeDataProto.Column.newBuilder().setName("update_time"))
+                .addRows(row)
+                .build();
+    }
+
+    @Test
+    public void decodeTest() {
+        TableMeta tableMeta = tableMeta();
+        SubscribeDataProto.DMLEvent dmlEvt = updateEvent();
+        int[] positions = RowDecoder.columnPositions(tableMeta, dmlEvt);
+        assertArrayEquals(new int[]{0, 1, -1, 3}, positions);
+
+        DecodedRow oldRow = RowDecoder.decodeOld(tableMeta, positions, dmlEvt.getRows(0));
+        DecodedRow newRow = RowDecoder.decodeNew(tableMeta, positions, dmlEvt.getRows(0));
+        assertEquals("1", oldRow.get(0));
+        assertEquals("old", oldRow.get(1));
+        assertFalse(oldRow.isPresent(2));
+        assertEquals("2021-01-01 08:00:00", oldRow.get(3));
+        assertEquals("new", newRow.get(1));
+        assertFalse(newRow.isPresent(3));
+        assertEquals(2, newRow.getPresentCount());
+    }
+
+    @Test
+    public void transformTest() {
+        TableMeta tableMeta = tableMeta();
+        SubscribeDataProto.DMLEvent dmlEvt = updateEvent();
+        RecordsTransformImpl transform = new RecordsTransformImpl();
+
+        int[] positions = RowDecoder.columnPositions(tableMeta, dmlEvt);
+        CudRequest request = transform.transform(tableMeta, dmlEvt.getDmlEventType(),
+                RowDecoder.decodeOld(tableMeta, positions, dmlEvt.getRows(0)),
+                RowDecoder.decodeNew(tableMeta, positions, dmlEvt.getRows(0)));
+        //与TableRecords的解析结果一致
+        CudRequest expected = transform.transform(TableRecords.buildRecords(tableMeta, dmlEvt.getRows(0), dmlEvt));
+
+        assertEquals(expected.getPkValueStr(), request.getPkValueStr());
+        assertEquals(expected.getParameters(), request.getParameters());
+        assertEquals(expected.getPkValueMap().keySet(), request.getPkValueMap().keySet());
+        assertEquals(expected.getPkValueMap().get("id").getValue(), request.getPkValueMap().get("id").getValue());
+        assertEquals(expected.getTable(), request.getTable());
+        assertEquals("1", request.getPkValueStr());
+    }
+}
@@ -0,0 +1,59 @@
+package com.jte.sync2any.model.mysql;
+
+import java.sql.JDBCType;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 单元测试使用的表结构，不需要连接源数据库
+ */
+public class TableMetaFixture {
+
+    private TableMetaFixture() {
+    }
+
+    /**
+     * 需要同步的列，目标列名与列名相同
+     */
+    public static ColumnMeta column(String name, int dataType) {
+        ColumnMeta columnMeta = new ColumnMeta();
+        columnMeta.setColumnName(name);
+        columnMeta.setTargetColumnName(name);
+        columnMeta.setDataType(dataType);
+        columnMeta.setDataTypeName(JDBCType.valueOf(dataType).getName());
+        columnMeta.setInclude(true);
+        return columnMeta;
+    }
+
+    /**
+     * @param pkType      第一列（主键）的类型
+     * @param columnNames 第一列为主键，其余列为VARCHAR
+     */
+    public static TableMeta of(String tableName, int pkType, String... columnNames) {
+        ColumnMeta[] columns = new ColumnMeta[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            columns[i] = column(columnNames[i], i == 0 ? pkType : Types.VARCHAR);
+        }
+        return of(tableName, columns);
+    }
+
+    /**
+     * @param columns 第一列为主键
+     */
+    public static TableMeta of(String tableName, ColumnMeta... columns) {
+        TableMeta tableMeta = new TableMeta();
+        tableMeta.setTableName(tableName);
+        tableMeta.setTargetTableName(tableName);
+        tableMeta.setAllColumnList(new ArrayList<>(Arrays.asList(columns)));
+        for (ColumnMeta columnMeta : columns) {
+            tableMeta.getAllColumnMap().put(columnMeta.getColumnName(), columnMeta);
+        }
+        IndexMeta primary = new IndexMeta();
+        primary.setIndextype(IndexType.PRIMARY);
+        primary.getValues().add(columns[0]);
+        tableMeta.getAllIndexes().put("PRIMARY", primary);
+        tableMeta.initMetaCache();
+        return tableMeta;
+    }
+}
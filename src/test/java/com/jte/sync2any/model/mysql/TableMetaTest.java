@@ -0,0 +1,44 @@
+package com.jte.sync2any.model.mysql;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TableMetaTest {
+
+    private ColumnMeta column(String name, boolean include) {
+        ColumnMeta columnMeta = new ColumnMeta();
+        columnMeta.setColumnName(name);
+        columnMeta.setTargetColumnName(name.toLowerCase());
+        columnMeta.setInclude(include);
+        return columnMeta;
+    }
+
+    @Test
+    public void metaCacheTest() {
+        ColumnMeta name = column("name", true);
+        ColumnMeta id = column("id", true);
+        ColumnMeta remark = column("remark", false);
+        ColumnMeta groupCode = column("group_code", true);
+
+        TableMeta tableMeta = new TableMeta();
+        tableMeta.setAllColumnList(Arrays.asList(name, id, remark, groupCode));
+        IndexMeta primary = new IndexMeta();
+        primary.setIndextype(IndexType.PRIMARY);
+        primary.getValues().add(id);
+        primary.getValues().add(groupCode);
+        tableMeta.getAllIndexes().put("PRIMARY", primary);
+        tableMeta.initMetaCache();
+
+        assertEquals(Arrays.asList("id", "group_code"), tableMeta.getPrimaryKeyOnlyName());
+        assertEquals(Arrays.asList("group_code", "id"), tableMeta.getSortedPrimaryKeyName());
+        assertTrue(tableMeta.isPrimaryKey("ID"));
+        assertFalse(tableMeta.isPrimaryKey("name"));
+        assertArrayEquals(new int[]{3, 1}, tableMeta.getSortedPrimaryKeyPositions());
+        assertArrayEquals(new boolean[]{true, true, false, true}, tableMeta.getIncludedColumns());
+        assertArrayEquals(new int[]{0, 1, -1, 2}, tableMeta.getSourceToTargetIndex());
+        assertSame(tableMeta.getPrimaryKeyOnlyName(), tableMeta.getPrimaryKeyOnlyName());
+    }
+}
@@ -0,0 +1,52 @@
+package com.jte.sync2any.transform.impl;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DumpInsertParserTest {
+
+    @Test
+    public void parseTest() {
+        String sql = "INSERT INTO `t_order` (`id`, `name`, `price`, `remark`) VALUES " +
+                "(1,'tom',1.50,NULL),(-2,'it\\'s ''ok''','-3.2e5','a\\nb\\\\c'),(3,_binary 'x\\0y',0x0A1B,b'101');";
+        List<String[]> rows = DumpInsertParser.parse(sql, 4);
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[]{"1", "tom", "1.50", null}, rows.get(0));
+        assertArrayEquals(new String[]{"-2", "it's 'ok'", "-3.2e5", "a\nb\\c"}, rows.get(1));
+        assertArrayEquals(new String[]{"3", "x\u0000y", "0x0A1B", "b'101'"}, rows.get(2));
+    }
+
+    @Test
+    public void quotedNamesTest() {
+        //列名或值中出现括号、逗号、VALUES都不影响解析
+        String sql = "INSERT INTO `t``x` (`a,b)`, `VALUES`) VALUES ('(1,2)','NULL'),('',NULL)";
+        List<String[]> rows = DumpInsertParser.parse(sql, 2);
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"(1,2)", "NULL"}, rows.get(0));
+        assertArrayEquals(new String[]{"", null}, rows.get(1));
+    }
+
+    @Test
+    public void columnCountMismatchTest() {
+        try {
+            DumpInsertParser.parse("INSERT INTO `t` VALUES (1,'a'),(2)", 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("too few values"));
+        }
+        try {
+            DumpInsertParser.parse("INSERT INTO `t` VALUES (1,'a',3)", 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("too many values"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unterminatedStringTest() {
+        DumpInsertParser.parse("INSERT INTO `t` VALUES (1,'a\\')", 2);
+    }
+}
@@ -0,0 +1,40 @@
+package com.jte.sync2any.transform.impl;
+
+import com.jte.sync2any.model.es.CudRequest;
+import com.jte.sync2any.model.mysql.*;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InsertRequestBuilderTest {
+
+    private TableMeta tableMeta() {
+        return TableMetaFixture.of("t_order", Types.BIGINT, "id", "name", "remark");
+    }
+
+    @Test
+    public void fastAndDruidParseSameTest() {
+        TableMeta tableMeta = tableMeta();
+        String line = "INSERT INTO `t_order` (`id`, `name`, `remark`) VALUES " +
+                "(1,'it\\'s ''ok''','a\\nb\\\\c\\td'),(-2,'100\\%',NULL),(3,'','NULL');";
+        MysqlDumpTransformImpl transform = new MysqlDumpTransformImpl();
+        List<CudRequest> fast = transform.sqlToInsertCudRequest(line, tableMeta);
+        List<CudRequest> druid = transform.sqlToInsertCudRequestByDruid(line, tableMeta);
+
+        assertEquals(3, fast.size());
+        assertEquals("it's 'ok'", fast.get(0).getParameters().get("name"));
+        assertEquals("a\nb\\c\td", fast.get(0).getParameters().get("remark"));
+        assertEquals("-2", fast.get(1).getPkValueStr());
+        assertNull(fast.get(1).getParameters().get("remark"));
+        assertEquals("NULL", fast.get(2).getParameters().get("remark"));
+        assertEquals(fast.size(), druid.size());
+        for (int i = 0; i < fast.size(); i++) {
+            assertEquals(fast.get(i).getPkValueStr(), druid.get(i).getPkValueStr());
+            assertEquals(fast.get(i).getTable(), druid.get(i).getTable());
+            assertEquals(fast.get(i).getParameters(), druid.get(i).getParameters());
+        }
+    }
+}